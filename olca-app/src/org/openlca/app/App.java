@@ -97,6 +97,21 @@ public class App {
 		return solver;
 	}
 
+	/**
+	 * Creates a new solver of the same type as the shared solver (see
+	 * getSolver). This is used when calculations run in parallel, e.g. the
+	 * workers of a Monte Carlo simulation, so that they do not share the state
+	 * of a solver.
+	 */
+	public static IMatrixSolver newSolver() {
+		IMatrixSolver shared = getSolver();
+		if (shared instanceof JuliaSolver)
+			return new JuliaSolver();
+		if (shared instanceof JavaSolver)
+			return new JavaSolver();
+		return new DenseSolver();
+	}
+
 	/**
 	 * Returns the version of the openLCA application.
 	 */
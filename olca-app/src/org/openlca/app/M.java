@@ -76,8 +76,10 @@ public class M extends NLS {
 	public static String Calculate;
 	public static String CalculateCosts;
 	public static String CalculateDefaultValues;
+	public static String CalculateQuickResultInstead;
 	public static String CalculateResults;
 	public static String CalculateStatistics;
+	public static String CalculationMayRunOutOfMemory;
 	public static String CalculationProperties;
 	public static String CalculationType;
 	public static String CalculationWizardDescription;
@@ -467,6 +469,7 @@ public class M extends NLS {
 	public static String LastChange;
 	public static String LastModificationDate;
 	public static String Latitude;
+	public static String LayeredGraph;
 	public static String Layout;
 	public static String LayoutAs;
 	public static String LciaCategoryDescriptionTable;
@@ -477,6 +480,8 @@ public class M extends NLS {
 	public static String LibraryDataSets;
 	public static String Line;
 	public static String LinkingProperties;
+	public static String Loading;
+	public static String LoadMoreResults;
 	public static String LoadingRepositoryList;
 	public static String Local;
 	public static String LocalDatabase;
@@ -625,6 +630,7 @@ public class M extends NLS {
 	public static String OverwriteFileQuestion;
 
 	// P
+	public static String ParallelWorkers;
 	public static String Parameter;
 	public static String ParameterAggregationFunction;
 	public static String ParameterAlreadyAdded;
@@ -838,6 +844,7 @@ public class M extends NLS {
 	public static String SolvingProblems;
 	public static String SomeElementsAreNotSaved;
 	public static String SomeParametersWereNotAdded;
+	public static String SortResults;
 	public static String Source;
 	public static String SourceFileDeleteQuestion;
 	public static String SourceFileOverwriteFileQuestion;
@@ -930,6 +937,7 @@ public class M extends NLS {
 	public static String VersionNewer;
 	public static String VeryHighRisk;
 	public static String VeryLowRisk;
+	public static String WaitingForCalculation;
 	public static String WaitingForServerToIndexDatasets;
 	public static String Warning;
 	public static String Warnings;
@@ -0,0 +1,181 @@
+package org.openlca.app.cloud;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * A content addressed file cache for JSON data sets. The key of a data set is
+ * the SHA-1 hash of the parts that identify its content, e.g. the commit ID,
+ * model type, and reference ID of a remote data set. As the content for such
+ * a key never changes, entries are never invalidated. The data sets are
+ * stored as gzipped files in sub-folders named by the first two characters of
+ * the hash. When the cache grows larger than {@link #MAX_SIZE}, the least
+ * recently used entries are deleted.
+ */
+class JsonCache {
+
+	/** The maximum size of the cache files in bytes. */
+	private static final long MAX_SIZE = 100L * 1024 * 1024;
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	private final File dir;
+
+	/** The size of the cache files; -1 if not calculated yet. */
+	private long size = -1;
+
+	JsonCache(File dir) {
+		this.dir = dir;
+	}
+
+	static String key(Object... parts) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			for (Object part : parts) {
+				String s = part == null ? "" : part.toString();
+				digest.update(s.getBytes(StandardCharsets.UTF_8));
+				digest.update((byte) 0);
+			}
+			StringBuilder hex = new StringBuilder();
+			for (byte b : digest.digest()) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (Exception e) {
+			throw new RuntimeException("SHA-1 not available", e);
+		}
+	}
+
+	boolean contains(String key) {
+		return file(key).exists();
+	}
+
+	/** Returns the cached data set or null if there is no such entry. */
+	JsonObject get(String key) {
+		File file = file(key);
+		if (!file.exists())
+			return null;
+		// the modification time is used as access time for the eviction
+		file.setLastModified(System.currentTimeMillis());
+		try (Reader reader = new InputStreamReader(
+				new GZIPInputStream(new FileInputStream(file)),
+				StandardCharsets.UTF_8)) {
+			return new JsonParser().parse(reader).getAsJsonObject();
+		} catch (Exception e) {
+			log.warn("failed to read cache entry " + file, e);
+			file.delete();
+			return null;
+		}
+	}
+
+	void put(String key, JsonObject json) {
+		if (json == null)
+			return;
+		File file = file(key);
+		if (file.exists())
+			return;
+		try {
+			File folder = file.getParentFile();
+			if (!folder.exists())
+				folder.mkdirs();
+			// write to a temporary file first so that concurrent readers never
+			// see a partially written entry
+			File tmp = File.createTempFile(key, ".tmp", folder);
+			try (Writer writer = new OutputStreamWriter(
+					new GZIPOutputStream(new FileOutputStream(tmp)),
+					StandardCharsets.UTF_8)) {
+				writer.write(json.toString());
+			}
+			Files.move(tmp.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+			added(file.length());
+		} catch (Exception e) {
+			log.warn("failed to write cache entry " + file, e);
+		}
+	}
+
+	/** Deletes all entries of the cache. */
+	synchronized void clear() {
+		if (!dir.exists())
+			return;
+		try {
+			FileUtils.deleteDirectory(dir);
+			size = 0;
+		} catch (Exception e) {
+			log.warn("failed to delete JSON cache " + dir, e);
+			size = -1;
+		}
+	}
+
+	/**
+	 * Adds the size of a new entry and deletes the least recently used
+	 * entries when the cache is too large.
+	 */
+	private synchronized void added(long bytes) {
+		if (size < 0) {
+			size = 0;
+			for (File file : entries()) {
+				size += file.length();
+			}
+		} else {
+			size += bytes;
+		}
+		if (size <= MAX_SIZE)
+			return;
+		List<File> files = entries();
+		files.sort((f1, f2) -> Long.compare(
+				f1.lastModified(), f2.lastModified()));
+		long limit = MAX_SIZE * 3 / 4;
+		for (File file : files) {
+			if (size <= limit)
+				break;
+			long length = file.length();
+			if (file.delete()) {
+				size -= length;
+			}
+		}
+		log.trace("trimmed JSON cache {} to {} bytes", dir, size);
+	}
+
+	private List<File> entries() {
+		List<File> entries = new ArrayList<>();
+		File[] folders = dir.listFiles();
+		if (folders == null)
+			return entries;
+		for (File folder : folders) {
+			File[] files = folder.listFiles();
+			if (files == null)
+				continue;
+			for (File file : files) {
+				if (file.getName().endsWith(".json.gz")) {
+					entries.add(file);
+				}
+			}
+		}
+		return entries;
+	}
+
+	private File file(String key) {
+		return new File(new File(dir, key.substring(0, 2)), key + ".json.gz");
+	}
+
+}
@@ -1,6 +1,16 @@
 package org.openlca.app.cloud;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.openlca.app.cloud.ui.compare.json.JsonUtil;
 import org.openlca.app.db.Database;
@@ -14,26 +24,72 @@ import org.openlca.core.model.ModelType;
 import org.openlca.core.model.Process;
 import org.openlca.core.model.RootEntity;
 import org.openlca.jsonld.output.JsonExport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 
+/**
+ * Loads the JSON of local and remote data sets for the diff and compare views.
+ * The remote data sets of a commit are stored in a file cache in the
+ * repository configuration folder so that opening the same comparison again
+ * does not require any requests. The file cache is deleted when the
+ * repository is disconnected (see {@link #clearCache(RepositoryClient)}).
+ * Local data sets are always exported as their JSON also contains the names
+ * and other fields of referenced data sets which can change without a change
+ * of the data set. Remote data sets without a commit ID (the latest state)
+ * are only cached until the commit ID or client changes. With
+ * {@link #prefetch(Collection)} the data sets of a diff set and their
+ * referenced data sets can be loaded with parallel requests in advance.
+ */
 public class JsonLoader {
 
+	private static final int THREADS = 8;
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
 	private RepositoryClient client;
 	private String commitId;
+	private JsonCache cache;
+	private final Map<String, JsonObject> latest = new ConcurrentHashMap<>();
 
 	JsonLoader(RepositoryClient client) {
-		this.client = client;
+		setClient(client);
 	}
 
 	public void setClient(RepositoryClient client) {
 		this.client = client;
+		latest.clear();
+		File dir = cacheDir(client);
+		cache = dir != null
+				? new JsonCache(dir)
+				: null;
+	}
+
+	/**
+	 * Deletes the file cache of the remote data sets of the given client.
+	 */
+	public static void clearCache(RepositoryClient client) {
+		File dir = cacheDir(client);
+		if (dir != null) {
+			new JsonCache(dir).clear();
+		}
+	}
+
+	private static File cacheDir(RepositoryClient client) {
+		if (client == null || client.getConfig() == null)
+			return null;
+		File dir = client.getConfig().getConfigDir();
+		return dir != null
+				? new File(dir, "json-cache")
+				: null;
 	}
 
 	public void setCommitId(String commitId) {
 		this.commitId = commitId;
+		latest.clear();
 	}
 
 	public JsonObject getLocalJson(Dataset dataset) {
@@ -64,7 +120,7 @@ public class JsonLoader {
 		if (dataset == null)
 			return null;
 		try {
-			JsonObject json = client.getDataset(dataset.type, dataset.refId, commitId);
+			JsonObject json = fetch(dataset.type, dataset.refId);
 			String type = JsonUtil.getString(json, "@type");
 			if (ImpactMethod.class.getSimpleName().equals(type)) {
 				replaceReferences(json, "impactCategories", ModelType.IMPACT_CATEGORY);
@@ -78,6 +134,131 @@ public class JsonLoader {
 		}
 	}
 
+	/**
+	 * Loads the given remote data sets and the data sets they reference into
+	 * the cache. The requests are executed in parallel; data sets that are
+	 * already cached are not requested again.
+	 */
+	public void prefetch(Collection<? extends Dataset> datasets) {
+		if (client == null || datasets == null || datasets.isEmpty())
+			return;
+		List<Dataset> missing = new ArrayList<>();
+		for (Dataset d : datasets) {
+			if (d != null && d.type != null && d.refId != null
+					&& !isCached(d.type, d.refId))
+				missing.add(d);
+		}
+		Map<String, JsonObject> fetched = new ConcurrentHashMap<>();
+		fetchAll(missing, fetched);
+
+		// collect the references of impact methods; without the fetched
+		// methods we need to look into the cache
+		Set<String> refIds = new HashSet<>();
+		List<Dataset> refs = new ArrayList<>();
+		for (Dataset d : datasets) {
+			if (d == null || d.type != ModelType.IMPACT_METHOD)
+				continue;
+			JsonObject json = fetched.get(d.refId);
+			if (json == null) {
+				json = cached(d.type, d.refId);
+			}
+			if (json == null)
+				continue;
+			collectRefs(json, "impactCategories", ModelType.IMPACT_CATEGORY, refIds, refs);
+			collectRefs(json, "nwSets", ModelType.NW_SET, refIds, refs);
+		}
+		fetchAll(refs, null);
+	}
+
+	private void collectRefs(JsonObject obj, String field, ModelType type,
+			Set<String> refIds, List<Dataset> refs) {
+		if (!obj.has(field) || !obj.get(field).isJsonArray())
+			return;
+		for (JsonElement element : obj.getAsJsonArray(field)) {
+			if (!element.isJsonObject())
+				continue;
+			String refId = JsonUtil.getString(element.getAsJsonObject(), "@id");
+			if (refId == null || !refIds.add(refId) || isCached(type, refId))
+				continue;
+			Dataset ref = new Dataset();
+			ref.type = type;
+			ref.refId = refId;
+			refs.add(ref);
+		}
+	}
+
+	private void fetchAll(List<Dataset> datasets, Map<String, JsonObject> results) {
+		if (datasets.isEmpty())
+			return;
+		log.trace("prefetch {} remote data sets", datasets.size());
+		int threads = Math.min(THREADS, datasets.size());
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		for (Dataset d : datasets) {
+			pool.execute(() -> {
+				try {
+					JsonObject json = fetch(d.type, d.refId);
+					if (json != null && results != null) {
+						results.put(d.refId, json);
+					}
+				} catch (WebRequestException e) {
+					log.trace("failed to prefetch {}", d.refId);
+				}
+			});
+		}
+		pool.shutdown();
+		try {
+			pool.awaitTermination(1, TimeUnit.HOURS);
+		} catch (InterruptedException e) {
+			log.warn("prefetch of remote data sets interrupted", e);
+			pool.shutdownNow();
+		}
+	}
+
+	private boolean isCached(ModelType type, String refId) {
+		if (commitId == null)
+			return latest.containsKey(type.name() + "/" + refId);
+		return cache != null && cache.contains(remoteKey(type, refId));
+	}
+
+	private JsonObject cached(ModelType type, String refId) {
+		if (commitId == null) {
+			JsonObject json = latest.get(type.name() + "/" + refId);
+			return json != null ? copy(json) : null;
+		}
+		return cache != null ? cache.get(remoteKey(type, refId)) : null;
+	}
+
+	/**
+	 * Returns the unprocessed JSON of the given remote data set from the cache
+	 * or loads it from the repository. The returned object can be modified.
+	 */
+	private JsonObject fetch(ModelType type, String refId)
+			throws WebRequestException {
+		JsonObject json = cached(type, refId);
+		if (json != null)
+			return json;
+		json = commitId == null
+				? client.getDataset(type, refId)
+				: client.getDataset(type, refId, commitId);
+		if (json == null)
+			return null;
+		if (commitId == null) {
+			latest.put(type.name() + "/" + refId, copy(json));
+		} else if (cache != null) {
+			cache.put(remoteKey(type, refId), json);
+		}
+		return json;
+	}
+
+	private String remoteKey(ModelType type, String refId) {
+		return JsonCache.key("remote", client.getConfig().repositoryId,
+				commitId, type, refId);
+	}
+
+	private JsonObject copy(JsonObject json) {
+		return new JsonParser().parse(json.toString()).getAsJsonObject();
+	}
+
 	private void replaceReferences(JsonObject obj, String field,
 			List<? extends RootEntity> entities) {
 		if (!obj.has(field))
@@ -97,8 +278,10 @@ public class JsonLoader {
 			try {
 				JsonObject o = element.getAsJsonObject();
 				String refId = o.get("@id").getAsString();
-				JsonObject json = client.getDataset(type, refId);
-				replaced.add(json);
+				JsonObject json = fetch(type, refId);
+				if (json != null) {
+					replaced.add(json);
+				}
 			} catch (WebRequestException e) {
 				// ignore
 			}
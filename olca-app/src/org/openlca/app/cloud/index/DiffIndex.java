@@ -6,6 +6,14 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 import org.mapdb.DB;
 import org.mapdb.DBMaker;
@@ -15,13 +23,50 @@ import org.openlca.cloud.model.data.Dataset;
 import org.openlca.cloud.model.data.FileReference;
 import org.openlca.core.model.ModelType;
 
-// NOT SYNCHRONIZED //
+/**
+ * The index of the differences between the local database and the
+ * repository. The index is thread safe: modifications are serialized by a
+ * write lock and are first collected in a pending layer that is written to the
+ * MapDB store on commit. Readers do not take the lock; they look into the
+ * pending layer first and then into the store, so that they never block
+ * writers. Changes of the same entry (e.g. the parent categories of many
+ * changed models) are thus coalesced into a single write per commit.
+ * <p>
+ * With {@link #requestCommit()} commits are batched: the pending changes are
+ * committed when a size threshold is reached or after a short delay.
+ * {@link #commit()} commits them immediately.
+ */
 public class DiffIndex {
 
+	/** The number of changes after which a requested commit is executed. */
+	private static final int COMMIT_SIZE = 1000;
+
+	/** The maximum delay of a requested commit in milliseconds. */
+	private static final long COMMIT_DELAY = 1000;
+
+	private static final ScheduledExecutorService timer = Executors
+			.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "DiffIndex commits");
+				t.setDaemon(true);
+				return t;
+			});
+
+	private final ReentrantLock lock = new ReentrantLock();
 	private File file;
-	private DB db;
-	private Map<String, Diff> index;
-	private Map<String, Set<String>> changedTopLevelElements;
+	private volatile DB db;
+	private volatile Map<String, Diff> index;
+	private volatile Map<String, Set<String>> changedTopLevelElements;
+
+	/** Changed entries that are not written to the store yet. */
+	private final Map<String, Diff> pending = new ConcurrentHashMap<>();
+	/** Removed entries that are not written to the store yet. */
+	private final Set<String> removed = ConcurrentHashMap.newKeySet();
+	/** Changed top level elements that are not written to the store yet. */
+	private final Map<String, Set<String>> pendingTopLevel = new ConcurrentHashMap<>();
+
+	private int uncommitted;
+	private final AtomicLong revision = new AtomicLong();
+	private ScheduledFuture<?> scheduledCommit;
 
 	public static DiffIndex getFor(RepositoryClient client) {
 		RepositoryConfig config = client.getConfig();
@@ -47,67 +92,97 @@ public class DiffIndex {
 	}
 
 	private void createDb(File file) {
-		db = DBMaker.fileDB(file).lockDisable().closeOnJvmShutdown().make();
+		db = DBMaker.fileDB(file).closeOnJvmShutdown().make();
 		index = db.hashMap("diffIndex");
 		changedTopLevelElements = db.hashMap("changedTopLevelElements");
 	}
 
 	void open() {
-		if (db == null || !db.isClosed())
-			return;
-		createDb(file);
+		lock.lock();
+		try {
+			if (db == null || !db.isClosed())
+				return;
+			createDb(file);
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	public void close() {
-		if (db.isClosed())
-			return;
-		db.commit();
-		db.close();
+		lock.lock();
+		try {
+			if (db.isClosed())
+				return;
+			flush();
+			db.commit();
+			db.close();
+			uncommitted = 0;
+			if (scheduledCommit != null) {
+				scheduledCommit.cancel(false);
+				scheduledCommit = null;
+			}
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	public void clear() {
-		close();
-		File dir = file.getParentFile();
-		for (File file : dir.listFiles()) {
-			if (file.getName().startsWith("indexfile")) {
-				file.delete();
+		lock.lock();
+		try {
+			close();
+			discardPending();
+			File dir = file.getParentFile();
+			for (File file : dir.listFiles()) {
+				if (file.getName().startsWith("indexfile")) {
+					file.delete();
+				}
 			}
+			file = new File(dir, "indexfile");
+			createDb(file);
+			db.commit();
+			revision.incrementAndGet();
+		} finally {
+			lock.unlock();
 		}
-		file = new File(dir, "indexfile");
-		createDb(file);
-		db.commit();
 	}
 
 	public void add(Dataset dataset, long localId) {
-		Diff diff = index.get(dataset.toId());
-		if (diff != null)
-			return;
-		diff = new Diff(dataset);
-		diff.localId = localId;
-		index.put(dataset.toId(), diff);
+		write(() -> {
+			Diff diff = read(dataset.toId());
+			if (diff != null)
+				return;
+			diff = new Diff(dataset);
+			diff.localId = localId;
+			put(dataset.toId(), diff);
+		});
 	}
 
 	public void setTracked(FileReference ref, boolean value) {
-		Diff diff = index.get(ref.toId());
-		if (diff == null || diff.tracked == value || (!value && diff.type == DiffType.DELETED))
-			return;
-		diff.tracked = value;
-		boolean isChanged = value && diff.changed != null;
-		updateParents(diff, isChanged);
-		index.put(ref.toId(), diff);
+		write(() -> {
+			Diff diff = read(ref.toId());
+			if (diff == null || diff.tracked == value
+					|| (!value && diff.type == DiffType.DELETED))
+				return;
+			diff.tracked = value;
+			boolean isChanged = value && diff.changed != null;
+			updateParents(diff, isChanged);
+			put(ref.toId(), diff);
+		});
 	}
 
 	public void update(Dataset dataset, DiffType newType) {
-		Diff diff = index.get(dataset.toId());
-		if (diff == null)
-			return;
-		if (diff.type == DiffType.NEW && newType == DiffType.DELETED) {
-			// user added something and then deleted it again
-			remove(dataset);
-			updateParents(diff, false);
-			return;
-		}
-		updateDiff(diff, dataset, newType);
+		write(() -> {
+			Diff diff = read(dataset.toId());
+			if (diff == null)
+				return;
+			if (diff.type == DiffType.NEW && newType == DiffType.DELETED) {
+				// user added something and then deleted it again
+				delete(dataset.toId());
+				updateParents(diff, false);
+				return;
+			}
+			updateDiff(diff, dataset, newType);
+		});
 	}
 
 	private void updateDiff(Diff diff, Dataset dataset, DiffType newType) {
@@ -120,7 +195,7 @@ public class DiffIndex {
 			diff.changed = dataset;
 		}
 		updateParents(diff, changed);
-		index.put(dataset.toId(), diff);
+		put(dataset.toId(), diff);
 	}
 
 	private void updateParents(Diff diff, boolean changed) {
@@ -133,88 +208,244 @@ public class DiffIndex {
 	}
 
 	private void updateParents(Dataset dataset, boolean changed) {
+		String childId = dataset.toId();
 		String parentKey = ModelType.CATEGORY.name() + dataset.categoryRefId;
 		while (parentKey != null) {
-			Diff parent = index.get(parentKey);
+			Diff parent = read(parentKey);
 			if (parent == null)
 				break;
-			if (changed) {
-				parent.changedChildren.add(dataset.toId());
-			} else {
-				parent.changedChildren.remove(dataset.toId());
+			boolean modified = changed
+					? parent.changedChildren.add(childId)
+					: parent.changedChildren.remove(childId);
+			if (modified) {
+				put(parentKey, parent);
 			}
-			index.put(parentKey, parent);
 			parentKey = ModelType.CATEGORY.name() + parent.dataset.categoryRefId;
 		}
-		ModelType categoryType = dataset.type == ModelType.CATEGORY ? dataset.categoryType : dataset.type;
+		ModelType categoryType = dataset.type == ModelType.CATEGORY
+				? dataset.categoryType
+				: dataset.type;
 		updateChangedTopLevelElements(categoryType.name(), dataset.refId, changed);
 	}
 
-	private void updateChangedTopLevelElements(String type, String refId, boolean changed) {
-		Set<String> elements = changedTopLevelElements.get(type);
-		if (elements == null) {
-			elements = new HashSet<>();
-		}
+	private void updateChangedTopLevelElements(String type, String refId,
+			boolean changed) {
+		Set<String> elements = pendingTopLevel.computeIfAbsent(type, t -> {
+			Set<String> set = ConcurrentHashMap.newKeySet();
+			Set<String> stored = changedTopLevelElements.get(t);
+			if (stored != null) {
+				set.addAll(stored);
+			}
+			return set;
+		});
 		if (changed) {
 			elements.add(refId);
 		} else {
 			elements.remove(refId);
 		}
-		changedTopLevelElements.put(type, elements);
+	}
+
+	/**
+	 * Returns the revision of the index which is incremented with every
+	 * change of an entry. It can be used to check whether data that were
+	 * derived from the index are still valid.
+	 */
+	public long getRevision() {
+		return revision.get();
 	}
 
 	public Diff get(FileReference ref) {
-		return index.get(ref.toId());
+		return get(ref.toId());
+	}
+
+	private Diff get(String key) {
+		if (removed.contains(key))
+			return null;
+		Diff diff = pending.get(key);
+		if (diff != null)
+			return diff;
+		return index.get(key);
 	}
 
 	public List<Diff> getChanged() {
 		List<Diff> changed = new ArrayList<>();
-		for (Diff diff : index.values()) {
+		each(diff -> {
 			if (diff.hasChanged()) {
 				changed.add(diff);
 			}
-		}
+		});
 		return changed;
 	}
 
 	public List<String> getUntracked() {
 		List<String> untracked = new ArrayList<>();
-		for (Diff diff : index.values()) {
+		each(diff -> {
 			if (!diff.tracked) {
 				untracked.add(diff.dataset.toId());
 			}
-		}
+		});
 		return untracked;
 	}
 
 	public List<Diff> getAll(DiffType... types) {
-		if (types == null || types.length == 0)
-			return new ArrayList<>(index.values());
 		List<Diff> ofType = new ArrayList<>();
-		for (Diff diff : index.values()) {
+		boolean all = types == null || types.length == 0;
+		each(diff -> {
+			if (all) {
+				ofType.add(diff);
+				return;
+			}
 			for (DiffType type : types) {
 				if (diff.type == type) {
 					ofType.add(diff);
 				}
 			}
-		}
+		});
 		return ofType;
 	}
 
+	/**
+	 * Iterates over all entries of the index, including the pending changes.
+	 */
+	private void each(Consumer<Diff> fn) {
+		Set<String> visited = new HashSet<>();
+		for (Map.Entry<String, Diff> e : pending.entrySet()) {
+			visited.add(e.getKey());
+			fn.accept(e.getValue());
+		}
+		for (Map.Entry<String, Diff> e : index.entrySet()) {
+			String key = e.getKey();
+			if (visited.contains(key) || removed.contains(key))
+				continue;
+			fn.accept(e.getValue());
+		}
+	}
+
 	public boolean hasChanged(ModelType type) {
-		Set<String> elements = changedTopLevelElements.get(type.name());
+		Set<String> elements = pendingTopLevel.get(type.name());
+		if (elements == null) {
+			elements = changedTopLevelElements.get(type.name());
+		}
 		return elements != null && !elements.isEmpty();
 	}
 
 	public void remove(FileReference ref) {
-		Diff diff = index.remove(ref.toId());
-		if (diff == null)
-			return;
-		updateParents(diff, false);
+		write(() -> {
+			Diff diff = read(ref.toId());
+			if (diff == null)
+				return;
+			delete(ref.toId());
+			updateParents(diff, false);
+		});
 	}
 
+	/**
+	 * Writes the pending changes to the store and commits them immediately.
+	 */
 	public void commit() {
-		db.commit();
+		lock.lock();
+		try {
+			if (db.isClosed())
+				return;
+			flush();
+			db.commit();
+			uncommitted = 0;
+			if (scheduledCommit != null) {
+				scheduledCommit.cancel(false);
+				scheduledCommit = null;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Requests a commit of the pending changes. The changes are committed when
+	 * the number of uncommitted changes reaches a threshold or after a short
+	 * delay, so that many small changes (e.g. of a bulk import) are committed
+	 * together.
+	 */
+	public void requestCommit() {
+		lock.lock();
+		try {
+			uncommitted++;
+			if (uncommitted >= COMMIT_SIZE) {
+				commit();
+				return;
+			}
+			if (scheduledCommit == null) {
+				scheduledCommit = timer.schedule(
+						this::commit, COMMIT_DELAY, TimeUnit.MILLISECONDS);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void write(Runnable fn) {
+		lock.lock();
+		try {
+			fn.run();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Reads an entry for modification; must be called under the write lock.
+	 * Entries of the pending layer are copied as they could be read
+	 * concurrently.
+	 */
+	private Diff read(String key) {
+		if (removed.contains(key))
+			return null;
+		Diff diff = pending.get(key);
+		if (diff != null)
+			return copy(diff);
+		return index.get(key);
+	}
+
+	private void put(String key, Diff diff) {
+		removed.remove(key);
+		pending.put(key, diff);
+		revision.incrementAndGet();
+	}
+
+	private void delete(String key) {
+		pending.remove(key);
+		removed.add(key);
+		revision.incrementAndGet();
+	}
+
+	private Diff copy(Diff diff) {
+		Diff copy = diff.copy();
+		copy.tracked = diff.tracked;
+		copy.changedChildren = new HashSet<>(diff.changedChildren);
+		return copy;
+	}
+
+	/**
+	 * Writes the pending changes to the store. The pending entries are removed
+	 * after they were written so that readers always find them either in the
+	 * pending layer or in the store.
+	 */
+	private void flush() {
+		for (Map.Entry<String, Diff> e : pending.entrySet()) {
+			index.put(e.getKey(), e.getValue());
+		}
+		for (String key : removed) {
+			index.remove(key);
+		}
+		for (Map.Entry<String, Set<String>> e : pendingTopLevel.entrySet()) {
+			changedTopLevelElements.put(e.getKey(), new HashSet<>(e.getValue()));
+		}
+		discardPending();
+	}
+
+	private void discardPending() {
+		pending.clear();
+		removed.clear();
+		pendingTopLevel.clear();
 	}
 
 }
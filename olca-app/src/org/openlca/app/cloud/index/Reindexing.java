@@ -1,10 +1,26 @@
 package org.openlca.app.cloud.index;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import javax.persistence.Table;
 
 import org.openlca.app.db.Database;
 import org.openlca.cloud.api.RepositoryClient;
@@ -16,20 +32,42 @@ import org.openlca.core.database.CategorizedEntityDao;
 import org.openlca.core.database.CategoryDao;
 import org.openlca.core.database.Daos;
 import org.openlca.core.database.IDatabase;
+import org.openlca.core.database.NativeSql;
 import org.openlca.core.database.ParameterDao;
 import org.openlca.core.model.Category;
 import org.openlca.core.model.ModelType;
 import org.openlca.core.model.Version;
 import org.openlca.core.model.descriptors.CategorizedDescriptor;
 import org.openlca.util.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gnu.trove.list.array.TLongArrayList;
 
+/**
+ * Rebuilds the diff index of a repository connected database. The categories
+ * are indexed first (as the other datasets update their parent categories in
+ * the index) and then the other model types are indexed in parallel. The
+ * descriptors are loaded in chunks and the categories of the datasets are
+ * resolved from the categories that are loaded once at the beginning.
+ * <p>
+ * After each model type, the index is committed and a checkpoint is written
+ * next to the index file. If the reindexing is interrupted (e.g. because the
+ * application was closed), the next run for the same commit continues with
+ * the model types that were not finished yet.
+ */
 public class Reindexing {
 
+	private static final int CHUNK_SIZE = 1000;
+	private static final String CHECKPOINT = "reindexing.checkpoint";
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
 	private IDatabase database;
 	private DiffIndex index;
 	private RepositoryClient client;
-	private CategoryDao categoryDao;
-	private List<String> untracked;
+	private Map<Long, Category> categories;
+	private Checkpoint checkpoint;
+	private Set<String> untracked;
 
 	public static void execute() {
 		new Reindexing().run();
@@ -39,25 +77,106 @@ public class Reindexing {
 		Map<ModelType, Map<String, FetchRequestData>> datasets = init();
 		if (datasets == null)
 			return;
-		run(ModelType.CATEGORY, datasets.get(ModelType.CATEGORY));
+		if (!checkpoint.done.contains(ModelType.CATEGORY)) {
+			run(ModelType.CATEGORY, datasets.get(ModelType.CATEGORY));
+		}
+		List<ModelType> types = new ArrayList<>();
 		for (ModelType type : ModelType.values()) {
 			if (!type.isCategorized() || type == ModelType.CATEGORY)
 				continue;
-			Map<String, FetchRequestData> dataMap = datasets.get(type);
-			run(type, dataMap);
+			if (checkpoint.done.contains(type))
+				continue;
+			types.add(type);
+		}
+		int threads = Math.max(1, Math.min(types.size(),
+				Runtime.getRuntime().availableProcessors()));
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<?>> futures = new ArrayList<>();
+		for (ModelType type : types) {
+			futures.add(pool.submit(() -> run(type, datasets.get(type))));
+		}
+		pool.shutdown();
+		boolean failed = false;
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (Exception e) {
+				log.error("failed to reindex datasets", e);
+				failed = true;
+			}
 		}
 		index.commit();
+		if (!failed) {
+			checkpointFile().delete();
+		}
 	}
 
 	private void run(ModelType type, Map<String, FetchRequestData> dataMap) {
-		Map<String, CategorizedDescriptor> descriptorMap = getDescriptors(type);
-		if (dataMap != null) {
-			remoteSync(dataMap.values(), descriptorMap);
-		}
+		log.trace("reindex datasets of type {}", type);
+		Map<String, FetchRequestData> remaining = dataMap == null
+				? new HashMap<>()
+				: new HashMap<>(dataMap);
 		if (type == ModelType.PARAMETER) {
+			// only global parameters are indexed; there are not many of them
+			// so we do not need to stream them
+			Map<String, CategorizedDescriptor> all = new HashMap<>();
+			for (CategorizedDescriptor d : Daos.categorized(database, type)
+					.getDescriptors()) {
+				all.put(d.refId, d);
+			}
+			remoteSync(remaining.values(), all);
 			localSync(dataMap, new ParameterDao(database).getGlobalDescriptors());
 		} else {
-			localSync(dataMap, descriptorMap.values());
+			eachChunk(type, chunk -> {
+				for (CategorizedDescriptor d : chunk) {
+					FetchRequestData data = remaining.remove(d.refId);
+					if (data == null) {
+						put(d);
+					} else {
+						put(data.asDataset(), d, data.isDeleted());
+					}
+				}
+			});
+			for (FetchRequestData data : remaining.values()) {
+				if (!data.isDeleted()) {
+					putDeleted(data.asDataset());
+				}
+			}
+		}
+		index.commit();
+		checkpoint.finished(type);
+	}
+
+	/**
+	 * Loads the descriptors of the given type in chunks. The IDs are loaded
+	 * first with a single query.
+	 */
+	private void eachChunk(ModelType type,
+			Consumer<List<CategorizedDescriptor>> fn) {
+		CategorizedEntityDao<?, ?> dao = Daos.categorized(database, type);
+		Table table = type.getModelClass().getAnnotation(Table.class);
+		if (table == null) {
+			fn.accept(new ArrayList<>(dao.getDescriptors()));
+			return;
+		}
+		TLongArrayList ids = new TLongArrayList();
+		try {
+			NativeSql.on(database).query("select id from " + table.name(), r -> {
+				ids.add(r.getLong(1));
+				return true;
+			});
+		} catch (Exception e) {
+			log.error("failed to load IDs of type " + type, e);
+			fn.accept(new ArrayList<>(dao.getDescriptors()));
+			return;
+		}
+		for (int start = 0; start < ids.size(); start += CHUNK_SIZE) {
+			int end = Math.min(ids.size(), start + CHUNK_SIZE);
+			Set<Long> chunk = new HashSet<>();
+			for (int i = start; i < end; i++) {
+				chunk.add(ids.get(i));
+			}
+			fn.accept(new ArrayList<>(dao.getDescriptors(chunk)));
 		}
 	}
 
@@ -71,11 +190,24 @@ public class Reindexing {
 		index = Database.getDiffIndex();
 		if (index == null)
 			return null;
-		categoryDao = new CategoryDao(database);
-		untracked = index.getUntracked();
-		index.clear();
-		index.init();
-		if (client.getConfig().getLastCommitId() == null)
+		categories = new HashMap<>();
+		for (Category category : new CategoryDao(database).getAll()) {
+			categories.put(category.id, category);
+		}
+		String commitId = client.getConfig().getLastCommitId();
+		checkpoint = Checkpoint.read(checkpointFile());
+		if (checkpoint == null || !checkpoint.isFor(database, commitId)) {
+			checkpoint = new Checkpoint(checkpointFile(), database.getName(),
+					commitId, new HashSet<>(index.getUntracked()));
+			index.clear();
+			index.init();
+			checkpoint.write();
+		} else {
+			log.info("continue reindexing from checkpoint; finished: {}",
+					checkpoint.done);
+		}
+		untracked = checkpoint.untracked;
+		if (commitId == null)
 			return new HashMap<>();
 		try {
 			return initDataMap();
@@ -84,6 +216,10 @@ public class Reindexing {
 		}
 	}
 
+	private File checkpointFile() {
+		return new File(index.getDir(), CHECKPOINT);
+	}
+
 	private Map<ModelType, Map<String, FetchRequestData>> initDataMap() throws WebRequestException {
 		Map<ModelType, Map<String, FetchRequestData>> mapped = new HashMap<>();
 		Set<FetchRequestData> data = client.sync(client.getConfig().getLastCommitId());
@@ -119,15 +255,6 @@ public class Reindexing {
 		}
 	}
 
-	private Map<String, CategorizedDescriptor> getDescriptors(ModelType type) {
-		CategorizedEntityDao<?, ?> dao = Daos.categorized(database, type);
-		Map<String, CategorizedDescriptor> descriptors = new HashMap<>();
-		for (CategorizedDescriptor descriptor : dao.getDescriptors()) {
-			descriptors.put(descriptor.refId, descriptor);
-		}
-		return descriptors;
-	}
-
 	private void putDeleted(Dataset dataset) {
 		index.add(dataset, 0);
 		index.update(dataset, DiffType.DELETED);
@@ -172,9 +299,69 @@ public class Reindexing {
 	private Dataset toDataset(CategorizedDescriptor descriptor) {
 		Category category = null;
 		if (descriptor.category != null) {
-			category = categoryDao.getForId(descriptor.category);
+			category = categories.get(descriptor.category);
 		}
 		return Datasets.toDataset(descriptor, category);
 	}
 
+	/**
+	 * The state of a reindexing run: the database and commit for which the
+	 * index is rebuilt, the untracked datasets of the previous index (as the
+	 * index is cleared at the beginning), and the model types that are
+	 * finished.
+	 */
+	private static class Checkpoint implements Serializable {
+
+		private static final long serialVersionUID = -1537204586234071237L;
+
+		private transient File file;
+		private final String database;
+		private final String commitId;
+		private final Set<String> untracked;
+		private final Set<ModelType> done = ConcurrentHashMap.newKeySet();
+
+		Checkpoint(File file, String database, String commitId,
+				Set<String> untracked) {
+			this.file = file;
+			this.database = database;
+			this.commitId = commitId;
+			this.untracked = untracked;
+		}
+
+		boolean isFor(IDatabase db, String commitId) {
+			return Objects.equals(database, db.getName())
+					&& Objects.equals(this.commitId, commitId);
+		}
+
+		void finished(ModelType type) {
+			done.add(type);
+			write();
+		}
+
+		synchronized void write() {
+			try (ObjectOutputStream out = new ObjectOutputStream(
+					new FileOutputStream(file))) {
+				out.writeObject(this);
+			} catch (Exception e) {
+				Logger log = LoggerFactory.getLogger(Reindexing.class);
+				log.error("failed to write reindexing checkpoint " + file, e);
+			}
+		}
+
+		static Checkpoint read(File file) {
+			if (!file.exists())
+				return null;
+			try (ObjectInputStream in = new ObjectInputStream(
+					new FileInputStream(file))) {
+				Checkpoint checkpoint = (Checkpoint) in.readObject();
+				checkpoint.file = file;
+				return checkpoint;
+			} catch (Exception e) {
+				Logger log = LoggerFactory.getLogger(Reindexing.class);
+				log.warn("could not read reindexing checkpoint " + file, e);
+				return null;
+			}
+		}
+	}
+
 }
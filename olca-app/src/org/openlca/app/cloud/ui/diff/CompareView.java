@@ -131,12 +131,23 @@ public class CompareView extends ViewPart {
 			Set<FetchRequestData> descriptors = client.sync(commit != null ? commit.id : null);
 			List<DiffResult> differences = createDifferences(descriptors, elements);
 			input = new DiffNodeBuilder(client.getConfig().database, index, ActionType.COMPARE_AHEAD).build(differences);
+			jsonLoader.prefetch(remoteDatasets(differences));
 		} catch (Exception e) {
 			log.error("Error loading remote data", e);
 			input = null;
 		}
 	}
 
+	private List<Dataset> remoteDatasets(List<DiffResult> differences) {
+		List<Dataset> datasets = new ArrayList<>();
+		for (DiffResult result : differences) {
+			if (result.remote != null && !result.remote.isDeleted()) {
+				datasets.add(result.remote);
+			}
+		}
+		return datasets;
+	}
+
 	private boolean isContainedIn(Dataset dataset, List<INavigationElement<?>> elements) {
 		if (elements == null || elements.isEmpty())
 			return true;
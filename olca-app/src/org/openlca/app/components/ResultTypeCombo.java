@@ -8,6 +8,7 @@ import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.ui.forms.widgets.FormToolkit;
 import org.openlca.app.M;
+import org.openlca.app.results.SortIndex;
 import org.openlca.app.util.Controls;
 import org.openlca.app.util.CostResultDescriptor;
 import org.openlca.app.viewers.combo.AbstractComboViewer;
@@ -40,11 +41,12 @@ public class ResultTypeCombo {
 
 	public static Builder on(IResult r) {
 		ResultTypeCombo c = new ResultTypeCombo();
-		c.flows = r.getFlows();
+		SortIndex index = SortIndex.of(r);
+		c.flows = index.flows();
 
 		// add LCIA categories
 		if (r.hasImpactResults()) {
-			c.impacts = r.getImpacts();
+			c.impacts = index.impacts();
 		}
 
 		// add cost / added value selection
@@ -167,6 +169,8 @@ public class ResultTypeCombo {
 
 		flowCombo = new ResultFlowCombo(comp);
 		flowCombo.setEnabled(enabled);
+		// the flows are already sorted by the sort index of the result
+		flowCombo.getViewer().setComparator(null);
 		flowCombo.setInput(flows);
 		flowCombo.selectFirst();
 		flowCombo.addSelectionChangedListener(_e -> fireSelection());
@@ -191,6 +195,7 @@ public class ResultTypeCombo {
 
 		impactCombo = new ImpactCategoryViewer(comp);
 		impactCombo.setEnabled(enabled);
+		impactCombo.getViewer().setComparator(null);
 		impactCombo.setInput(impacts);
 		impactCombo.selectFirst();
 		impactCombo.addSelectionChangedListener((val) -> fireSelection());
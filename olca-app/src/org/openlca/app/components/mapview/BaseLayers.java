@@ -0,0 +1,45 @@
+package org.openlca.app.components.mapview;
+
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.openlca.geo.geojson.FeatureCollection;
+import org.openlca.geo.geojson.MsgPack;
+import org.openlca.util.BinUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The bundled base layers of the map views. The layers are decoded once per
+ * application and their projections are shared between all map views.
+ */
+class BaseLayers {
+
+	private static final Map<String, ProjectedLayer> layers = new HashMap<>();
+
+	private BaseLayers() {
+	}
+
+	/**
+	 * Returns the base layer of the given resource file; returns null if the
+	 * layer could not be read.
+	 */
+	static synchronized ProjectedLayer get(String file) {
+		if (layers.containsKey(file))
+			return layers.get(file);
+		ProjectedLayer layer = null;
+		try (InputStream stream = BaseLayers.class.getResourceAsStream(file)) {
+			byte[] data = BinUtils.gunzip(BinUtils.read(stream));
+			FeatureCollection coll = MsgPack.unpack(data);
+			if (coll != null) {
+				layer = new ProjectedLayer(coll);
+			}
+		} catch (Exception e) {
+			Logger log = LoggerFactory.getLogger(BaseLayers.class);
+			log.error("failed to read base layer " + file, e);
+		}
+		layers.put(file, layer);
+		return layer;
+	}
+}
@@ -8,6 +8,7 @@ import org.openlca.geo.geojson.FeatureCollection;
 public class LayerConfig {
 
 	final FeatureCollection layer;
+	final ProjectedLayer projected;
 
 	private Color borderColor;
 	private Color fillColor;
@@ -17,7 +18,12 @@ public class LayerConfig {
 	private String fillParameter;
 
 	LayerConfig(FeatureCollection layer) {
-		this.layer = layer;
+		this(new ProjectedLayer(layer));
+	}
+
+	LayerConfig(ProjectedLayer projected) {
+		this.layer = projected.layer;
+		this.projected = projected;
 	}
 
 	public LayerConfig fillColor(Color c) {
@@ -0,0 +1,125 @@
+package org.openlca.app.components.mapview;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.openlca.core.model.Location;
+import org.openlca.geo.geojson.Feature;
+import org.openlca.geo.geojson.FeatureCollection;
+import org.openlca.geo.geojson.Geometry;
+import org.openlca.geo.geojson.MsgPack;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded cache of decoded location geometries. Decoding the geometry of a
+ * location (gunzip and MsgPack) can be expensive for large shapes, so that the
+ * decoded geometries are shared between the map views, result maps, and the
+ * regionalized factor calculation. The cache is keyed by the ID, version, last
+ * change, and data size of a location so that an updated location is decoded
+ * again.
+ * <p>
+ * The returned geometries are shared and must not be modified.
+ */
+public final class LocationGeometries {
+
+	private static final int MAX_SIZE = 1000;
+
+	private static final Map<Key, Geometry> cache = new LinkedHashMap<Key, Geometry>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, Geometry> eldest) {
+			return size() > MAX_SIZE;
+		}
+	};
+
+	private LocationGeometries() {
+	}
+
+	/**
+	 * Returns the geometry of the first feature of the given location or null
+	 * if the location has no geometry.
+	 */
+	public static Geometry get(Location loc) {
+		if (loc == null || loc.geodata == null)
+			return null;
+		Key key = new Key(loc);
+		synchronized (cache) {
+			Geometry g = cache.get(key);
+			if (g != null)
+				return g;
+		}
+		Geometry g = decode(loc);
+		if (g == null)
+			return null;
+		synchronized (cache) {
+			cache.put(key, g);
+		}
+		return g;
+	}
+
+	/**
+	 * Returns a new feature collection with a single feature that contains the
+	 * geometry of the given location, or null if the location has no geometry.
+	 */
+	public static FeatureCollection getFeatures(Location loc) {
+		Geometry g = get(loc);
+		if (g == null)
+			return null;
+		Feature f = new Feature();
+		f.geometry = g;
+		FeatureCollection coll = new FeatureCollection();
+		coll.features.add(f);
+		return coll;
+	}
+
+	private static Geometry decode(Location loc) {
+		try {
+			FeatureCollection coll = MsgPack.unpackgz(loc.geodata);
+			if (coll == null || coll.features.isEmpty())
+				return null;
+			Feature f = coll.features.get(0);
+			return f == null ? null : f.geometry;
+		} catch (Exception e) {
+			Logger log = LoggerFactory.getLogger(LocationGeometries.class);
+			log.error("failed to decode geometry of location " + loc, e);
+			return null;
+		}
+	}
+
+	private static class Key {
+
+		final long id;
+		final long version;
+		final long lastChange;
+		final int size;
+
+		Key(Location loc) {
+			id = loc.id;
+			version = loc.version;
+			lastChange = loc.lastChange;
+			size = loc.geodata.length;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return id == other.id
+					&& version == other.version
+					&& lastChange == other.lastChange
+					&& size == other.size;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(id, version, lastChange, size);
+		}
+	}
+}
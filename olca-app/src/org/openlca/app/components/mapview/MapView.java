@@ -1,8 +1,10 @@
 package org.openlca.app.components.mapview;
 
-import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Function;
 
 import org.eclipse.swt.SWT;
@@ -10,6 +12,7 @@ import org.eclipse.swt.events.MouseAdapter;
 import org.eclipse.swt.events.MouseEvent;
 import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.widgets.Canvas;
 import org.eclipse.swt.widgets.Composite;
@@ -22,23 +25,50 @@ import org.openlca.geo.geojson.FeatureCollection;
 import org.openlca.geo.geojson.Geometry;
 import org.openlca.geo.geojson.GeometryCollection;
 import org.openlca.geo.geojson.LineString;
-import org.openlca.geo.geojson.MsgPack;
 import org.openlca.geo.geojson.MultiLineString;
 import org.openlca.geo.geojson.MultiPoint;
 import org.openlca.geo.geojson.MultiPolygon;
 import org.openlca.geo.geojson.Point;
 import org.openlca.geo.geojson.Polygon;
-import org.openlca.util.BinUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
+/**
+ * A simple map component. The map is rendered in tiles of 256 x 256 pixels
+ * that are cached as images for the current zoom level, so that panning only
+ * renders the tiles that become visible. The size of the tile cache depends
+ * on the size of the canvas: it can hold twice the number of visible tiles
+ * plus a margin and is recalculated when the canvas is resized. The features
+ * of a tile are selected with the bounding box index of the projected layers
+ * (see ProjectedLayer).
+ */
 public class MapView {
 
+	private static final int TILE_SIZE = 256;
+
+	/** The number of cached tiles in addition to twice the visible tiles. */
+	private static final int TILE_MARGIN = 16;
+
 	private final Canvas canvas;
 	private final Color white;
 
 	private List<LayerConfig> layers = new ArrayList<>();
-	private List<FeatureCollection> projections = new ArrayList<>();
+	private boolean initialized;
+
+	/** The maximum number of cached tiles; depends on the canvas size. */
+	private int maxTiles = TILE_MARGIN;
+
+	/** The rendered tiles of the current zoom level: tile key -> image. */
+	private final Map<Long, Image> tiles = new LinkedHashMap<Long, Image>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, Image> e) {
+			if (size() <= maxTiles)
+				return false;
+			e.getValue().dispose();
+			return true;
+		}
+	};
 
 	private final Translation translation = new Translation();
 	private int zoom = 0;
@@ -47,6 +77,8 @@ public class MapView {
 		this.canvas = new Canvas(parent, SWT.NONE);
 		this.white = canvas.getDisplay().getSystemColor(SWT.COLOR_WHITE);
 		canvas.addPaintListener(e -> render(e.gc));
+		canvas.addDisposeListener(e -> clearTiles());
+		canvas.addListener(SWT.Resize, e -> updateMaxTiles());
 
 		// add mouse listeners
 		canvas.addMouseWheelListener(e -> {
@@ -60,6 +92,24 @@ public class MapView {
 		canvas.addMouseListener(new DragSupport());
 	}
 
+	/**
+	 * Calculates the size of the tile cache from the canvas size: twice the
+	 * number of tiles that can be visible (including the partly visible tiles
+	 * at the borders) plus a margin. When the cache gets smaller, the least
+	 * recently used tiles are removed.
+	 */
+	private void updateMaxTiles() {
+		Rectangle r = canvas.getClientArea();
+		int cols = (r.width + TILE_SIZE - 1) / TILE_SIZE + 1;
+		int rows = (r.height + TILE_SIZE - 1) / TILE_SIZE + 1;
+		maxTiles = 2 * cols * rows + TILE_MARGIN;
+		Iterator<Image> it = tiles.values().iterator();
+		while (tiles.size() > maxTiles && it.hasNext()) {
+			it.next().dispose();
+			it.remove();
+		}
+	}
+
 	public void update() {
 		canvas.redraw();
 		canvas.update();
@@ -69,7 +119,7 @@ public class MapView {
 		if (zoom >= 21)
 			return;
 		zoom += 1;
-		projectLayers();
+		clearTiles();
 		canvas.redraw();
 	}
 
@@ -77,22 +127,17 @@ public class MapView {
 		if (zoom == 0)
 			return;
 		zoom -= 1;
-		projectLayers();
+		clearTiles();
 		canvas.redraw();
 	}
 
-	private void projectLayers() {
-		projections.clear();
-		for (LayerConfig config : layers) {
-			FeatureCollection projection = WebMercator.project(
-					config.layer, zoom);
-			projections.add(projection);
-		}
+	public LayerConfig addLayer(FeatureCollection layer) {
+		return addLayer(new LayerConfig(layer));
 	}
 
-	public LayerConfig addLayer(FeatureCollection layer) {
-		LayerConfig config = new LayerConfig(layer);
+	private LayerConfig addLayer(LayerConfig config) {
 		layers.add(config);
+		initialized = false;
 		return config;
 	}
 
@@ -100,39 +145,35 @@ public class MapView {
 		if (config == null)
 			return;
 		layers.remove(config);
-		projections.clear();
+		initialized = false;
 	}
 
 	public void addBaseLayers() {
-		Function<String, FeatureCollection> fn = (file) -> {
-			try {
-				InputStream stream = getClass().getResourceAsStream(file);
-				byte[] data = BinUtils.gunzip(BinUtils.read(stream));
-				return MsgPack.unpack(data);
-			} catch (Exception e) {
-				Logger log = LoggerFactory.getLogger(getClass());
-				log.error("failed to add base layer" + file, e);
-				return null;
-			}
+		Function<String, LayerConfig> fn = file -> {
+			ProjectedLayer layer = BaseLayers.get(file);
+			return layer != null
+					? addLayer(new LayerConfig(layer))
+					: new LayerConfig((FeatureCollection) null);
 		};
 		Color blue = Colors.get(170, 218, 255);
 		Color brown = Colors.get(249, 246, 231);
-		addLayer(fn.apply("oceans.msgpack.gz"))
+		fn.apply("oceans.msgpack.gz")
 				.fillColor(blue)
 				.borderColor(blue);
-		addLayer(fn.apply("land.msgpack.gz"))
+		fn.apply("land.msgpack.gz")
 				.fillColor(brown);
-		addLayer(fn.apply("lakes.msgpack.gz"))
+		fn.apply("lakes.msgpack.gz")
 				.fillColor(blue)
 				.borderColor(blue);
-		addLayer(fn.apply("countries.msgpack.gz"));
+		fn.apply("countries.msgpack.gz");
 	}
 
 	/**
-	 * Find an initial zoom and center and calculate the projections.
+	 * Find an initial zoom and center.
 	 */
 	private void initProjection() {
-		projections.clear();
+		clearTiles();
+		initialized = true;
 		if (layers.isEmpty()) {
 			return;
 		}
@@ -172,14 +213,11 @@ public class MapView {
 				break;
 			zoom = z;
 		}
-
-		// finally, project the layers
-		projectLayers();
 	}
 
 	private void render(GC gc) {
 
-		if (projections.size() != layers.size()) {
+		if (!initialized) {
 			initProjection();
 		}
 
@@ -190,20 +228,67 @@ public class MapView {
 		gc.setBackground(white);
 		gc.fillRectangle(canvasSize);
 
-		if (projections.isEmpty())
+		if (layers.isEmpty())
 			return;
 
-		for (int i = 0; i < projections.size(); i++) {
-			LayerConfig config = layers.get(i);
+		// draw the visible tiles
+		Bounds view = translation.view;
+		int minTx = (int) Math.floor(view.minX / TILE_SIZE);
+		int maxTx = (int) Math.floor(view.maxX / TILE_SIZE);
+		int minTy = (int) Math.floor(view.minY / TILE_SIZE);
+		int maxTy = (int) Math.floor(view.maxY / TILE_SIZE);
+		int offsetX = (int) Math.floor(translation.x);
+		int offsetY = (int) Math.floor(translation.y);
+		for (int tx = minTx; tx <= maxTx; tx++) {
+			for (int ty = minTy; ty <= maxTy; ty++) {
+				Image tile = tile(tx, ty);
+				gc.drawImage(tile,
+						tx * TILE_SIZE + offsetX,
+						ty * TILE_SIZE + offsetY);
+			}
+		}
+	}
+
+	/**
+	 * Returns the image of the tile with the given position; the tile is
+	 * rendered if it is not cached yet.
+	 */
+	private Image tile(int tx, int ty) {
+		long key = ((long) tx << 32) | (ty & 0xffffffffL);
+		Image image = tiles.get(key);
+		if (image != null)
+			return image;
+		image = new Image(canvas.getDisplay(), TILE_SIZE, TILE_SIZE);
+		GC gc = new GC(image);
+		gc.setBackground(white);
+		gc.fillRectangle(0, 0, TILE_SIZE, TILE_SIZE);
+
+		// points and lines are drawn with a size depending on the zoom level
+		// so we also select features that are a bit outside of the tile
+		double minX = (double) tx * TILE_SIZE;
+		double minY = (double) ty * TILE_SIZE;
+		double margin = 6 + zoom;
+		translation.tile.x = -minX;
+		translation.tile.y = -minY;
+		for (LayerConfig config : layers) {
 			gc.setForeground(config.getBorderColor());
-			FeatureCollection projection = projections.get(i);
-			for (Feature f : projection.features) {
-				if (!translation.visible(f)) {
-					continue;
-				}
+			List<Feature> features = config.projected.at(zoom).query(
+					minX - margin, minY - margin,
+					minX + TILE_SIZE + margin, minY + TILE_SIZE + margin);
+			for (Feature f : features) {
 				render(gc, config, f, f.geometry);
 			}
 		}
+		gc.dispose();
+		tiles.put(key, image);
+		return image;
+	}
+
+	private void clearTiles() {
+		for (Image image : tiles.values()) {
+			image.dispose();
+		}
+		tiles.clear();
 	}
 
 	private void render(GC gc, LayerConfig conf, Feature f, Geometry g) {
@@ -315,6 +400,12 @@ public class MapView {
 		 */
 		final Bounds view = new Bounds();
 
+		/**
+		 * The translation of the projection into the pixels of the tile that
+		 * is currently rendered: -tileX * TILE_SIZE, -tileY * TILE_SIZE.
+		 */
+		final Point tile = new Point();
+
 		void update(Rectangle canvasSize, int zoom) {
 			Point t = center.clone();
 			WebMercator.apply(t, zoom);
@@ -338,13 +429,6 @@ public class MapView {
 			center.y = c.y;
 		}
 
-		boolean visible(Feature f) {
-			if (f == null || f.geometry == null)
-				return false;
-			Bounds bounds = Bounds.of(f.geometry);
-			return bounds.intersects(view);
-		}
-
 		int[] translate(Polygon polygon) {
 			if (polygon == null || polygon.rings.size() < 1)
 				return new int[0];
@@ -358,8 +442,8 @@ public class MapView {
 			int[] seq = new int[line.points.size() * 2];
 			for (int i = 0; i < line.points.size(); i++) {
 				Point p = line.points.get(i);
-				seq[2 * i] = (int) (p.x + x);
-				seq[2 * i + 1] = (int) (p.y + y);
+				seq[2 * i] = (int) (p.x + tile.x);
+				seq[2 * i + 1] = (int) (p.y + tile.y);
 			}
 			return seq;
 		}
@@ -368,8 +452,8 @@ public class MapView {
 			if (point == null)
 				return new int[] { 0, 0 };
 			return new int[] {
-					(int) (point.x + x),
-					(int) (point.y + y) };
+					(int) (point.x + tile.x),
+					(int) (point.y + tile.y) };
 		}
 	}
 
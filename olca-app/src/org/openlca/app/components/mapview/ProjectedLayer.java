@@ -0,0 +1,162 @@
+package org.openlca.app.components.mapview;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.openlca.geo.calc.Bounds;
+import org.openlca.geo.calc.WebMercator;
+import org.openlca.geo.geojson.Feature;
+import org.openlca.geo.geojson.FeatureCollection;
+import org.openlca.geo.geojson.Geometry;
+import org.openlca.geo.geojson.GeometryCollection;
+import org.openlca.geo.geojson.LineString;
+import org.openlca.geo.geojson.MultiLineString;
+import org.openlca.geo.geojson.MultiPolygon;
+import org.openlca.geo.geojson.Point;
+import org.openlca.geo.geojson.Polygon;
+
+/**
+ * The projections of a layer for the zoom levels of a map. A projection is
+ * calculated once per zoom level: the features are projected to pixel
+ * coordinates, points of lines and rings that are closer than a pixel to each
+ * other are removed (as they would be drawn at the same pixel anyway), and a
+ * bounding box index of the projected features is created for the viewport
+ * culling. Only the projections of the last used zoom levels are kept.
+ */
+class ProjectedLayer {
+
+	private static final int MAX_ZOOM_LEVELS = 4;
+
+	final FeatureCollection layer;
+
+	private final Map<Integer, Projection> projections = new LinkedHashMap<Integer, Projection>(
+			8, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, Projection> e) {
+			return size() > MAX_ZOOM_LEVELS;
+		}
+	};
+
+	ProjectedLayer(FeatureCollection layer) {
+		this.layer = layer;
+	}
+
+	synchronized Projection at(int zoom) {
+		Projection p = projections.get(zoom);
+		if (p != null)
+			return p;
+		p = new Projection(layer, zoom);
+		projections.put(zoom, p);
+		return p;
+	}
+
+	/** The projection of a layer for a zoom level. */
+	static class Projection {
+
+		private final List<Feature> features;
+		private final STRtree index = new STRtree();
+
+		private Projection(FeatureCollection layer, int zoom) {
+			if (layer == null) {
+				features = Collections.emptyList();
+				index.build();
+				return;
+			}
+			FeatureCollection projected = WebMercator.project(layer, zoom);
+			features = projected.features;
+			for (int i = 0; i < features.size(); i++) {
+				Feature f = features.get(i);
+				if (f == null || f.geometry == null)
+					continue;
+				simplify(f.geometry);
+				Bounds b = Bounds.of(f.geometry);
+				if (b == null || b.isNil)
+					continue;
+				index.insert(new Envelope(b.minX, b.maxX, b.minY, b.maxY), i);
+			}
+			index.build();
+		}
+
+		/**
+		 * Returns the features which bounding boxes intersect with the given
+		 * pixel area, in the order of the layer.
+		 */
+		List<Feature> query(double minX, double minY,
+				double maxX, double maxY) {
+			List<?> hits = index.query(new Envelope(minX, maxX, minY, maxY));
+			if (hits.isEmpty())
+				return Collections.emptyList();
+			int[] idx = new int[hits.size()];
+			for (int i = 0; i < idx.length; i++) {
+				idx[i] = (Integer) hits.get(i);
+			}
+			Arrays.sort(idx);
+			List<Feature> list = new ArrayList<>(idx.length);
+			for (int i : idx) {
+				list.add(features.get(i));
+			}
+			return list;
+		}
+
+		private void simplify(Geometry g) {
+			if (g instanceof LineString) {
+				simplify((LineString) g, 2);
+			} else if (g instanceof MultiLineString) {
+				for (LineString line : ((MultiLineString) g).lineStrings) {
+					simplify(line, 2);
+				}
+			} else if (g instanceof Polygon) {
+				simplify((Polygon) g);
+			} else if (g instanceof MultiPolygon) {
+				for (Polygon polygon : ((MultiPolygon) g).polygons) {
+					simplify(polygon);
+				}
+			} else if (g instanceof GeometryCollection) {
+				for (Geometry gg : ((GeometryCollection) g).geometries) {
+					simplify(gg);
+				}
+			}
+		}
+
+		private void simplify(Polygon polygon) {
+			for (LineString ring : polygon.rings) {
+				simplify(ring, 4);
+			}
+		}
+
+		/**
+		 * Removes the points of the given line that are less than a pixel away
+		 * from the previous point. The first and last points are always kept
+		 * and at least the given number of points if the line has them.
+		 */
+		private void simplify(LineString line, int minPoints) {
+			List<Point> points = line.points;
+			int n = points.size();
+			if (n <= minPoints)
+				return;
+			List<Point> kept = new ArrayList<>();
+			Point last = points.get(0);
+			kept.add(last);
+			for (int i = 1; i < n - 1; i++) {
+				Point p = points.get(i);
+				if (Math.abs(p.x - last.x) < 1 && Math.abs(p.y - last.y) < 1)
+					continue;
+				kept.add(p);
+				last = p;
+			}
+			kept.add(points.get(n - 1));
+			if (kept.size() < minPoints || kept.size() == n)
+				return;
+			points.clear();
+			points.addAll(kept);
+		}
+	}
+}
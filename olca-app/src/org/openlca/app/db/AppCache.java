@@ -29,8 +29,11 @@ public class AppCache {
 
 	public <T> T remove(String key, Class<T> type) {
 		Object o = map.remove(key);
-		if (type.isInstance(o))
+		if (type.isInstance(o)) {
+			Cache.getStats().hit(CacheStats.Region.APP);
 			return type.cast(o);
+		}
+		Cache.getStats().miss(CacheStats.Region.APP);
 		return null;
 	}
 
@@ -40,7 +43,13 @@ public class AppCache {
 	 */
 	@SuppressWarnings("unchecked")
 	public <T> T remove(String key) {
-		return (T) map.remove(key);
+		Object o = map.remove(key);
+		if (o == null) {
+			Cache.getStats().miss(CacheStats.Region.APP);
+		} else {
+			Cache.getStats().hit(CacheStats.Region.APP);
+		}
+		return (T) o;
 	}
 
 }
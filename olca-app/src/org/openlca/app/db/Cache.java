@@ -1,5 +1,9 @@
 package org.openlca.app.db;
 
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openlca.app.db.CacheStats.Region;
 import org.openlca.core.database.EntityCache;
 import org.openlca.core.database.IDatabase;
 import org.openlca.core.matrix.cache.MatrixCache;
@@ -8,6 +12,8 @@ import org.openlca.core.model.descriptors.BaseDescriptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import gnu.trove.set.hash.TLongHashSet;
+
 /**
  * Contains the cache management of the application.
  */
@@ -17,6 +23,9 @@ public final class Cache {
 	private static AppCache appCache = new AppCache();
 	private static EntityCache entityCache;
 	private static MatrixCache matrixCache;
+	private static IDatabase database;
+	private static CacheStats stats = new CacheStats();
+	private static final AtomicLong changeStamp = new AtomicLong();
 
 	private Cache() {
 	}
@@ -29,12 +38,32 @@ public final class Cache {
 		return matrixCache;
 	}
 
+	/**
+	 * Returns the hit, miss, and eviction counters of the cache regions since
+	 * the cache was created for the current database.
+	 */
+	public static CacheStats getStats() {
+		return stats;
+	}
+
+	/**
+	 * Returns a stamp that changes whenever something is evicted from the
+	 * caches or a new model is registered. Derived data that is cached outside
+	 * of this class (e.g. lookup tables of the tools) can store this stamp
+	 * and rebuild its data when the stamp changed.
+	 */
+	public static long getChangeStamp() {
+		return changeStamp.get();
+	}
+
 	public static void close() {
 		log.trace("close cache");
 		evictAll();
+		log.trace("cache stats: {}", stats);
 		entityCache = null;
 		matrixCache = null;
 		appCache = null;
+		database = null;
 	}
 
 	/**
@@ -44,6 +73,8 @@ public final class Cache {
 	public static void create(IDatabase database) {
 		log.trace("create cache");
 		close();
+		Cache.database = database;
+		stats = new CacheStats();
 		entityCache = EntityCache.create(database);
 		matrixCache = MatrixCache.createLazy(database);
 		appCache = new AppCache();
@@ -54,33 +85,55 @@ public final class Cache {
 	}
 
 	public static void evict(BaseDescriptor descriptor) {
+		evict(descriptor, true);
+	}
+
+	/**
+	 * Evicts the given model from the caches. If `withDependents` is false,
+	 * the models that reference the given model are not evicted. This can be
+	 * used when only fields of the model were changed that are not shown or
+	 * used via these references, e.g. the description of a flow.
+	 */
+	public static void evict(BaseDescriptor descriptor,
+			boolean withDependents) {
 		if (descriptor == null)
 			return;
 		log.trace("evict {} with ID {}", descriptor.getClass(),
 				descriptor.id);
-		if (descriptor.type == null)
+		changeStamp.incrementAndGet();
+		if (descriptor.type == null) {
 			evictAll(); // to be on the save side
-		else if (shouldEvictAll(descriptor.type)) {
-			if (entityCache != null)
-				entityCache.invalidateAll();
-			evictFromMatrices(descriptor);
-		} else {
-			evictEntity(descriptor);
-			evictFromMatrices(descriptor);
+			return;
+		}
+		evictEntity(descriptor);
+		if (withDependents && hasDependents(descriptor.type)) {
+			evictDependents(descriptor);
 		}
+		evictFromMatrices(descriptor);
 	}
 
-	private static boolean shouldEvictAll(ModelType type) {
-		return type != null && type.isOneOf(ModelType.UNIT, ModelType.UNIT_GROUP, ModelType.FLOW,
-				ModelType.FLOW_PROPERTY, ModelType.CATEGORY);
+	/**
+	 * Returns true if cached entities of other types could contain a copy of a
+	 * model of the given type.
+	 */
+	private static boolean hasDependents(ModelType type) {
+		return type.isOneOf(ModelType.UNIT, ModelType.UNIT_GROUP,
+				ModelType.FLOW, ModelType.FLOW_PROPERTY, ModelType.CATEGORY,
+				ModelType.PROCESS, ModelType.IMPACT_CATEGORY,
+				ModelType.SOCIAL_INDICATOR);
 	}
 
 	public static void evictAll() {
 		log.trace("evict all from caches");
-		if (entityCache != null)
+		changeStamp.incrementAndGet();
+		if (entityCache != null) {
 			entityCache.invalidateAll();
-		if (matrixCache != null)
+			stats.evictedAll(Region.ENTITY);
+		}
+		if (matrixCache != null) {
 			matrixCache.evictAll();
+			stats.evictedAll(Region.MATRIX);
+		}
 	}
 
 	private static void evictEntity(BaseDescriptor descriptor) {
@@ -90,22 +143,55 @@ public final class Cache {
 		Class<?> clazz = descriptor.getClass();
 		log.trace("evict from entity cache {} with id={}", clazz, id);
 		entityCache.invalidate(clazz, id);
+		stats.evicted(Region.ENTITY, 1);
 		if (descriptor.type == null)
 			return;
 		clazz = descriptor.type.getModelClass();
 		log.trace("evict from entity cache {} with id={}", clazz, id);
 		entityCache.invalidate(clazz, id);
+		stats.evicted(Region.ENTITY, 1);
+	}
+
+	/**
+	 * Evicts the entities that reference the given model directly or
+	 * indirectly. If there are too many of them, the entity cache is cleared.
+	 */
+	private static void evictDependents(BaseDescriptor descriptor) {
+		if (entityCache == null || database == null)
+			return;
+		Map<ModelType, TLongHashSet> deps = CacheDependencies.of(
+				database, descriptor.type, descriptor.id);
+		if (deps == null) {
+			log.trace("evict all entities; too many dependents of {}",
+					descriptor);
+			entityCache.invalidateAll();
+			stats.evictedAll(Region.ENTITY);
+			return;
+		}
+		for (Map.Entry<ModelType, TLongHashSet> e : deps.entrySet()) {
+			Class<?> clazz = e.getKey().getModelClass();
+			if (clazz == null)
+				continue;
+			for (long id : e.getValue().toArray()) {
+				if (e.getKey() == descriptor.type && id == descriptor.id)
+					continue;
+				entityCache.invalidate(clazz, id);
+				stats.evicted(Region.ENTITY, 1);
+			}
+		}
 	}
 
 	private static void evictFromMatrices(BaseDescriptor descriptor) {
 		if (matrixCache == null)
 			return;
 		matrixCache.evict(descriptor.type, descriptor.id);
+		stats.evicted(Region.MATRIX, 1);
 	}
 
 	public static void registerNew(BaseDescriptor descriptor) {
 		if (matrixCache == null)
 			return;
+		changeStamp.incrementAndGet();
 		log.trace("register new model {}", descriptor);
 		matrixCache.registerNew(descriptor.type, descriptor.id);
 	}
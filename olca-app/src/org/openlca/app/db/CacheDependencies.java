@@ -0,0 +1,200 @@
+package org.openlca.app.db;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.Table;
+
+import org.openlca.core.database.IDatabase;
+import org.openlca.core.database.NativeSql;
+import org.openlca.core.model.ModelType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gnu.trove.set.hash.TLongHashSet;
+
+/**
+ * Collects the models that depend on a changed model and thus need to be
+ * evicted from the entity cache too. E.g. when a unit changes, the cached unit
+ * group, flow properties, flows, processes etc. that reference it (directly or
+ * indirectly) contain a stale copy of this unit.
+ */
+class CacheDependencies {
+
+	/**
+	 * When the number of dependent models exceeds this limit, it is cheaper
+	 * to just clear the entity cache.
+	 */
+	static final int LIMIT = 10_000;
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	private final IDatabase db;
+	private final Map<ModelType, TLongHashSet> result = new EnumMap<>(
+			ModelType.class);
+	private int count;
+
+	private CacheDependencies(IDatabase db) {
+		this.db = db;
+	}
+
+	/**
+	 * Returns the IDs of the given model and its dependent models grouped by
+	 * model type or null if there are more than {@link #LIMIT} dependent
+	 * models or if the dependencies could not be determined.
+	 */
+	static Map<ModelType, TLongHashSet> of(IDatabase db, ModelType type,
+			long id) {
+		CacheDependencies deps = new CacheDependencies(db);
+		try {
+			TLongHashSet ids = new TLongHashSet();
+			ids.add(id);
+			deps.collect(type, ids);
+			if (type == ModelType.CATEGORY) {
+				// the parent contains the category in its child list; its
+				// path and content are not changed
+				deps.add(ModelType.CATEGORY, deps.query(ids,
+						"select f_category from tbl_categories where id in "));
+			}
+			return deps.count > LIMIT ? null : deps.result;
+		} catch (Exception e) {
+			deps.log.error("failed to collect dependencies of "
+					+ type + " " + id, e);
+			return null;
+		}
+	}
+
+	private void collect(ModelType type, TLongHashSet ids) {
+		if (ids.isEmpty() || count > LIMIT)
+			return;
+		TLongHashSet known = result.computeIfAbsent(
+				type, t -> new TLongHashSet());
+		TLongHashSet next = new TLongHashSet();
+		for (long id : ids.toArray()) {
+			if (known.add(id)) {
+				next.add(id);
+				count++;
+			}
+		}
+		if (next.isEmpty())
+			return;
+		switch (type) {
+		case UNIT:
+			follow(next, ModelType.UNIT_GROUP,
+					"select f_unit_group from tbl_units where id in ");
+			break;
+		case UNIT_GROUP:
+			follow(next, ModelType.FLOW_PROPERTY,
+					"select id from tbl_flow_properties where f_unit_group in ");
+			break;
+		case FLOW_PROPERTY:
+			follow(next, ModelType.UNIT_GROUP,
+					"select id from tbl_unit_groups where f_default_flow_property in ");
+			follow(next, ModelType.FLOW,
+					"select f_flow from tbl_flow_property_factors where f_flow_property in ");
+			break;
+		case FLOW:
+			follow(next, ModelType.PROCESS,
+					"select f_owner from tbl_exchanges where f_flow in ");
+			follow(next, ModelType.IMPACT_CATEGORY,
+					"select f_impact_category from tbl_impact_factors where f_flow in ");
+			break;
+		case PROCESS:
+			follow(next, ModelType.PRODUCT_SYSTEM,
+					"select id from tbl_product_systems where f_reference_process in ");
+			break;
+		case IMPACT_CATEGORY:
+			follow(next, ModelType.IMPACT_METHOD,
+					"select f_impact_method from tbl_impact_links where f_impact_category in ");
+			break;
+		case SOCIAL_INDICATOR:
+			follow(next, ModelType.PROCESS,
+					"select f_process from tbl_social_aspects where f_indicator in ");
+			break;
+		case CATEGORY:
+			// the sub-categories and the models in the categories show the
+			// changed category path
+			follow(next, ModelType.CATEGORY,
+					"select id from tbl_categories where f_category in ");
+			followCategoryContent(next);
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * The models in a category contain a reference to that category.
+	 */
+	private void followCategoryContent(TLongHashSet categories) {
+		for (ModelType type : ModelType.values()) {
+			if (!type.isCategorized() || type == ModelType.CATEGORY
+					|| type.getModelClass() == null)
+				continue;
+			Table table = type.getModelClass().getAnnotation(Table.class);
+			if (table == null)
+				continue;
+			add(type, query(categories, "select id from "
+					+ table.name() + " where f_category in "));
+		}
+	}
+
+	/** Adds the given models without following their dependents. */
+	private void add(ModelType type, TLongHashSet ids) {
+		if (ids.isEmpty())
+			return;
+		TLongHashSet known = result.computeIfAbsent(
+				type, t -> new TLongHashSet());
+		for (long id : ids.toArray()) {
+			if (known.add(id)) {
+				count++;
+			}
+		}
+	}
+
+	private void follow(TLongHashSet ids, ModelType type, String query) {
+		collect(type, query(ids, query));
+	}
+
+	private TLongHashSet query(TLongHashSet ids, String query) {
+		TLongHashSet next = new TLongHashSet();
+		for (String idList : idLists(ids)) {
+			if (count > LIMIT)
+				break;
+			NativeSql.on(db).query(query + idList, r -> {
+				long id = r.getLong(1);
+				if (id != 0) {
+					next.add(id);
+				}
+				return count + next.size() <= LIMIT;
+			});
+		}
+		return next;
+	}
+
+	/** Splits the IDs into SQL lists with at most 1000 elements. */
+	private List<String> idLists(TLongHashSet ids) {
+		List<String> lists = new ArrayList<>();
+		StringBuilder b = null;
+		int n = 0;
+		for (long id : ids.toArray()) {
+			if (b == null) {
+				b = new StringBuilder("(");
+			} else {
+				b.append(',');
+			}
+			b.append(id);
+			n++;
+			if (n == 1000) {
+				lists.add(b.append(')').toString());
+				b = null;
+				n = 0;
+			}
+		}
+		if (b != null) {
+			lists.add(b.append(')').toString());
+		}
+		return lists;
+	}
+}
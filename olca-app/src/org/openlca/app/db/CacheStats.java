@@ -0,0 +1,83 @@
+package org.openlca.app.db;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hit, miss, and eviction counters of the cache regions of the application.
+ * For the entity and matrix caches, which are managed in the core library, the
+ * evictions are counted here; `full` counts how often a region was cleared
+ * completely while `evictions` counts the entries that were evicted
+ * selectively.
+ */
+public final class CacheStats {
+
+	public enum Region {
+		ENTITY, MATRIX, APP
+	}
+
+	private final Map<Region, Counters> counters = new EnumMap<>(Region.class);
+
+	CacheStats() {
+		for (Region region : Region.values()) {
+			counters.put(region, new Counters());
+		}
+	}
+
+	public long hits(Region region) {
+		return counters.get(region).hits.get();
+	}
+
+	public long misses(Region region) {
+		return counters.get(region).misses.get();
+	}
+
+	public long evictions(Region region) {
+		return counters.get(region).evictions.get();
+	}
+
+	public long fullEvictions(Region region) {
+		return counters.get(region).full.get();
+	}
+
+	void hit(Region region) {
+		counters.get(region).hits.incrementAndGet();
+	}
+
+	void miss(Region region) {
+		counters.get(region).misses.incrementAndGet();
+	}
+
+	void evicted(Region region, long count) {
+		counters.get(region).evictions.addAndGet(count);
+	}
+
+	void evictedAll(Region region) {
+		counters.get(region).full.incrementAndGet();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder b = new StringBuilder();
+		for (Region region : Region.values()) {
+			Counters c = counters.get(region);
+			if (b.length() > 0) {
+				b.append("; ");
+			}
+			b.append(region.name().toLowerCase())
+					.append(": hits=").append(c.hits.get())
+					.append(", misses=").append(c.misses.get())
+					.append(", evictions=").append(c.evictions.get())
+					.append(", full=").append(c.full.get());
+		}
+		return b.toString();
+	}
+
+	private static class Counters {
+		final AtomicLong hits = new AtomicLong();
+		final AtomicLong misses = new AtomicLong();
+		final AtomicLong evictions = new AtomicLong();
+		final AtomicLong full = new AtomicLong();
+	}
+}
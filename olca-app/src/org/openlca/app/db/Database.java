@@ -4,9 +4,13 @@ import java.io.File;
 import java.util.Objects;
 
 import org.openlca.app.App;
+import org.openlca.app.cloud.JsonLoader;
 import org.openlca.app.cloud.TokenDialog;
 import org.openlca.app.cloud.index.DiffIndex;
+import org.openlca.app.navigation.ChildCounts;
 import org.openlca.app.navigation.CopyPaste;
+import org.openlca.app.results.SortIndex;
+import org.openlca.app.search.SearchIndex;
 import org.openlca.cloud.api.RepositoryClient;
 import org.openlca.cloud.api.RepositoryConfig;
 import org.openlca.cloud.api.update.RepositoryConfigConversion;
@@ -23,6 +27,7 @@ public class Database {
 	private static DatabaseListener listener;
 	private static DatabaseList configurations = loadConfigs();
 	private static DiffIndex diffIndex;
+	private static SearchIndex searchIndex;
 	private static RepositoryClient repositoryClient;
 	private static Server ipcServer;
 
@@ -37,13 +42,20 @@ public class Database {
 		return listener.getIndexUpdater();
 	}
 
+	public static SearchIndex getSearchIndex() {
+		return searchIndex;
+	}
+
 	public static IDatabase activate(IDatabaseConfiguration config)
 			throws Exception {
 		try {
 			database = config.createInstance();
-			listener = new DatabaseListener(Database.database);
+			searchIndex = new SearchIndex(
+					DatabaseDir.getSearchIndexDir(database));
+			listener = new DatabaseListener(Database.database, searchIndex);
 			database.addListener(listener);
 			Cache.create(database);
+			ChildCounts.clear();
 			Database.config = config;
 			Logger log = LoggerFactory.getLogger(Database.class);
 			log.trace("activated database {} with version{}",
@@ -52,6 +64,10 @@ public class Database {
 			return database;
 		} catch (Exception e) {
 			database = null;
+			if (searchIndex != null) {
+				searchIndex.close();
+				searchIndex = null;
+			}
 			Cache.close();
 			Database.config = null;
 			throw e;
@@ -91,6 +107,7 @@ public class Database {
 			return;
 		diffIndex.close();
 		diffIndex = null;
+		JsonLoader.clearCache(repositoryClient);
 		repositoryClient = null;
 	}
 
@@ -122,6 +139,12 @@ public class Database {
 		}
 		Cache.close();
 		CopyPaste.clearCache();
+		ChildCounts.clear();
+		SortIndex.clearCache();
+		if (searchIndex != null) {
+			searchIndex.close();
+			searchIndex = null;
+		}
 		database.close();
 		database = null;
 		listener = null;
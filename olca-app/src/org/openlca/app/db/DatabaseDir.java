@@ -41,6 +41,14 @@ public class DatabaseDir {
 			return new File(getRootFolder(database.getName()), FILE_STORAGE);
 	}
 
+	/**
+	 * Get the location of the search index of the given database (in general
+	 * this is database_name/_search_).
+	 */
+	public static File getSearchIndexDir(IDatabase database) {
+		return new File(getRootFolder(database.getName()), "_search_");
+	}
+
 	public static File getDir(BaseDescriptor d) {
 		File root = getFileStorageLocation(Database.get());
 		FileStore fs = new FileStore(root);
@@ -1,5 +1,7 @@
 package org.openlca.app.db;
 
+import org.openlca.app.navigation.ChildCounts;
+import org.openlca.app.search.SearchIndex;
 import org.openlca.cloud.model.data.Dataset;
 import org.openlca.cloud.util.Datasets;
 import org.openlca.core.database.CategoryDao;
@@ -13,9 +15,11 @@ class DatabaseListener implements IDatabaseListener {
 
 	private final IndexUpdater indexUpdater = new IndexUpdater();
 	private final CategoryDao categoryDao;
+	private final SearchIndex searchIndex;
 
-	DatabaseListener(IDatabase database) {
+	DatabaseListener(IDatabase database, SearchIndex searchIndex) {
 		this.categoryDao = new CategoryDao(database);
+		this.searchIndex = searchIndex;
 	}
 
 	IndexUpdater getIndexUpdater() {
@@ -24,6 +28,8 @@ class DatabaseListener implements IDatabaseListener {
 
 	@Override
 	public void modelInserted(BaseDescriptor descriptor) {
+		searchIndex.put(descriptor);
+		ChildCounts.inserted(descriptor);
 		if (indexUpdater.disabled)
 			return;
 		Dataset dataset = toDataset(descriptor);
@@ -34,6 +40,8 @@ class DatabaseListener implements IDatabaseListener {
 
 	@Override
 	public void modelUpdated(BaseDescriptor descriptor) {
+		searchIndex.put(descriptor);
+		ChildCounts.updated(descriptor);
 		if (indexUpdater.disabled)
 			return;
 		Dataset dataset = toDataset(descriptor);
@@ -44,6 +52,8 @@ class DatabaseListener implements IDatabaseListener {
 
 	@Override
 	public void modelDeleted(BaseDescriptor descriptor) {
+		searchIndex.remove(descriptor);
+		ChildCounts.deleted(descriptor);
 		if (indexUpdater.disabled)
 			return;
 		Dataset dataset = toDataset(descriptor);
@@ -6,19 +6,25 @@ import org.openlca.app.cloud.index.DiffType;
 import org.openlca.cloud.model.data.Dataset;
 import org.openlca.core.model.ModelType;
 
+/**
+ * Updates the diff index of a repository connected database when models are
+ * inserted, updated, or deleted. Outside of a transaction, the changes are
+ * committed in batches (see DiffIndex#requestCommit); a transaction commits
+ * its changes when it is finished.
+ */
 public class IndexUpdater {
 
-	boolean disabled;
+	volatile boolean disabled;
 	private boolean inTransaction;
 
-	public void beginTransaction() {
+	public synchronized void beginTransaction() {
 		// no multitransaction support implemented
 		if (inTransaction)
 			throw new IllegalStateException("A transaction is already running");
 		inTransaction = true;
 	}
 
-	public void endTransaction() {
+	public synchronized void endTransaction() {
 		if (!inTransaction)
 			throw new IllegalStateException("No transaction running");
 		DiffIndex index = getIndex();
@@ -35,14 +41,14 @@ public class IndexUpdater {
 		disabled = false;
 	}
 
-	public void insert(Dataset dataset, long localId) {
+	public synchronized void insert(Dataset dataset, long localId) {
 		DiffIndex index = getIndex();
 		if (index == null)
 			return;
 		insert(dataset, localId, index);
 		if (inTransaction)
 			return;
-		index.commit();
+		index.requestCommit();
 	}
 
 	private void insert(Dataset dataset, long localId, DiffIndex index) {
@@ -50,14 +56,14 @@ public class IndexUpdater {
 		index.update(dataset, DiffType.NEW);
 	}
 
-	public void update(Dataset dataset, long localId) {
+	public synchronized void update(Dataset dataset, long localId) {
 		DiffIndex index = getIndex();
 		if (index == null)
 			return;
 		update(dataset, localId, index);
 		if (inTransaction)
 			return;
-		index.commit();
+		index.requestCommit();
 	}
 
 	private void update(Dataset dataset, long localId, DiffIndex index) {
@@ -78,14 +84,14 @@ public class IndexUpdater {
 		}
 	}
 	
-	public void delete(Dataset dataset) {
+	public synchronized void delete(Dataset dataset) {
 		DiffIndex index = getIndex();
 		if (index == null)
 			return;
 		delete(dataset, index);
 		if (inTransaction)
 			return;
-		index.commit();
+		index.requestCommit();
 	}
 
 	private void delete(Dataset dataset, DiffIndex index) {
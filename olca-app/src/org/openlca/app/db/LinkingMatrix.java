@@ -15,6 +15,8 @@ class LinkingMatrix {
 
 	private final boolean multiProviders;
 	private final boolean missingProviders;
+	private final String multiProvidersInfo;
+	private final String missingProvidersInfo;
 
 	private final Color black = Colors.black();
 	private final Color white = Colors.white();
@@ -33,9 +35,16 @@ class LinkingMatrix {
 		if (props != null) {
 			multiProviders = !props.multiProviderFlows.isEmpty();
 			missingProviders = !props.processesWithoutProviders.isEmpty();
+			multiProvidersInfo = "(" + props.multiProviderFlows.size()
+					+ " flows)";
+			missingProvidersInfo = "(" + props.processesWithoutProviders.size()
+					+ " processes, " + props.getUnlinkedExchangeCount()
+					+ " exchanges)";
 		} else {
 			multiProviders = false;
 			missingProviders = false;
+			multiProvidersInfo = "";
+			missingProvidersInfo = "";
 		}
 	}
 
@@ -54,12 +63,14 @@ class LinkingMatrix {
 
 		filler(body);
 		filler(body);
-		cell(body, "Product flows with multiple providers");
+		cell(body, "Product flows with multiple providers "
+				+ multiProvidersInfo);
 		cell(body, "Ignore default providers", black, darkGrey);
 		cell(body, "Prefer default providers", black, darkGrey);
 		cell(body, "Only default providers", black, darkGrey);
 
-		cell(body, "Processes without default providers", 4);
+		cell(body, "Processes without default providers "
+				+ missingProvidersInfo, 4);
 		cell(body, "Yes", 2, black, missingProviders ? darkGrey : lightGrey);
 		if (missingProviders & multiProviders) {
 			cell(body, "Yes", black, darkGrey);
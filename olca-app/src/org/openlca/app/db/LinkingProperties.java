@@ -1,20 +1,46 @@
 package org.openlca.app.db;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.util.HashSet;
-import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 
 import org.openlca.core.database.IDatabase;
 import org.openlca.core.database.NativeSql;
-import org.openlca.core.matrix.ProcessProduct;
-import org.openlca.core.matrix.cache.FlowTable;
-import org.openlca.core.matrix.cache.ProcessTable;
 import org.openlca.core.model.FlowType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+
+/**
+ * The linking properties of the processes in a database. The properties are
+ * checked in a single pass over the exchanges table. The result of a check is
+ * cached in memory and reused until the change stamp of the application cache
+ * changes (see Cache#getChangeStamp), i.e. until a model was saved, deleted,
+ * or updated otherwise. The result is also stored in the database folder
+ * together with a stamp of the database state (the number and last change of
+ * the processes and flows) so that it can be reused for the first check after
+ * the database was opened again.
+ * <p>
+ * Note that a check can take a while for large databases and should not be
+ * executed in the UI thread.
+ */
 public class LinkingProperties {
 
+	private static final String FILE = "linking.properties.bin";
+	private static final int FILE_VERSION = 1;
+
+	private static LinkingProperties cached;
+
 	/**
 	 * Contains the IDs of product or waste flows that have more than one
 	 * provider. If this set is empty, there are no such flows in the database.
@@ -28,72 +54,256 @@ public class LinkingProperties {
 	 */
 	public final Set<Long> processesWithoutProviders = new HashSet<>();
 
+	/**
+	 * Contains the number of providers of each product and waste flow that has
+	 * at least one provider: flow ID -> number of providers.
+	 */
+	public final TLongIntHashMap providerCounts = new TLongIntHashMap();
+
+	/**
+	 * Contains the number of product inputs and waste outputs without a default
+	 * provider of each process that has such exchanges: process ID -> number
+	 * of unlinked exchanges.
+	 */
+	public final TLongIntHashMap unlinkedExchanges = new TLongIntHashMap();
+
+	private String database;
+	private long changeStamp;
+
+	/**
+	 * Returns the linking properties of the given database. The properties are
+	 * only checked if there is no cached result for the current state of the
+	 * database.
+	 */
 	public static LinkingProperties check(IDatabase db) {
-		LinkingProperties props = new LinkingProperties();
 		if (db == null)
-			return props;
-		new Check(db).doIt(props);
+			return new LinkingProperties();
+		long changeStamp = Cache.getChangeStamp();
+		boolean firstCheck;
+		synchronized (LinkingProperties.class) {
+			firstCheck = cached == null
+					|| !Objects.equals(cached.database, db.getName());
+			if (!firstCheck && cached.changeStamp == changeStamp)
+				return cached;
+		}
+
+		// the stored result is only used for the first check; within a
+		// session the change stamp also covers changes that do not change
+		// the number or last change of the processes and flows
+		String stamp = Check.stamp(db);
+		File file = new File(DatabaseDir.getRootFolder(db.getName()), FILE);
+		LinkingProperties props = firstCheck && stamp != null
+				? read(file, stamp)
+				: null;
+		if (props == null) {
+			props = new LinkingProperties();
+			boolean ok = new Check(db).doIt(props);
+			if (!ok)
+				return props;
+			if (stamp != null) {
+				write(props, file, stamp);
+			}
+		}
+		props.database = db.getName();
+		props.changeStamp = changeStamp;
+		synchronized (LinkingProperties.class) {
+			cached = props;
+		}
 		return props;
 	}
 
+	/**
+	 * Returns the total number of product inputs and waste outputs without a
+	 * default provider in the database.
+	 */
+	public int getUnlinkedExchangeCount() {
+		int count = 0;
+		for (int c : unlinkedExchanges.values()) {
+			count += c;
+		}
+		return count;
+	}
+
+	/** Fills the ID sets from the counts. */
+	private void fillSets() {
+		providerCounts.forEachEntry((flow, count) -> {
+			if (count > 1) {
+				multiProviderFlows.add(flow);
+			}
+			return true;
+		});
+		unlinkedExchanges.forEachKey(process -> {
+			processesWithoutProviders.add(process);
+			return true;
+		});
+	}
+
+	private static LinkingProperties read(File file, String stamp) {
+		if (!file.exists())
+			return null;
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != FILE_VERSION)
+				return null;
+			if (!Objects.equals(stamp, in.readUTF()))
+				return null;
+			LinkingProperties props = new LinkingProperties();
+			readMap(in, props.providerCounts);
+			readMap(in, props.unlinkedExchanges);
+			props.fillSets();
+			return props;
+		} catch (Exception e) {
+			Logger log = LoggerFactory.getLogger(LinkingProperties.class);
+			log.warn("failed to read linking properties from " + file, e);
+			return null;
+		}
+	}
+
+	private static void readMap(DataInputStream in, TLongIntHashMap map)
+			throws Exception {
+		int size = in.readInt();
+		map.ensureCapacity(size);
+		for (int i = 0; i < size; i++) {
+			map.put(in.readLong(), in.readInt());
+		}
+	}
+
+	private static void write(LinkingProperties props, File file,
+			String stamp) {
+		File dir = file.getParentFile();
+		if (dir != null && !dir.exists()) {
+			dir.mkdirs();
+		}
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(FILE_VERSION);
+			out.writeUTF(stamp);
+			writeMap(out, props.providerCounts);
+			writeMap(out, props.unlinkedExchanges);
+		} catch (Exception e) {
+			Logger log = LoggerFactory.getLogger(LinkingProperties.class);
+			log.warn("failed to write linking properties to " + file, e);
+		}
+	}
+
+	private static void writeMap(DataOutputStream out, TLongIntHashMap map)
+			throws Exception {
+		out.writeInt(map.size());
+		long[] keys = map.keys();
+		for (long key : keys) {
+			out.writeLong(key);
+			out.writeInt(map.get(key));
+		}
+	}
+
 	private static class Check {
 
 		final IDatabase db;
-		final FlowTable flowTypes;
-		final ProcessTable processes;
 
 		Check(IDatabase db) {
 			this.db = db;
-			flowTypes = FlowTable.create(db);
-			processes = ProcessTable.create(db);
 		}
 
-		void doIt(LinkingProperties props) {
-			checkMultiProviders(props);
-			checkUnlinkedProcesses(props);
+		/**
+		 * Returns a stamp of the state of the processes and flows in the
+		 * database or null if it could not be calculated.
+		 */
+		static String stamp(IDatabase db) {
+			StringBuilder stamp = new StringBuilder();
+			try {
+				for (String table : new String[] {
+						"tbl_processes", "tbl_flows" }) {
+					String sql = "select count(*), max(last_change) from "
+							+ table;
+					NativeSql.on(db).query(sql, r -> {
+						stamp.append(r.getLong(1))
+								.append(':')
+								.append(r.getLong(2))
+								.append(';');
+						return false;
+					});
+				}
+				return stamp.toString();
+			} catch (Exception e) {
+				error("Failed to get the state of the database", e);
+				return null;
+			}
 		}
 
-		void checkUnlinkedProcesses(LinkingProperties props) {
+		/** Returns false if the check failed. */
+		boolean doIt(LinkingProperties props) {
+			TLongHashSet processes = new TLongHashSet();
+			TLongObjectHashMap<TLongHashSet> providers = new TLongObjectHashMap<>();
 			try {
-				String sql = "select f_owner, f_flow, is_input, f_default_provider "
-						+ " from tbl_exchanges";
+				NativeSql.on(db).query("select id from tbl_processes", r -> {
+					processes.add(r.getLong(1));
+					return true;
+				});
+
+				// elementary flows cannot be linked, so we only scan the
+				// exchanges with product and waste flows
+				String sql = "select e.f_owner, e.f_flow, e.is_input, "
+						+ " e.f_default_provider, f.flow_type "
+						+ " from tbl_exchanges e"
+						+ " inner join tbl_flows f on e.f_flow = f.id"
+						+ " where f.flow_type <> 'ELEMENTARY_FLOW'";
 				NativeSql.on(db).query(sql, r -> {
-					long flowID = r.getLong(2);
-					FlowType type = flowTypes.type(flowID);
+					long owner = r.getLong(1);
+					long flow = r.getLong(2);
 					boolean isInput = r.getBoolean(3);
-					if (!canHaveProvider(type, isInput))
+					FlowType type = flowType(r.getString(5));
+					if (type == null)
+						return true;
+					if (isProvider(type, isInput)) {
+						TLongHashSet set = providers.get(flow);
+						if (set == null) {
+							set = new TLongHashSet();
+							providers.put(flow, set);
+						}
+						set.add(owner);
 						return true;
-					long providerID = r.getLong(4);
-					if (providerID == 0
-							|| processes.getType(providerID) == null) {
-						props.processesWithoutProviders.add(r.getLong(1));
+					}
+					long provider = r.getLong(4);
+					if (provider == 0 || !processes.contains(provider)) {
+						props.unlinkedExchanges.adjustOrPutValue(owner, 1, 1);
 					}
 					return true;
 				});
 			} catch (Exception e) {
 				error("Failed to scan exchanges table", e);
+				return false;
 			}
+			providers.forEachEntry((flow, set) -> {
+				props.providerCounts.put(flow, set.size());
+				return true;
+			});
+			props.fillSets();
+			return true;
 		}
 
-		void checkMultiProviders(LinkingProperties props) {
-			for (ProcessProduct products : processes.getProviders()) {
-				long flowID = products.flowId();
-				List<ProcessProduct> providers = processes.getProviders(flowID);
-				if (providers != null && providers.size() > 1) {
-					props.multiProviderFlows.add(flowID);
-				}
-			}
-		}
-
-		boolean canHaveProvider(FlowType type, boolean isInput) {
-			if (isInput && type == FlowType.PRODUCT_FLOW)
+		/**
+		 * Returns true if the exchange is a product output or waste input;
+		 * the other non-elementary exchanges can be linked to a provider.
+		 */
+		boolean isProvider(FlowType type, boolean isInput) {
+			if (!isInput && type == FlowType.PRODUCT_FLOW)
 				return true;
-			if (!isInput && type == FlowType.WASTE_FLOW)
+			if (isInput && type == FlowType.WASTE_FLOW)
 				return true;
 			return false;
 		}
 
-		void error(String message, Exception e) {
+		FlowType flowType(String name) {
+			if (name == null)
+				return null;
+			try {
+				return FlowType.valueOf(name);
+			} catch (IllegalArgumentException e) {
+				return null;
+			}
+		}
+
+		static void error(String message, Exception e) {
 			Logger log = LoggerFactory.getLogger(Check.class);
 			log.error(message, e);
 		}
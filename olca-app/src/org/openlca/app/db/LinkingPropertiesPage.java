@@ -39,17 +39,18 @@ import org.openlca.core.model.descriptors.FlowDescriptor;
 import org.openlca.core.model.descriptors.ProcessDescriptor;
 import org.openlca.util.Strings;
 
+import gnu.trove.map.hash.TLongIntHashMap;
+
 public class LinkingPropertiesPage extends SimpleFormEditor {
 
 	private LinkingProperties props;
 
 	public static void show() {
 		AtomicReference<LinkingProperties> ref = new AtomicReference<>();
-		App.runWithProgress("Check database links", () -> {
+		App.run("Check database links", () -> {
 			LinkingProperties props = LinkingProperties.check(Database.get());
 			ref.set(props);
-		});
-		show(ref.get());
+		}, () -> show(ref.get()));
 	}
 
 	public static void show(LinkingProperties props) {
@@ -136,11 +137,12 @@ public class LinkingPropertiesPage extends SimpleFormEditor {
 			UI.gridData(section, true, true);
 			Composite comp = UI.sectionClient(section, tk);
 			UI.gridLayout(comp, 1);
-			TableViewer table = Tables.createViewer(comp, M.Process);
+			TableViewer table = Tables.createViewer(
+					comp, M.Process, "Unlinked exchanges");
 			ProcessDao dao = new ProcessDao(Database.get());
 			List<ProcessDescriptor> list = dao.getDescriptors(
 					props.processesWithoutProviders);
-			fillTable(table, list);
+			fillTable(table, list, props.unlinkedExchanges);
 		}
 
 		private void flowProviderSection(Composite body) {
@@ -151,20 +153,31 @@ public class LinkingPropertiesPage extends SimpleFormEditor {
 			UI.gridData(section, true, true);
 			Composite comp = UI.sectionClient(section, tk);
 			UI.gridLayout(comp, 1);
-			TableViewer table = Tables.createViewer(comp, M.Flow);
+			TableViewer table = Tables.createViewer(
+					comp, M.Flow, "Providers");
 			FlowDao dao = new FlowDao(Database.get());
 			List<FlowDescriptor> list = dao.getDescriptors(
 					props.multiProviderFlows);
-			fillTable(table, list);
+			fillTable(table, list, props.providerCounts);
 		}
 
+		/**
+		 * Fills the table with the given descriptors, sorted by the given
+		 * counts in descending order (so that the worst cases are on top) and
+		 * then by name.
+		 */
 		private <T extends CategorizedDescriptor> void fillTable(
-				TableViewer table, List<T> list) {
-			table.setLabelProvider(new TableLabel());
-			Tables.bindColumnWidths(table, 1.0);
-			list.sort((d1, d2) -> Strings.compare(
-					Labels.name(d1),
-					Labels.name(d2)));
+				TableViewer table, List<T> list, TLongIntHashMap counts) {
+			table.setLabelProvider(new TableLabel(counts));
+			Tables.bindColumnWidths(table, 0.8, 0.2);
+			list.sort((d1, d2) -> {
+				int c = Integer.compare(counts.get(d2.id), counts.get(d1.id));
+				if (c != 0)
+					return c;
+				return Strings.compare(
+						Labels.name(d1),
+						Labels.name(d2));
+			});
 			table.setInput(list);
 			Tables.onDoubleClick(table, e -> {
 				CategorizedDescriptor d = Viewers.getFirstSelected(table);
@@ -176,6 +189,12 @@ public class LinkingPropertiesPage extends SimpleFormEditor {
 
 		private class TableLabel extends LabelProvider implements ITableLabelProvider {
 
+			private final TLongIntHashMap counts;
+
+			TableLabel(TLongIntHashMap counts) {
+				this.counts = counts;
+			}
+
 			@Override
 			public Image getColumnImage(Object o, int col) {
 				if (col != 0)
@@ -188,12 +207,17 @@ public class LinkingPropertiesPage extends SimpleFormEditor {
 
 			@Override
 			public String getColumnText(Object o, int col) {
-				if (col != 0)
-					return null;
 				if (!(o instanceof BaseDescriptor))
 					return null;
 				BaseDescriptor d = (BaseDescriptor) o;
-				return Labels.name(d);
+				switch (col) {
+				case 0:
+					return Labels.name(d);
+				case 1:
+					return Integer.toString(counts.get(d.id));
+				default:
+					return null;
+				}
 			}
 		}
 	}
@@ -8,6 +8,8 @@ import java.sql.ResultSetMetaData;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.openlca.app.db.Database;
+import org.openlca.app.search.SearchIndex;
 import org.openlca.core.database.IDatabase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -66,6 +68,10 @@ class SqlCommand {
 			con.commit();
 			log.info("{} rows updated", count);
 			database.getEntityFactory().getCache().evictAll();
+			SearchIndex index = Database.getSearchIndex();
+			if (index != null) {
+				index.invalidate();
+			}
 			return count + " rows updated";
 		} catch (Exception e) {
 			return handleException(e);
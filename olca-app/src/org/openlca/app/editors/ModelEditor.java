@@ -186,7 +186,7 @@ public abstract class ModelEditor<T extends CategorizedEntity>
 		cache.refresh(descriptor.getClass(), descriptor.id);
 		cache.invalidate(modelClass, model.id);
 		this.setPartName(Labels.name(model));
-		Cache.evict(descriptor);
+		Cache.evict(descriptor, changesDependents());
 		for (Runnable handler : savedHandlers) {
 			if (handler != null) {
 				handler.run();
@@ -195,6 +195,16 @@ public abstract class ModelEditor<T extends CategorizedEntity>
 		Navigator.refresh(Navigator.findElement(descriptor));
 	}
 
+	/**
+	 * Returns true if the last update could have changed data that other
+	 * models show or use via a reference to the model of this editor. In this
+	 * case, these models are also evicted from the cache. Editors can override
+	 * this to skip this when only descriptive fields were changed.
+	 */
+	protected boolean changesDependents() {
+		return true;
+	}
+
 	@Override
 	public ModelEditorInput getEditorInput() {
 		return (ModelEditorInput) super.getEditorInput();
@@ -5,6 +5,7 @@ import org.eclipse.ui.IEditorSite;
 import org.eclipse.ui.PartInitException;
 import org.openlca.app.editors.ModelEditor;
 import org.openlca.core.model.Flow;
+import org.openlca.core.model.FlowPropertyFactor;
 import org.openlca.core.model.FlowType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,6 +15,9 @@ public class FlowEditor extends ModelEditor<Flow> {
 	public static String ID = "editors.flow";
 	private Logger log = LoggerFactory.getLogger(getClass());
 
+	/** See {@link #dependentState(Flow)} */
+	private String dependentState;
+
 	public FlowEditor() {
 		super(Flow.class);
 	}
@@ -21,6 +25,38 @@ public class FlowEditor extends ModelEditor<Flow> {
 	@Override
 	public void init(IEditorSite site, IEditorInput input) throws PartInitException {
 		super.init(site, input);
+		dependentState = dependentState(getModel());
+	}
+
+	@Override
+	protected boolean changesDependents() {
+		String state = dependentState(getModel());
+		boolean changed = !state.equals(dependentState);
+		dependentState = state;
+		return changed;
+	}
+
+	/**
+	 * Returns the state of the fields of the flow that processes and LCIA
+	 * categories show or use in their exchanges and characterization factors.
+	 */
+	private String dependentState(Flow flow) {
+		if (flow == null)
+			return "";
+		StringBuilder b = new StringBuilder();
+		b.append(flow.name).append('|')
+				.append(flow.category != null ? flow.category.id : 0).append('|')
+				.append(flow.flowType).append('|')
+				.append(flow.location != null ? flow.location.id : 0).append('|')
+				.append(flow.referenceFlowProperty != null
+						? flow.referenceFlowProperty.id
+						: 0);
+		for (FlowPropertyFactor f : flow.flowPropertyFactors) {
+			b.append('|').append(f.id)
+					.append(':').append(f.flowProperty != null ? f.flowProperty.id : 0)
+					.append(':').append(f.conversionFactor);
+		}
+		return b.toString();
 	}
 
 	@Override
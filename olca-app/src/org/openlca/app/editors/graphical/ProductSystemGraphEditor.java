@@ -18,8 +18,10 @@ import org.eclipse.ui.IWorkbenchPart;
 import org.eclipse.ui.PartInitException;
 import org.eclipse.ui.views.contentoutline.IContentOutlinePage;
 import org.openlca.app.M;
+import org.openlca.app.db.Database;
 import org.openlca.app.editors.graphical.layout.LayoutType;
 import org.openlca.app.editors.graphical.layout.NodeLayoutStore;
+import org.openlca.app.editors.graphical.model.ExchangeCache;
 import org.openlca.app.editors.graphical.model.Link;
 import org.openlca.app.editors.graphical.model.ProcessNode;
 import org.openlca.app.editors.graphical.model.ProductSystemNode;
@@ -47,6 +49,8 @@ public class ProductSystemGraphEditor extends GraphicalEditor {
 	private ISelection selection;
 	private List<String> actionIds;
 	private boolean initialized = false;
+	private final ExchangeCache exchangeCache = new ExchangeCache(
+			Database.get());
 
 	public ProductSystemGraphEditor(ProductSystemEditor editor) {
 		this.systemEditor = editor;
@@ -78,6 +82,14 @@ public class ProductSystemGraphEditor extends GraphicalEditor {
 		return initialized;
 	}
 
+	/**
+	 * Returns the cache of the product and waste exchanges of the processes
+	 * in this editor.
+	 */
+	public ExchangeCache getExchangeCache() {
+		return exchangeCache;
+	}
+
 	@Override
 	public void init(IEditorSite site, IEditorInput input)
 			throws PartInitException {
@@ -199,6 +211,7 @@ public class ProductSystemGraphEditor extends GraphicalEditor {
 	public void updateModel(final IProgressMonitor monitor) {
 		monitor.beginTask(M.UpdatingProductSystem, IProgressMonitor.UNKNOWN);
 		systemEditor.updateModel();
+		exchangeCache.clear();
 		monitor.done();
 	}
 
@@ -249,6 +262,12 @@ public class ProductSystemGraphEditor extends GraphicalEditor {
 		return false;
 	}
 
+	@Override
+	public void dispose() {
+		NodeLayoutStore.close(model);
+		super.dispose();
+	}
+
 	public void expand() {
 		model = expandModel();
 		if (getGraphicalViewer() != null) {
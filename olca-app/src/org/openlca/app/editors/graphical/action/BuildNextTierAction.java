@@ -1,22 +1,24 @@
 package org.openlca.app.editors.graphical.action;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 import org.eclipse.gef.commands.Command;
 import org.eclipse.jface.action.Action;
 import org.openlca.app.M;
-import org.openlca.app.db.Database;
+import org.openlca.app.db.Cache;
 import org.openlca.app.editors.graphical.command.CommandUtil;
 import org.openlca.app.editors.graphical.command.ExpansionCommand;
 import org.openlca.app.editors.graphical.command.MassCreationCommand;
+import org.openlca.app.editors.graphical.model.ExchangeCache;
 import org.openlca.app.editors.graphical.model.ExchangeNode;
 import org.openlca.app.editors.graphical.model.ProcessNode;
 import org.openlca.app.editors.graphical.model.ProductSystemNode;
-import org.openlca.core.database.FlowDao;
-import org.openlca.core.database.ProcessDao;
+import org.openlca.core.database.EntityCache;
 import org.openlca.core.matrix.LinkingConfig.DefaultProviders;
 import org.openlca.core.model.Exchange;
 import org.openlca.core.model.ModelType;
@@ -27,8 +29,8 @@ import org.openlca.core.model.descriptors.ProcessDescriptor;
 
 class BuildNextTierAction extends Action implements IBuildAction {
 
-	private final FlowDao flowDao;
-	private final ProcessDao processDao;
+	private EntityCache entityCache;
+	private ExchangeCache cache;
 	private List<ProcessNode> nodes;
 	private ProcessType preferredType = ProcessType.UNIT_PROCESS;
 	private DefaultProviders providers = DefaultProviders.ONLY;
@@ -36,8 +38,6 @@ class BuildNextTierAction extends Action implements IBuildAction {
 	BuildNextTierAction() {
 		setId(ActionIds.BUILD_NEXT_TIER);
 		setText(M.BuildNextTier);
-		flowDao = new FlowDao(Database.get());
-		processDao = new ProcessDao(Database.get());
 	}
 
 	@Override
@@ -60,6 +60,9 @@ class BuildNextTierAction extends Action implements IBuildAction {
 		if (nodes == null || nodes.isEmpty())
 			return;
 		ProductSystemNode systemNode = nodes.get(0).parent();
+		entityCache = Cache.getEntityCache();
+		cache = systemNode.editor.getExchangeCache();
+		prefetch();
 		List<CategorizedDescriptor> providers = new ArrayList<>();
 		List<ProcessLink> newConnections = new ArrayList<>();
 		for (ProcessNode node : nodes)
@@ -73,6 +76,29 @@ class BuildNextTierAction extends Action implements IBuildAction {
 		systemNode.editor.setDirty(true);
 	}
 
+	/**
+	 * Loads the exchanges of the nodes and the possible providers of their
+	 * flows in batches.
+	 */
+	private void prefetch() {
+		List<Long> ids = new ArrayList<>();
+		for (ProcessNode node : nodes) {
+			if (node.process.type == ModelType.PROCESS)
+				ids.add(node.process.id);
+		}
+		cache.load(ids);
+		if (providers == DefaultProviders.ONLY)
+			return;
+		Set<Long> flowIds = new HashSet<>();
+		for (ProcessNode node : nodes) {
+			for (ExchangeNode enode : getLinkCandidates(node)) {
+				if (enode.exchange.flow != null)
+					flowIds.add(enode.exchange.flow.id);
+			}
+		}
+		cache.loadProviders(flowIds);
+	}
+
 	private void collectFor(ProcessNode node,
 			List<CategorizedDescriptor> providers,
 			List<ProcessLink> newConnections) {
@@ -116,13 +142,15 @@ class BuildNextTierAction extends Action implements IBuildAction {
 		if (providers == DefaultProviders.ONLY) {
 			if (e.defaultProviderId == 0l)
 				return null;
-			return processDao.getDescriptor(e.defaultProviderId);
+			return entityCache.get(ProcessDescriptor.class,
+					e.defaultProviderId);
 		}
 		if (providers == DefaultProviders.PREFER
 				&& e.defaultProviderId != 0L)
-			return processDao.getDescriptor(e.defaultProviderId);
+			return entityCache.get(ProcessDescriptor.class,
+					e.defaultProviderId);
 
-		List<ProcessDescriptor> providers = getProviders(e);
+		Collection<ProcessDescriptor> providers = getProviders(e);
 
 		ProcessDescriptor bestMatch = null;
 		for (ProcessDescriptor descriptor : providers) {
@@ -135,17 +163,15 @@ class BuildNextTierAction extends Action implements IBuildAction {
 		return bestMatch;
 	}
 
-	private List<ProcessDescriptor> getProviders(Exchange e) {
+	private Collection<ProcessDescriptor> getProviders(Exchange e) {
 		if (e == null || e.flow == null)
 			return Collections.emptyList();
-
-		Set<Long> providerIds = null;
-		if (!e.isInput) {
-			providerIds = flowDao.getWhereInput(e.flow.id);
-		} else {
-			providerIds = flowDao.getWhereOutput(e.flow.id);
+		List<Long> providerIds = new ArrayList<>();
+		for (long id : cache.getProviders(e)) {
+			providerIds.add(id);
 		}
-		return processDao.getDescriptors(providerIds);
+		return entityCache.getAll(ProcessDescriptor.class, providerIds)
+				.values();
 	}
 
 }
@@ -12,18 +12,17 @@ import org.openlca.app.db.Cache;
 import org.openlca.app.db.Database;
 import org.openlca.app.editors.graphical.ProductSystemGraphEditor;
 import org.openlca.app.editors.graphical.layout.NodeLayoutStore;
+import org.openlca.app.editors.graphical.model.ExchangeCache;
 import org.openlca.app.editors.graphical.model.ProcessNode;
 import org.openlca.app.util.UI;
-import org.openlca.core.database.ProcessDao;
 import org.openlca.core.matrix.LinkingConfig;
 import org.openlca.core.matrix.LinkingConfig.DefaultProviders;
 import org.openlca.core.matrix.ProcessProduct;
 import org.openlca.core.matrix.ProductSystemBuilder;
-import org.openlca.core.model.Exchange;
-import org.openlca.core.model.Process;
 import org.openlca.core.model.ProcessType;
 import org.openlca.core.model.ProductSystem;
 import org.openlca.core.model.descriptors.Descriptors;
+import org.openlca.core.model.descriptors.FlowDescriptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -92,14 +91,15 @@ class BuildSupplyChainAction extends Action implements IBuildAction {
 		public void run(IProgressMonitor monitor) throws InvocationTargetException, InterruptedException {
 			monitor.beginTask(M.CreatingProductSystem, IProgressMonitor.UNKNOWN);
 			ProductSystemBuilder builder = new ProductSystemBuilder(Cache.getMatrixCache(), config);
+			ExchangeCache exchanges = nodes.get(0).parent().editor
+					.getExchangeCache();
 			for (ProcessNode node : nodes) {
 				ProcessProduct provider = new ProcessProduct();
 				provider.process = node.process;
-				ProcessDao dao = new ProcessDao(Database.get());
-				Process p = dao.getForId(node.process.id);
-				Exchange qRef = p.quantitativeReference;
-				if (qRef != null && qRef.flow != null) {
-					provider.flow = Descriptors.toDescriptor(qRef.flow);
+				long qRef = exchanges.getReferenceFlow(node.process.id);
+				if (qRef != 0) {
+					provider.flow = Cache.getEntityCache().get(
+							FlowDescriptor.class, qRef);
 				}
 				builder.autoComplete(system, provider);
 				system = builder.saveUpdates(system);
@@ -1,5 +1,8 @@
 package org.openlca.app.editors.graphical.action;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.eclipse.gef.commands.Command;
 import org.eclipse.jface.viewers.ISelection;
 import org.openlca.app.M;
@@ -29,6 +32,15 @@ class ChangeAllStateAction extends EditorAction {
 
 	@Override
 	public void run() {
+		if (type == MAXIMIZE) {
+			// load the exchanges of all nodes in a batch
+			List<Long> ids = new ArrayList<>();
+			for (ProcessNode node : editor.getModel().getChildren()) {
+				if (node.isMinimized())
+					ids.add(node.process.id);
+			}
+			editor.getExchangeCache().load(ids);
+		}
 		Command actualCommand = null;
 		for (ProcessNode node : editor.getModel().getChildren()) {
 			boolean minimize = type == MINIMIZE;
@@ -1,9 +1,12 @@
 package org.openlca.app.editors.graphical.action;
 
+import org.eclipse.gef.commands.Command;
 import org.eclipse.jface.action.Action;
 import org.eclipse.osgi.util.NLS;
+import org.openlca.app.App;
 import org.openlca.app.M;
 import org.openlca.app.editors.graphical.command.LayoutCommand;
+import org.openlca.app.editors.graphical.layout.LayeredLayout;
 import org.openlca.app.editors.graphical.layout.LayoutManager;
 import org.openlca.app.editors.graphical.layout.LayoutType;
 import org.openlca.app.editors.graphical.model.ProductSystemNode;
@@ -22,17 +25,40 @@ class LayoutAction extends Action {
 		case MINIMAL_TREE_LAYOUT:
 			setId(ActionIds.LAYOUT_MINIMAL_TREE);
 			break;
+		case LAYERED_LAYOUT:
+			setId(ActionIds.LAYOUT_LAYERED);
+			break;
 		}
 		this.layoutType = layoutType;
 	}
 
 	@Override
 	public void run() {
+		if (layoutType == LayoutType.LAYERED_LAYOUT) {
+			runInBackground();
+			return;
+		}
 		LayoutManager layoutManager = (LayoutManager) model.figure.getLayoutManager();
 		LayoutCommand command = new LayoutCommand(model, layoutManager, layoutType);
 		model.editor.getCommandStack().execute(command);
 	}
 
+	/**
+	 * The layered layout is intended for large graphs; the positions are
+	 * calculated in a background job and then applied in a single command.
+	 */
+	private void runInBackground() {
+		// the graph could have been replaced since the action was created
+		ProductSystemNode model = this.model.editor.getModel();
+		LayeredLayout layout = new LayeredLayout(model);
+		App.run(getText(), layout, () -> {
+			Command command = layout.createCommand();
+			if (command == null)
+				return;
+			model.editor.getCommandStack().execute(command);
+		});
+	}
+
 	void setModel(ProductSystemNode model) {
 		this.model = model;
 	}
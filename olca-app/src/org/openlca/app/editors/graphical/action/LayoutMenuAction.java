@@ -17,6 +17,7 @@ class LayoutMenuAction extends EditorAction {
 	private ProductSystemGraphEditor editor;
 	private LayoutAction minimalLayoutAction = new LayoutAction(LayoutType.MINIMAL_TREE_LAYOUT);
 	private LayoutAction treeLayoutAction = new LayoutAction(LayoutType.TREE_LAYOUT);
+	private LayoutAction layeredLayoutAction = new LayoutAction(LayoutType.LAYERED_LAYOUT);
 
 	LayoutMenuAction() {
 		setId(ActionIds.LAYOUT_MENU);
@@ -29,6 +30,7 @@ class LayoutMenuAction extends EditorAction {
 	public void setEditor(ProductSystemGraphEditor editor) {
 		minimalLayoutAction.setModel(editor.getModel());
 		treeLayoutAction.setModel(editor.getModel());
+		layeredLayoutAction.setModel(editor.getModel());
 		this.editor = editor;
 	}
 
@@ -47,6 +49,9 @@ class LayoutMenuAction extends EditorAction {
 			MenuItem minimalItem = new MenuItem(menu, SWT.RADIO);
 			minimalItem.setText(minimalLayoutAction.getText());
 			Controls.onSelect(treeItem, (e) -> minimalLayoutAction.run());
+			MenuItem layeredItem = new MenuItem(menu, SWT.RADIO);
+			layeredItem.setText(layeredLayoutAction.getText());
+			Controls.onSelect(layeredItem, (e) -> layeredLayoutAction.run());
 			new MenuItem(menu, SWT.SEPARATOR);
 			MenuItem routedCheck = new MenuItem(menu, SWT.CHECK);
 			routedCheck.setText(M.Route);
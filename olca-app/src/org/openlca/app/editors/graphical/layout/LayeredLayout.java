@@ -0,0 +1,426 @@
+package org.openlca.app.editors.graphical.layout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.draw2d.geometry.Dimension;
+import org.eclipse.draw2d.geometry.Rectangle;
+import org.eclipse.gef.commands.Command;
+import org.eclipse.gef.commands.CompoundCommand;
+import org.openlca.app.M;
+import org.openlca.app.editors.graphical.command.XYLayoutCommand;
+import org.openlca.app.editors.graphical.model.ProcessNode;
+import org.openlca.app.editors.graphical.model.ProductSystemNode;
+import org.openlca.core.model.FlowType;
+import org.openlca.core.model.ProcessLink;
+
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+
+/**
+ * A layered (Sugiyama style) layout of the visible nodes of a product system:
+ * providers are placed left of their recipients (and waste treatment processes
+ * right of the waste producers). The layout runs in near-linear time:
+ * <ol>
+ * <li>cycles in the supply chain are broken by reversing the back edges of a
+ * depth first search,
+ * <li>the nodes are assigned to layers by their longest path to a sink, so
+ * that providers are placed close to their recipients,
+ * <li>the order of the nodes within a layer is improved by a fixed number of
+ * barycenter sweeps (long edges are not split into dummy nodes),
+ * <li>and the coordinates are calculated from the sizes of the nodes.
+ * </ol>
+ * The layout is created from a snapshot of the graph in the UI thread, the
+ * positions can then be calculated in a background job via {@link #run()}, and
+ * are applied in the UI thread again.
+ */
+public class LayeredLayout implements Runnable {
+
+	private static final int SWEEPS = 4;
+
+	private final ProductSystemNode model;
+	private final ProcessNode[] nodes;
+	private final int[] widths;
+	private final int[] heights;
+
+	/** The edges in compressed sparse row format: node -> successors. */
+	private int[] outStart;
+	private int[] outAdj;
+
+	private int[] xs;
+	private int[] ys;
+
+	public LayeredLayout(ProductSystemNode model) {
+		this.model = model;
+		List<ProcessNode> visible = new ArrayList<>();
+		for (ProcessNode node : model.getChildren()) {
+			if (node.isVisible())
+				visible.add(node);
+		}
+		int n = visible.size();
+		nodes = visible.toArray(new ProcessNode[n]);
+		widths = new int[n];
+		heights = new int[n];
+		TLongIntHashMap index = new TLongIntHashMap(n, 0.5f, -1L, -1);
+		for (int i = 0; i < n; i++) {
+			ProcessNode node = nodes[i];
+			Dimension size = node.getSize();
+			widths[i] = size.width;
+			heights[i] = size.height;
+			index.put(node.process.id, i);
+		}
+		initEdges(index);
+	}
+
+	/**
+	 * Collects the edges between the visible nodes; each process link is only
+	 * visited from its recipient side and duplicate edges are removed.
+	 */
+	private void initEdges(TLongIntHashMap index) {
+		int n = nodes.length;
+		TLongHashSet edges = new TLongHashSet();
+		int[] outDegree = new int[n];
+		for (int i = 0; i < n; i++) {
+			long id = nodes[i].process.id;
+			for (ProcessLink link : model.linkSearch.getLinks(id)) {
+				if (link.processId != id)
+					continue;
+				int recipient = i;
+				int provider = index.get(link.providerId);
+				if (provider < 0 || provider == recipient)
+					continue;
+				FlowType type = model.flows.type(link.flowId);
+				long edge = type == FlowType.WASTE_FLOW
+						? edge(recipient, provider)
+						: edge(provider, recipient);
+				if (edges.add(edge)) {
+					outDegree[(int) (edge >>> 32)]++;
+				}
+			}
+		}
+		outStart = new int[n + 1];
+		for (int i = 0; i < n; i++) {
+			outStart[i + 1] = outStart[i] + outDegree[i];
+		}
+		outAdj = new int[edges.size()];
+		int[] fill = Arrays.copyOf(outStart, n);
+		edges.forEach(edge -> {
+			int source = (int) (edge >>> 32);
+			int target = (int) edge;
+			outAdj[fill[source]++] = target;
+			return true;
+		});
+	}
+
+	private long edge(int source, int target) {
+		return (((long) source) << 32) | (target & 0xffffffffL);
+	}
+
+	/** Calculates the positions of the nodes. */
+	@Override
+	public void run() {
+		int n = nodes.length;
+		xs = new int[n];
+		ys = new int[n];
+		if (n == 0)
+			return;
+		breakCycles();
+		int[] layers = assignLayers();
+		int[][] order = orderLayers(layers);
+		placeNodes(order);
+	}
+
+	/**
+	 * Reverses the back edges of an iterative depth first search so that the
+	 * graph becomes acyclic.
+	 */
+	private void breakCycles() {
+		int n = nodes.length;
+		byte[] state = new byte[n]; // 0: new, 1: on stack, 2: done
+		int[] next = new int[n];
+		int[] stack = new int[n];
+		List<int[]> reversed = new ArrayList<>();
+		for (int root = 0; root < n; root++) {
+			if (state[root] != 0)
+				continue;
+			int top = 0;
+			stack[0] = root;
+			state[root] = 1;
+			next[root] = outStart[root];
+			while (top >= 0) {
+				int v = stack[top];
+				if (next[v] == outStart[v + 1]) {
+					state[v] = 2;
+					top--;
+					continue;
+				}
+				int pos = next[v]++;
+				int w = outAdj[pos];
+				if (state[w] == 0) {
+					state[w] = 1;
+					next[w] = outStart[w];
+					stack[++top] = w;
+				} else if (state[w] == 1) {
+					reversed.add(new int[] { v, pos });
+				}
+			}
+		}
+		if (reversed.isEmpty())
+			return;
+
+		// rebuild the adjacency with the reversed edges
+		int[] outDegree = new int[n];
+		boolean[] isReversed = new boolean[outAdj.length];
+		for (int[] r : reversed) {
+			isReversed[r[1]] = true;
+		}
+		for (int v = 0; v < n; v++) {
+			for (int pos = outStart[v]; pos < outStart[v + 1]; pos++) {
+				if (isReversed[pos])
+					outDegree[outAdj[pos]]++;
+				else
+					outDegree[v]++;
+			}
+		}
+		int[] start = new int[n + 1];
+		for (int i = 0; i < n; i++) {
+			start[i + 1] = start[i] + outDegree[i];
+		}
+		int[] adj = new int[outAdj.length];
+		int[] fill = Arrays.copyOf(start, n);
+		for (int v = 0; v < n; v++) {
+			for (int pos = outStart[v]; pos < outStart[v + 1]; pos++) {
+				int w = outAdj[pos];
+				if (isReversed[pos])
+					adj[fill[w]++] = v;
+				else
+					adj[fill[v]++] = w;
+			}
+		}
+		outStart = start;
+		outAdj = adj;
+	}
+
+	/**
+	 * Assigns the layers by the longest path of a node to a sink: sinks (e.g.
+	 * the reference process) are placed in the last layer and each provider
+	 * one layer before its closest recipient on the longest path.
+	 */
+	private int[] assignLayers() {
+		int n = nodes.length;
+		int[] inDegree = new int[n];
+		for (int w : outAdj) {
+			inDegree[w]++;
+		}
+		// topological order (Kahn)
+		int[] topo = new int[n];
+		int head = 0;
+		int tail = 0;
+		for (int v = 0; v < n; v++) {
+			if (inDegree[v] == 0)
+				topo[tail++] = v;
+		}
+		while (head < tail) {
+			int v = topo[head++];
+			for (int pos = outStart[v]; pos < outStart[v + 1]; pos++) {
+				int w = outAdj[pos];
+				if (--inDegree[w] == 0)
+					topo[tail++] = w;
+			}
+		}
+		int[] depth = new int[n];
+		int max = 0;
+		for (int i = n - 1; i >= 0; i--) {
+			int v = topo[i];
+			int d = 0;
+			for (int pos = outStart[v]; pos < outStart[v + 1]; pos++) {
+				d = Math.max(d, depth[outAdj[pos]] + 1);
+			}
+			depth[v] = d;
+			max = Math.max(max, d);
+		}
+		int[] layers = new int[n];
+		for (int v = 0; v < n; v++) {
+			layers[v] = max - depth[v];
+		}
+		return layers;
+	}
+
+	/**
+	 * Orders the nodes within the layers with alternating barycenter sweeps
+	 * over the successors and predecessors of the nodes.
+	 */
+	private int[][] orderLayers(int[] layers) {
+		int n = nodes.length;
+		int layerCount = 0;
+		for (int l : layers) {
+			layerCount = Math.max(layerCount, l + 1);
+		}
+		int[] sizes = new int[layerCount];
+		for (int l : layers) {
+			sizes[l]++;
+		}
+		int[][] order = new int[layerCount][];
+		for (int l = 0; l < layerCount; l++) {
+			order[l] = new int[sizes[l]];
+		}
+		int[] fill = new int[layerCount];
+		for (int v = 0; v < n; v++) {
+			order[layers[v]][fill[layers[v]]++] = v;
+		}
+
+		// predecessors in compressed sparse row format
+		int[] inStart = new int[n + 1];
+		for (int w : outAdj) {
+			inStart[w + 1]++;
+		}
+		for (int i = 0; i < n; i++) {
+			inStart[i + 1] += inStart[i];
+		}
+		int[] inAdj = new int[outAdj.length];
+		int[] inFill = Arrays.copyOf(inStart, n);
+		for (int v = 0; v < n; v++) {
+			for (int pos = outStart[v]; pos < outStart[v + 1]; pos++) {
+				int w = outAdj[pos];
+				inAdj[inFill[w]++] = v;
+			}
+		}
+
+		double[] pos = new double[n];
+		updatePositions(order, pos);
+		for (int sweep = 0; sweep < SWEEPS; sweep++) {
+			// from the sinks to the sources using the successors
+			for (int l = layerCount - 2; l >= 0; l--) {
+				sortLayer(order[l], pos, outStart, outAdj);
+				updatePositions(order[l], pos);
+			}
+			// from the sources to the sinks using the predecessors
+			for (int l = 1; l < layerCount; l++) {
+				sortLayer(order[l], pos, inStart, inAdj);
+				updatePositions(order[l], pos);
+			}
+		}
+		return order;
+	}
+
+	private void sortLayer(int[] layer, double[] pos, int[] start, int[] adj) {
+		int len = layer.length;
+		if (len < 2)
+			return;
+		double[] keys = new double[len];
+		Integer[] idx = new Integer[len];
+		for (int i = 0; i < len; i++) {
+			int v = layer[i];
+			idx[i] = i;
+			int degree = start[v + 1] - start[v];
+			if (degree == 0) {
+				keys[i] = pos[v]; // keep the current position
+				continue;
+			}
+			double sum = 0;
+			for (int p = start[v]; p < start[v + 1]; p++) {
+				sum += pos[adj[p]];
+			}
+			keys[i] = sum / degree;
+		}
+		Arrays.sort(idx, (i, j) -> Double.compare(keys[i], keys[j]));
+		int[] copy = Arrays.copyOf(layer, len);
+		for (int i = 0; i < len; i++) {
+			layer[i] = copy[idx[i]];
+		}
+	}
+
+	private void updatePositions(int[][] order, double[] pos) {
+		for (int[] layer : order) {
+			updatePositions(layer, pos);
+		}
+	}
+
+	/**
+	 * The positions are normalized to [0, 1] so that the barycenters of
+	 * layers with different sizes are comparable.
+	 */
+	private void updatePositions(int[] layer, double[] pos) {
+		int len = layer.length;
+		for (int i = 0; i < len; i++) {
+			pos[layer[i]] = len == 1 ? 0.5 : (double) i / (len - 1);
+		}
+	}
+
+	private void placeNodes(int[][] order) {
+		int layerCount = order.length;
+		int[] layerHeights = new int[layerCount];
+		int maxHeight = 0;
+		for (int l = 0; l < layerCount; l++) {
+			int h = 0;
+			for (int v : order[l]) {
+				h += heights[v] + LayoutManager.V_SPACE;
+			}
+			layerHeights[l] = h;
+			maxHeight = Math.max(maxHeight, h);
+		}
+		int x = LayoutManager.H_SPACE;
+		for (int l = 0; l < layerCount; l++) {
+			int y = LayoutManager.V_SPACE + (maxHeight - layerHeights[l]) / 2;
+			int width = 0;
+			for (int v : order[l]) {
+				xs[v] = x;
+				ys[v] = y;
+				y += heights[v] + LayoutManager.V_SPACE;
+				width = Math.max(width, widths[v]);
+			}
+			x += width + LayoutManager.H_SPACE;
+		}
+	}
+
+	/**
+	 * Sets the calculated positions directly as layout constraints of the
+	 * nodes; invisible nodes are moved to the origin.
+	 */
+	void apply() {
+		if (xs == null)
+			run();
+		for (int i = 0; i < nodes.length; i++) {
+			nodes[i].setXyLayoutConstraints(new Rectangle(
+					xs[i], ys[i], widths[i], heights[i]));
+		}
+		for (ProcessNode node : model.getChildren()) {
+			if (node.isVisible())
+				continue;
+			Dimension size = node.getSize();
+			node.setXyLayoutConstraints(
+					new Rectangle(0, 0, size.width, size.height));
+		}
+	}
+
+	/**
+	 * Creates a command that moves the nodes to the calculated positions as a
+	 * single undoable step. Returns null if the positions were not calculated
+	 * or the graph of the editor was replaced in the meantime. Nodes that
+	 * were removed in the meantime are ignored.
+	 */
+	public Command createCommand() {
+		if (xs == null || model.editor.getModel() != model)
+			return null;
+		Map<ProcessNode, Boolean> current = new IdentityHashMap<>();
+		for (ProcessNode node : model.getChildren()) {
+			current.put(node, Boolean.TRUE);
+		}
+		CompoundCommand command = new CompoundCommand(
+				M.Layout + ": " + LayoutType.LAYERED_LAYOUT.getDisplayName());
+		for (int i = 0; i < nodes.length; i++) {
+			ProcessNode node = nodes[i];
+			if (!current.containsKey(node))
+				continue;
+			Rectangle old = node.getXyLayoutConstraints();
+			if (old != null && old.x == xs[i] && old.y == ys[i])
+				continue;
+			command.add(XYLayoutCommand.move(node,
+					new Rectangle(xs[i], ys[i], widths[i], heights[i])));
+		}
+		return command.isEmpty() ? null : command;
+	}
+}
@@ -48,6 +48,10 @@ public class LayoutManager extends AbstractLayout {
 		layout.layout(node);
 	}
 
+	private void layoutAsLayeredGraph() {
+		new LayeredLayout(node).apply();
+	}
+
 	private void layoutXY() {
 		for (ProcessNode child : node.getChildren()) {
 			if (child.figure == null)
@@ -89,6 +93,9 @@ public class LayoutManager extends AbstractLayout {
 			case MINIMAL_TREE_LAYOUT:
 				layoutAsMinimalTree();
 				break;
+			case LAYERED_LAYOUT:
+				layoutAsLayeredGraph();
+				break;
 			}
 	}
 
@@ -7,7 +7,9 @@ public enum LayoutType {
 
 	MINIMAL_TREE_LAYOUT(M.MinimalTree),
 
-	TREE_LAYOUT(M.Tree);
+	TREE_LAYOUT(M.Tree),
+
+	LAYERED_LAYOUT(M.LayeredGraph);
 
 	private String displayName;
 
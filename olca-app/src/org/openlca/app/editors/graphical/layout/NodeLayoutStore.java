@@ -1,13 +1,29 @@
 package org.openlca.app.editors.graphical.layout;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.eclipse.draw2d.FigureCanvas;
+import org.eclipse.draw2d.geometry.Point;
+import org.eclipse.draw2d.geometry.Rectangle;
+import org.eclipse.gef.GraphicalViewer;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
 import org.openlca.app.db.DatabaseDir;
+import org.openlca.app.editors.graphical.ProductSystemGraphEditor;
 import org.openlca.app.editors.graphical.model.ProcessNode;
 import org.openlca.app.editors.graphical.model.ProductSystemNode;
 import org.openlca.core.model.ProductSystem;
@@ -15,86 +31,319 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.gson.stream.JsonReader;
-import com.google.gson.stream.JsonWriter;
 
+/**
+ * Stores the layout of the nodes of a product system graph in a binary,
+ * append-only file in the folder of the product system. Each record contains
+ * the layout of a node and is keyed by the process ID; when a layout is read,
+ * the last record of a process wins. On save, only the records of nodes that
+ * were moved, minimized, expanded etc. since the last save are appended
+ * together with removal records of nodes that are not visible anymore. The
+ * file is compacted when it contains too many outdated records.
+ * <p>
+ * Layouts of older versions, that were stored in a JSON file, are still read
+ * and converted on the next save.
+ */
 public final class NodeLayoutStore {
 
+	private static final String FILE = "layout.bin";
+	private static final String JSON_FILE = "layout.json";
+	private static final int MAGIC = 0x6f6c6179; // "olay"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 8;
+	private static final int RECORD_SIZE = 17; // long + 2 * int + byte
+
+	private static final byte MINIMIZED = 1;
+	private static final byte EXPANDED_LEFT = 2;
+	private static final byte EXPANDED_RIGHT = 4;
+	private static final byte MARKED = 8;
+	private static final byte REMOVED = 16;
+
+	/** The number of nodes that are applied per UI cycle on lazy loading. */
+	private static final int BATCH_SIZE = 500;
+
+	/**
+	 * The last saved or loaded state of the layout files of the open editors
+	 * (see {@link #close(ProductSystemNode)}).
+	 */
+	private static final Map<File, State> states = new HashMap<>();
+
+	/**
+	 * The layouts of the graphs that are loaded lazily and that are not
+	 * applied yet. They are guarded by the lock of the states map.
+	 */
+	private static final Map<ProductSystemNode, Pending> pending =
+			new HashMap<>();
+
 	private NodeLayoutStore() {
 	}
 
 	public static void saveLayout(ProductSystemNode model) {
 		if (model == null)
 			return;
-		List<NodeLayoutInfo> layoutInfo = new ArrayList<>();
+		Map<Long, NodeLayoutInfo> current = new LinkedHashMap<>();
 		for (ProcessNode node : model.getChildren()) {
 			if (!node.isVisible())
 				continue;
-			layoutInfo.add(new NodeLayoutInfo(node));
+			NodeLayoutInfo info = new NodeLayoutInfo(node);
+			current.put(info.id, info);
 		}
 		try {
-			File layoutFile = createLayoutFile(model);
-			writeAsJson(layoutInfo, layoutFile);
+			File file = getLayoutFile(model.getProductSystem());
+			synchronized (states) {
+
+				// the nodes of a lazily loaded layout that are not created
+				// yet are kept with their stored layout
+				Pending p = pending.get(model);
+				if (p != null) {
+					for (int i = p.applied; i < p.layouts.size(); i++) {
+						NodeLayoutInfo info = p.layouts.get(i);
+						current.putIfAbsent(info.id, info);
+					}
+				}
+
+				State state = getState(file);
+				List<NodeLayoutInfo> changed = new ArrayList<>();
+				for (NodeLayoutInfo info : current.values()) {
+					if (!same(info, state.layouts.get(info.id)))
+						changed.add(info);
+				}
+				List<Long> removed = new ArrayList<>();
+				for (Long id : state.layouts.keySet()) {
+					if (!current.containsKey(id))
+						removed.add(id);
+				}
+				if (changed.isEmpty() && removed.isEmpty()
+						&& state.isCurrent(file))
+					return; // nothing moved
+				long records = state.records + changed.size() + removed.size();
+				if (!state.isCurrent(file)
+						|| records > 2 * current.size() + 1000) {
+					writeAll(file, current);
+					state.records = current.size();
+				} else {
+					append(file, changed, removed);
+					state.records = records;
+				}
+				state.layouts.clear();
+				state.layouts.putAll(current);
+				state.update(file);
+			}
+			File json = new File(file.getParentFile(), JSON_FILE);
+			if (json.exists()) {
+				json.delete();
+			}
 		} catch (Exception e) {
 			Logger log = LoggerFactory.getLogger(NodeLayoutStore.class);
 			log.error("Failed to save layout", e);
 		}
 	}
 
-	private static void writeAsJson(List<NodeLayoutInfo> layoutInfo,
-			File file) throws IOException {
-		JsonWriter w = new JsonWriter(new FileWriter(file));
-		w.beginObject();
-		w.name("nodes");
-		w.beginArray();
-		for (NodeLayoutInfo layout : layoutInfo)
-			writeAsJson(layout, w);
-		w.endArray();
-		w.endObject();
-		w.flush();
-		w.close();
-	}
-
-	private static void writeAsJson(NodeLayoutInfo info,
-			JsonWriter w) throws IOException {
-		w.beginObject();
-		w.name("id");
-		w.value(info.id);
-		w.name("x");
-		w.value(info.getLocation().x);
-		w.name("y");
-		w.value(info.getLocation().y);
-		w.name("minimized");
-		w.value(info.minimized);
-		w.name("expandedLeft");
-		w.value(info.expandedLeft);
-		w.name("expandedRight");
-		w.value(info.expandedRight);
-		w.name("marked");
-		w.value(info.marked);
-		w.endObject();
+	/**
+	 * Removes the cached state of the layout file of the given graph and the
+	 * layouts that are not applied yet. This should be called when the editor
+	 * of the graph is closed.
+	 */
+	public static void close(ProductSystemNode model) {
+		if (model == null || model.getProductSystem() == null)
+			return;
+		File dir = DatabaseDir.getDir(model.getProductSystem());
+		synchronized (states) {
+			states.remove(new File(dir, FILE));
+			pending.remove(model);
+		}
+	}
+
+	private static boolean same(NodeLayoutInfo a, NodeLayoutInfo b) {
+		if (a == null || b == null)
+			return a == b;
+		return a.id == b.id
+				&& a.x == b.x
+				&& a.y == b.y
+				&& a.minimized == b.minimized
+				&& a.expandedLeft == b.expandedLeft
+				&& a.expandedRight == b.expandedRight
+				&& a.marked == b.marked;
+	}
+
+	private static void writeAll(File file,
+			Map<Long, NodeLayoutInfo> layouts) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			for (NodeLayoutInfo info : layouts.values()) {
+				write(out, info.id, info.x, info.y, flags(info));
+			}
+		}
+	}
+
+	private static void append(File file, List<NodeLayoutInfo> changed,
+			List<Long> removed) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file, true)))) {
+			for (NodeLayoutInfo info : changed) {
+				write(out, info.id, info.x, info.y, flags(info));
+			}
+			for (Long id : removed) {
+				write(out, id, 0, 0, REMOVED);
+			}
+		}
+	}
+
+	private static void write(DataOutputStream out, long id, int x, int y,
+			byte flags) throws IOException {
+		out.writeLong(id);
+		out.writeInt(x);
+		out.writeInt(y);
+		out.writeByte(flags);
 	}
 
+	private static byte flags(NodeLayoutInfo info) {
+		byte flags = 0;
+		if (info.minimized)
+			flags |= MINIMIZED;
+		if (info.expandedLeft)
+			flags |= EXPANDED_LEFT;
+		if (info.expandedRight)
+			flags |= EXPANDED_RIGHT;
+		if (info.marked)
+			flags |= MARKED;
+		return flags;
+	}
+
+	/**
+	 * Applies the stored layout to the given graph. All nodes are created
+	 * before this method returns.
+	 */
 	public static boolean loadLayout(ProductSystemNode node)
 			throws NodeLayoutException {
+		return loadLayout(node, false);
+	}
+
+	/**
+	 * Applies the stored layout to the given graph. When the layout is loaded
+	 * lazily, the nodes in the visible area of the editor are created first
+	 * and the other nodes are added in batches in the next UI cycles.
+	 */
+	public static boolean loadLayout(ProductSystemNode node, boolean lazy)
+			throws NodeLayoutException {
 		if (node == null || node.getProductSystem() == null)
 			return false;
 		File file = getLayoutFile(node.getProductSystem());
-		if (!file.exists())
-			return false;
-		try {
-			List<NodeLayoutInfo> layoutInfo = parseJson(file);
+		List<NodeLayoutInfo> layoutInfo;
+		synchronized (states) {
+			State state = getState(file);
+			if (state.layouts.isEmpty())
+				return false;
+			layoutInfo = new ArrayList<>(state.layouts.values());
+		}
+		if (!lazy || layoutInfo.size() <= BATCH_SIZE) {
+			prefetchExchanges(layoutInfo, node);
 			for (NodeLayoutInfo layout : layoutInfo)
 				apply(layout, node);
 			return true;
-		} catch (IOException e) {
-			Logger log = LoggerFactory.getLogger(NodeLayoutStore.class);
-			log.error("Failed to load layout", e);
-			return false;
 		}
+
+		// first the nodes in the visible area
+		Rectangle view = visibleArea(node.editor);
+		List<NodeLayoutInfo> visible = new ArrayList<>();
+		List<NodeLayoutInfo> rest = new ArrayList<>();
+		for (NodeLayoutInfo info : layoutInfo) {
+			if (view != null && view.contains(info.x, info.y))
+				visible.add(info);
+			else
+				rest.add(info);
+		}
+		prefetchExchanges(visible, node);
+		for (NodeLayoutInfo layout : visible)
+			apply(layout, node);
+		Display display = Display.getCurrent();
+		if (display == null || rest.isEmpty())
+			return true;
+		Pending p = new Pending(rest);
+		synchronized (states) {
+			pending.put(node, p);
+		}
+		applyLater(display, p, node);
+		return true;
 	}
 
-	private static void apply(NodeLayoutInfo info, ProductSystemNode model)
-			throws NodeLayoutException {
+	private static void applyLater(Display display, Pending p,
+			ProductSystemNode model) {
+		display.asyncExec(() -> {
+			synchronized (states) {
+				// the graph could have been replaced or closed in the
+				// meantime
+				if (pending.get(model) != p)
+					return;
+				if (model.editor.getModel() != model) {
+					pending.remove(model);
+					return;
+				}
+			}
+			int end = Math.min(p.layouts.size(), p.applied + BATCH_SIZE);
+			List<NodeLayoutInfo> batch = p.layouts.subList(p.applied, end);
+			prefetchExchanges(batch, model);
+			for (NodeLayoutInfo info : batch) {
+				apply(info, model);
+			}
+			synchronized (states) {
+				p.applied = end;
+				if (end >= p.layouts.size()) {
+					pending.remove(model);
+				}
+			}
+			if (end < p.layouts.size()) {
+				applyLater(display, p, model);
+			} else if (model.editor.getOutline() != null) {
+				model.editor.getOutline().refresh();
+			}
+		});
+	}
+
+	/**
+	 * Returns the visible area of the editor in the coordinates of the graph
+	 * or null if it cannot be determined.
+	 */
+	private static Rectangle visibleArea(ProductSystemGraphEditor editor) {
+		GraphicalViewer viewer = editor.getGraphicalViewer();
+		if (viewer == null)
+			return null;
+		Control control = viewer.getControl();
+		if (!(control instanceof FigureCanvas))
+			return null;
+		FigureCanvas canvas = (FigureCanvas) control;
+		Point location = canvas.getViewport().getViewLocation();
+		int width = canvas.getSize().x;
+		int height = canvas.getSize().y;
+		double zoom = editor.getZoomManager() != null
+				? editor.getZoomManager().getZoom()
+				: 1;
+		if (zoom <= 0)
+			zoom = 1;
+		return new Rectangle(
+				(int) (location.x / zoom), (int) (location.y / zoom),
+				(int) (width / zoom), (int) (height / zoom));
+	}
+
+	/**
+	 * Loads the exchanges of the maximized nodes in a batch before the nodes
+	 * are created.
+	 */
+	private static void prefetchExchanges(List<NodeLayoutInfo> layoutInfo,
+			ProductSystemNode model) {
+		List<Long> ids = new ArrayList<>();
+		for (NodeLayoutInfo info : layoutInfo) {
+			if (!info.minimized)
+				ids.add(info.id);
+		}
+		if (!ids.isEmpty()) {
+			model.editor.getExchangeCache().load(ids);
+		}
+	}
+
+	private static void apply(NodeLayoutInfo info, ProductSystemNode model) {
 		ProcessNode node = model.getProcessNode(info.id);
 		if (node != null) {
 			node.apply(info);
@@ -108,6 +357,77 @@ public final class NodeLayoutStore {
 		model.editor.createNecessaryLinks(node);
 	}
 
+	/**
+	 * Returns the last known state of the given layout file. The state is read
+	 * from the file if it is not cached or the file was changed outside of
+	 * this class.
+	 */
+	private static State getState(File file) {
+		State state = states.get(file);
+		if (state != null && state.isCurrent(file))
+			return state;
+		state = new State();
+		try {
+			if (file.exists()) {
+				read(file, state);
+				state.update(file);
+			} else {
+				File json = new File(file.getParentFile(), JSON_FILE);
+				if (json.exists()) {
+					for (NodeLayoutInfo info : parseJson(json)) {
+						state.layouts.put(info.id, info);
+					}
+				}
+				// forces a full write on the next save
+				state.length = -1;
+			}
+		} catch (Exception e) {
+			Logger log = LoggerFactory.getLogger(NodeLayoutStore.class);
+			log.error("Failed to load layout", e);
+			state.layouts.clear();
+			state.length = -1;
+		}
+		states.put(file, state);
+		return state;
+	}
+
+	private static void read(File file, State state) throws IOException {
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException("invalid layout file " + file);
+			long available = (file.length() - HEADER_SIZE) / RECORD_SIZE;
+			for (long i = 0; i < available; i++) {
+				long id;
+				int x;
+				int y;
+				byte flags;
+				try {
+					id = in.readLong();
+					x = in.readInt();
+					y = in.readInt();
+					flags = in.readByte();
+				} catch (EOFException e) {
+					break; // an incomplete last record
+				}
+				state.records++;
+				if ((flags & REMOVED) != 0) {
+					state.layouts.remove(id);
+					continue;
+				}
+				NodeLayoutInfo info = new NodeLayoutInfo();
+				info.id = id;
+				info.x = x;
+				info.y = y;
+				info.minimized = (flags & MINIMIZED) != 0;
+				info.expandedLeft = (flags & EXPANDED_LEFT) != 0;
+				info.expandedRight = (flags & EXPANDED_RIGHT) != 0;
+				info.marked = (flags & MARKED) != 0;
+				state.layouts.put(id, info);
+			}
+		}
+	}
+
 	private static List<NodeLayoutInfo> parseJson(
 			File fromFile) throws IOException {
 		List<NodeLayoutInfo> layoutInfo = new ArrayList<>();
@@ -146,21 +466,54 @@ public final class NodeLayoutStore {
 		return info;
 	}
 
-	private static File createLayoutFile(
-			ProductSystemNode node) throws IOException {
-		File f = getLayoutFile(node.getProductSystem());
-		if (f.exists())
-			f.delete();
-		f.createNewFile();
-		return f;
-	}
-
 	private static File getLayoutFile(ProductSystem system) {
 		File dir = DatabaseDir.getDir(system);
 		if (!dir.exists())
 			dir.mkdirs();
-		File layoutFile = new File(dir, "layout.json");
-		return layoutFile;
+		return new File(dir, FILE);
+	}
+
+	/** The known content of a layout file. */
+	private static class State {
+
+		/** The current layouts: process ID -> layout. */
+		final Map<Long, NodeLayoutInfo> layouts = new LinkedHashMap<>();
+
+		/** The number of records in the file, including outdated ones. */
+		long records;
+
+		/** The length of the file when it was last read or written. */
+		long length;
+
+		/** The modification time of the file when it was last read or saved. */
+		long lastModified;
+
+		/**
+		 * Returns true if the file was not changed since it was last read or
+		 * written.
+		 */
+		boolean isCurrent(File file) {
+			return length == file.length()
+					&& lastModified == file.lastModified();
+		}
+
+		void update(File file) {
+			length = file.length();
+			lastModified = file.lastModified();
+		}
+	}
+
+	/** The layouts of a lazily loaded graph that are not applied yet. */
+	private static class Pending {
+
+		final List<NodeLayoutInfo> layouts;
+
+		/** The number of layouts that were already applied. */
+		int applied;
+
+		Pending(List<NodeLayoutInfo> layouts) {
+			this.layouts = layouts;
+		}
 	}
 
 	public static class NodeLayoutException extends Exception {
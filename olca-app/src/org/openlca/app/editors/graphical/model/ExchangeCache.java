@@ -0,0 +1,261 @@
+package org.openlca.app.editors.graphical.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.openlca.app.db.Cache;
+import org.openlca.core.database.FlowDao;
+import org.openlca.core.database.IDatabase;
+import org.openlca.core.database.NativeSql;
+import org.openlca.core.model.Exchange;
+import org.openlca.core.model.Flow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gnu.trove.map.hash.TLongLongHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+
+/**
+ * A per-editor cache of the product and waste exchanges of the processes in
+ * the graph. The exchanges are loaded with plain SQL queries in batches for a
+ * set of processes so that the nodes can be created and expanded without
+ * loading the full process entities. The returned exchanges are detached,
+ * lightweight objects that only contain the ID, direction, amount, avoided
+ * flag, default provider, and flow of an exchange; they must not be modified
+ * or stored.
+ * <p>
+ * The cache is cleared when the application caches change (see
+ * Cache#getChangeStamp), e.g. when a process was saved.
+ */
+public class ExchangeCache {
+
+	private static final int CHUNK_SIZE = 1000;
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	private final IDatabase db;
+
+	/** process ID -> product and waste exchanges */
+	private final TLongObjectHashMap<List<Exchange>> exchanges = new TLongObjectHashMap<>();
+	/** process ID -> flow ID of the quantitative reference */
+	private final TLongLongHashMap qRefs = new TLongLongHashMap();
+	private final TLongHashSet qRefsLoaded = new TLongHashSet();
+	private final TLongObjectHashMap<Flow> flows = new TLongObjectHashMap<>();
+	/** flow ID -> processes with an input or output of that flow */
+	private final TLongObjectHashMap<long[]> inputsOf = new TLongObjectHashMap<>();
+	private final TLongObjectHashMap<long[]> outputsOf = new TLongObjectHashMap<>();
+
+	private long stamp;
+
+	public ExchangeCache(IDatabase db) {
+		this.db = db;
+		this.stamp = Cache.getChangeStamp();
+	}
+
+	/**
+	 * Returns the product and waste exchanges of the given process. If they
+	 * are not cached yet, they are loaded for this process only; use
+	 * {@link #load(Collection)} to load the exchanges of multiple processes in
+	 * a batch.
+	 */
+	public synchronized List<Exchange> get(long processId) {
+		checkStamp();
+		List<Exchange> list = exchanges.get(processId);
+		if (list != null)
+			return list;
+		load(Collections.singleton(processId));
+		list = exchanges.get(processId);
+		return list != null ? list : Collections.emptyList();
+	}
+
+	/**
+	 * Loads the product and waste exchanges of the given processes that are
+	 * not cached yet.
+	 */
+	public synchronized void load(Collection<Long> processIds) {
+		checkStamp();
+		List<Long> ids = new ArrayList<>();
+		for (Long id : processIds) {
+			if (id != null && !exchanges.containsKey(id))
+				ids.add(id);
+		}
+		if (ids.isEmpty())
+			return;
+		for (Long id : ids) {
+			exchanges.put(id, new ArrayList<>());
+		}
+		TLongLongHashMap flowIds = new TLongLongHashMap();
+		for (int i = 0; i < ids.size(); i += CHUNK_SIZE) {
+			List<Long> chunk = ids.subList(i,
+					Math.min(ids.size(), i + CHUNK_SIZE));
+			String sql = "select e.id, e.f_owner, e.f_flow, e.is_input, "
+					+ " e.resulting_amount_value, e.avoided_product, "
+					+ " e.f_default_provider from tbl_exchanges e"
+					+ " inner join tbl_flows f on e.f_flow = f.id"
+					+ " where f.flow_type <> 'ELEMENTARY_FLOW'"
+					+ " and e.f_owner in (" + in(chunk) + ")";
+			try {
+				NativeSql.on(db).query(sql, r -> {
+					Exchange e = new Exchange();
+					e.id = r.getLong(1);
+					long owner = r.getLong(2);
+					e.isInput = r.getBoolean(4);
+					e.amount = r.getDouble(5);
+					e.isAvoided = r.getBoolean(6);
+					e.defaultProviderId = r.getLong(7);
+					exchanges.get(owner).add(e);
+					flowIds.put(e.id, r.getLong(3));
+					return true;
+				});
+			} catch (Exception e) {
+				log.error("failed to load exchanges of processes", e);
+			}
+		}
+		loadFlows(flowIds);
+		for (Long id : ids) {
+			List<Exchange> list = exchanges.get(id);
+			List<Exchange> valid = new ArrayList<>(list.size());
+			for (Exchange e : list) {
+				e.flow = flows.get(flowIds.get(e.id));
+				if (e.flow != null)
+					valid.add(e);
+			}
+			exchanges.put(id, valid);
+		}
+	}
+
+	private void loadFlows(TLongLongHashMap flowIds) {
+		Set<Long> missing = new HashSet<>();
+		for (long flowId : flowIds.values()) {
+			if (!flows.containsKey(flowId))
+				missing.add(flowId);
+		}
+		if (missing.isEmpty())
+			return;
+		for (Flow flow : new FlowDao(db).getForIds(missing)) {
+			flows.put(flow.id, flow);
+		}
+	}
+
+	/**
+	 * Returns the ID of the reference flow of the given process or 0 if the
+	 * process has no quantitative reference.
+	 */
+	public synchronized long getReferenceFlow(long processId) {
+		checkStamp();
+		if (qRefsLoaded.contains(processId))
+			return qRefs.get(processId);
+		qRefsLoaded.add(processId);
+		String sql = "select e.f_flow from tbl_processes p"
+				+ " inner join tbl_exchanges e"
+				+ " on p.f_quantitative_reference = e.id"
+				+ " where p.id = " + processId;
+		try {
+			NativeSql.on(db).query(sql, r -> {
+				qRefs.put(processId, r.getLong(1));
+				return false;
+			});
+		} catch (Exception e) {
+			log.error("failed to load reference flow of " + processId, e);
+		}
+		return qRefs.get(processId);
+	}
+
+	/**
+	 * Returns the IDs of the possible providers of the given exchange: the
+	 * processes with an output of the flow of an input and the processes with
+	 * an input of the flow of an output.
+	 */
+	public synchronized long[] getProviders(Exchange e) {
+		checkStamp();
+		if (e == null || e.flow == null)
+			return new long[0];
+		TLongObjectHashMap<long[]> map = e.isInput ? outputsOf : inputsOf;
+		long[] providers = map.get(e.flow.id);
+		if (providers != null)
+			return providers;
+		loadProviders(Collections.singleton(e.flow.id));
+		providers = map.get(e.flow.id);
+		return providers != null ? providers : new long[0];
+	}
+
+	/**
+	 * Loads the processes with inputs and outputs of the given flows in a
+	 * batch; see {@link #getProviders(Exchange)}.
+	 */
+	public synchronized void loadProviders(Collection<Long> flowIds) {
+		checkStamp();
+		List<Long> ids = new ArrayList<>();
+		for (Long id : flowIds) {
+			if (id != null && !(inputsOf.containsKey(id)
+					&& outputsOf.containsKey(id)))
+				ids.add(id);
+		}
+		if (ids.isEmpty())
+			return;
+		TLongObjectHashMap<TLongHashSet> inputs = new TLongObjectHashMap<>();
+		TLongObjectHashMap<TLongHashSet> outputs = new TLongObjectHashMap<>();
+		for (int i = 0; i < ids.size(); i += CHUNK_SIZE) {
+			List<Long> chunk = ids.subList(i,
+					Math.min(ids.size(), i + CHUNK_SIZE));
+			String sql = "select f_flow, f_owner, is_input from tbl_exchanges"
+					+ " where f_flow in (" + in(chunk) + ")";
+			try {
+				NativeSql.on(db).query(sql, r -> {
+					long flow = r.getLong(1);
+					TLongObjectHashMap<TLongHashSet> map = r.getBoolean(3)
+							? inputs
+							: outputs;
+					TLongHashSet set = map.get(flow);
+					if (set == null) {
+						set = new TLongHashSet();
+						map.put(flow, set);
+					}
+					set.add(r.getLong(2));
+					return true;
+				});
+			} catch (Exception e) {
+				log.error("failed to load providers of flows", e);
+			}
+		}
+		for (Long id : ids) {
+			TLongHashSet in = inputs.get(id);
+			TLongHashSet out = outputs.get(id);
+			inputsOf.put(id, in != null ? in.toArray() : new long[0]);
+			outputsOf.put(id, out != null ? out.toArray() : new long[0]);
+		}
+	}
+
+	/** Removes all cached data. */
+	public synchronized void clear() {
+		exchanges.clear();
+		qRefs.clear();
+		qRefsLoaded.clear();
+		flows.clear();
+		inputsOf.clear();
+		outputsOf.clear();
+		stamp = Cache.getChangeStamp();
+	}
+
+	private void checkStamp() {
+		if (stamp != Cache.getChangeStamp()) {
+			log.trace("application cache changed; clear exchange cache");
+			clear();
+		}
+	}
+
+	private String in(List<Long> ids) {
+		StringBuilder in = new StringBuilder();
+		for (Long id : ids) {
+			if (in.length() > 0) {
+				in.append(',');
+			}
+			in.append(id);
+		}
+		return in.toString();
+	}
+}
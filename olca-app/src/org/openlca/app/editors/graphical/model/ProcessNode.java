@@ -15,12 +15,10 @@ import org.openlca.app.editors.graphical.layout.NodeLayoutInfo;
 import org.openlca.app.editors.graphical.search.MutableProcessLinkSearchMap;
 import org.openlca.app.util.Labels;
 import org.openlca.core.database.EntityCache;
-import org.openlca.core.database.ProcessDao;
 import org.openlca.core.database.ProductSystemDao;
 import org.openlca.core.model.Exchange;
 import org.openlca.core.model.FlowType;
 import org.openlca.core.model.ModelType;
-import org.openlca.core.model.Process;
 import org.openlca.core.model.ProcessLink;
 import org.openlca.core.model.ProcessType;
 import org.openlca.core.model.ProductSystem;
@@ -159,17 +157,10 @@ public class ProcessNode extends Node {
 
 	private void initializeExchangeNodes() {
 		if (this.process.type == ModelType.PROCESS) {
-			ProcessDao dao = new ProcessDao(Database.get());
-			Process p = dao.getForId(this.process.id);
-			if (p == null)
-				return;
-			List<Exchange> list = new ArrayList<>();
-			for (Exchange e : p.exchanges) {
-				if (e.flow.flowType == FlowType.ELEMENTARY_FLOW)
-					continue;
-				list.add(e);
-			}
-			add(new IONode(list));
+			// the product and waste exchanges are loaded from the
+			// exchange cache of the editor and not from the process
+			ExchangeCache cache = parent().editor.getExchangeCache();
+			add(new IONode(cache.get(this.process.id)));
 		} else if (this.process.type == ModelType.PRODUCT_SYSTEM) {
 			ProductSystemDao dao = new ProductSystemDao(Database.get());
 			ProductSystem s = dao.getForId(this.process.id);
@@ -44,7 +44,7 @@ class ProductSystemFigure extends Figure {
 		if (!node.editor.isInitialized()) {
 			node.editor.setInitialized(true);
 			try {
-				layoutLoaded = NodeLayoutStore.loadLayout(node);
+				layoutLoaded = NodeLayoutStore.loadLayout(node, true);
 			} catch (NodeLayoutException e) {
 				layoutLoaded = false;
 			}
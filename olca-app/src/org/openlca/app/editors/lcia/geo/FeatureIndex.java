@@ -0,0 +1,184 @@
+package org.openlca.app.editors.lcia.geo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.openlca.geo.calc.Bounds;
+import org.openlca.geo.calc.IntersectionCalculator;
+import org.openlca.geo.geojson.Feature;
+import org.openlca.geo.geojson.FeatureCollection;
+import org.openlca.geo.geojson.Geometry;
+import org.openlca.util.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A spatial index (an STR-tree) over the features of a calculation setup. For
+ * a location geometry, the intersections are then only calculated with the
+ * features which bounding boxes intersect with the bounding box of the
+ * location. The intersection calculators are cached per set of candidate
+ * features, as many locations (e.g. neighbouring regions) hit the same
+ * features.
+ * <p>
+ * The bounding boxes of the features are stored in a file next to the GeoJSON
+ * file of the setup (with the extension `.bounds`) so that they do not need to
+ * be calculated again when the same file is used in another session. The file
+ * is only used when the size and modification time of the GeoJSON file did not
+ * change.
+ */
+class FeatureIndex {
+
+	private static final int FILE_VERSION = 1;
+
+	/** The maximum number of cached intersection calculators. */
+	private static final int MAX_CALCULATORS = 1000;
+
+	private final FeatureCollection coll;
+	private final STRtree tree = new STRtree();
+	private final Map<List<Integer>, IntersectionCalculator> calculators =
+			new ConcurrentHashMap<>();
+
+	private FeatureIndex(FeatureCollection coll) {
+		this.coll = coll;
+	}
+
+	static FeatureIndex of(String file, FeatureCollection coll) {
+		FeatureIndex index = new FeatureIndex(coll);
+		File geojson = file != null ? new File(file) : null;
+		File boundsFile = geojson != null
+				? new File(file + ".bounds")
+				: null;
+		double[] bounds = read(geojson, boundsFile, coll.features.size());
+		if (bounds == null) {
+			bounds = calculate(coll);
+			if (geojson != null && geojson.exists()) {
+				write(geojson, boundsFile, bounds);
+			}
+		}
+		for (int i = 0; i < coll.features.size(); i++) {
+			int offset = 4 * i;
+			if (Double.isNaN(bounds[offset]))
+				continue;
+			Envelope env = new Envelope(
+					bounds[offset], bounds[offset + 1],
+					bounds[offset + 2], bounds[offset + 3]);
+			index.tree.insert(env, i);
+		}
+		index.tree.build();
+		return index;
+	}
+
+	/**
+	 * Calculates the shares of the intersections of the given geometry with the
+	 * features of this index; see IntersectionCalculator#shares.
+	 */
+	List<Pair<Feature, Double>> shares(Geometry g) {
+		if (g == null)
+			return Collections.emptyList();
+		Bounds b = Bounds.of(g);
+		if (b == null || b.isNil)
+			return Collections.emptyList();
+		List<?> hits = tree.query(
+				new Envelope(b.minX, b.maxX, b.minY, b.maxY));
+		if (hits.isEmpty())
+			return Collections.emptyList();
+
+		// keep the order of the features in the collection
+		List<Integer> idx = new ArrayList<>(hits.size());
+		for (Object hit : hits) {
+			idx.add((Integer) hit);
+		}
+		Collections.sort(idx);
+		IntersectionCalculator calculator = calculators.get(idx);
+		if (calculator == null) {
+			FeatureCollection candidates = new FeatureCollection();
+			for (int i : idx) {
+				candidates.features.add(coll.features.get(i));
+			}
+			calculator = IntersectionCalculator.on(candidates);
+			if (calculators.size() >= MAX_CALCULATORS) {
+				calculators.clear();
+			}
+			calculators.put(idx, calculator);
+		}
+		return calculator.shares(g);
+	}
+
+	/**
+	 * Calculates the bounding boxes of the features: minX, maxX, minY, maxY for
+	 * each feature; NaN values are stored for features without geometry.
+	 */
+	private static double[] calculate(FeatureCollection coll) {
+		int n = coll.features.size();
+		double[] bounds = new double[4 * n];
+		for (int i = 0; i < n; i++) {
+			Feature f = coll.features.get(i);
+			Bounds b = f != null && f.geometry != null
+					? Bounds.of(f.geometry)
+					: null;
+			int offset = 4 * i;
+			if (b == null || b.isNil) {
+				for (int k = 0; k < 4; k++) {
+					bounds[offset + k] = Double.NaN;
+				}
+				continue;
+			}
+			bounds[offset] = b.minX;
+			bounds[offset + 1] = b.maxX;
+			bounds[offset + 2] = b.minY;
+			bounds[offset + 3] = b.maxY;
+		}
+		return bounds;
+	}
+
+	private static double[] read(File geojson, File file, int count) {
+		if (geojson == null || file == null || !file.exists())
+			return null;
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != FILE_VERSION
+					|| in.readLong() != geojson.length()
+					|| in.readLong() != geojson.lastModified()
+					|| in.readInt() != count)
+				return null;
+			double[] bounds = new double[4 * count];
+			for (int i = 0; i < bounds.length; i++) {
+				bounds[i] = in.readDouble();
+			}
+			return bounds;
+		} catch (Exception e) {
+			Logger log = LoggerFactory.getLogger(FeatureIndex.class);
+			log.warn("failed to read feature bounds from " + file, e);
+			return null;
+		}
+	}
+
+	private static void write(File geojson, File file, double[] bounds) {
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(FILE_VERSION);
+			out.writeLong(geojson.length());
+			out.writeLong(geojson.lastModified());
+			out.writeInt(bounds.length / 4);
+			for (double b : bounds) {
+				out.writeDouble(b);
+			}
+		} catch (Exception e) {
+			// the folder of the GeoJSON file could be read-only
+			Logger log = LoggerFactory.getLogger(FeatureIndex.class);
+			log.warn("failed to write feature bounds to " + file, e);
+		}
+	}
+}
@@ -5,20 +5,22 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.DoubleBinaryOperator;
 import java.util.stream.Collectors;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.openlca.app.components.mapview.LocationGeometries;
 import org.openlca.app.db.Database;
 import org.openlca.core.database.IDatabase;
 import org.openlca.core.model.ImpactCategory;
 import org.openlca.core.model.ImpactFactor;
 import org.openlca.core.model.Location;
 import org.openlca.expressions.FormulaInterpreter;
-import org.openlca.geo.calc.IntersectionCalculator;
 import org.openlca.geo.geojson.Feature;
 import org.openlca.geo.geojson.FeatureCollection;
-import org.openlca.geo.geojson.MsgPack;
-import org.openlca.util.BinUtils;
+import org.openlca.geo.geojson.Geometry;
 import org.openlca.util.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,6 +34,7 @@ class GeoFactorCalculator implements Runnable {
 	private final ImpactCategory impact;
 	private final List<Location> locations;
 	private final Logger log = LoggerFactory.getLogger(getClass());
+	private volatile boolean finished;
 
 	GeoFactorCalculator(
 			Setup setup, ImpactCategory impact, List<Location> locations) {
@@ -42,6 +45,14 @@ class GeoFactorCalculator implements Runnable {
 
 	@Override
 	public void run() {
+		run(new NullProgressMonitor());
+	}
+
+	/**
+	 * Runs the calculation. When the calculation is canceled in the
+	 * intersection stage, no factors are generated.
+	 */
+	void run(IProgressMonitor monitor) {
 
 		// check the input
 		if (setup == null || impact == null) {
@@ -60,28 +71,62 @@ class GeoFactorCalculator implements Runnable {
 
 		// calculate the intersections, parameter values,
 		// and finally generate the LCIA factors
+		monitor.beginTask("Calculate regionalized factors",
+				locations.size() + 2);
+		monitor.subTask("Build spatial index");
 		FeatureCollection coll = setup.getFeatures();
 		if (coll == null || coll.features.isEmpty()) {
 			log.error("no features available for the "
 					+ "intersection calculation");
 			return;
 		}
-		Map<Location, List<Pair<GeoParam, Double>>> params = calcParamVals(coll);
+		FeatureIndex index = setup.getIndex();
+		monitor.worked(1);
+		Map<Location, List<Pair<GeoParam, Double>>> params = calcParamVals(
+				index, monitor);
+		if (params == null) {
+			log.info("calculation of regionalized factors canceled");
+			monitor.done();
+			return;
+		}
+		monitor.subTask("Generate factors");
 		createFactors(params);
+		monitor.done();
+		finished = true;
+	}
+
+	/**
+	 * Returns true if the factors were generated, false if the calculation was
+	 * canceled or could not be executed.
+	 */
+	boolean hasFinished() {
+		return finished;
 	}
 
 	/**
 	 * Calculates the parameter values for the given locations from the respective
-	 * intersections with the given feature collection and the aggregation function
-	 * that is defined in the respective parameter.
+	 * intersections with the features of the given index and the aggregation
+	 * function that is defined in the respective parameter. Returns null when the
+	 * calculation was canceled.
 	 */
 	private Map<Location, List<Pair<GeoParam, Double>>> calcParamVals(
-			FeatureCollection coll) {
-		IntersectionCalculator calc = IntersectionCalculator.on(coll);
+			FeatureIndex index, IProgressMonitor monitor) {
+		AtomicInteger finished = new AtomicInteger();
 		Map<Location, List<Pair<Feature, Double>>> map = locations
 				.parallelStream()
-				.map(loc -> Pair.of(loc, calcIntersections(loc, calc)))
+				.map(loc -> {
+					if (monitor.isCanceled())
+						return Pair.of(loc, Collections.<Pair<Feature, Double>> emptyList());
+					List<Pair<Feature, Double>> shares = calcIntersections(
+							loc, index);
+					monitor.subTask("Intersections: " + finished.incrementAndGet()
+							+ " of " + locations.size() + " locations");
+					monitor.worked(1);
+					return Pair.of(loc, shares);
+				})
 				.collect(Collectors.toMap(p -> p.first, p -> p.second));
+		if (monitor.isCanceled())
+			return null;
 
 		Map<Location, List<Pair<GeoParam, Double>>> locParams = new HashMap<>();
 		map.forEach((loc, pairs) -> {
@@ -118,29 +163,14 @@ class GeoFactorCalculator implements Runnable {
 	 * Calculates the intersection of the given location.
 	 */
 	private List<Pair<Feature, Double>> calcIntersections(
-			Location loc, IntersectionCalculator calc) {
-		if (loc.geodata == null) {
-			log.info("No geodata for location {} found", loc);
-			return Collections.emptyList();
-		}
+			Location loc, FeatureIndex index) {
 		try {
-			byte[] data = BinUtils.gunzip(loc.geodata);
-			if (data == null) {
-				log.info("No geodata for location {} found", loc);
-				return Collections.emptyList();
-			}
-			FeatureCollection coll = MsgPack.unpack(data);
-			if (coll == null || coll.features.isEmpty()) {
+			Geometry g = LocationGeometries.get(loc);
+			if (g == null) {
 				log.info("No geodata for location {} found", loc);
 				return Collections.emptyList();
 			}
-			Feature f = coll.features.get(0);
-			if (f == null || f.geometry == null) {
-				log.info("No geodata for location {} found", loc);
-				return Collections.emptyList();
-			}
-
-			List<Pair<Feature, Double>> s = calc.shares(f.geometry);
+			List<Pair<Feature, Double>> s = index.shares(g);
 			log.trace("Calculated intersetions for location {}", loc);
 			return s;
 		} catch (Exception e) {
@@ -12,9 +12,9 @@ import org.eclipse.jface.viewers.LabelProvider;
 import org.eclipse.jface.viewers.TableViewer;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.forms.widgets.FormToolkit;
 import org.eclipse.ui.forms.widgets.Section;
-import org.openlca.app.App;
 import org.openlca.app.M;
 import org.openlca.app.components.FormulaCellEditor;
 import org.openlca.app.components.ModelSelectionDialog;
@@ -37,6 +37,8 @@ import org.openlca.core.model.Parameter;
 import org.openlca.core.model.descriptors.CategorizedDescriptor;
 import org.openlca.geo.geojson.FeatureCollection;
 import org.openlca.io.CategoryPath;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 class GeoFlowSection {
 
@@ -146,12 +148,19 @@ class GeoFlowSection {
 
 		GeoFactorCalculator calc = new GeoFactorCalculator(
 				page.setup, page.editor.getModel(), locations);
-		App.runWithProgress("Calculate regionalized factors", calc, () -> {
-			page.editor.setDirty(true);
-			page.editor.postEvent(
-					page.editor.FACTORS_CHANGED_EVENT, this);
-			page.editor.setActivePage("ImpactFactorPage");
-		});
+		try {
+			PlatformUI.getWorkbench().getProgressService()
+					.run(true, true, calc::run);
+		} catch (Exception e) {
+			Logger log = LoggerFactory.getLogger(getClass());
+			log.error("failed to calculate regionalized factors", e);
+		}
+		if (!calc.hasFinished())
+			return;
+		page.editor.setDirty(true);
+		page.editor.postEvent(
+				page.editor.FACTORS_CHANGED_EVENT, this);
+		page.editor.setActivePage("ImpactFactorPage");
 	}
 
 	void update() {
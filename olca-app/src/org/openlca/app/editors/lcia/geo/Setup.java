@@ -30,6 +30,7 @@ class Setup {
 	final List<GeoFlowBinding> bindings = new ArrayList<>();
 
 	private FeatureCollection features;
+	private FeatureIndex index;
 
 	private Setup(String file) {
 		this.file = file;
@@ -63,6 +64,17 @@ class Setup {
 		}
 	}
 
+	/**
+	 * Returns the spatial index of the features of this setup. The index is
+	 * built when this method is called the first time.
+	 */
+	synchronized FeatureIndex getIndex() {
+		if (index != null)
+			return index;
+		index = FeatureIndex.of(file, getFeatures());
+		return index;
+	}
+
 	private void initParams() {
 		FeatureCollection coll = getFeatures();
 		if (coll == null)
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -62,8 +63,6 @@ import org.openlca.core.model.Version;
 import org.openlca.core.model.descriptors.CategorizedDescriptor;
 import org.openlca.core.model.descriptors.ImpactCategoryDescriptor;
 import org.openlca.core.model.descriptors.ProcessDescriptor;
-import org.openlca.expressions.FormulaInterpreter;
-import org.openlca.expressions.Scope;
 import org.openlca.util.Strings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -98,6 +97,7 @@ public class BigParameterTable extends SimpleFormEditor {
 	private class Page extends FormPage {
 
 		private final List<Param> params = new ArrayList<>();
+		private FormulaEngine engine;
 		private TableViewer table;
 		private Text filter;
 		private FilterCombo filterCombo;
@@ -229,43 +229,34 @@ public class BigParameterTable extends SimpleFormEditor {
 		}
 
 		private void evaluateFormulas() {
-			var fi = buildInterpreter();
+			if (engine == null) {
+				engine = buildEngine();
+			}
+			engine.evaluate();
 			for (var param : params) {
-				var p = param.parameter;
-				if (p.isInputParameter) {
-					param.evalError = false;
-					continue;
-				}
-				var scope = param.ownerID == null
-						? fi.getGlobalScope()
-						: fi.getScopeOrGlobal(param.ownerID);
-				try {
-					p.value = scope.eval(p.formula);
-					param.evalError = false;
-				} catch (Exception e) {
-					param.evalError = true;
-				}
+				param.evalError = engine.hasError(param.parameter);
 			}
 		}
 
 		/**
-		 * Bind the parameter values and formulas to the respective scopes of a
-		 * formula interpreter.
+		 * Bind the parameters to the respective scopes of a formula engine.
 		 */
-		private FormulaInterpreter buildInterpreter() {
-			var fi = new FormulaInterpreter();
+		private FormulaEngine buildEngine() {
+			List<Parameter> globals = new ArrayList<>();
+			Map<Long, List<Parameter>> locals = new HashMap<>();
 			for (var param : params) {
-				Scope scope = param.ownerID == null
-						? fi.getGlobalScope()
-						: fi.getOrCreate(param.ownerID);
-				var p = param.parameter;
-				if (p.isInputParameter) {
-					scope.bind(p.name, p.value);
-				} else {
-					scope.bind(p.name, p.formula);
+				if (param.ownerID == null) {
+					globals.add(param.parameter);
+					continue;
 				}
+				locals.computeIfAbsent(param.ownerID, id -> new ArrayList<>())
+						.add(param.parameter);
+			}
+			var engine = new FormulaEngine().bindGlobals(globals);
+			for (var e : locals.entrySet()) {
+				engine.bind(e.getKey(), e.getValue());
 			}
-			return fi;
+			return engine;
 		}
 
 		private void onEdit() {
@@ -293,7 +284,6 @@ public class BigParameterTable extends SimpleFormEditor {
 
 			// build dialog with validation
 			InputDialog dialog;
-			FormulaInterpreter fi = null;
 			if (p.isInputParameter) {
 				dialog = new InputDialog(UI.shell(),
 						"Edit value", "Set a new parameter value",
@@ -306,10 +296,11 @@ public class BigParameterTable extends SimpleFormEditor {
 							}
 						});
 			} else {
-				fi = buildInterpreter();
-				var scope = param.ownerID == null
-						? fi.getGlobalScope()
-						: fi.getScopeOrGlobal(param.ownerID);
+				if (engine == null) {
+					engine = buildEngine();
+					engine.evaluate();
+				}
+				var scope = engine.getScope(param.ownerID);
 				dialog = new InputDialog(UI.shell(),
 						"Edit formula", "Set a new parameter formula",
 						p.formula, s -> {
@@ -337,13 +328,10 @@ public class BigParameterTable extends SimpleFormEditor {
 				} catch (Exception e) {
 					param.evalError = true;
 				}
-			} else if (fi != null) {
+			} else if (engine != null) {
 				try {
 					p.formula = val;
-					var scope = param.ownerID == null
-							? fi.getGlobalScope()
-							: fi.getScopeOrGlobal(param.ownerID);
-					p.value = scope.eval(val);
+					p.value = engine.getScope(param.ownerID).eval(val);
 					param.evalError = false;
 				} catch (Exception e) {
 					param.evalError = true;
@@ -357,6 +345,20 @@ public class BigParameterTable extends SimpleFormEditor {
 			Version.incUpdate(p);
 			param.parameter = dao.update(p);
 
+			// evaluate the parameter and its dependents again
+			if (engine != null) {
+				Map<Parameter, Param> index = new IdentityHashMap<>();
+				for (var other : params) {
+					index.put(other.parameter, other);
+				}
+				for (var u : engine.update(param.ownerID, param.parameter)) {
+					var other = index.get(u);
+					if (other != null) {
+						other.evalError = engine.hasError(u);
+					}
+				}
+			}
+
 			// update the owner; we also close a possible
 			// opened editor just to make sure that the
 			// user does not get confused with a state that
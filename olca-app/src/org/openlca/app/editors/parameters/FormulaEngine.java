@@ -0,0 +1,360 @@
+package org.openlca.app.editors.parameters;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openlca.core.model.Parameter;
+import org.openlca.expressions.FormulaInterpreter;
+import org.openlca.expressions.Scope;
+import org.openlca.formula.Formulas;
+import org.openlca.util.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Evaluates the formulas of parameters in the order of their dependencies.
+ * The variables of a formula are extracted once when the parameters are
+ * bound; the parameters of a scope are then evaluated in topological order
+ * and each result is bound as a plain value, so that every formula is
+ * evaluated exactly once and dependent formulas do not evaluate their
+ * dependencies again. The global parameters are evaluated first; the local
+ * scopes (of processes and LCIA categories) are independent from each other
+ * and are evaluated in parallel.
+ * <p>
+ * When a parameter is changed via {@link #update(Long, Parameter)}, only the
+ * parameters that depend on it (also in other scopes for global parameters)
+ * are evaluated again.
+ */
+public class FormulaEngine {
+
+	/**
+	 * The value that is bound for parameters in cycles. It is a variable that
+	 * is never defined, so that formulas that use such a parameter fail
+	 * instead of evaluating the cycle again.
+	 */
+	private static final String CYCLE = "__parameter_cycle__";
+
+	private final FormulaInterpreter interpreter = new FormulaInterpreter();
+	private final Graph globals;
+	private final Map<Long, Graph> locals = new HashMap<>();
+	private final Set<Parameter> failed = Collections.synchronizedSet(
+			Collections.newSetFromMap(new IdentityHashMap<>()));
+
+	public FormulaEngine() {
+		globals = new Graph(interpreter.getGlobalScope());
+	}
+
+	/** Binds the given global parameters to the engine. */
+	public FormulaEngine bindGlobals(Collection<Parameter> params) {
+		if (params == null)
+			return this;
+		for (Parameter p : params) {
+			globals.put(p);
+		}
+		globals.sort();
+		return this;
+	}
+
+	/** Binds the given local parameters of an owner to the engine. */
+	public FormulaEngine bind(long ownerId, Collection<Parameter> params) {
+		Graph graph = locals.get(ownerId);
+		if (graph == null) {
+			graph = new Graph(interpreter.getOrCreate(ownerId));
+			locals.put(ownerId, graph);
+		}
+		if (params != null) {
+			for (Parameter p : params) {
+				graph.put(p);
+			}
+		}
+		graph.sort();
+		return this;
+	}
+
+	/**
+	 * Returns the scope of the given owner or the global scope if the owner
+	 * ID is null or there is no such scope.
+	 */
+	public Scope getScope(Long ownerId) {
+		if (ownerId == null)
+			return interpreter.getGlobalScope();
+		return interpreter.getScopeOrGlobal(ownerId);
+	}
+
+	/**
+	 * Evaluates all parameters and sets the results as values of the
+	 * parameter objects.
+	 */
+	public void evaluate() {
+		failed.clear();
+		globals.evaluate(null);
+		locals.values().parallelStream().forEach(g -> g.evaluate(null));
+	}
+
+	/**
+	 * Returns true if the formula of the given parameter could not be
+	 * evaluated in the last evaluation.
+	 */
+	public boolean hasError(Parameter param) {
+		return failed.contains(param);
+	}
+
+	/**
+	 * Returns the parameters that could not be evaluated in the last
+	 * evaluation.
+	 */
+	public List<Parameter> getErrors() {
+		synchronized (failed) {
+			return new ArrayList<>(failed);
+		}
+	}
+
+	/**
+	 * Returns the local parameters of the given owner that could not be
+	 * evaluated in the last evaluation, together with the failed global
+	 * parameters that are used in the formulas of the local parameters.
+	 */
+	public List<Parameter> getErrors(long ownerId) {
+		Graph graph = locals.get(ownerId);
+		if (graph == null)
+			return Collections.emptyList();
+		List<Parameter> errors = new ArrayList<>();
+		Set<String> globalDeps = new HashSet<>();
+		for (Node node : graph.order) {
+			if (failed.contains(node.param)) {
+				errors.add(node.param);
+			}
+			globalDeps.addAll(node.globalDeps);
+		}
+		for (String name : globalDeps) {
+			Node global = globals.nodes.get(name);
+			if (global != null && failed.contains(global.param)) {
+				errors.add(global.param);
+			}
+		}
+		return errors;
+	}
+
+	/**
+	 * Updates the given parameter of the given owner (null for a global
+	 * parameter) and evaluates it and the parameters that depend on it again.
+	 * Returns the parameters that were evaluated.
+	 */
+	public List<Parameter> update(Long ownerId, Parameter param) {
+		if (param == null || param.name == null)
+			return Collections.emptyList();
+		Graph graph = ownerId == null ? globals : locals.get(ownerId);
+		if (graph == null)
+			return Collections.emptyList();
+		graph.put(param);
+		graph.sort();
+		String name = key(param.name);
+		Set<Node> affected = graph.dependentsOf(Collections.singleton(name));
+		graph.evaluate(affected);
+		List<Parameter> updated = new ArrayList<>();
+		for (Node node : affected) {
+			updated.add(node.param);
+		}
+		if (graph != globals)
+			return updated;
+
+		// local parameters that use the updated global parameters
+		Set<String> names = new HashSet<>();
+		for (Node node : affected) {
+			names.add(node.name);
+		}
+		locals.values().parallelStream().forEach(local -> {
+			Set<String> roots = new HashSet<>();
+			for (Node node : local.nodes.values()) {
+				for (String dep : node.globalDeps) {
+					if (names.contains(dep)) {
+						roots.add(node.name);
+						break;
+					}
+				}
+			}
+			if (roots.isEmpty())
+				return;
+			Set<Node> localAffected = local.dependentsOf(roots);
+			local.evaluate(localAffected);
+			synchronized (updated) {
+				for (Node node : localAffected) {
+					updated.add(node.param);
+				}
+			}
+		});
+		return updated;
+	}
+
+	private static String key(String name) {
+		return name == null ? "" : name.trim().toLowerCase();
+	}
+
+	/** The dependency graph of the parameters of a scope. */
+	private class Graph {
+
+		final Scope scope;
+		final Map<String, Node> nodes = new LinkedHashMap<>();
+		List<Node> order = new ArrayList<>();
+
+		Graph(Scope scope) {
+			this.scope = scope;
+		}
+
+		void put(Parameter param) {
+			if (param == null || param.name == null)
+				return;
+			Node node = new Node(param);
+			nodes.put(node.name, node);
+		}
+
+		/**
+		 * Calculates the dependencies and the topological order of the
+		 * nodes. Nodes in cycles (including nodes that reference themselves)
+		 * and nodes that depend on them are marked as cyclic and added at
+		 * the end; their formulas are not evaluated.
+		 */
+		void sort() {
+			Map<Node, Integer> inDegree = new HashMap<>();
+			for (Node node : nodes.values()) {
+				node.dependents.clear();
+				node.deps.clear();
+				node.globalDeps.clear();
+				node.cyclic = false;
+				for (String var : node.variables) {
+					if (var.equals(node.name)) {
+						node.cyclic = true;
+						continue;
+					}
+					if (nodes.containsKey(var)) {
+						node.deps.add(var);
+					} else {
+						node.globalDeps.add(var);
+					}
+				}
+			}
+			for (Node node : nodes.values()) {
+				inDegree.put(node, node.deps.size());
+				for (String dep : node.deps) {
+					nodes.get(dep).dependents.add(node);
+				}
+			}
+			Deque<Node> queue = new ArrayDeque<>();
+			for (Node node : nodes.values()) {
+				if (node.deps.isEmpty())
+					queue.add(node);
+			}
+			List<Node> sorted = new ArrayList<>(nodes.size());
+			Set<Node> done = Collections.newSetFromMap(new IdentityHashMap<>());
+			while (!queue.isEmpty()) {
+				Node node = queue.poll();
+				sorted.add(node);
+				done.add(node);
+				for (Node dependent : node.dependents) {
+					int d = inDegree.get(dependent) - 1;
+					inDegree.put(dependent, d);
+					if (d == 0)
+						queue.add(dependent);
+				}
+			}
+			for (Node node : nodes.values()) {
+				if (!done.contains(node)) {
+					node.cyclic = true;
+					sorted.add(node);
+				}
+			}
+			order = sorted;
+		}
+
+		/** Returns the nodes with the given names and their dependents. */
+		Set<Node> dependentsOf(Set<String> names) {
+			Set<Node> result = Collections.newSetFromMap(new IdentityHashMap<>());
+			Deque<Node> queue = new ArrayDeque<>();
+			for (String name : names) {
+				Node node = nodes.get(name);
+				if (node != null && result.add(node))
+					queue.add(node);
+			}
+			while (!queue.isEmpty()) {
+				Node node = queue.poll();
+				for (Node dependent : node.dependents) {
+					if (result.add(dependent))
+						queue.add(dependent);
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * Evaluates the given nodes (or all nodes if null) in topological
+		 * order.
+		 */
+		void evaluate(Set<Node> subset) {
+			for (Node node : order) {
+				if (subset != null && !subset.contains(node))
+					continue;
+				Parameter p = node.param;
+				if (p.isInputParameter || Strings.nullOrEmpty(p.formula)) {
+					scope.bind(p.name, p.value);
+					failed.remove(p);
+					continue;
+				}
+				if (node.cyclic) {
+					// do not evaluate the formula with the values that are
+					// still bound from a previous evaluation
+					scope.bind(p.name, CYCLE);
+					failed.add(p);
+					continue;
+				}
+				try {
+					p.value = scope.eval(p.formula);
+					scope.bind(p.name, p.value);
+					failed.remove(p);
+				} catch (Exception e) {
+					// keep the formula so that dependent formulas fail too
+					scope.bind(p.name, p.formula);
+					failed.add(p);
+				}
+			}
+		}
+	}
+
+	private static class Node {
+
+		final Parameter param;
+		final String name;
+		final List<String> variables = new ArrayList<>();
+		final Set<String> deps = new HashSet<>();
+		final Set<String> globalDeps = new HashSet<>();
+		final List<Node> dependents = new ArrayList<>();
+
+		/** True if the node is in a cycle; see Graph#sort. */
+		boolean cyclic;
+
+		Node(Parameter param) {
+			this.param = param;
+			this.name = key(param.name);
+			if (param.isInputParameter || Strings.nullOrEmpty(param.formula))
+				return;
+			try {
+				for (String var : Formulas.getVariables(param.formula)) {
+					variables.add(key(var));
+				}
+			} catch (Exception e) {
+				// the evaluation will fail for invalid formulas
+				Logger log = LoggerFactory.getLogger(FormulaEngine.class);
+				log.trace("failed to parse formula {}", param.formula);
+			}
+		}
+	}
+}
@@ -51,11 +51,9 @@ public class Formulas {
 
 	private List<String> evalGlobal(List<Parameter> params) {
 		try {
-			FormulaInterpreter interpreter = new FormulaInterpreter();
-			Scope scope = interpreter.getGlobalScope();
-			for (Parameter p : params)
-				bind(p, scope);
-			evalParams(params, scope);
+			var engine = new FormulaEngine().bindGlobals(params);
+			engine.evaluate();
+			addErrors(engine.getErrors());
 		} catch (Exception e) {
 			log.warn("unexpected error in formula evaluation", e);
 		}
@@ -64,8 +62,10 @@ public class Formulas {
 
 	private List<String> eval(Process p) {
 		try {
-			var scope = createScope(db, p);
-			evalParams(p.parameters, scope);
+			var engine = createEngine(db, p, p.parameters);
+			engine.evaluate();
+			addErrors(engine.getErrors(p.id));
+			var scope = engine.getScope(p.id);
 			for (var e : p.exchanges) {
 				if (Strings.notEmpty(e.formula)) {
 					e.amount = eval(e.formula, scope);
@@ -88,8 +88,10 @@ public class Formulas {
 
 	private List<String> eval(ImpactCategory c) {
 		try {
-			var s = createScope(db, c);
-			evalParams(c.parameters, s);
+			var engine = createEngine(db, c, c.parameters);
+			engine.evaluate();
+			addErrors(engine.getErrors(c.id));
+			var s = engine.getScope(c.id);
 			for (var f : c.impactFactors) {
 				if (Strings.notEmpty(f.formula)) {
 					f.value = eval(f.formula, s);
@@ -102,11 +104,10 @@ public class Formulas {
 		return errors;
 	}
 
-	private void evalParams(List<Parameter> params, Scope s) {
-		for (var param : params) {
-			if (param.isInputParameter)
-				continue;
-			param.value = eval(param.formula, s);
+	private void addErrors(List<Parameter> failed) {
+		for (var param : failed) {
+			log.warn("failed to evaluate {}", param.formula);
+			errors.add(param.formula);
 		}
 	}
 
@@ -141,31 +142,42 @@ public class Formulas {
 	/**
 	 * Creates an evaluation scope for the given entity with bindings to local
 	 * parameters and a reference to a global scope which contains the database
-	 * parameters.
+	 * parameters. The parameters are evaluated and bound as values. The
+	 * parameters are evaluated on copies, so that the values of the parameters
+	 * of the entity are not changed.
 	 */
 	public static Scope createScope(IDatabase db, ParameterizedEntity entity) {
-		var interpreter = new FormulaInterpreter();
-		var global = interpreter.getGlobalScope();
 		if (db == null || entity == null)
-			return global;
-		for (var param : new ParameterDao(db).getGlobalParameters()) {
-			bind(param, global);
-		}
-		var localScope = interpreter.createScope(entity.id);
-		for (var param : entity.parameters) {
-			bind(param, localScope);
-		}
-		return localScope;
+			return new FormulaInterpreter().getGlobalScope();
+		var engine = createEngine(db, entity, copy(entity.parameters));
+		engine.evaluate();
+		return engine.getScope(entity.id);
 	}
 
-	private static void bind(Parameter param, Scope scope) {
-		if (param == null || scope == null)
-			return;
-		if (param.isInputParameter || Strings.nullOrEmpty(param.formula)) {
-			scope.bind(param.name, param.value);
-		} else {
-			scope.bind(param.name, param.formula);
+	/**
+	 * Creates an engine with the given local parameters of the entity. The
+	 * global parameters are bound as copies as the evaluation sets their
+	 * values and the global parameters of the database (which could be
+	 * shared via the entity cache) should not be changed in the editors.
+	 */
+	private static FormulaEngine createEngine(IDatabase db,
+			ParameterizedEntity entity, List<Parameter> locals) {
+		var globals = new ParameterDao(db).getGlobalParameters();
+		return new FormulaEngine()
+				.bindGlobals(copy(globals))
+				.bind(entity.id, locals);
+	}
+
+	private static List<Parameter> copy(List<Parameter> params) {
+		List<Parameter> copies = new ArrayList<>();
+		if (params == null)
+			return copies;
+		for (Parameter param : params) {
+			if (param != null) {
+				copies.add(param.clone());
+			}
 		}
+		return copies;
 	}
 
 }
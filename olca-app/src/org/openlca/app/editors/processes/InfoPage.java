@@ -13,6 +13,7 @@ import org.eclipse.ui.forms.widgets.Hyperlink;
 import org.eclipse.ui.forms.widgets.ImageHyperlink;
 import org.eclipse.ui.forms.widgets.ScrolledForm;
 import org.openlca.app.M;
+import org.openlca.app.components.mapview.LocationGeometries;
 import org.openlca.app.components.mapview.MapDialog;
 import org.openlca.app.db.Database;
 import org.openlca.app.editors.InfoSection;
@@ -33,7 +34,6 @@ import org.openlca.core.model.Location;
 import org.openlca.core.model.ModelType;
 import org.openlca.core.model.Process;
 import org.openlca.geo.geojson.FeatureCollection;
-import org.openlca.geo.geojson.MsgPack;
 import org.openlca.util.Strings;
 
 class InfoPage extends ModelPage<Process> {
@@ -192,7 +192,7 @@ class InfoPage extends ModelPage<Process> {
 			Location location = getModel().location;
 			if (location == null || location.geodata == null)
 				return;
-			FeatureCollection coll = MsgPack.unpackgz(location.geodata);
+			FeatureCollection coll = LocationGeometries.getFeatures(location);
 			if (coll == null)
 				return;
 			MapDialog.show(location.name, map -> {
@@ -151,21 +151,22 @@ public class ProcessToolbar extends EditorActionBarContributor {
 
 		static void checkLinking(Process process) {
 			var ref = new AtomicReference<LinkingProperties>();
-			App.runWithProgress("Check database links", () -> {
+			App.run("Check database links", () -> {
 				var props = LinkingProperties.check(Database.get());
 				ref.set(props);
+			}, () -> {
+				var props = ref.get();
+				if (props == null) {
+					MsgBox.error("The linking check gave no results");
+					return;
+				}
+				if (props.multiProviderFlows.isEmpty()
+						|| props.processesWithoutProviders.isEmpty()) {
+					handleUnambiguousLinks(process, props);
+				} else {
+					handleAmbiguousLinks(props);
+				}
 			});
-			var props = ref.get();
-			if (props == null) {
-				MsgBox.error("The linking check gave no results");
-				return;
-			}
-			if (props.multiProviderFlows.isEmpty()
-					|| props.processesWithoutProviders.isEmpty()) {
-				handleUnambiguousLinks(process, props);
-			} else {
-				handleAmbiguousLinks(props);
-			}
 		}
 
 		private static void handleAmbiguousLinks(LinkingProperties props) {
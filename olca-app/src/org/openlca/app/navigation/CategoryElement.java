@@ -33,6 +33,18 @@ public class CategoryElement extends NavigationElement<Category> {
 		setContent(new CategoryDao(Database.get()).getForId(category.id));
 	}
 
+	@Override
+	boolean hasChildren() {
+		if (isLoaded())
+			return super.hasChildren();
+		Category category = getContent();
+		if (category == null)
+			return false;
+		if (!category.childCategories.isEmpty())
+			return true;
+		return ChildCounts.hasModels(category.modelType, category.id);
+	}
+
 	@Override
 	protected List<INavigationElement<?>> queryChilds() {
 		Category category = getContent();
@@ -0,0 +1,188 @@
+package org.openlca.app.navigation;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.persistence.Table;
+
+import org.openlca.app.db.Database;
+import org.openlca.core.database.IDatabase;
+import org.openlca.core.database.NativeSql;
+import org.openlca.core.model.ModelType;
+import org.openlca.core.model.descriptors.BaseDescriptor;
+import org.openlca.core.model.descriptors.CategorizedDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gnu.trove.map.hash.TLongIntHashMap;
+
+/**
+ * A cache of the number of models per category so that the navigation tree can
+ * check if a node has children without loading them. The counts of a type are
+ * loaded with a single query in the background job that loads the children of
+ * the navigation elements (see {@link #load(ModelType)}) and are then updated
+ * by the database listener and by the move actions of the navigation. Models
+ * without category are counted under the category ID 0. As long as the counts
+ * of a type are not loaded, or could not be loaded, every category is assumed
+ * to contain models.
+ */
+public final class ChildCounts {
+
+	private static final Map<ModelType, Counts> counts = new ConcurrentHashMap<>();
+
+	/** Marks a type for which the counts could not be loaded. */
+	private static final Counts UNAVAILABLE = new Counts();
+
+	private ChildCounts() {
+	}
+
+	/**
+	 * Returns true if there are models of the given type in the category with
+	 * the given ID. Pass null as category ID to check the models without
+	 * category. This method does not query the database; it returns true if
+	 * the counts of the type are not loaded yet.
+	 */
+	public static boolean hasModels(ModelType type, Long categoryId) {
+		if (type == null)
+			return false;
+		Counts c = counts.get(type);
+		if (c == null || c == UNAVAILABLE)
+			return true;
+		synchronized (c) {
+			return c.counts.get(key(categoryId)) > 0;
+		}
+	}
+
+	/**
+	 * Loads the counts of the given type if they are not loaded yet. This runs
+	 * a query over the table of the type and should not be called in the UI
+	 * thread.
+	 */
+	public static void load(ModelType type) {
+		if (type == null || counts.containsKey(type))
+			return;
+		counts.putIfAbsent(type, query(type));
+	}
+
+	public static void inserted(BaseDescriptor d) {
+		Counts c = countsOf(d);
+		if (c == null)
+			return;
+		synchronized (c) {
+			c.counts.adjustOrPutValue(category(d), 1, 1);
+		}
+	}
+
+	public static void deleted(BaseDescriptor d) {
+		Counts c = countsOf(d);
+		if (c == null)
+			return;
+		synchronized (c) {
+			c.decrement(category(d));
+		}
+	}
+
+	/**
+	 * The update event does not contain the old category of a model, so a
+	 * move is handled by {@link #moved(ModelType, Long, Long)}. Here we only
+	 * make sure that the current category of the model is not counted as
+	 * empty, e.g. when the category was changed by an import.
+	 */
+	public static void updated(BaseDescriptor d) {
+		Counts c = countsOf(d);
+		if (c == null)
+			return;
+		synchronized (c) {
+			long category = category(d);
+			if (c.counts.get(category) <= 0) {
+				c.counts.put(category, 1);
+			}
+		}
+	}
+
+	/**
+	 * Moves a model of the given type from the old to the new category (null
+	 * for no category).
+	 */
+	public static void moved(ModelType type, Long oldCategory,
+			Long newCategory) {
+		if (type == null)
+			return;
+		Counts c = counts.get(type);
+		if (c == null || c == UNAVAILABLE)
+			return;
+		long from = key(oldCategory);
+		long to = key(newCategory);
+		if (from == to)
+			return;
+		synchronized (c) {
+			c.decrement(from);
+			c.counts.adjustOrPutValue(to, 1, 1);
+		}
+	}
+
+	private static Counts countsOf(BaseDescriptor d) {
+		if (!(d instanceof CategorizedDescriptor) || d.type == null)
+			return null;
+		Counts c = counts.get(d.type);
+		return c == UNAVAILABLE ? null : c;
+	}
+
+	private static long category(BaseDescriptor d) {
+		return key(((CategorizedDescriptor) d).category);
+	}
+
+	private static long key(Long categoryId) {
+		return categoryId == null ? 0L : categoryId;
+	}
+
+	public static void clear() {
+		counts.clear();
+	}
+
+	/**
+	 * Returns the marker UNAVAILABLE if the counts cannot be calculated for
+	 * the given type; in this case the navigation elements need to be asked
+	 * for their children.
+	 */
+	private static Counts query(ModelType type) {
+		IDatabase db = Database.get();
+		if (db == null || type == ModelType.PARAMETER
+				|| !type.isCategorized() || type.getModelClass() == null)
+			return UNAVAILABLE;
+		Table table = type.getModelClass().getAnnotation(Table.class);
+		if (table == null)
+			return UNAVAILABLE;
+		Counts c = new Counts();
+		String sql = "select f_category, count(*) from " + table.name()
+				+ " group by f_category";
+		try {
+			NativeSql.on(db).query(sql, r -> {
+				c.counts.adjustOrPutValue(r.getLong(1), r.getInt(2),
+						r.getInt(2));
+				return true;
+			});
+			return c;
+		} catch (Exception e) {
+			Logger log = LoggerFactory.getLogger(ChildCounts.class);
+			log.error("failed to count models of type " + type, e);
+			return UNAVAILABLE;
+		}
+	}
+
+	/** The number of models per category of a type. */
+	private static class Counts {
+
+		/** category ID -> number of models */
+		final TLongIntHashMap counts = new TLongIntHashMap();
+
+		void decrement(long category) {
+			int count = counts.get(category);
+			if (count > 1) {
+				counts.put(category, count - 1);
+			} else {
+				counts.remove(category);
+			}
+		}
+	}
+}
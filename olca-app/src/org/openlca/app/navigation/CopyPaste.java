@@ -230,6 +230,8 @@ public class CopyPaste {
 		CategorizedDescriptor entity = element.getContent();
 		Category category = getCategory(categoryElement);
 		Optional<Category> parent = Optional.ofNullable(category);
+		ChildCounts.moved(entity.type, entity.category,
+				category != null ? category.id : null);
 		Daos.categorized(Database.get(), entity.type).updateCategory(entity, parent);
 	}
 
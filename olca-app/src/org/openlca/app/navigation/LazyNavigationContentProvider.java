@@ -0,0 +1,133 @@
+package org.openlca.app.navigation;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.viewers.AbstractTreeViewer;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.swt.widgets.Display;
+import org.openlca.app.M;
+import org.openlca.core.model.Category;
+import org.openlca.core.model.ModelType;
+
+/**
+ * The content provider of the navigator. In contrast to the synchronous
+ * {@link NavigationContentProvider} that is used in dialogs, it loads the
+ * children of model type and category elements in a background job. Until
+ * they are loaded, a placeholder is shown. Large child lists are then added to
+ * the tree in pages so that the UI stays responsive.
+ */
+public class LazyNavigationContentProvider extends NavigationContentProvider {
+
+	private static final int PAGE_SIZE = 500;
+
+	private AbstractTreeViewer viewer;
+	private final Map<NavigationElement<?>, LoadingElement> pending = new ConcurrentHashMap<>();
+
+	@Override
+	public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
+		this.viewer = viewer instanceof AbstractTreeViewer
+				? (AbstractTreeViewer) viewer
+				: null;
+		pending.clear();
+	}
+
+	@Override
+	public Object[] getChildren(Object parent) {
+		if (viewer == null || !isDeferred(parent))
+			return super.getChildren(parent);
+		NavigationElement<?> elem = (NavigationElement<?>) parent;
+		if (elem.isLoaded())
+			return super.getChildren(parent);
+		LoadingElement placeholder = pending.get(elem);
+		if (placeholder == null) {
+			placeholder = new LoadingElement(elem);
+			pending.put(elem, placeholder);
+			Display display = viewer.getControl().getDisplay();
+			new LoadJob(elem, placeholder, display).schedule();
+		}
+		return new Object[] { placeholder };
+	}
+
+	private boolean isDeferred(Object elem) {
+		return elem instanceof ModelTypeElement
+				|| elem instanceof CategoryElement;
+	}
+
+	private ModelType modelType(NavigationElement<?> elem) {
+		if (elem instanceof ModelTypeElement)
+			return ((ModelTypeElement) elem).getContent();
+		if (elem instanceof CategoryElement) {
+			Category category = ((CategoryElement) elem).getContent();
+			return category != null ? category.modelType : null;
+		}
+		return null;
+	}
+
+	private void show(NavigationElement<?> elem, LoadingElement placeholder,
+			List<INavigationElement<?>> childs) {
+		pending.remove(elem);
+		if (viewer == null || viewer.getControl().isDisposed())
+			return;
+		if (childs.size() <= PAGE_SIZE) {
+			viewer.refresh(elem);
+			return;
+		}
+		addPage(elem, placeholder, childs, 0);
+	}
+
+	/**
+	 * Adds the next page of child elements to the tree. The placeholder stays
+	 * in the tree until the last page is added; when it is not in the tree
+	 * anymore, the parent was refreshed in the meantime and already contains
+	 * all children.
+	 */
+	private void addPage(NavigationElement<?> elem, LoadingElement placeholder,
+			List<INavigationElement<?>> childs, int offset) {
+		if (viewer == null || viewer.getControl().isDisposed())
+			return;
+		if (viewer.testFindItem(placeholder) == null)
+			return;
+		int end = Math.min(offset + PAGE_SIZE, childs.size());
+		viewer.add(elem, childs.subList(offset, end).toArray());
+		if (end >= childs.size()) {
+			viewer.remove(placeholder);
+			return;
+		}
+		viewer.getControl().getDisplay().asyncExec(
+				() -> addPage(elem, placeholder, childs, end));
+	}
+
+	private class LoadJob extends Job {
+
+		private final NavigationElement<?> elem;
+		private final LoadingElement placeholder;
+		private final Display display;
+
+		LoadJob(NavigationElement<?> elem, LoadingElement placeholder,
+				Display display) {
+			super(M.Loading);
+			this.elem = elem;
+			this.placeholder = placeholder;
+			this.display = display;
+			setSystem(true);
+		}
+
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			// the child categories check their model counts
+			ChildCounts.load(modelType(elem));
+			List<INavigationElement<?>> childs = elem.getChildren();
+			if (!display.isDisposed()) {
+				display.asyncExec(() -> show(elem, placeholder, childs));
+			}
+			return Status.OK_STATUS;
+		}
+	}
+
+}
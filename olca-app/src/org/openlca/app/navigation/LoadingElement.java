@@ -0,0 +1,39 @@
+package org.openlca.app.navigation;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.openlca.app.M;
+
+/**
+ * A placeholder that is shown in the navigation tree while the children of
+ * its parent are loaded in the background.
+ */
+class LoadingElement implements INavigationElement<String> {
+
+	private final INavigationElement<?> parent;
+
+	LoadingElement(INavigationElement<?> parent) {
+		this.parent = parent;
+	}
+
+	@Override
+	public INavigationElement<?> getParent() {
+		return parent;
+	}
+
+	@Override
+	public List<INavigationElement<?>> getChildren() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public String getContent() {
+		return M.Loading;
+	}
+
+	@Override
+	public void update() {
+	}
+
+}
@@ -22,6 +22,15 @@ public class ModelTypeElement extends NavigationElement<ModelType> {
 		super(parent, type);
 	}
 
+	@Override
+	boolean hasChildren() {
+		// there are nearly always categories or models under a model type
+		// element, so we do not run a query here when they are not loaded
+		if (!isLoaded())
+			return true;
+		return super.hasChildren();
+	}
+
 	@Override
 	protected List<INavigationElement<?>> queryChilds() {
 		ModelType type = getContent();
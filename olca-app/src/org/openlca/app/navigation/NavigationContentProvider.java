@@ -45,6 +45,8 @@ public class NavigationContentProvider implements ICommonContentProvider {
 	public boolean hasChildren(Object element) {
 		if (!(element instanceof INavigationElement))
 			return false;
+		if (element instanceof NavigationElement)
+			return ((NavigationElement<?>) element).hasChildren();
 		INavigationElement<?> e = (INavigationElement<?>) element;
 		return !e.getChildren().isEmpty();
 	}
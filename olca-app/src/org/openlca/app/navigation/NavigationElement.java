@@ -2,14 +2,18 @@ package org.openlca.app.navigation;
 
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Basic implementation of a navigation element which manages an internal cache
- * for its child elements.
+ * for its child elements. The children can be loaded in a background thread:
+ * the element is not locked while the children are queried and a loaded list
+ * is only published when the element was not updated in the meantime.
  */
 abstract class NavigationElement<T> implements INavigationElement<T> {
 
-	private List<INavigationElement<?>> cache;
+	private volatile List<INavigationElement<?>> cache;
+	private final AtomicInteger revision = new AtomicInteger();
 	private T content;
 	private final INavigationElement<?> parent;
 
@@ -20,14 +24,41 @@ abstract class NavigationElement<T> implements INavigationElement<T> {
 
 	@Override
 	public void update() {
-		cache = null;
+		synchronized (revision) {
+			revision.incrementAndGet();
+			cache = null;
+		}
 	}
 
 	@Override
 	public List<INavigationElement<?>> getChildren() {
-		if (cache == null)
-			cache = queryChilds();
-		return cache;
+		List<INavigationElement<?>> childs = cache;
+		if (childs != null)
+			return childs;
+		int rev = revision.get();
+		childs = queryChilds();
+		synchronized (revision) {
+			if (rev == revision.get()) {
+				cache = childs;
+			}
+		}
+		return childs;
+	}
+
+	/**
+	 * Returns true if the child elements are already loaded.
+	 */
+	boolean isLoaded() {
+		return cache != null;
+	}
+
+	/**
+	 * Returns true if this element has child elements. Sub-classes can
+	 * override this method when this can be answered without loading the
+	 * child elements.
+	 */
+	boolean hasChildren() {
+		return !getChildren().isEmpty();
 	}
 
 	@Override
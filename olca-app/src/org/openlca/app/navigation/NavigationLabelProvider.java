@@ -98,7 +98,8 @@ public class NavigationLabelProvider extends ColumnLabelProvider
 
 	@Override
 	public Image getImage(Object obj) {
-		if (!(obj instanceof INavigationElement))
+		if (!(obj instanceof INavigationElement)
+				|| obj instanceof LoadingElement)
 			return null;
 		var elem = (INavigationElement<?>) obj;
 
@@ -139,6 +140,8 @@ public class NavigationLabelProvider extends ColumnLabelProvider
 	public String getText(Object obj) {
 		if (!(obj instanceof INavigationElement))
 			return null;
+		if (obj instanceof LoadingElement)
+			return ((LoadingElement) obj).getContent();
 		var elem = (INavigationElement<?>) obj;
 		var baseText = getBaseText(elem);
 		if (baseText == null)
@@ -178,6 +181,8 @@ public class NavigationLabelProvider extends ColumnLabelProvider
 	public Font getFont(Object elem) {
 		if (!(elem instanceof INavigationElement<?>))
 			return null;
+		if (elem instanceof LoadingElement)
+			return UI.italicFont();
 		if (elem instanceof DatabaseElement) {
 			DatabaseElement dbElem = (DatabaseElement) elem;
 			if (Database.isActive(dbElem.getContent()))
@@ -191,7 +196,8 @@ public class NavigationLabelProvider extends ColumnLabelProvider
 
 	@Override
 	public Color getForeground(Object elem) {
-		if (!(elem instanceof INavigationElement<?>))
+		if (!(elem instanceof INavigationElement<?>)
+				|| elem instanceof LoadingElement)
 			return null;
 		if (!indicateRepositoryState)
 			return null;
@@ -7,31 +7,41 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.openlca.app.cloud.CloudUtil;
 import org.openlca.app.cloud.index.Diff;
 import org.openlca.app.cloud.index.DiffIndex;
 import org.openlca.app.cloud.index.DiffType;
 import org.openlca.app.cloud.ui.diff.DiffResult;
-import org.openlca.cloud.model.data.FileReference;
-import org.openlca.core.database.Daos;
 import org.openlca.core.database.IDatabase;
 import org.openlca.core.database.references.IReferenceSearch;
 import org.openlca.core.database.references.IReferenceSearch.Reference;
-import org.openlca.core.database.usage.IUseSearch;
-import org.openlca.core.model.AbstractEntity;
 import org.openlca.core.model.ModelType;
-import org.openlca.core.model.descriptors.CategorizedDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+
+/**
+ * Searches the changed data sets that are referenced by or that use the data
+ * sets of a commit selection (transitively). The references of the data sets
+ * are searched per model type in parallel and stored in a graph of local IDs.
+ * The usages are taken from the reverse graph of the references of the
+ * changed data sets, which are searched once. The graph is cached as long as
+ * the diff index is not modified, so that a search with another selection
+ * does not need to scan the database again.
+ */
 class ReferenceSearcher {
 
-	private Set<Long> allChanged = new HashSet<>();
-	private Map<Long, String> idToRefId = new HashMap<>();
-	private Set<DiffResult> results = new HashSet<>();
-	private IDatabase database;
-	private DiffIndex index;
-	private Set<Long> alreadySearchedReferences = new HashSet<>();
-	private Set<Long> alreadySearchedUsages = new HashSet<>();
+	private static final int CHUNK_SIZE = 1000;
+	private static Graph cachedGraph;
+
+	private final IDatabase database;
+	private final DiffIndex index;
 
 	ReferenceSearcher(IDatabase database, DiffIndex index) {
 		this.database = database;
@@ -39,147 +49,201 @@ class ReferenceSearcher {
 	}
 
 	List<DiffResult> run(List<DiffResult> toCheck) {
-		allChanged.clear();
+		TLongHashSet allChanged = new TLongHashSet();
 		int zeroCount = 0;
 		for (DiffResult result : toCheck)
 			if (result.local.localId != 0)
 				allChanged.add(result.local.localId);
 			else
 				zeroCount++;
-		if (allChanged.size() + zeroCount == index.getChanged().size())
+		int changedCount = index.getChanged().size();
+		if (allChanged.size() + zeroCount == changedCount)
 			return Collections.emptyList();
-		Map<ModelType, Set<Long>> typeToIds = prepareFromResults(toCheck);
-		search(typeToIds);
-		return new ArrayList<>(results);
-	}
-
-	private void search(Map<ModelType, Set<Long>> toCheck) {
-		Set<CategorizedDescriptor> allFound = new HashSet<>();
-		for (ModelType type : toCheck.keySet()) {
-			Set<Long> values = toCheck.get(type);
-			Set<CategorizedDescriptor> refs = search(type, values);
-			allFound.addAll(refs);
-			List<Diff> diffs = getChanged(refs);
-			for (Diff diff : diffs) {
-				DiffResult diffResult = new DiffResult(diff, CloudUtil.toFetchRequestData(diff.getDataset()));
-				if (diffResult.local.localId == 0)
-					continue;
-				allChanged.add(diffResult.local.localId);
-				results.add(diffResult);
+		Graph graph = graph();
+		TLongHashSet visited = new TLongHashSet();
+		TLongHashSet frontier = new TLongHashSet();
+		for (DiffResult result : toCheck) {
+			long id = result.local.localId;
+			if (id == 0)
+				continue;
+			graph.setType(id, result.local.getDataset().type);
+			visited.add(id);
+			frontier.add(id);
+		}
+		List<DiffResult> results = new ArrayList<>();
+		while (!frontier.isEmpty() && allChanged.size() != changedCount) {
+			graph.loadReferences(frontier);
+			TLongHashSet next = new TLongHashSet();
+			for (long id : frontier.toArray()) {
+				for (long ref : graph.referencesOf(id)) {
+					visit(graph, ref, allChanged, results, visited, next);
+				}
+				for (long user : graph.usagesOf(id)) {
+					visit(graph, user, allChanged, results, visited, next);
+				}
 			}
+			frontier = next;
 		}
-		if (allFound.isEmpty() || allChanged.size() == index.getChanged().size())
-			return;
-		Map<ModelType, Set<Long>> next = prepareFromDescriptors(allFound);
-		search(next);
-	}
-
-	private Set<CategorizedDescriptor> search(ModelType type, Set<Long> toCheck) {
-		Set<CategorizedDescriptor> results = searchReferences(type, toCheck);
-		results.addAll(searchUsage(type, toCheck));
 		return results;
 	}
 
-	private Set<CategorizedDescriptor> searchReferences(ModelType type, Set<Long> toCheck) {
-		Set<CategorizedDescriptor> results = new HashSet<>();
-		for (Long id : new HashSet<>(toCheck)) {
-			if (alreadySearchedReferences.contains(id)) {
-				toCheck.remove(id);
-				continue;
-			}
-			alreadySearchedReferences.add(id);
+	private void visit(Graph graph, long id, TLongHashSet allChanged,
+			List<DiffResult> results, TLongHashSet visited, TLongHashSet next) {
+		Diff diff = graph.diffs.get(id);
+		if (diff != null && diff.hasChanged() && !allChanged.contains(id)) {
+			allChanged.add(id);
+			results.add(new DiffResult(diff,
+					CloudUtil.toFetchRequestData(diff.getDataset())));
+		}
+		if (visited.add(id)) {
+			next.add(id);
 		}
-		if (toCheck.isEmpty())
-			return Collections.emptySet();
-		IReferenceSearch<?> refSearch = IReferenceSearch.FACTORY.createFor(type, database, true);
-		results.addAll(loadDescriptors(refSearch.findReferences(toCheck)));
-		return results;
 	}
 
-	private Set<CategorizedDescriptor> searchUsage(ModelType type, Set<Long> toCheck) {
-		for (Long id : new HashSet<>(toCheck)) {
-			if (alreadySearchedUsages.contains(id)) {
-				toCheck.remove(id);
-				continue;
+	private Graph graph() {
+		synchronized (ReferenceSearcher.class) {
+			Graph g = cachedGraph;
+			if (g == null || g.database != database || g.index != index
+					|| g.revision != index.getRevision()) {
+				g = new Graph(database, index);
+				cachedGraph = g;
 			}
-			alreadySearchedUsages.add(id);
-			Diff diff = index.get(FileReference.from(type, idToRefId.get(id)));
-			if (diff == null || diff.type != DiffType.CHANGED)
-				continue;
-			toCheck.remove(id);
+			return g;
 		}
-		Set<CategorizedDescriptor> results = new HashSet<>();
-		if (toCheck.isEmpty())
-			return results;
-		IUseSearch<?> useSearch = IUseSearch.FACTORY.createFor(type, database);
-		List<CategorizedDescriptor> usedIn = useSearch.findUses(toCheck);
-		for (CategorizedDescriptor descriptor : usedIn) {
-			Diff diff = index.get(FileReference.from(descriptor.type, descriptor.refId));
-			if (diff == null || diff.type == DiffType.NO_DIFF || diff.type == DiffType.NEW)
-				continue;
-			results.add(descriptor);
-		}
-		return results;
 	}
 
-	private Set<CategorizedDescriptor> loadDescriptors(List<Reference> references) {
-		Map<Class<? extends AbstractEntity>, Set<Long>> map = new HashMap<>();
-		for (Reference reference : references) {
-			Set<Long> set = map.get(reference.getType());
-			if (set == null)
-				map.put(reference.getType(), set = new HashSet<>());
-			set.add(reference.id);
+	/**
+	 * The reference graph of the local data sets; the nodes are the IDs of
+	 * the data sets.
+	 */
+	private static class Graph {
+
+		private final Logger log = LoggerFactory.getLogger(getClass());
+		final IDatabase database;
+		final DiffIndex index;
+		final long revision;
+
+		/** local ID -> diff */
+		final TLongObjectHashMap<Diff> diffs = new TLongObjectHashMap<>();
+		final TLongObjectHashMap<ModelType> types = new TLongObjectHashMap<>();
+		/** data set -> data sets it references */
+		final TLongObjectHashMap<long[]> references = new TLongObjectHashMap<>();
+		/** data set -> changed data sets that reference it */
+		final TLongObjectHashMap<TLongHashSet> usages = new TLongObjectHashMap<>();
+
+		Graph(IDatabase database, DiffIndex index) {
+			this.database = database;
+			this.index = index;
+			this.revision = index.getRevision();
+			TLongHashSet changed = new TLongHashSet();
+			for (Diff diff : index.getAll()) {
+				if (diff.localId == 0)
+					continue;
+				diffs.put(diff.localId, diff);
+				types.put(diff.localId, diff.getDataset().type);
+				// only changed data sets are relevant usages; new data sets
+				// cannot be used by data sets of the repository
+				if (diff.type == DiffType.CHANGED) {
+					changed.add(diff.localId);
+				}
+			}
+			loadReferences(changed);
+			for (long user : changed.toArray()) {
+				for (long ref : referencesOf(user)) {
+					TLongHashSet users = usages.get(ref);
+					if (users == null) {
+						usages.put(ref, users = new TLongHashSet());
+					}
+					users.add(user);
+				}
+			}
 		}
-		Set<CategorizedDescriptor> descriptors = new HashSet<>();
-		for (Class<? extends AbstractEntity> clazz : map.keySet()) {
-			ModelType type = ModelType.forModelClass(clazz);
-			if (type != null && type.isCategorized()) {
-				descriptors.addAll(Daos.categorized(database, type).getDescriptors(map.get(clazz)));
+
+		synchronized void setType(long id, ModelType type) {
+			if (!types.containsKey(id)) {
+				types.put(id, type);
 			}
 		}
-		for (CategorizedDescriptor descriptor : descriptors)
-			idToRefId.put(descriptor.id, descriptor.type.name() + descriptor.refId);
-		return descriptors;
-	}
 
-	private List<Diff> getChanged(Set<CategorizedDescriptor> refs) {
-		List<Diff> relevant = new ArrayList<>();
-		for (CategorizedDescriptor d : refs) {
-			if (allChanged.contains(d.id))
-				continue;
-			Diff diff = index.get(FileReference.from(d.type, d.refId));
-			if (diff == null || !diff.hasChanged())
-				continue;
-			relevant.add(diff);
+		synchronized long[] referencesOf(long id) {
+			long[] refs = references.get(id);
+			return refs != null ? refs : new long[0];
 		}
-		return relevant;
-	}
 
-	private Map<ModelType, Set<Long>> prepareFromResults(List<DiffResult> toCheck) {
-		Map<ModelType, Set<Long>> typeToIds = new HashMap<>();
-		for (DiffResult result : toCheck) {
-			if (result.local.localId == 0)
-				continue;
-			ModelType type = result.local.getDataset().type;
-			addId(typeToIds, type, result.local.localId);
-			idToRefId.put(result.local.localId, result.local.getDataset().toId());
+		synchronized long[] usagesOf(long id) {
+			TLongHashSet users = usages.get(id);
+			return users != null ? users.toArray() : new long[0];
 		}
-		return typeToIds;
-	}
 
-	private Map<ModelType, Set<Long>> prepareFromDescriptors(Set<CategorizedDescriptor> toCheck) {
-		Map<ModelType, Set<Long>> typeToIds = new HashMap<>();
-		for (CategorizedDescriptor descriptor : toCheck) {
-			addId(typeToIds, descriptor.type, descriptor.id);
-			idToRefId.put(descriptor.id, descriptor.type.name() + descriptor.refId);
+		/**
+		 * Loads the references of the given data sets that are not loaded
+		 * yet. The searches run in parallel in chunks of the same model type.
+		 */
+		void loadReferences(TLongHashSet ids) {
+			Map<ModelType, List<Long>> byType = new HashMap<>();
+			synchronized (this) {
+				for (long id : ids.toArray()) {
+					ModelType type = types.get(id);
+					if (type == null || references.containsKey(id))
+						continue;
+					List<Long> list = byType.get(type);
+					if (list == null) {
+						byType.put(type, list = new ArrayList<>());
+					}
+					list.add(id);
+				}
+			}
+			if (byType.isEmpty())
+				return;
+			int threads = Math.min(byType.size(),
+					Runtime.getRuntime().availableProcessors());
+			ExecutorService pool = Executors.newFixedThreadPool(threads);
+			List<Future<?>> futures = new ArrayList<>();
+			for (ModelType type : byType.keySet()) {
+				List<Long> list = byType.get(type);
+				for (int i = 0; i < list.size(); i += CHUNK_SIZE) {
+					Set<Long> chunk = new HashSet<>(list.subList(i,
+							Math.min(list.size(), i + CHUNK_SIZE)));
+					futures.add(pool.submit(() -> search(type, chunk)));
+				}
+			}
+			pool.shutdown();
+			for (Future<?> future : futures) {
+				try {
+					future.get();
+				} catch (Exception e) {
+					log.error("failed to search references", e);
+				}
+			}
 		}
-		return typeToIds;
-	}
 
-	private void addId(Map<ModelType, Set<Long>> map, ModelType type, long id) {
-		Set<Long> ids = map.get(type);
-		if (ids == null)
-			map.put(type, ids = new HashSet<>());
-		ids.add(id);
+		private void search(ModelType type, Set<Long> ids) {
+			List<Reference> refs = IReferenceSearch.FACTORY
+					.createFor(type, database, true).findReferences(ids);
+			TLongObjectHashMap<TLongHashSet> found = new TLongObjectHashMap<>();
+			TLongObjectHashMap<ModelType> foundTypes = new TLongObjectHashMap<>();
+			for (Reference ref : refs) {
+				ModelType refType = ModelType.forModelClass(ref.getType());
+				if (ref.id == 0 || refType == null || !refType.isCategorized())
+					continue;
+				TLongHashSet set = found.get(ref.ownerId);
+				if (set == null) {
+					found.put(ref.ownerId, set = new TLongHashSet());
+				}
+				set.add(ref.id);
+				foundTypes.put(ref.id, refType);
+			}
+			synchronized (this) {
+				for (Long id : ids) {
+					TLongHashSet set = found.get(id);
+					references.put(id, set != null ? set.toArray() : new long[0]);
+				}
+				for (long id : foundTypes.keys()) {
+					if (!types.containsKey(id)) {
+						types.put(id, foundTypes.get(id));
+					}
+				}
+			}
+		}
 	}
 }
@@ -0,0 +1,118 @@
+package org.openlca.app.results;
+
+import org.openlca.util.Strings;
+
+/**
+ * Sorts and filters permutations of row indices of result arrays, so that
+ * lazy viewers can display the rows of a result in a sorted order without
+ * creating an object for every row. The sort is stable.
+ */
+class IndexSort {
+
+	@FunctionalInterface
+	interface IntComparator {
+		int compare(int i, int j);
+	}
+
+	@FunctionalInterface
+	interface IntFilter {
+		boolean test(int i);
+	}
+
+	private IndexSort() {
+	}
+
+	static int[] identity(int size) {
+		int[] idx = new int[size];
+		for (int i = 0; i < size; i++) {
+			idx[i] = i;
+		}
+		return idx;
+	}
+
+	/** Returns the indices of the given permutation that pass the filter. */
+	static int[] filter(int[] idx, IntFilter filter) {
+		int[] filtered = new int[idx.length];
+		int n = 0;
+		for (int i : idx) {
+			if (filter.test(i)) {
+				filtered[n++] = i;
+			}
+		}
+		if (n == filtered.length)
+			return filtered;
+		int[] result = new int[n];
+		System.arraycopy(filtered, 0, result, 0, n);
+		return result;
+	}
+
+	/** Sorts a copy of the given permutation with the given comparator. */
+	static int[] sort(int[] idx, IntComparator comparator, boolean ascending) {
+		int[] sorted = idx.clone();
+		int[] buffer = idx.clone();
+		IntComparator c = ascending
+				? comparator
+				: (i, j) -> comparator.compare(j, i);
+		mergeSort(buffer, sorted, 0, sorted.length, c);
+		return sorted;
+	}
+
+	static IntComparator byDouble(double[] keys) {
+		return (i, j) -> Double.compare(keys[i], keys[j]);
+	}
+
+	/**
+	 * Compares the given labels; if both labels of a comparison are numbers,
+	 * they are compared as numbers.
+	 */
+	static IntComparator byText(String[] keys) {
+		double[] numbers = new double[keys.length];
+		boolean[] isNumber = new boolean[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			String key = keys[i];
+			if (key == null || key.isEmpty())
+				continue;
+			try {
+				numbers[i] = Double.parseDouble(key);
+				isNumber[i] = true;
+			} catch (NumberFormatException e) {
+				isNumber[i] = false;
+			}
+		}
+		return (i, j) -> {
+			if (isNumber[i] && isNumber[j])
+				return Double.compare(numbers[i], numbers[j]);
+			return Strings.compare(keys[i], keys[j]);
+		};
+	}
+
+	/** Sorts src[from, to) into dest[from, to); src is used as buffer. */
+	private static void mergeSort(int[] src, int[] dest, int from, int to,
+			IntComparator c) {
+		int length = to - from;
+		if (length < 16) {
+			for (int i = from; i < to; i++) {
+				for (int j = i; j > from && c.compare(dest[j - 1], dest[j]) > 0; j--) {
+					int t = dest[j];
+					dest[j] = dest[j - 1];
+					dest[j - 1] = t;
+				}
+			}
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		mergeSort(dest, src, from, mid, c);
+		mergeSort(dest, src, mid, to, c);
+		if (c.compare(src[mid - 1], src[mid]) <= 0) {
+			System.arraycopy(src, from, dest, from, length);
+			return;
+		}
+		for (int i = from, p = from, q = mid; i < to; i++) {
+			if (q >= to || (p < mid && c.compare(src[p], src[q]) <= 0)) {
+				dest[i] = src[p++];
+			} else {
+				dest[i] = src[q++];
+			}
+		}
+	}
+}
@@ -1,17 +1,22 @@
 package org.openlca.app.results;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.eclipse.jface.action.Action;
-import org.eclipse.jface.viewers.ArrayContentProvider;
-import org.eclipse.jface.viewers.ITreeContentProvider;
+import org.eclipse.jface.viewers.ILazyTreeContentProvider;
 import org.eclipse.jface.viewers.TreeViewer;
+import org.eclipse.jface.viewers.Viewer;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Tree;
+import org.eclipse.swt.widgets.TreeColumn;
 import org.eclipse.ui.forms.IManagedForm;
 import org.eclipse.ui.forms.editor.FormPage;
 import org.eclipse.ui.forms.widgets.FormToolkit;
@@ -34,17 +39,21 @@ import org.openlca.core.math.CalculationSetup;
 import org.openlca.core.math.data_quality.DQResult;
 import org.openlca.core.matrix.IndexFlow;
 import org.openlca.core.model.descriptors.CategorizedDescriptor;
-import org.openlca.core.results.Contribution;
 import org.openlca.core.results.ContributionResult;
 
 /**
- * Shows the inventory result with process contributions.
+ * Shows the inventory result with process contributions. The trees are
+ * virtual: the flows are displayed in the order of a sorted permutation of the
+ * flow indices and the tree items are only created for the visible rows. The
+ * process contributions of a flow are calculated when the flow is expanded;
+ * sorting and the cutoff are applied on primitive arrays in background jobs.
  */
 public class InventoryPage extends FormPage {
 
 	private final CalculationSetup setup;
 	private final ContributionResult result;
 	private final DQResult dqResult;
+	private final CategorizedDescriptor[] processes;
 
 	private FormToolkit toolkit;
 
@@ -53,6 +62,8 @@ public class InventoryPage extends FormPage {
 		this.result = editor.result;
 		this.setup = editor.setup;
 		this.dqResult = editor.dqResult;
+		this.processes = result.getProcesses()
+				.toArray(new CategorizedDescriptor[0]);
 	}
 
 	@Override
@@ -62,8 +73,8 @@ public class InventoryPage extends FormPage {
 				Images.get(result));
 		toolkit = mform.getToolkit();
 		Composite body = UI.formBody(form, toolkit);
-		TreeViewer inputTree = createTree(body, true);
-		TreeViewer outputTree = createTree(body, false);
+		ContentProvider inputTree = createTree(body, true);
+		ContentProvider outputTree = createTree(body, false);
 		TotalRequirementsSection reqSection = new TotalRequirementsSection(
 				result, dqResult);
 		reqSection.create(body, toolkit);
@@ -72,7 +83,8 @@ public class InventoryPage extends FormPage {
 		reqSection.fill();
 	}
 
-	private void fillTrees(TreeViewer inputTree, TreeViewer outputTree) {
+	private void fillTrees(ContentProvider inputTree,
+			ContentProvider outputTree) {
 		List<IndexFlow> inFlows = new ArrayList<>();
 		List<IndexFlow> outFlows = new ArrayList<>();
 		result.getFlows().forEach(f -> {
@@ -82,11 +94,11 @@ public class InventoryPage extends FormPage {
 				outFlows.add(f);
 			}
 		});
-		inputTree.setInput(inFlows);
-		outputTree.setInput(outFlows);
+		inputTree.setFlows(inFlows);
+		outputTree.setFlows(outFlows);
 	}
 
-	private TreeViewer createTree(Composite parent, boolean forInputs) {
+	private ContentProvider createTree(Composite parent, boolean forInputs) {
 
 		// create section and cutoff combo
 		Section section = UI.section(parent, toolkit,
@@ -105,8 +117,10 @@ public class InventoryPage extends FormPage {
 		}
 		Label label = new Label();
 		TreeViewer viewer = Trees.createViewer(comp, headers, label);
-		viewer.setContentProvider(new ContentProvider());
-		createColumnSorters(viewer, label);
+		viewer.setUseHashlookup(true);
+		ContentProvider content = new ContentProvider(viewer, label);
+		viewer.setContentProvider(content);
+		content.bindSorters();
 		double[] widths = { .4, .2, .2, .15, .05 };
 		if (DQUI.displayExchangeQuality(dqResult)) {
 			widths = DQUI.adjustTableWidths(
@@ -122,61 +136,221 @@ public class InventoryPage extends FormPage {
 				App.openEditor((CategorizedDescriptor) obj);
 			}
 			if (obj instanceof FlowContribution) {
-				App.openEditor(((FlowContribution) obj).item.item);
+				App.openEditor(((FlowContribution) obj).process);
 			}
 		});
 		Trees.onDoubleClick(viewer, e -> onOpen.run());
 		Actions.bind(viewer, onOpen, TreeClipboard.onCopy(viewer));
 		spinner.register(viewer);
-		return viewer;
+		return content;
 	}
 
-	private void createColumnSorters(TreeViewer viewer, Label label) {
-		Viewers.sortByLabels(viewer, label, 0, 1, 2, 4);
-		Viewers.sortByDouble(viewer, this::getAmount, 3);
-		if (DQUI.displayExchangeQuality(dqResult)) {
-			int len = dqResult.setup.exchangeDqSystem.indicators.size();
-			for (int i = 0; i < len; i++) {
-				Viewers.sortByDouble(viewer, label, i + 5);
+	/**
+	 * The process contributions to a flow: the indices of the processes with
+	 * a contribution above the cutoff, sorted by their amounts in descending
+	 * order. The tree elements are created on demand.
+	 */
+	private class Children {
+
+		final IndexFlow flow;
+		final int[] idx;
+		final double[] amounts;
+		final double total;
+		final FlowContribution[] elements;
+
+		Children(IndexFlow flow, double cutoff) {
+			this.flow = flow;
+			this.total = result.getTotalFlowResult(flow);
+			this.amounts = new double[processes.length];
+			for (int i = 0; i < processes.length; i++) {
+				amounts[i] = result.getDirectFlowResult(processes[i], flow);
 			}
+			double cutoffValue = Math.abs(total * cutoff);
+			int[] filtered = IndexSort.filter(
+					IndexSort.identity(processes.length),
+					i -> amounts[i] != 0 && Math.abs(amounts[i]) >= cutoffValue);
+			this.idx = IndexSort.sort(filtered,
+					IndexSort.byDouble(amounts), false);
+			this.elements = new FlowContribution[idx.length];
+		}
+
+		FlowContribution get(int index) {
+			FlowContribution e = elements[index];
+			if (e == null) {
+				int i = idx[index];
+				double share = total == 0 ? 0 : amounts[i] / Math.abs(total);
+				e = new FlowContribution(processes[i], amounts[i], share, flow);
+				elements[index] = e;
+			}
+			return e;
 		}
 	}
 
-	private class ContentProvider extends ArrayContentProvider
-			implements ITreeContentProvider, CutoffContentProvider {
+	private class ContentProvider implements ILazyTreeContentProvider,
+			CutoffContentProvider {
 
+		private final TreeViewer viewer;
+		private final Label label;
+		private IndexFlow[] flows = new IndexFlow[0];
+		/** The displayed order of the flow indices. */
+		private int[] order = new int[0];
 		private double cutoff;
+		private Map<IndexFlow, Children> children = new HashMap<>();
+		private int sortRun;
+		private int cutoffRun;
+
+		ContentProvider(TreeViewer viewer, Label label) {
+			this.viewer = viewer;
+			this.label = label;
+		}
+
+		void setFlows(List<IndexFlow> flows) {
+			this.flows = flows.toArray(new IndexFlow[0]);
+			this.order = IndexSort.identity(this.flows.length);
+			viewer.setInput(this.flows);
+			viewer.setChildCount(this.flows, order.length);
+		}
 
 		@Override
-		public Object[] getChildren(Object e) {
-			if (!(e instanceof IndexFlow))
-				return null;
-			IndexFlow flow = (IndexFlow) e;
-			double cutoffValue = Math.abs(getAmount(flow) * this.cutoff);
-			return result.getProcessContributions(flow).stream()
-					.filter(i -> i.amount != 0)
-					.filter(i -> Math.abs(i.amount) >= cutoffValue)
-					.sorted((i1, i2) -> -Double.compare(i1.amount, i2.amount))
-					.map(i -> new FlowContribution(i, flow))
-					.collect(Collectors.toList())
-					.toArray();
+		public void updateElement(Object parent, int index) {
+			if (parent == flows) {
+				if (index >= order.length)
+					return;
+				IndexFlow flow = flows[order[index]];
+				viewer.replace(parent, index, flow);
+				viewer.setHasChildren(flow, true);
+				return;
+			}
+			if (!(parent instanceof IndexFlow))
+				return;
+			Children c = childrenOf((IndexFlow) parent);
+			if (index >= c.idx.length)
+				return;
+			FlowContribution e = c.get(index);
+			viewer.replace(parent, index, e);
+			viewer.setChildCount(e, 0);
+		}
+
+		@Override
+		public void updateChildCount(Object element, int currentChildCount) {
+			int count = 0;
+			if (element == flows) {
+				count = order.length;
+			} else if (element instanceof IndexFlow) {
+				count = childrenOf((IndexFlow) element).idx.length;
+			}
+			if (count != currentChildCount) {
+				viewer.setChildCount(element, count);
+			}
+		}
+
+		private Children childrenOf(IndexFlow flow) {
+			Children c = children.get(flow);
+			if (c == null) {
+				c = new Children(flow, cutoff);
+				children.put(flow, c);
+			}
+			return c;
 		}
 
 		@Override
 		public Object getParent(Object e) {
 			if (e instanceof FlowContribution)
 				return ((FlowContribution) e).flow;
+			if (e instanceof IndexFlow)
+				return flows;
 			return null;
 		}
 
+		/**
+		 * Sets the cutoff; the contributions of the expanded flows are
+		 * calculated again in a background job. Until that job is finished,
+		 * the current contributions are displayed.
+		 */
+		@Override
+		public void setCutoff(double cutoff) {
+			if (this.cutoff == cutoff)
+				return;
+			this.cutoff = cutoff;
+			int run = ++cutoffRun;
+			List<IndexFlow> expanded = new ArrayList<>();
+			for (Object e : viewer.getExpandedElements()) {
+				if (e instanceof IndexFlow) {
+					expanded.add((IndexFlow) e);
+				}
+			}
+			Map<IndexFlow, Children> next = new HashMap<>();
+			App.run(M.Cutoff, () -> {
+				for (IndexFlow flow : expanded) {
+					next.put(flow, new Children(flow, cutoff));
+				}
+			}, () -> {
+				if (run != cutoffRun || viewer.getTree().isDisposed())
+					return;
+				children = next;
+				viewer.refresh();
+			});
+		}
+
+		void bindSorters() {
+			Tree tree = viewer.getTree();
+			for (int col = 0; col < tree.getColumnCount(); col++) {
+				TreeColumn column = tree.getColumn(col);
+				int c = col;
+				column.addSelectionListener(new SelectionAdapter() {
+					@Override
+					public void widgetSelected(SelectionEvent e) {
+						boolean ascending = tree.getSortColumn() != column
+								|| tree.getSortDirection() != SWT.UP;
+						tree.setSortColumn(column);
+						tree.setSortDirection(ascending ? SWT.UP : SWT.DOWN);
+						sort(c, ascending);
+					}
+				});
+			}
+		}
+
+		/**
+		 * Sorts the flows by the given column in a background job; the
+		 * amounts are sorted directly on the result values. The contributions
+		 * of a flow are always sorted by their amounts.
+		 */
+		private void sort(int col, boolean ascending) {
+			int run = ++sortRun;
+			IndexFlow[] flows = this.flows;
+			int[] current = order;
+			int[][] sorted = new int[1][];
+			App.run(M.SortResults, () -> {
+				IndexSort.IntComparator comparator;
+				if (col == 3) {
+					double[] amounts = new double[flows.length];
+					for (int i = 0; i < flows.length; i++) {
+						amounts[i] = result.getTotalFlowResult(flows[i]);
+					}
+					comparator = IndexSort.byDouble(amounts);
+				} else {
+					String[] keys = new String[flows.length];
+					for (int i = 0; i < flows.length; i++) {
+						keys[i] = label.getColumnText(flows[i], col);
+					}
+					comparator = IndexSort.byText(keys);
+				}
+				sorted[0] = IndexSort.sort(current, comparator, ascending);
+			}, () -> {
+				if (run != sortRun || flows != this.flows
+						|| viewer.getTree().isDisposed())
+					return;
+				order = sorted[0];
+				viewer.refresh();
+			});
+		}
+
 		@Override
-		public boolean hasChildren(Object e) {
-			return e instanceof IndexFlow;
+		public void inputChanged(Viewer viewer, Object old, Object input) {
 		}
 
 		@Override
-		public void setCutoff(double cutoff) {
-			this.cutoff = cutoff;
+		public void dispose() {
 		}
 	}
 
@@ -204,9 +378,9 @@ public class InventoryPage extends FormPage {
 				return null;
 			FlowContribution c = (FlowContribution) obj;
 			if (col == 0)
-				return Images.get(c.item.item);
+				return Images.get(c.process);
 			if (col == 3)
-				return img.getForTable(c.item.share);
+				return img.getForTable(c.share);
 			return null;
 		}
 
@@ -240,7 +414,7 @@ public class InventoryPage extends FormPage {
 		}
 
 		private String getProcessColumnText(FlowContribution item, int col) {
-			CategorizedDescriptor process = item.item.item;
+			CategorizedDescriptor process = item.process;
 			Pair<String, String> category = Labels.getCategory(process);
 			switch (col) {
 			case 0:
@@ -267,7 +441,7 @@ public class InventoryPage extends FormPage {
 			}
 			if (obj instanceof FlowContribution) {
 				FlowContribution item = (FlowContribution) obj;
-				return dqResult.get(item.item.item, item.flow.flow);
+				return dqResult.get(item.process, item.flow.flow);
 			}
 			return null;
 		}
@@ -277,21 +451,23 @@ public class InventoryPage extends FormPage {
 		if (o instanceof IndexFlow) {
 			return result.getTotalFlowResult((IndexFlow) o);
 		} else if (o instanceof FlowContribution) {
-			FlowContribution item = (FlowContribution) o;
-			return item.item.amount;
+			return ((FlowContribution) o).amount;
 		}
 		return 0d;
 	}
 
 	private class FlowContribution {
 
-		final Contribution<CategorizedDescriptor> item;
+		final CategorizedDescriptor process;
+		final double amount;
+		final double share;
 		final IndexFlow flow;
 
-		private FlowContribution(
-				Contribution<CategorizedDescriptor> item,
-				IndexFlow flow) {
-			this.item = item;
+		private FlowContribution(CategorizedDescriptor process, double amount,
+				double share, IndexFlow flow) {
+			this.process = process;
+			this.amount = amount;
+			this.share = share;
 			this.flow = flow;
 		}
 	}
@@ -1,12 +1,16 @@
 package org.openlca.app.results;
 
 import java.util.Collections;
+import java.util.List;
 
-import org.openlca.app.util.Labels;
 import org.openlca.core.results.IResult;
 import org.openlca.core.results.ProjectResult;
 import org.openlca.util.Strings;
 
+/**
+ * Sorts the process, flow, and LCIA category lists of a result in place,
+ * using the order of the shared {@link SortIndex} of the result.
+ */
 public final class Sort {
 
 	private Sort() {
@@ -15,24 +19,13 @@ public final class Sort {
 	public static void sort(IResult result) {
 		if (result == null)
 			return;
-
-		Collections.sort(result.getProcesses(), (p1, p2) -> {
-			String name1 = Labels.name(p1);
-			String name2 = Labels.name(p2);
-			return Strings.compare(name1, name2);
-		});
-
+		SortIndex index = SortIndex.of(result);
+		apply(index.processes(), result.getProcesses());
 		if (result.hasFlowResults()) {
-			Collections.sort(result.getFlows(), (f1, f2) -> {
-				String name1 = Labels.name(f1);
-				String name2 = Labels.name(f2);
-				return Strings.compare(name1, name2);
-			});
+			apply(index.flows(), result.getFlows());
 		}
-
 		if (result.hasImpactResults()) {
-			Collections.sort(result.getImpacts(),
-					(i1, i2) -> Strings.compare(i1.name, i2.name));
+			apply(index.impacts(), result.getImpacts());
 		}
 
 		if (result instanceof ProjectResult) {
@@ -41,4 +34,12 @@ public final class Sort {
 					(v1, v2) -> Strings.compare(v1.name, v2.name));
 		}
 	}
+
+	private static <T> void apply(List<T> sorted, List<T> list) {
+		if (list == null || sorted.size() != list.size())
+			return;
+		for (int i = 0; i < sorted.size(); i++) {
+			list.set(i, sorted.get(i));
+		}
+	}
 }
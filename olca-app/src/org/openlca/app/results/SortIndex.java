@@ -0,0 +1,225 @@
+package org.openlca.app.results;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.openlca.app.db.Cache;
+import org.openlca.app.db.Database;
+import org.openlca.app.util.Labels;
+import org.openlca.core.database.EntityCache;
+import org.openlca.core.database.IDatabase;
+import org.openlca.core.matrix.IndexFlow;
+import org.openlca.core.model.Category;
+import org.openlca.core.model.FlowType;
+import org.openlca.core.model.ModelType;
+import org.openlca.core.model.descriptors.BaseDescriptor;
+import org.openlca.core.model.descriptors.CategorizedDescriptor;
+import org.openlca.core.model.descriptors.ImpactCategoryDescriptor;
+import org.openlca.core.results.IResult;
+import org.openlca.io.CategoryPath;
+import org.openlca.util.Strings;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+/**
+ * The processes, flows, and LCIA categories of a result sorted by their
+ * labels. Flows with the same name are sorted by their category paths and
+ * locations and LCIA categories with the same name by their reference units,
+ * so that the order is always the same. The index is calculated once per
+ * result and shared by the result editors and the combo viewers of a result.
+ * The collation keys of the descriptor labels are cached per database and
+ * model type, so that the labels are not created again in every comparison or
+ * for every new result; the key cache is cleared when the application caches
+ * change or the database is closed.
+ */
+public final class SortIndex {
+
+	private static final Map<IResult, SortIndex> indices = Collections
+			.synchronizedMap(new WeakHashMap<>());
+	private static final Map<String, TLongObjectHashMap<CollationKey>> keys =
+			new HashMap<>();
+	private static final Collator collator = Collator.getInstance();
+	private static long stamp = Cache.getChangeStamp();
+
+	static {
+		collator.setStrength(Collator.SECONDARY);
+	}
+
+	private final List<CategorizedDescriptor> processes;
+	private final List<IndexFlow> flows;
+	private final List<ImpactCategoryDescriptor> impacts;
+
+	private SortIndex(IResult result) {
+		processes = sort(result.getProcesses());
+		flows = result.hasFlowResults()
+				? sortFlows(result.getFlows())
+				: Collections.emptyList();
+		impacts = result.hasImpactResults()
+				? sortImpacts(result.getImpacts())
+				: Collections.emptyList();
+	}
+
+	/** Returns the (cached) sort index of the given result. */
+	public static SortIndex of(IResult result) {
+		SortIndex index = indices.get(result);
+		if (index != null)
+			return index;
+		index = new SortIndex(result);
+		indices.put(result, index);
+		return index;
+	}
+
+	/** The processes of the result sorted by their labels. */
+	public List<CategorizedDescriptor> processes() {
+		return processes;
+	}
+
+	/**
+	 * The flows of the result sorted by their labels, category paths, and
+	 * locations.
+	 */
+	public List<IndexFlow> flows() {
+		return flows;
+	}
+
+	/**
+	 * The LCIA categories of the result sorted by their labels and reference
+	 * units.
+	 */
+	public List<ImpactCategoryDescriptor> impacts() {
+		return impacts;
+	}
+
+	private <T extends BaseDescriptor> List<T> sort(List<T> list) {
+		if (list == null || list.isEmpty())
+			return Collections.emptyList();
+		CollationKey[] k = new CollationKey[list.size()];
+		for (int i = 0; i < k.length; i++) {
+			k[i] = key(list.get(i));
+		}
+		int[] order = IndexSort.sort(IndexSort.identity(k.length),
+				(i, j) -> compare(k[i], k[j]), true);
+		List<T> sorted = new ArrayList<>(order.length);
+		for (int i : order) {
+			sorted.add(list.get(i));
+		}
+		return Collections.unmodifiableList(sorted);
+	}
+
+	private List<IndexFlow> sortFlows(List<IndexFlow> list) {
+		if (list == null || list.isEmpty())
+			return Collections.emptyList();
+		CollationKey[] k = new CollationKey[list.size()];
+		String[] categories = new String[k.length];
+		String[] locations = new String[k.length];
+		TLongObjectHashMap<String> paths = new TLongObjectHashMap<>();
+		for (int i = 0; i < k.length; i++) {
+			IndexFlow f = list.get(i);
+			k[i] = key(f.flow);
+			if (f.flow != null && f.flow.category != null) {
+				categories[i] = categoryPath(f.flow.category, paths);
+			}
+			// the location of an index flow is only part of the label of
+			// elementary flows; see Labels#name(IndexFlow)
+			if (f.location != null && f.flow != null
+					&& f.flow.flowType == FlowType.ELEMENTARY_FLOW) {
+				locations[i] = f.location.code;
+			}
+		}
+		int[] order = IndexSort.sort(IndexSort.identity(k.length), (i, j) -> {
+			int c = compare(k[i], k[j]);
+			if (c != 0)
+				return c;
+			c = Strings.compare(categories[i], categories[j]);
+			return c != 0 ? c : Strings.compare(locations[i], locations[j]);
+		}, true);
+		List<IndexFlow> sorted = new ArrayList<>(order.length);
+		for (int i : order) {
+			sorted.add(list.get(i));
+		}
+		return Collections.unmodifiableList(sorted);
+	}
+
+	private String categoryPath(long id, TLongObjectHashMap<String> paths) {
+		String path = paths.get(id);
+		if (path != null)
+			return path;
+		EntityCache cache = Cache.getEntityCache();
+		Category category = cache != null
+				? cache.get(Category.class, id)
+				: null;
+		path = category != null
+				? CategoryPath.getFull(category)
+				: "";
+		paths.put(id, path);
+		return path;
+	}
+
+	private List<ImpactCategoryDescriptor> sortImpacts(
+			List<ImpactCategoryDescriptor> list) {
+		if (list == null || list.isEmpty())
+			return Collections.emptyList();
+		CollationKey[] k = new CollationKey[list.size()];
+		for (int i = 0; i < k.length; i++) {
+			k[i] = key(list.get(i));
+		}
+		int[] order = IndexSort.sort(IndexSort.identity(k.length), (i, j) -> {
+			int c = compare(k[i], k[j]);
+			return c != 0 ? c : Strings.compare(
+					list.get(i).referenceUnit, list.get(j).referenceUnit);
+		}, true);
+		List<ImpactCategoryDescriptor> sorted = new ArrayList<>(order.length);
+		for (int i : order) {
+			sorted.add(list.get(i));
+		}
+		return Collections.unmodifiableList(sorted);
+	}
+
+	private static int compare(CollationKey k1, CollationKey k2) {
+		if (k1 == null && k2 == null)
+			return 0;
+		if (k1 == null || k2 == null)
+			return k1 == null ? -1 : 1;
+		return k1.compareTo(k2);
+	}
+
+	/** Clears the cached collation keys, e.g. when the database is closed. */
+	public static synchronized void clearCache() {
+		keys.clear();
+	}
+
+	/**
+	 * Returns the cached collation key of the label of the given descriptor.
+	 */
+	static synchronized CollationKey key(BaseDescriptor d) {
+		if (d == null)
+			return null;
+		if (d.id == 0)
+			return collator.getCollationKey(Labels.name(d));
+		long current = Cache.getChangeStamp();
+		if (current != stamp) {
+			keys.clear();
+			stamp = current;
+		}
+		IDatabase db = Database.get();
+		ModelType type = d.type != null ? d.type : ModelType.UNKNOWN;
+		String mapKey = (db != null ? db.getName() : "") + "/" + type.name();
+		TLongObjectHashMap<CollationKey> map = keys.get(mapKey);
+		if (map == null) {
+			map = new TLongObjectHashMap<>();
+			keys.put(mapKey, map);
+		}
+		CollationKey key = map.get(d.id);
+		if (key == null) {
+			key = collator.getCollationKey(Labels.name(d));
+			map.put(d.id, key);
+		}
+		return key;
+	}
+}
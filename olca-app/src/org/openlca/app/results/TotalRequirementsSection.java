@@ -1,17 +1,22 @@
 package org.openlca.app.results;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.eclipse.jface.action.Action;
+import org.eclipse.jface.viewers.ILazyContentProvider;
 import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jface.viewers.Viewer;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableColumn;
 import org.eclipse.ui.forms.widgets.FormToolkit;
 import org.eclipse.ui.forms.widgets.Section;
 import org.openlca.app.App;
@@ -41,6 +46,9 @@ import org.openlca.core.results.SimpleResult;
 
 /**
  * The total requirements section that is shown on the TotalFlowResultPage.
+ * The table is virtual: it is backed by the result arrays and a sorted
+ * permutation of the row indices, and the row items are only created for the
+ * visible rows. Sorting is done on the arrays in a background job.
  */
 class TotalRequirementsSection {
 
@@ -51,6 +59,15 @@ class TotalRequirementsSection {
 	private Map<Long, CategorizedDescriptor> processes = new HashMap<>();
 
 	private TableViewer table;
+	private Label label;
+
+	/** The row items by index in the result; created on demand. */
+	private Item[] items;
+	/** The displayed order of the row indices. */
+	private int[] order = new int[0];
+	private double[] costValues;
+	private double maxCosts;
+	private int sortRun;
 
 	TotalRequirementsSection(SimpleResult result, DQResult dqResult) {
 		this.result = result;
@@ -71,18 +88,13 @@ class TotalRequirementsSection {
 		UI.gridData(section, true, true);
 		Composite comp = UI.sectionClient(section, tk);
 		UI.gridLayout(comp, 1);
-		Label label = new Label();
+		label = new Label();
 		table = Tables.createViewer(comp, columnLabels(), label);
+		table.setContentProvider(new ContentProvider());
 		Tables.bindColumnWidths(table, DQUI.MIN_COL_WIDTH, columnWidths());
-		Viewers.sortByLabels(table, label, 0, 1, 3);
-		Viewers.sortByDouble(table, (Item i) -> i.amount, 2);
-		if (costs != Costs.NONE)
-			Viewers.sortByDouble(table, (Item i) -> i.costValue, 4);
-		if (DQUI.displayProcessQuality(dqResult)) {
-			int startCol = costs == Costs.NONE ? 4 : 5;
-			for (int i = 0; i < dqResult.setup.processDqSystem.indicators.size(); i++) {
-				Viewers.sortByDouble(table, label, i + startCol);
-			}
+		Table t = table.getTable();
+		for (int col = 0; col < t.getColumnCount(); col++) {
+			bindSorter(t.getColumn(col), col);
 		}
 		for (int col : numberColumns()) {
 			table.getTable().getColumns()[col].setAlignment(SWT.RIGHT);
@@ -120,7 +132,96 @@ class TotalRequirementsSection {
 	void fill() {
 		if (table == null)
 			return;
-		table.setInput(createItems());
+		initArrays();
+		double[] amounts = result.totalRequirements;
+		int[] sorted = amounts == null
+				? new int[0]
+				: IndexSort.sort(IndexSort.identity(amounts.length),
+						IndexSort.byDouble(amounts), false);
+		setOrder(sorted);
+	}
+
+	private void initArrays() {
+		double[] tr = result == null ? null : result.totalRequirements;
+		int n = tr == null ? 0 : tr.length;
+		items = new Item[n];
+		costValues = new double[n];
+		maxCosts = 0;
+		if (costs == Costs.NONE || !(result instanceof ContributionResult))
+			return;
+		double[] vals = ((ContributionResult) result).directCostResults;
+		for (int i = 0; i < n && i < vals.length; i++) {
+			double v = vals[i];
+			costValues[i] = costs == Costs.NET_COSTS ? v : v != 0 ? -v : 0;
+			maxCosts = Math.max(maxCosts, costValues[i]);
+		}
+	}
+
+	private void setOrder(int[] order) {
+		this.order = order;
+		table.setInput(order);
+		table.setItemCount(order.length);
+		table.refresh();
+	}
+
+	private Item item(int idx) {
+		Item item = items[idx];
+		if (item == null) {
+			item = new Item(idx, result.totalRequirements[idx]);
+			items[idx] = item;
+		}
+		return item;
+	}
+
+	private void bindSorter(TableColumn column, int col) {
+		column.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				Table t = table.getTable();
+				boolean ascending = t.getSortColumn() != column
+						|| t.getSortDirection() != SWT.UP;
+				t.setSortColumn(column);
+				t.setSortDirection(ascending ? SWT.UP : SWT.DOWN);
+				sort(col, ascending);
+			}
+		});
+	}
+
+	/**
+	 * Sorts the rows by the given column in a background job; the numeric
+	 * columns are sorted directly on the result arrays.
+	 */
+	private void sort(int col, boolean ascending) {
+		if (items == null)
+			return;
+		int run = ++sortRun;
+		int[] current = order;
+		int[][] sorted = new int[1][];
+		App.run(M.SortResults, () -> {
+			IndexSort.IntComparator comparator;
+			if (col == 2) {
+				comparator = IndexSort.byDouble(result.totalRequirements);
+			} else if (col == 4 && costs != Costs.NONE) {
+				comparator = IndexSort.byDouble(costValues);
+			} else {
+				String[] keys = new String[items.length];
+				for (int i : current) {
+					Item item = items[i];
+					if (item == null) {
+						// do not cache the items of the invisible rows
+						item = new Item(i, result.totalRequirements[i]);
+					}
+					keys[i] = label.getColumnText(item, col);
+				}
+				comparator = IndexSort.byText(keys);
+			}
+			sorted[0] = IndexSort.sort(current, comparator, ascending);
+		}, () -> {
+			if (run != sortRun || sorted[0] == null
+					|| table.getTable().isDisposed())
+				return;
+			setOrder(sorted[0]);
+		});
 	}
 
 	private String[] columnLabels() {
@@ -156,35 +257,6 @@ class TotalRequirementsSection {
 		return DQUI.adjustTableWidths(widths, dqResult.setup.processDqSystem);
 	}
 
-	private List<Item> createItems() {
-		if (result == null)
-			return Collections.emptyList();
-		double[] tr = result.totalRequirements;
-		if (tr == null)
-			return Collections.emptyList();
-		List<Item> items = new ArrayList<>();
-		for (int i = 0; i < tr.length; i++) {
-			items.add(new Item(i, tr[i]));
-		}
-		calculateCostChares(items);
-		Collections.sort(items, (a, b) -> -Double.compare(a.amount, b.amount));
-		return items;
-	}
-
-	private void calculateCostChares(List<Item> items) {
-		if (costs == Costs.NONE)
-			return;
-		double max = 0;
-		for (Item item : items) {
-			max = Math.max(max, item.costValue);
-		}
-		if (max == 0)
-			return;
-		for (Item item : items) {
-			item.costShare = item.costValue / max;
-		}
-	}
-
 	private String asCosts(double value) {
 		if (currencySymbol == null) {
 			try {
@@ -222,7 +294,10 @@ class TotalRequirementsSection {
 			if (index == null)
 				return;
 			setProcessProduct(index, idx);
-			setCostValue(idx);
+			if (costs != Costs.NONE && idx < costValues.length) {
+				costValue = costValues[idx];
+				costShare = maxCosts == 0 ? 0 : costValue / maxCosts;
+			}
 		}
 
 		private void setProcessProduct(TechIndex techIdx, int idx) {
@@ -238,19 +313,24 @@ class TotalRequirementsSection {
 			}
 		}
 
-		private void setCostValue(int idx) {
-			if (costs == Costs.NONE)
-				return;
-			if (!(result instanceof ContributionResult))
+	}
+
+	private class ContentProvider implements ILazyContentProvider {
+
+		@Override
+		public void updateElement(int index) {
+			if (index < 0 || index >= order.length)
 				return;
-			ContributionResult crp = (ContributionResult) result;
-			double[] vals = crp.directCostResults;
-			if (vals.length > idx && idx >= 0) {
-				double v = vals[idx];
-				costValue = costs == Costs.NET_COSTS ? v : v != 0 ? -v : 0;
-			}
+			table.replace(item(order[index]), index);
 		}
 
+		@Override
+		public void inputChanged(Viewer viewer, Object old, Object input) {
+		}
+
+		@Override
+		public void dispose() {
+		}
 	}
 
 	private class Label extends DQLabelProvider {
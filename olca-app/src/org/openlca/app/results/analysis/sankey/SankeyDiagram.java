@@ -2,20 +2,27 @@ package org.openlca.app.results.analysis.sankey;
 
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.draw2d.ConnectionLayer;
+import org.eclipse.draw2d.IFigure;
 import org.eclipse.draw2d.Layer;
 import org.eclipse.draw2d.LayeredPane;
 import org.eclipse.draw2d.StackLayout;
 import org.eclipse.draw2d.geometry.Dimension;
 import org.eclipse.gef.DefaultEditDomain;
+import org.eclipse.gef.GraphicalEditPart;
 import org.eclipse.gef.GraphicalViewer;
 import org.eclipse.gef.KeyHandler;
 import org.eclipse.gef.KeyStroke;
@@ -33,6 +40,7 @@ import org.eclipse.jface.action.MenuManager;
 import org.eclipse.swt.SWT;
 import org.openlca.app.App;
 import org.openlca.app.results.analysis.sankey.actions.SankeyMenu;
+import org.openlca.app.results.analysis.sankey.layout.GraphLayoutManager;
 import org.openlca.app.results.analysis.sankey.model.Link;
 import org.openlca.app.results.analysis.sankey.model.ProcessNode;
 import org.openlca.app.results.analysis.sankey.model.ProductSystemNode;
@@ -60,6 +68,7 @@ public class SankeyDiagram extends GraphicalEditor implements PropertyChangeList
 	private Map<ProcessLink, Link> createdLinks = new HashMap<>();
 	private Map<Long, ProcessNode> createdProcesses = new HashMap<>();
 	private ProductSystem productSystem;
+	private int updates;
 
 	public SankeyDiagram(FullResult result, DQResult dqResult, CalculationSetup setup) {
 		this.dqResult = dqResult;
@@ -73,7 +82,12 @@ public class SankeyDiagram extends GraphicalEditor implements PropertyChangeList
 		}
 	}
 
-	private void createConnections(long startProcessId) {
+	/**
+	 * Creates the links between the visible processes that are not created
+	 * yet, starting from the given process, and returns the new links.
+	 */
+	private List<Link> createConnections(long startProcessId) {
+		List<Link> newLinks = new ArrayList<>();
 		Set<Long> handled = new HashSet<>();
 		Stack<Long> processes = new Stack<>();
 		processes.add(startProcessId);
@@ -81,19 +95,22 @@ public class SankeyDiagram extends GraphicalEditor implements PropertyChangeList
 			long nextId = processes.pop();
 			handled.add(nextId);
 			for (ProcessLink link : linkSearchMap.getIncomingLinks(nextId)) {
-				if (createdLinks.containsKey(link))
-					continue;
 				ProcessNode source = createdProcesses.get(link.providerId);
 				ProcessNode target = createdProcesses.get(link.processId);
 				if (source == null || target == null)
 					continue;
-				double ratio = sankeyResult.getLinkContribution(link);
-				createdLinks.put(link, new Link(source, target, link, ratio));
+				if (!createdLinks.containsKey(link)) {
+					double ratio = sankeyResult.getLinkContribution(link);
+					Link l = new Link(source, target, link, ratio);
+					createdLinks.put(link, l);
+					newLinks.add(l);
+				}
 				if (handled.contains(source.process.id))
 					continue;
 				processes.add(source.process.id);
 			}
 		}
+		return newLinks;
 	}
 
 	private ProcessNode createNode(CategorizedDescriptor process) {
@@ -114,28 +131,91 @@ public class SankeyDiagram extends GraphicalEditor implements PropertyChangeList
 		}
 	}
 
-	private void updateModel(double cutoff) {
-		Map<Long, CategorizedDescriptor> processes = new HashMap<>();
-		for (CategorizedDescriptor d : result.getProcesses())
-			processes.put(d.id, d);
-		if (cutoff == 0) {
-			for (Long processId : productSystem.processes) {
-				CategorizedDescriptor d = processes.get(processId);
-				if (d != null) {
-					node.addChild(createNode(d));
-				}
+	private void updateModel(Set<Long> visible) {
+		Map<Long, CategorizedDescriptor> processes = processMap();
+		List<ProcessNode> added = new ArrayList<>();
+		for (Long processId : visible) {
+			CategorizedDescriptor d = processes.get(processId);
+			if (d != null) {
+				added.add(createNode(d));
 			}
-		} else {
-			long refProcess = productSystem.referenceProcess.id;
-			Set<Long> processesToDraw = SankeyProcessList.calculate(
-					sankeyResult, refProcess, cutoff, linkSearchMap);
-			for (final Long processId : processesToDraw) {
-				CategorizedDescriptor process = processes.get(processId);
-				if (process != null) {
-					node.addChild(createNode(process));
-				}
+		}
+		node.updateChildren(Collections.emptyList(), added);
+	}
+
+	/**
+	 * Updates the current model for a new cutoff: the nodes and links that are
+	 * not visible anymore are removed and the new ones are added. The other
+	 * nodes and links, and thus their edit parts and figures, are kept. The
+	 * visible processes are calculated before in a background job.
+	 */
+	private void updateModelIncrementally(Set<Long> visible, double cutoff) {
+
+		// remove the nodes and links that are not visible anymore
+		List<ProcessLink> removedLinks = new ArrayList<>();
+		for (Map.Entry<ProcessLink, Link> e : createdLinks.entrySet()) {
+			Link link = e.getValue();
+			if (visible.contains(link.getSource().process.id)
+					&& visible.contains(link.getTarget().process.id))
+				continue;
+			link.unlink();
+			removedLinks.add(e.getKey());
+		}
+		for (ProcessLink link : removedLinks) {
+			createdLinks.remove(link);
+		}
+		List<ProcessNode> removedNodes = new ArrayList<>();
+		for (Map.Entry<Long, ProcessNode> e : createdProcesses.entrySet()) {
+			if (visible.contains(e.getKey()))
+				continue;
+			removedNodes.add(e.getValue());
+		}
+		for (ProcessNode n : removedNodes) {
+			createdProcesses.remove(n.process.id);
+		}
+
+		// add the new nodes and links
+		Map<Long, CategorizedDescriptor> processes = processMap();
+		List<ProcessNode> addedNodes = new ArrayList<>();
+		for (Long processId : visible) {
+			if (createdProcesses.containsKey(processId))
+				continue;
+			CategorizedDescriptor d = processes.get(processId);
+			if (d != null) {
+				addedNodes.add(createNode(d));
 			}
 		}
+		node.updateChildren(removedNodes, addedNodes);
+		for (Link link : createConnections(productSystem.referenceProcess.id)) {
+			link.link();
+		}
+		node.cutoff = cutoff;
+		node.setRouted(routed);
+
+		// update the layout
+		Object contents = getGraphicalViewer().getContents();
+		if (contents instanceof GraphicalEditPart) {
+			IFigure figure = ((GraphicalEditPart) contents).getFigure();
+			if (figure.getLayoutManager() instanceof GraphLayoutManager) {
+				((GraphLayoutManager) figure.getLayoutManager()).layoutTree();
+			}
+			figure.revalidate();
+		}
+	}
+
+	private Set<Long> visibleProcesses(double cutoff) {
+		if (cutoff == 0)
+			return new HashSet<>(productSystem.processes);
+		long refProcess = productSystem.referenceProcess.id;
+		return SankeyProcessList.calculate(
+				sankeyResult, refProcess, cutoff, linkSearchMap);
+	}
+
+	private Map<Long, CategorizedDescriptor> processMap() {
+		Map<Long, CategorizedDescriptor> processes = new HashMap<>();
+		for (CategorizedDescriptor d : result.getProcesses())
+			processes.put(d.id, d);
+		return processes;
 	}
 
 	@Override
@@ -208,7 +288,6 @@ public class SankeyDiagram extends GraphicalEditor implements PropertyChangeList
 		initContent();
 	}
 
-	// TODO: avoid double calculation here
 	private void initContent() {
 		Object s = getDefaultSelection();
 		if (s == null) {
@@ -216,9 +295,9 @@ public class SankeyDiagram extends GraphicalEditor implements PropertyChangeList
 					new ProductSystemNode(productSystem, this, null, 0.1));
 			return;
 		}
-		sankeyResult.calculate(s); // => here
+		sankeyResult.calculate(s);
 		double cutoff = sankeyResult.findCutoff(30);
-		update(s, cutoff); // => TODO: also calls sankeyResult.calculate(s)
+		update(s, cutoff); // the result is not calculated again
 	}
 
 	public Object getDefaultSelection() {
@@ -269,17 +348,43 @@ public class SankeyDiagram extends GraphicalEditor implements PropertyChangeList
 		return super.getGraphicalViewer();
 	}
 
+	/**
+	 * Updates the diagram for the given selection and cutoff. If only the
+	 * cutoff changed, the current model is updated incrementally.
+	 */
 	public void update(Object selection, double cutoff) {
 		if (selection == null || cutoff < 0d || cutoff > 1d)
 			return;
+		// only the last requested update is applied when the background
+		// jobs of multiple updates finish in a different order
+		int update = ++updates;
+		AtomicReference<Set<Long>> visible = new AtomicReference<>();
+		if (node != null
+				&& Objects.equals(node.selection(), selection)
+				&& sankeyResult.isCalculated(selection)
+				&& getGraphicalViewer().getContents() != null) {
+			App.run("Calculate sankey results",
+					() -> visible.set(visibleProcesses(cutoff)),
+					() -> {
+						if (update == updates && node != null) {
+							updateModelIncrementally(visible.get(), cutoff);
+						}
+					});
+			return;
+		}
 		App.run("Calculate sankey results",
-				() -> sankeyResult.calculate(selection),
 				() -> {
+					sankeyResult.calculate(selection);
+					visible.set(visibleProcesses(cutoff));
+				},
+				() -> {
+					if (update != updates)
+						return;
 					node = new ProductSystemNode(
 							productSystem, this, selection, cutoff);
 					createdProcesses.clear();
 					createdLinks.clear();
-					updateModel(cutoff);
+					updateModel(visible.get());
 					getGraphicalViewer().deselectAll();
 					getGraphicalViewer().setContents(node);
 					node.setRouted(routed);
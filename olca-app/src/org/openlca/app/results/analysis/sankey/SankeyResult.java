@@ -1,9 +1,10 @@
 package org.openlca.app.results.analysis.sankey;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 import java.util.function.ToDoubleFunction;
+import java.util.stream.IntStream;
 
 import org.openlca.app.util.CostResultDescriptor;
 import org.openlca.core.matrix.IndexFlow;
@@ -30,6 +31,7 @@ class SankeyResult {
 	private double[] upstreamContributions;
 	private double[] directResults;
 	private double[] directContributions;
+	private Object selection;
 
 	public SankeyResult(ProductSystem system, FullResult results) {
 		this.system = system;
@@ -61,15 +63,67 @@ class SankeyResult {
 		return values[idx];
 	}
 
+	/**
+	 * Returns the absolute upstream contribution of the k-th largest process
+	 * (by absolute value) so that approximately k processes are above this
+	 * cutoff. The k largest values are selected with a min-heap of size k
+	 * instead of sorting all contributions.
+	 */
 	public double findCutoff(int maxProcessesCount) {
-		if (upstreamContributions.length == 0
+		if (upstreamContributions == null
+				|| upstreamContributions.length == 0
+				|| maxProcessesCount <= 0
 				|| maxProcessesCount >= upstreamContributions.length)
 			return 0;
-		int length = upstreamContributions.length;
-		double[] contributions = new double[length];
-		System.arraycopy(upstreamContributions, 0, contributions, 0, length);
-		Arrays.sort(contributions);
-		return Math.abs(contributions[length - maxProcessesCount]);
+		int k = maxProcessesCount;
+		double[] heap = new double[k];
+		int size = 0;
+		for (double c : upstreamContributions) {
+			double v = Math.abs(c);
+			if (size < k) {
+				heap[size] = v;
+				siftUp(heap, size);
+				size++;
+			} else if (v > heap[0]) {
+				heap[0] = v;
+				siftDown(heap, size);
+			}
+		}
+		return heap[0];
+	}
+
+	private static void siftUp(double[] heap, int i) {
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (heap[parent] <= heap[i])
+				return;
+			swap(heap, parent, i);
+			i = parent;
+		}
+	}
+
+	private static void siftDown(double[] heap, int size) {
+		int i = 0;
+		while (true) {
+			int left = 2 * i + 1;
+			if (left >= size)
+				return;
+			int min = left;
+			int right = left + 1;
+			if (right < size && heap[right] < heap[left]) {
+				min = right;
+			}
+			if (heap[i] <= heap[min])
+				return;
+			swap(heap, i, min);
+			i = min;
+		}
+	}
+
+	private static void swap(double[] heap, int i, int j) {
+		double t = heap[i];
+		heap[i] = heap[j];
+		heap[j] = t;
 	}
 
 	public List<Long> getProcesseIdsAboveCutoff(double cutoff) {
@@ -90,9 +144,21 @@ class SankeyResult {
 		return totalContr * linkShare;
 	}
 
+	/**
+	 * Returns true if the results are calculated for the given selection.
+	 */
+	public boolean isCalculated(Object selection) {
+		return upstreamResults != null
+				&& Objects.equals(this.selection, selection);
+	}
+
 	public void calculate(Object selection) {
+		if (isCalculated(selection))
+			return;
 		log.trace("Calculate Sankey result for selection {}", selection);
-		buildProcessIndex();
+		if (processIndex == null) {
+			buildProcessIndex();
+		}
 		if (selection instanceof IndexFlow) {
 			IndexFlow f = (IndexFlow) selection;
 			upstreamResults = vec(p -> results.getUpstreamFlowResult(p, f));
@@ -124,6 +190,7 @@ class SankeyResult {
 		directContributions = calcContributions(
 				directResults, refVal);
 
+		this.selection = selection;
 		log.trace("Calculation done");
 	}
 
@@ -140,13 +207,15 @@ class SankeyResult {
 		return conts;
 	}
 
+	/**
+	 * Extracts the result vector of the processes. The values are fetched in
+	 * parallel as the results of the processes are independent from each
+	 * other.
+	 */
 	private double[] vec(ToDoubleFunction<CategorizedDescriptor> fn) {
 		double[] vector = new double[processIndex.size()];
-		for (int i = 0; i < processIndex.size(); i++) {
-			CategorizedDescriptor process = processes[i];
-			double result = fn.applyAsDouble(process);
-			vector[i] = result;
-		}
+		IntStream.range(0, vector.length).parallel().forEach(
+				i -> vector[i] = fn.applyAsDouble(processes[i]));
 		return vector;
 	}
 
@@ -39,12 +39,31 @@ public class Link {
 		return Objects.equals(this.processLink, other.processLink);
 	}
 
+	@Override
+	public int hashCode() {
+		return Objects.hashCode(processLink);
+	}
+
 	public void link() {
 		sourceNode.add(this);
 		if (sourceNode != targetNode)
 			targetNode.add(this);
 	}
 
+	public void unlink() {
+		sourceNode.remove(this);
+		if (sourceNode != targetNode)
+			targetNode.remove(this);
+	}
+
+	public ProcessNode getSource() {
+		return sourceNode;
+	}
+
+	public ProcessNode getTarget() {
+		return targetNode;
+	}
+
 	void setSelected(int value) {
 		editPart.setSelected(value);
 	}
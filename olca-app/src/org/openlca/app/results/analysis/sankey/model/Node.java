@@ -2,11 +2,16 @@ package org.openlca.app.results.analysis.sankey.model;
 
 import java.beans.PropertyChangeSupport;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 abstract class Node implements Comparable<Node> {
 
 	public static String PROPERTY_ADD = "NodeAddChild";
+	public static String PROPERTY_CHILDREN = "NodeChildren";
 	public static String PROPERTY_LAYOUT = "Layout";
 	public static String PROPERTY_REMOVE = "NodeRemoveChild";
 
@@ -23,6 +28,38 @@ abstract class Node implements Comparable<Node> {
 		return b;
 	}
 
+	public boolean removeChild(Node child) {
+		boolean b = children.remove(child);
+		if (b) {
+			listeners.firePropertyChange(PROPERTY_REMOVE, child, null);
+			child.parent = null;
+		}
+		return b;
+	}
+
+	/**
+	 * Removes and adds the given children and fires a single change event for
+	 * all of them, so that the edit part refreshes its children only once.
+	 */
+	public void updateChildren(Collection<? extends Node> removed,
+			Collection<? extends Node> added) {
+		if (removed.isEmpty() && added.isEmpty())
+			return;
+		if (!removed.isEmpty()) {
+			Set<Node> set = Collections.newSetFromMap(new IdentityHashMap<>());
+			set.addAll(removed);
+			children.removeIf(set::contains);
+		}
+		for (Node child : added) {
+			children.add(child);
+			child.parent = this;
+		}
+		listeners.firePropertyChange(PROPERTY_CHILDREN, removed, added);
+		for (Node child : removed) {
+			child.parent = null;
+		}
+	}
+
 	@Override
 	public int compareTo(Node o) {
 		String s1 = getName().toLowerCase();
@@ -10,7 +10,7 @@ import org.openlca.core.model.ProductSystem;
 public class ProductSystemNode extends Node implements PropertyChangeListener {
 
 	public final ProductSystem productSystem;
-	public final double cutoff;
+	public double cutoff;
 	public final SankeyDiagram editor;
 	final Object selection;
 
@@ -21,6 +21,10 @@ public class ProductSystemNode extends Node implements PropertyChangeListener {
 		this.cutoff = cutoff;
 	}
 
+	public Object selection() {
+		return selection;
+	}
+
 	@Override
 	public void propertyChange(PropertyChangeEvent evt) {
 		listeners.firePropertyChange(evt);
@@ -1,5 +1,7 @@
 package org.openlca.app.results.analysis.sankey.model;
 
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.util.List;
 
 import org.eclipse.draw2d.IFigure;
@@ -9,7 +11,30 @@ import org.eclipse.swt.graphics.Font;
 import org.openlca.app.results.analysis.sankey.layout.GraphLayoutManager;
 import org.openlca.app.results.analysis.sankey.layout.LayoutPolicy;
 
-public class ProductSystemPart extends AbstractGraphicalEditPart {
+public class ProductSystemPart extends AbstractGraphicalEditPart
+		implements PropertyChangeListener {
+
+	@Override
+	public void activate() {
+		super.activate();
+		((Node) getModel()).listeners.addPropertyChangeListener(this);
+	}
+
+	/**
+	 * Adds or removes the edit parts of process nodes that were added to or
+	 * removed from the model, without rebuilding the other edit parts. When
+	 * the diagram is updated, all added and removed nodes are reported in a
+	 * single event (see Node#updateChildren).
+	 */
+	@Override
+	public void propertyChange(PropertyChangeEvent evt) {
+		String prop = evt.getPropertyName();
+		if (Node.PROPERTY_CHILDREN.equals(prop)
+				|| Node.PROPERTY_ADD.equals(prop)
+				|| Node.PROPERTY_REMOVE.equals(prop)) {
+			refreshChildren();
+		}
+	}
 
 	@Override
 	protected void createEditPolicies() {
@@ -44,6 +69,7 @@ public class ProductSystemPart extends AbstractGraphicalEditPart {
 			if (infoFont != null && !infoFont.isDisposed())
 				infoFont.dispose();
 		}
+		((Node) getModel()).listeners.removePropertyChangeListener(this);
 		super.deactivate();
 	}
 
@@ -11,6 +11,7 @@ import org.openlca.app.M;
 import org.openlca.app.components.ResultFlowCombo;
 import org.openlca.app.results.ImageExportAction;
 import org.openlca.app.results.ResultEditor;
+import org.openlca.app.results.SortIndex;
 import org.openlca.app.util.Actions;
 import org.openlca.app.util.Labels;
 import org.openlca.app.util.UI;
@@ -71,11 +72,13 @@ public class ContributionChartSection {
 		tk.createLabel(comp, selectionName);
 		if (forFlows) {
 			ResultFlowCombo combo = new ResultFlowCombo(comp);
-			combo.setInput(result.getFlows());
+			combo.getViewer().setComparator(null);
+			combo.setInput(SortIndex.of(result).flows());
 			this.itemViewer = combo;
 		} else {
 			ImpactCategoryViewer combo = new ImpactCategoryViewer(comp);
-			combo.setInput(result.getImpacts());
+			combo.getViewer().setComparator(null);
+			combo.setInput(SortIndex.of(result).impacts());
 			this.itemViewer = combo;
 		}
 		itemViewer.addSelectionChangedListener(_e -> refresh());
@@ -1,8 +1,10 @@
 package org.openlca.app.results.contributions;
 
 import java.io.File;
+import java.lang.reflect.InvocationTargetException;
 
 import org.eclipse.jface.dialogs.IDialogConstants;
+import org.eclipse.jface.dialogs.ProgressMonitorDialog;
 import org.eclipse.jface.window.Window;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.widgets.Composite;
@@ -11,7 +13,6 @@ import org.eclipse.swt.widgets.Shell;
 import org.eclipse.swt.widgets.Text;
 import org.eclipse.ui.forms.FormDialog;
 import org.eclipse.ui.forms.IManagedForm;
-import org.openlca.app.App;
 import org.openlca.app.M;
 import org.openlca.app.components.FileChooser;
 import org.openlca.app.util.Colors;
@@ -190,7 +191,20 @@ class TreeExportDialog extends FormDialog {
 
 		// close the dialog and start the export
 		super.okPressed();
-		App.runWithProgress("Exporting contribution tree ...", export);
+		try {
+			new ProgressMonitorDialog(UI.shell()).run(true, true, monitor -> {
+				export.setMonitor(monitor);
+				export.run();
+			});
+		} catch (InvocationTargetException e) {
+			// the message of the wrapper is null; use the export error
+			Throwable cause = e.getCause() != null ? e.getCause() : e;
+			MsgBox.error("Export failed",
+					"Failed to export the contribution tree: " + cause.getMessage());
+		} catch (Exception e) {
+			MsgBox.error("Export failed",
+					"Failed to export the contribution tree: " + e.getMessage());
+		}
 	}
 
 }
@@ -3,10 +3,17 @@ package org.openlca.app.results.contributions;
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
 import java.util.Objects;
+import java.util.function.Consumer;
 
+import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.SubMonitor;
 import org.openlca.app.util.CostResultDescriptor;
 import org.openlca.app.util.Labels;
 import org.openlca.core.matrix.IndexFlow;
@@ -21,10 +28,24 @@ import org.openlca.util.Strings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import gnu.trove.list.array.TDoubleArrayList;
-
+/**
+ * Writes an upstream tree to an Excel file. The rows are written with a
+ * streaming workbook so that only a small window of rows is kept in memory.
+ * As the column of the results depends on the depth of the exported tree, the
+ * tree is traversed twice: first to calculate the depth and the number of rows
+ * and then to write the rows. The traversal is iterative so that deep trees do
+ * not overflow the stack. Note that the upstream tree keeps the nodes that are
+ * expanded during the traversal; thus, the memory of the tree itself still
+ * grows with the number of exported rows.
+ */
 class UpstreamTreeExport implements Runnable {
 
+	/** The number of rows that are kept in memory. */
+	private static final int ROW_WINDOW = 100;
+
+	/** The last row index that is written; see the Excel row limit. */
+	private static final int MAX_ROW = 1048574;
+
 	/**
 	 * The maximum number of levels that should be exported. A value < 0 means
 	 * unlimited. In this case reasonable recursion limits are required if the
@@ -48,18 +69,27 @@ class UpstreamTreeExport implements Runnable {
 
 	private final File file;
 	private final UpstreamTree tree;
+	private IProgressMonitor monitor;
+	private SubMonitor progress;
 
 	private Sheet sheet;
 	private int row;
 	private int maxColumn;
 	private double totalResult;
-	private TDoubleArrayList values = new TDoubleArrayList(100);
 
 	UpstreamTreeExport(File file, UpstreamTree tree) {
 		this.file = file;
 		this.tree = tree;
 	}
 
+	/**
+	 * Sets an optional progress monitor. When the monitor is canceled, the
+	 * export is stopped and no file is written.
+	 */
+	void setMonitor(IProgressMonitor monitor) {
+		this.monitor = monitor;
+	}
+
 	@Override
 	public void run() {
 		Logger log = LoggerFactory.getLogger(getClass());
@@ -67,7 +97,23 @@ class UpstreamTreeExport implements Runnable {
 			log.error("invalid input, file or tree is null");
 			return;
 		}
-		try (var wb = new XSSFWorkbook()) {
+		totalResult = tree.root.result;
+
+		// first pass: calculate the number of rows and the tree depth
+		SubMonitor task = SubMonitor.convert(
+				monitor, "Exporting contribution tree ...", 10);
+		int[] rows = { 0 };
+		maxColumn = 0;
+		traverse(path -> {
+			rows[0]++;
+			maxColumn = Math.max(path.length, maxColumn);
+		});
+		if (isCanceled())
+			return;
+
+		SXSSFWorkbook wb = new SXSSFWorkbook(ROW_WINDOW);
+		wb.setCompressTempFiles(true);
+		try {
 			sheet = wb.createSheet("Upstream tree");
 
 			var header = Excel.headerStyle(wb);
@@ -76,24 +122,21 @@ class UpstreamTreeExport implements Runnable {
 					.setCellStyle(header);
 			Excel.cell(sheet, 1, 0, "Processes")
 					.setCellStyle(header);
-
-			// write the tree
-			row = 1;
-			maxColumn = 0;
-			totalResult = tree.root.result;
-			Path path = new Path(tree.root);
-			traverse(path);
-
-			// write the values
 			var unit = unit();
 			var resultHeader = Strings.nullOrEmpty(unit)
 					? "Result"
 					: "Result [" + unit + "]";
 			Excel.cell(sheet, 1, maxColumn + 1, resultHeader)
 					.setCellStyle(header);
-			for (int i = 0; i < values.size(); i++) {
-				Excel.cell(sheet, i + 2, maxColumn + 1, values.get(i));
-			}
+
+			// second pass: write the tree
+			task.worked(1);
+			progress = task.newChild(9).setWorkRemaining(rows[0]);
+			row = 1;
+			traverse(this::write);
+			task.done();
+			if (isCanceled())
+				return;
 
 			// set the column widths
 			for (int col = 0; col < maxColumn; col++) {
@@ -109,9 +152,21 @@ class UpstreamTreeExport implements Runnable {
 		} catch (Exception e) {
 			log.error("Tree export failed", e);
 			throw new RuntimeException(e);
+		} finally {
+			// deletes the temporary files of the streaming sheet
+			wb.dispose();
+			try {
+				wb.close();
+			} catch (Exception e) {
+				log.warn("failed to close workbook", e);
+			}
 		}
 	}
 
+	private boolean isCanceled() {
+		return monitor != null && monitor.isCanceled();
+	}
+
 	private String refName() {
 		var ref = tree.ref;
 		if (ref == null)
@@ -154,52 +209,62 @@ class UpstreamTreeExport implements Runnable {
 		return "";
 	}
 
-	private void traverse(Path path) {
-
-		if (row >= 1048574) {
-			// 1048575 is the maximum row number of an
-			// Excel sheet.
-			return;
+	/**
+	 * Visits the paths of the tree in depth-first order (the same order as a
+	 * recursive traversal) until the row limit is reached.
+	 */
+	private void traverse(Consumer<Path> fn) {
+		int visited = 1;
+		Deque<Path> stack = new ArrayDeque<>();
+		stack.push(new Path(tree.root));
+		while (!stack.isEmpty()) {
+			if (visited >= MAX_ROW || isCanceled())
+				return;
+			Path path = stack.pop();
+			if (isCut(path))
+				continue;
+			visited++;
+			fn.accept(path);
+			List<UpstreamNode> childs = tree.childs(path.node);
+			for (int i = childs.size() - 1; i >= 0; i--) {
+				stack.push(path.append(childs.get(i)));
+			}
 		}
+	}
 
+	private boolean isCut(Path path) {
 		var node = path.node;
-		double result = path.node.result;
-
-		// first check if we need to cut the path here
+		double result = node.result;
 		if (result == 0)
-			return;
+			return true;
 		if (maxDepth > 0 && path.length > maxDepth)
-			return;
+			return true;
 		if (minContribution > 0 && totalResult != 0) {
 			double c = Math.abs(result / totalResult);
 			if (c < minContribution)
-				return;
+				return true;
 		}
 		if (maxDepth < 0) {
 			int count = path.count(node.provider);
-			if (count > maxRecursionDepth) {
-				return;
-			}
-		}
-
-		// write the node and expand the child nodes
-		write(path);
-		for (var child : tree.childs(node)) {
-			traverse(path.append(child));
+			if (count > maxRecursionDepth)
+				return true;
 		}
+		return false;
 	}
 
 	private void write(Path path) {
 		row++;
-		values.add(path.node.result);
-		int col = path.length;
-		maxColumn = Math.max(col, maxColumn);
+		Row r = sheet.createRow(row);
+		r.createCell(maxColumn + 1).setCellValue(path.node.result);
+		if (row % 1000 == 0) {
+			progress.worked(1000);
+		}
 		var node = path.node;
 		if (node.provider == null
 				|| node.provider.process == null)
 			return;
 		var label = Labels.name(node.provider.process);
-		Excel.cell(sheet, row, col, label);
+		r.createCell(path.length).setCellValue(label);
 	}
 
 	private class Path {
@@ -10,6 +10,7 @@ import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.ui.forms.widgets.FormToolkit;
 import org.openlca.app.M;
+import org.openlca.app.results.SortIndex;
 import org.openlca.app.util.Controls;
 import org.openlca.app.util.CostResultDescriptor;
 import org.openlca.app.viewers.combo.AbstractComboViewer;
@@ -46,9 +47,10 @@ class Combo {
 
 	public static Builder on(IResult r) {
 		Combo c = new Combo();
+		SortIndex index = SortIndex.of(r);
 		c.flows = new ArrayList<FlowDescriptor>();
 		TLongHashSet flowIDs = new TLongHashSet();
-		for (IndexFlow f : r.getFlows()) {
+		for (IndexFlow f : index.flows()) {
 			if (f.flow == null || flowIDs.contains(f.flow.id))
 				continue;
 			flowIDs.add(f.flow.id);
@@ -57,7 +59,7 @@ class Combo {
 
 		// add LCIA categories
 		if (r.hasImpactResults()) {
-			c.impacts = r.getImpacts();
+			c.impacts = index.impacts();
 		}
 
 		// add cost / added value selection
@@ -180,6 +182,8 @@ class Combo {
 
 		flowCombo = new FlowViewer(comp);
 		flowCombo.setEnabled(enabled);
+		// the flows are already sorted by the sort index of the result
+		flowCombo.getViewer().setComparator(null);
 		flowCombo.setInput(flows);
 		flowCombo.selectFirst();
 		flowCombo.addSelectionChangedListener(f -> {
@@ -207,6 +211,7 @@ class Combo {
 
 		impactCombo = new ImpactCategoryViewer(comp);
 		impactCombo.setEnabled(enabled);
+		impactCombo.getViewer().setComparator(null);
 		impactCombo.setInput(impacts);
 		impactCombo.selectFirst();
 		impactCombo.addSelectionChangedListener(imp -> {
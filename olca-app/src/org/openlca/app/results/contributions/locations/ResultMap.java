@@ -13,6 +13,7 @@ import org.eclipse.ui.forms.widgets.Section;
 import org.openlca.app.M;
 import org.openlca.app.components.FileChooser;
 import org.openlca.app.components.mapview.LayerConfig;
+import org.openlca.app.components.mapview.LocationGeometries;
 import org.openlca.app.components.mapview.MapView;
 import org.openlca.app.rcp.images.Icon;
 import org.openlca.app.util.Actions;
@@ -30,7 +31,6 @@ import org.openlca.geo.geojson.Feature;
 import org.openlca.geo.geojson.FeatureCollection;
 import org.openlca.geo.geojson.GeoJSON;
 import org.openlca.geo.geojson.Geometry;
-import org.openlca.geo.geojson.MsgPack;
 import org.openlca.util.Pair;
 
 class ResultMap {
@@ -81,10 +81,7 @@ class ResultMap {
 			Location loc = c.item;
 			if (loc == null || loc.geodata == null)
 				continue;
-			FeatureCollection fc = MsgPack.unpackgz(loc.geodata);
-			if (fc == null || fc.features.isEmpty())
-				continue;
-			Geometry g = fc.features.get(0).geometry;
+			Geometry g = LocationGeometries.get(loc);
 			if (g == null)
 				continue;
 			Feature feature = new Feature();
@@ -0,0 +1,449 @@
+package org.openlca.app.results.simulation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+import org.openlca.app.App;
+import org.openlca.core.database.IDatabase;
+import org.openlca.core.math.CalculationSetup;
+import org.openlca.core.math.Simulator;
+import org.openlca.core.matrix.IndexFlow;
+import org.openlca.core.matrix.ProcessProduct;
+import org.openlca.core.matrix.TechIndex;
+import org.openlca.core.model.descriptors.ImpactCategoryDescriptor;
+import org.openlca.core.results.SimpleResult;
+import org.openlca.core.results.SimulationResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Runs the iterations of a Monte Carlo simulation on a pool of workers. Each
+ * worker has its own simulator with its own matrices and its own solver (see
+ * App#newSolver) so that the iterations are independent from each other and no
+ * solver is shared between threads. The workers claim the iterations in batches
+ * and the results are read worker by worker, so the values of a batch stay
+ * together. The total results of the iterations are also written to a dump file
+ * so that they can be exported without holding them in memory. For the upstream
+ * results of the pinned products, which are held in the simulation results of
+ * the workers, the dump rows of the iterations of each worker are recorded, so
+ * that these results can be exported in the same order as the dump.
+ */
+class ParallelSimulation {
+
+	/** The number of iterations a worker claims at once. */
+	private static final int BATCH_SIZE = 10;
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	private final CalculationSetup setup;
+	private final IDatabase db;
+
+	private final List<Simulator> workers = new CopyOnWriteArrayList<>();
+	/**
+	 * The dump rows of the iterations in which a product was pinned, per
+	 * worker: worker -> product -> rows. Guarded by the lock of the worker.
+	 */
+	private final Map<Simulator, Map<ProcessProduct, TIntArrayList>> pinnedRows =
+			new ConcurrentHashMap<>();
+	private final List<IndexFlow> flows = new ArrayList<>();
+	private final List<ImpactCategoryDescriptor> impacts = new ArrayList<>();
+	private SimulationDump dump;
+	/** The series that is currently shown; fed by the workers. */
+	private volatile Series series;
+	private final AtomicInteger runs = new AtomicInteger();
+	private final AtomicInteger remaining = new AtomicInteger();
+	private volatile boolean canceled;
+	private ExecutorService pool;
+
+	/**
+	 * Creates the simulation with an initialized simulator as first worker
+	 * (the initialization of a simulator already runs one iteration).
+	 */
+	ParallelSimulation(CalculationSetup setup, IDatabase db,
+			Simulator first) {
+		this.setup = setup;
+		this.db = db;
+		workers.add(first);
+		runs.set(1);
+		SimulationResult r = first.getResult();
+		if (r.flowIndex != null) {
+			r.flowIndex.each((i, f) -> flows.add(f));
+		}
+		if (r.hasImpactResults()) {
+			r.impactIndex.each((i, d) -> impacts.add(d));
+		}
+		try {
+			dump = new SimulationDump(flows.size(), impacts.size());
+			dumpFirstRun(first);
+		} catch (Exception e) {
+			log.error("failed to create simulation dump", e);
+		}
+	}
+
+	/**
+	 * The initialization of a simulator runs the first iteration; we take its
+	 * results from the simulation result as it is not returned directly.
+	 */
+	private void dumpFirstRun(Simulator sim) {
+		if (dump == null)
+			return;
+		SimulationResult r = sim.getResult();
+		double[] flowResults = new double[flows.size()];
+		for (int i = 0; i < flowResults.length; i++) {
+			flowResults[i] = last(r.getAll(flows.get(i)));
+		}
+		double[] impactResults = new double[impacts.size()];
+		for (int i = 0; i < impactResults.length; i++) {
+			impactResults[i] = last(r.getAll(impacts.get(i)));
+		}
+		dump.append(flowResults, impactResults);
+	}
+
+	private static double last(double[] values) {
+		return values == null || values.length == 0
+				? 0
+				: values[values.length - 1];
+	}
+
+	/** The flows of the result in the order of the flow index. */
+	List<IndexFlow> getFlows() {
+		return flows;
+	}
+
+	/** The impact categories in the order of the impact index. */
+	List<ImpactCategoryDescriptor> getImpacts() {
+		return impacts;
+	}
+
+	/**
+	 * The dump with the total results of the iterations; null if it could not
+	 * be created.
+	 */
+	SimulationDump getDump() {
+		return dump;
+	}
+
+	/** Cancels the simulation and deletes the dump file. */
+	void dispose() {
+		cancel();
+		if (dump != null) {
+			dump.dispose();
+		}
+	}
+
+	/** The first worker which is used for the setup of the result views. */
+	Simulator getMain() {
+		return workers.get(0);
+	}
+
+	TechIndex getTechIndex() {
+		return getMain().getResult().techIndex;
+	}
+
+	/** The number of finished iterations of all workers. */
+	int getRunCount() {
+		return runs.get();
+	}
+
+	/**
+	 * Starts the simulation with the given number of workers until the given
+	 * total number of iterations is reached. Additional workers are created
+	 * when needed; each of them runs one iteration on initialization.
+	 */
+	void start(int totalRuns, int workerCount) {
+		canceled = false;
+		int open = totalRuns - runs.get();
+		if (open <= 0)
+			return;
+		remaining.set(open);
+		int n = Math.max(1, Math.min(workerCount, open));
+		pool = Executors.newFixedThreadPool(n);
+		for (int i = 0; i < n; i++) {
+			int worker = i;
+			pool.submit(() -> {
+				try {
+					work(worker);
+				} catch (Exception e) {
+					log.error("simulation worker " + worker + " failed", e);
+				}
+			});
+		}
+		pool.shutdown();
+	}
+
+	private void work(int worker) {
+		Simulator sim;
+		if (worker < workers.size()) {
+			sim = workers.get(worker);
+		} else {
+			if (claim(1) == 0)
+				return;
+			sim = Simulator.create(setup, db, App.newSolver());
+			sim.pinnedProducts.addAll(getMain().pinnedProducts);
+			workers.add(sim);
+			synchronized (sim) {
+				dumpFirstRun(sim);
+				Series s = series;
+				if (s != null) {
+					s.init(sim);
+				}
+			}
+			runs.incrementAndGet();
+		}
+		while (!canceled) {
+			int batch = claim(BATCH_SIZE);
+			if (batch == 0)
+				return;
+			for (int i = 0; i < batch; i++) {
+				if (canceled)
+					return;
+				synchronized (sim) {
+					SimpleResult r = sim.nextRun();
+					if (dump != null && r != null) {
+						int row = dump.append(
+								r.totalFlowResults, r.totalImpactResults);
+						recordPinned(sim, row);
+					}
+					Series s = series;
+					if (s != null && r != null) {
+						s.append(sim, r);
+					}
+				}
+				runs.incrementAndGet();
+			}
+		}
+	}
+
+	/** Records the dump row of an iteration for the pinned products. */
+	private void recordPinned(Simulator sim, int row) {
+		if (row < 0 || sim.pinnedProducts.isEmpty())
+			return;
+		Map<ProcessProduct, TIntArrayList> rows = pinnedRows.computeIfAbsent(
+				sim, s -> new HashMap<>());
+		for (ProcessProduct pp : sim.pinnedProducts) {
+			rows.computeIfAbsent(pp, p -> new TIntArrayList()).add(row);
+		}
+	}
+
+	private int claim(int n) {
+		while (true) {
+			int r = remaining.get();
+			if (r <= 0)
+				return 0;
+			int k = Math.min(r, n);
+			if (remaining.compareAndSet(r, r - k))
+				return k;
+		}
+	}
+
+	boolean isFinished() {
+		return pool == null || pool.isTerminated();
+	}
+
+	void cancel() {
+		canceled = true;
+	}
+
+	/** Waits until all workers are finished. */
+	void await() throws InterruptedException {
+		if (pool == null)
+			return;
+		pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+	}
+
+	/** The products that are currently pinned. */
+	List<ProcessProduct> getPinnedProducts() {
+		Simulator main = getMain();
+		synchronized (main) {
+			return new ArrayList<>(main.pinnedProducts);
+		}
+	}
+
+	/**
+	 * Returns the values of the given upstream result of a pinned product in
+	 * the order of the dump rows: the value at index i belongs to the
+	 * iteration in row i of the dump. Iterations in which the product was not
+	 * pinned (e.g. when it was pinned while the simulation was running) are
+	 * NaN.
+	 */
+	double[] pinnedValues(ProcessProduct pp,
+			Function<SimulationResult, double[]> fn) {
+		double[] all = new double[dump != null ? dump.getRows() : 0];
+		Arrays.fill(all, Double.NaN);
+		for (Simulator sim : workers) {
+			synchronized (sim) {
+				Map<ProcessProduct, TIntArrayList> map = pinnedRows.get(sim);
+				TIntArrayList rows = map != null ? map.get(pp) : null;
+				if (rows == null)
+					continue;
+				double[] values = fn.apply(sim.getResult());
+				if (values == null)
+					continue;
+				// the last values belong to the last recorded iterations
+				int n = Math.min(values.length, rows.size());
+				int vOffset = values.length - n;
+				int rOffset = rows.size() - n;
+				for (int i = 0; i < n; i++) {
+					int row = rows.get(rOffset + i);
+					if (row < all.length) {
+						all[row] = values[vOffset + i];
+					}
+				}
+			}
+		}
+		return all;
+	}
+
+	boolean isPinned(ProcessProduct pp) {
+		return getMain().pinnedProducts.contains(pp);
+	}
+
+	void pin(ProcessProduct pp) {
+		for (Simulator sim : workers) {
+			synchronized (sim) {
+				sim.pinnedProducts.add(pp);
+			}
+		}
+	}
+
+	void unpin(ProcessProduct pp) {
+		for (Simulator sim : workers) {
+			synchronized (sim) {
+				sim.pinnedProducts.remove(pp);
+			}
+		}
+	}
+
+	/**
+	 * Creates a streaming view on the total results of the given flow of all
+	 * workers, or on the upstream results of the given pinned product if it is
+	 * not null. The series replaces the series that was shown before.
+	 */
+	Series series(IndexFlow flow, ProcessProduct pin) {
+		return pin != null
+				? activate(new Series(r -> r.getAllUpstream(pin, flow), null))
+				: activate(new Series(r -> r.getAll(flow),
+						r -> r.getTotalFlowResult(flow)));
+	}
+
+	/**
+	 * Creates a streaming view on the total results of the given impact
+	 * category of all workers, or on the upstream results of the given pinned
+	 * product if it is not null. The series replaces the series that was shown
+	 * before.
+	 */
+	Series series(ImpactCategoryDescriptor impact, ProcessProduct pin) {
+		return pin != null
+				? activate(new Series(r -> r.getAllUpstream(pin, impact), null))
+				: activate(new Series(r -> r.getAll(impact),
+						r -> r.getTotalImpactResult(impact)));
+	}
+
+	private Series activate(Series s) {
+		series = s;
+		for (Simulator sim : workers) {
+			synchronized (sim) {
+				s.init(sim);
+			}
+		}
+		return s;
+	}
+
+	/**
+	 * A streaming view on a result of the simulation. For total results, the
+	 * workers append the value of each iteration to a growable buffer and an
+	 * update only adds the new values of this buffer to the statistics; the
+	 * values of the iterations before the series was created are read once
+	 * from the simulation results. The upstream results of pinned products
+	 * are not available per iteration; they are read from the simulation
+	 * results of the workers on each update.
+	 */
+	class Series {
+
+		private final Function<SimulationResult, double[]> all;
+		private final ToDoubleFunction<SimpleResult> next;
+		private final StreamingStatistics stats = new StreamingStatistics();
+
+		/** The workers whose values are already in the buffer. */
+		private final Set<Simulator> initialized = new HashSet<>();
+		private final TDoubleArrayList buffer = new TDoubleArrayList();
+		/** The number of buffered values that are in the statistics. */
+		private int cursor;
+
+		/** The number of values per worker that are in the statistics. */
+		private final Map<Simulator, Integer> cursors = new HashMap<>();
+
+		private Series(Function<SimulationResult, double[]> all,
+				ToDoubleFunction<SimpleResult> next) {
+			this.all = all;
+			this.next = next;
+		}
+
+		/**
+		 * Adds the values of the given worker to the buffer if this was not
+		 * done yet. Must be called with the lock of the worker.
+		 */
+		private synchronized void init(Simulator sim) {
+			if (next == null || initialized.contains(sim))
+				return;
+			double[] values = all.apply(sim.getResult());
+			if (values != null) {
+				buffer.add(values);
+			}
+			initialized.add(sim);
+		}
+
+		/**
+		 * Appends the value of the given iteration of the worker. Must be
+		 * called with the lock of the worker.
+		 */
+		private synchronized void append(Simulator sim, SimpleResult r) {
+			if (next == null)
+				return;
+			if (!initialized.contains(sim)) {
+				init(sim);
+				return;
+			}
+			buffer.add(next.applyAsDouble(r));
+		}
+
+		StreamingStatistics update() {
+			if (next != null) {
+				synchronized (this) {
+					stats.add(buffer, cursor, buffer.size());
+					cursor = buffer.size();
+				}
+				return stats;
+			}
+			for (Simulator sim : workers) {
+				double[] values;
+				synchronized (sim) {
+					values = all.apply(sim.getResult());
+				}
+				if (values == null)
+					continue;
+				int start = cursors.getOrDefault(sim, 0);
+				for (int i = start; i < values.length; i++) {
+					stats.add(values[i]);
+				}
+				cursors.put(sim, values.length);
+			}
+			return stats;
+		}
+	}
+}
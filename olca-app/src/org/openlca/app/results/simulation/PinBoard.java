@@ -30,7 +30,6 @@ import org.openlca.app.util.Labels;
 import org.openlca.app.util.UI;
 import org.openlca.app.util.tables.Tables;
 import org.openlca.app.util.viewers.Viewers;
-import org.openlca.core.math.Simulator;
 import org.openlca.core.matrix.ProcessProduct;
 import org.openlca.core.matrix.TechIndex;
 import org.openlca.util.Strings;
@@ -42,15 +41,15 @@ import org.openlca.util.Strings;
  */
 class PinBoard {
 
-	private final Simulator simulator;
+	private final ParallelSimulation simulation;
 
 	private Text filter;
 	private TableViewer table;
 	private ProcessProduct resultPin;
 	Consumer<ProcessProduct> onResultPinChange;
 
-	PinBoard(Simulator simulator) {
-		this.simulator = simulator;
+	PinBoard(ParallelSimulation simulation) {
+		this.simulation = simulation;
 	}
 
 	void create(FormToolkit tk, Composite body) {
@@ -120,9 +119,9 @@ class PinBoard {
 	private void onPin(ProcessProduct pp) {
 		if (pp == null)
 			return;
-		boolean pinned = simulator.pinnedProducts.contains(pp);
+		boolean pinned = simulation.isPinned(pp);
 		if (pinned) {
-			simulator.pinnedProducts.remove(pp);
+			simulation.unpin(pp);
 			if (Objects.equals(pp, resultPin)) {
 				resultPin = null;
 				if (onResultPinChange != null) {
@@ -130,7 +129,7 @@ class PinBoard {
 				}
 			}
 		} else {
-			simulator.pinnedProducts.add(pp);
+			simulation.pin(pp);
 		}
 		table.setInput(selectInput());
 	}
@@ -164,12 +163,12 @@ class PinBoard {
 
 		// apply possible text filter
 		List<ProcessProduct> input = new ArrayList<>();
-		TechIndex idx = simulator.getResult().techIndex;
+		TechIndex idx = simulation.getTechIndex();
 		for (int i = 0; i < idx.size(); i++) {
 			ProcessProduct pp = idx.getProviderAt(i);
 
 			// pinned products are never filtered
-			if (simulator.pinnedProducts.contains(pp)) {
+			if (simulation.isPinned(pp)) {
 				input.add(pp);
 				continue;
 			}
@@ -200,8 +199,8 @@ class PinBoard {
 		// sort by provider name
 		input.sort((pp1, pp2) -> {
 			// pinned products are always sorted to the top
-			boolean pinned1 = simulator.pinnedProducts.contains(pp1);
-			boolean pinned2 = simulator.pinnedProducts.contains(pp2);
+			boolean pinned1 = simulation.isPinned(pp1);
+			boolean pinned2 = simulation.isPinned(pp2);
 			if (pinned1 && !pinned2)
 				return -1;
 			if (!pinned1 && pinned2)
@@ -222,7 +221,7 @@ class PinBoard {
 			if (!(obj instanceof ProcessProduct))
 				return null;
 			ProcessProduct pp = (ProcessProduct) obj;
-			if (simulator.pinnedProducts.contains(pp))
+			if (simulation.isPinned(pp))
 				return UI.boldFont();
 			return null;
 		}
@@ -234,7 +233,7 @@ class PinBoard {
 			ProcessProduct pp = (ProcessProduct) obj;
 			switch (col) {
 			case 0:
-				boolean pinned = simulator.pinnedProducts.contains(pp);
+				boolean pinned = simulation.isPinned(pp);
 				return pinned
 						? Icon.CHECK_TRUE.get()
 						: Icon.CHECK_FALSE.get();
@@ -0,0 +1,134 @@
+package org.openlca.app.results.simulation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A temporary file to which the total results of the simulation iterations are
+ * written while the simulation is running. Each iteration is stored as a row of
+ * doubles: first the flow results in the order of the flow index and then the
+ * impact results in the order of the impact index. The result export reads the
+ * iterations row by row from this file, so that the memory that is needed for
+ * the export does not depend on the number of iterations.
+ */
+class SimulationDump {
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	private final File file;
+	private final int flowCount;
+	private final int impactCount;
+	private DataOutputStream out;
+	private int rows;
+
+	SimulationDump(int flowCount, int impactCount) throws IOException {
+		this.flowCount = flowCount;
+		this.impactCount = impactCount;
+		file = Files.createTempFile("olca_simulation_", ".bin").toFile();
+		file.deleteOnExit();
+		out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file), 1 << 16));
+	}
+
+	int getFlowCount() {
+		return flowCount;
+	}
+
+	int getImpactCount() {
+		return impactCount;
+	}
+
+	/** The number of iterations that were written to the file. */
+	synchronized int getRows() {
+		return rows;
+	}
+
+	/**
+	 * Appends the results of an iteration and returns the row index of the
+	 * iteration or -1 if it could not be written. Missing values (e.g. when
+	 * there are no impact results) are written as zeros.
+	 */
+	synchronized int append(double[] flowResults, double[] impactResults) {
+		if (out == null)
+			return -1;
+		try {
+			write(flowResults, flowCount);
+			write(impactResults, impactCount);
+			return rows++;
+		} catch (IOException e) {
+			log.error("failed to write simulation results to " + file, e);
+			close();
+			return -1;
+		}
+	}
+
+	private void write(double[] values, int count) throws IOException {
+		for (int i = 0; i < count; i++) {
+			double v = values != null && i < values.length ? values[i] : 0;
+			out.writeDouble(v);
+		}
+	}
+
+	/**
+	 * Reads the iterations that were written so far row by row. The arrays
+	 * that are passed to the handler are reused for every row.
+	 */
+	void read(RowHandler handler) throws IOException {
+		int count;
+		synchronized (this) {
+			if (out != null) {
+				out.flush();
+			}
+			count = rows;
+		}
+		double[] flows = new double[flowCount];
+		double[] impacts = new double[impactCount];
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file), 1 << 16))) {
+			for (int row = 0; row < count; row++) {
+				for (int i = 0; i < flowCount; i++) {
+					flows[i] = in.readDouble();
+				}
+				for (int i = 0; i < impactCount; i++) {
+					impacts[i] = in.readDouble();
+				}
+				handler.accept(row, flows, impacts);
+			}
+		}
+	}
+
+	private synchronized void close() {
+		if (out == null)
+			return;
+		try {
+			out.close();
+		} catch (IOException e) {
+			log.error("failed to close simulation dump " + file, e);
+		}
+		out = null;
+	}
+
+	/** Closes and deletes the file. */
+	synchronized void dispose() {
+		close();
+		if (file.exists() && !file.delete()) {
+			log.warn("could not delete simulation dump {}", file);
+		}
+	}
+
+	@FunctionalInterface
+	interface RowHandler {
+		void accept(int row, double[] flowResults, double[] impactResults)
+				throws IOException;
+	}
+}
@@ -24,7 +24,7 @@ public class SimulationEditor extends SimpleFormEditor {
 	public static String ID = "SimulationEditor";
 
 	CalculationSetup setup;
-	Simulator simulator;
+	ParallelSimulation simulation;
 
 	/**
 	 * Initializes the Monte Carlo simulation of a product system and opens the
@@ -33,7 +33,7 @@ public class SimulationEditor extends SimpleFormEditor {
 	public static void open(CalculationSetup setup) {
 		try {
 			Simulator sim = Simulator.create(
-					setup, Database.get(), App.getSolver());
+					setup, Database.get(), App.newSolver());
 			String setupKey = Cache.getAppCache().put(setup);
 			String simKey = Cache.getAppCache().put(sim);
 			SimulationInput input = new SimulationInput(setupKey, simKey);
@@ -52,8 +52,18 @@ public class SimulationEditor extends SimpleFormEditor {
 		setup = Cache.getAppCache().remove(
 				input.setupKey, CalculationSetup.class);
 		setPartName(Strings.cut(setup.productSystem.name, 75));
-		simulator = Cache.getAppCache()
+		Simulator simulator = Cache.getAppCache()
 				.remove(input.solverKey, Simulator.class);
+		simulation = new ParallelSimulation(
+				setup, Database.get(), simulator);
+	}
+
+	@Override
+	public void dispose() {
+		if (simulation != null) {
+			simulation.dispose();
+		}
+		super.dispose();
 	}
 
 	@Override
@@ -7,6 +7,7 @@ import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.ProgressBar;
+import org.eclipse.swt.widgets.Spinner;
 import org.eclipse.swt.widgets.Text;
 import org.eclipse.ui.forms.IManagedForm;
 import org.eclipse.ui.forms.editor.FormPage;
@@ -22,7 +23,6 @@ import org.openlca.app.util.UI;
 import org.openlca.app.viewers.combo.AbstractComboViewer;
 import org.openlca.app.viewers.combo.ImpactCategoryViewer;
 import org.openlca.core.math.CalculationSetup;
-import org.openlca.core.math.Simulator;
 import org.openlca.core.matrix.IndexFlow;
 import org.openlca.core.matrix.ProcessProduct;
 import org.openlca.core.model.Exchange;
@@ -41,11 +41,13 @@ class SimulationPage extends FormPage {
 	private int resultType = FLOW;
 
 	private final SimulationEditor editor;
-	private final Simulator simulator;
+	private final ParallelSimulation simulation;
 	private final SimulationResult result;
 
 	private StatisticsCanvas statisticsCanvas;
 	private ProgressBar progressBar;
+	private Spinner workerSpinner;
+	private SimulationExportAction exportAction;
 	private ResultFlowCombo flowViewer;
 	private Section progressSection;
 	private ScrolledForm form;
@@ -54,11 +56,14 @@ class SimulationPage extends FormPage {
 	/** A pinned product which results should be displayed. */
 	private ProcessProduct resultPin;
 
+	/** The streaming statistics of the selected result. */
+	private ParallelSimulation.Series series;
+
 	public SimulationPage(SimulationEditor editor) {
 		super(editor, "SimulationPage", M.MonteCarloSimulation);
 		this.editor = editor;
-		this.simulator = editor.simulator;
-		this.result = editor.simulator.getResult();
+		this.simulation = editor.simulation;
+		this.result = simulation.getMain().getResult();
 	}
 
 	@Override
@@ -70,7 +75,7 @@ class SimulationPage extends FormPage {
 		Composite body = UI.formBody(form, tk);
 		createSettingsSection(tk, body);
 
-		PinBoard pinBoard = new PinBoard(simulator);
+		PinBoard pinBoard = new PinBoard(simulation);
 		pinBoard.create(tk, body);
 		pinBoard.onResultPinChange = (pp) -> {
 			this.resultPin = pp;
@@ -120,7 +125,12 @@ class SimulationPage extends FormPage {
 
 	private void createProgressSection(FormToolkit toolkit, Composite body) {
 		progressSection = UI.section(body, toolkit, M.Progress);
-		Composite composite = UI.sectionClient(progressSection, toolkit);
+		Composite composite = UI.sectionClient(progressSection, toolkit, 4);
+		toolkit.createLabel(composite, M.ParallelWorkers);
+		workerSpinner = new Spinner(composite, SWT.BORDER);
+		int cores = Runtime.getRuntime().availableProcessors();
+		workerSpinner.setValues(Math.max(1, cores / 2), 1, cores, 0, 1, 1);
+		toolkit.adapt(workerSpinner);
 		progressBar = new ProgressBar(composite, SWT.SMOOTH);
 		progressBar.setMaximum(editor.setup.numberOfRuns);
 		UI.gridData(progressBar, false, false).widthHint = 470;
@@ -134,8 +144,7 @@ class SimulationPage extends FormPage {
 		if (result == null)
 			return;
 		Section section = UI.section(body, tk, M.Results);
-		SimulationExportAction exportAction = new SimulationExportAction(
-				result, editor.setup);
+		exportAction = new SimulationExportAction(simulation);
 		Actions.bind(section, exportAction);
 		Composite comp = UI.sectionClient(section, tk);
 		initFlowCheckViewer(tk, comp);
@@ -176,30 +185,35 @@ class SimulationPage extends FormPage {
 			IndexFlow flow = flowViewer.getSelected();
 			if (flow == null)
 				return;
-			double[] vals = resultPin != null
-					? result.getAllUpstream(resultPin, flow)
-					: result.getAll(flow);
-			statisticsCanvas.setValues(vals);
+			series = simulation.series(flow, resultPin);
 		} else {
 			ImpactCategoryDescriptor cat = impactViewer.getSelected();
 			if (cat == null)
 				return;
-			double[] vals = resultPin != null
-					? result.getAllUpstream(resultPin, cat)
-					: result.getAll(cat);
-			statisticsCanvas.setValues(vals);
+			series = simulation.series(cat, resultPin);
 		}
+		statisticsCanvas.setStatistics(series.update());
+	}
+
+	/** The number of workers that should run the simulation. */
+	int getWorkerCount() {
+		return workerSpinner.getSelection();
 	}
 
-	void updateProgress() {
+	void updateProgress(int runs) {
 		if (result == null)
 			return;
-		updateSelection();
-		progressBar.setSelection(progressBar.getSelection() + 1);
+		if (series != null && statisticsCanvas != null) {
+			statisticsCanvas.setStatistics(series.update());
+		}
+		progressBar.setSelection(runs);
 	}
 
 	void progressDone(int numberOfIteration) {
 		progressSection.dispose();
+		if (exportAction != null) {
+			exportAction.setEnabled(simulation.getDump() != null);
+		}
 		form.reflow(true);
 	}
 
@@ -6,61 +6,53 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.eclipse.swt.widgets.Display;
 import org.openlca.app.M;
-import org.openlca.core.math.Simulator;
 
 /**
  * The progress that runs the simulations. This should not be executed in the
- * UI-thread.
+ * UI-thread. The iterations are executed by the workers of the simulation;
+ * this progress just refreshes the page in fixed intervals until the workers
+ * are finished or the simulation is canceled.
  */
 class SimulationProgress implements IRunnableWithProgress {
 
+	/** The refresh interval of the page in milliseconds. */
+	private static final int REFRESH_INTERVAL = 250;
+
 	private Display display;
 	private int numberOfRuns;
-	private Simulator solver;
+	private int workerCount;
+	private ParallelSimulation simulation;
 	private SimulationPage page;
 
 	public SimulationProgress(Display display, SimulationEditor editor,
 			SimulationPage page) {
 		this.display = display;
-		this.solver = editor.simulator;
+		this.simulation = editor.simulation;
 		this.numberOfRuns = editor.setup.numberOfRuns;
+		this.workerCount = page.getWorkerCount();
 		this.page = page;
 	}
 
 	@Override
 	public void run(IProgressMonitor monitor) throws InvocationTargetException,
 			InterruptedException {
-		// one simulation has already be done at init step, so only
-		// (numberOfRuns - 1) remains
-		monitor.beginTask(M.MonteCarloSimulation + "...", numberOfRuns - 1);
-		for (int i = 0; i < numberOfRuns - 1; i++) {
+		monitor.beginTask(M.MonteCarloSimulation + "...", numberOfRuns);
+		simulation.start(numberOfRuns, workerCount);
+		while (!simulation.isFinished()) {
 			if (monitor.isCanceled()) {
-				doneAfter(i);
+				simulation.cancel();
 				break;
 			}
-			doNextRun();
+			Thread.sleep(REFRESH_INTERVAL);
+			int runs = simulation.getRunCount();
+			display.asyncExec(() -> page.updateProgress(runs));
 		}
+		simulation.await();
 		monitor.done();
-		doneAfter(numberOfRuns - 1);
-	}
-
-	private void doneAfter(final int numberOfRuns) {
-		display.asyncExec(new Runnable() {
-			@Override
-			public void run() {
-				page.progressDone(numberOfRuns);
-			}
-		});
-	}
-
-	private void doNextRun() throws InterruptedException {
-		solver.nextRun();
-		display.asyncExec(new Runnable() {
-			@Override
-			public void run() {
-				page.updateProgress();
-			}
+		int runs = simulation.getRunCount();
+		display.asyncExec(() -> {
+			page.updateProgress(runs);
+			page.progressDone(runs);
 		});
-		Thread.sleep(10);
 	}
 }
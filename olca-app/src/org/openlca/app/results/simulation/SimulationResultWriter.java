@@ -0,0 +1,339 @@
+package org.openlca.app.results.simulation;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.openlca.app.util.Labels;
+import org.openlca.core.matrix.IndexFlow;
+import org.openlca.core.matrix.ProcessProduct;
+import org.openlca.core.model.descriptors.ImpactCategoryDescriptor;
+import org.openlca.io.xls.Excel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the iteration results of a simulation from its dump file into an
+ * Excel or CSV file. The iterations are read and written row by row: the Excel
+ * export uses a streaming workbook that keeps only a small window of rows in
+ * memory and the statistics are calculated with streaming statistics. Thus,
+ * the memory that is needed for the export does not depend on the number of
+ * iterations. The median and percentiles of these statistics are estimates
+ * and are marked as such in the export. The upstream results of the pinned
+ * products are written to separate sheets, see writePinnedSheets.
+ */
+class SimulationResultWriter {
+
+	/** The number of rows a streaming sheet keeps in memory. */
+	private static final int ROW_WINDOW = 100;
+
+	/** The maximum number of rows and columns of an Excel sheet. */
+	private static final int MAX_ROWS = 1_048_576;
+	private static final int MAX_COLUMNS = 16_384;
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	private final ParallelSimulation simulation;
+	private final SimulationDump dump;
+
+	SimulationResultWriter(ParallelSimulation simulation) {
+		this.simulation = simulation;
+		this.dump = simulation.getDump();
+	}
+
+	void write(File file) throws IOException {
+		if (dump == null)
+			throw new IOException("no simulation results available");
+		if (file.getName().toLowerCase().endsWith(".csv")) {
+			writeCsv(file);
+		} else {
+			writeExcel(file);
+		}
+	}
+
+	private void writeCsv(File file) throws IOException {
+		List<IndexFlow> flows = simulation.getFlows();
+		List<ImpactCategoryDescriptor> impacts = simulation.getImpacts();
+		try (BufferedWriter w = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+			StringBuilder header = new StringBuilder("\"Iteration\"");
+			for (IndexFlow flow : flows) {
+				header.append(',').append(quote(flowHeader(flow)));
+			}
+			for (ImpactCategoryDescriptor impact : impacts) {
+				header.append(',').append(quote(impactHeader(impact)));
+			}
+			w.write(header.toString());
+			w.newLine();
+			StringBuilder line = new StringBuilder();
+			dump.read((row, flowResults, impactResults) -> {
+				line.setLength(0);
+				line.append(row + 1);
+				for (double v : flowResults) {
+					line.append(',').append(v);
+				}
+				for (double v : impactResults) {
+					line.append(',').append(v);
+				}
+				w.write(line.toString());
+				w.newLine();
+			});
+		}
+	}
+
+	private String quote(String s) {
+		return "\"" + s.replace("\"", "\"\"") + "\"";
+	}
+
+	private void writeExcel(File file) throws IOException {
+		List<IndexFlow> flows = simulation.getFlows();
+		List<ImpactCategoryDescriptor> impacts = simulation.getImpacts();
+		SXSSFWorkbook wb = new SXSSFWorkbook(ROW_WINDOW);
+		wb.setCompressTempFiles(true);
+		try {
+			CellStyle header = Excel.headerStyle(wb);
+			Sheet statSheet = wb.createSheet("Statistics");
+			Sheet flowSheet = wb.createSheet("Inventory");
+			Sheet impactSheet = impacts.isEmpty()
+					? null
+					: wb.createSheet("Impact assessment");
+
+			int flowCols = Math.min(flows.size(), MAX_COLUMNS - 1);
+			int impactCols = Math.min(impacts.size(), MAX_COLUMNS - 1);
+			if (flowCols < flows.size() || impactCols < impacts.size()) {
+				log.warn("too many columns for an Excel sheet;"
+						+ " only the first {} results are written to the"
+						+ " iteration sheets", MAX_COLUMNS - 1);
+			}
+			List<String> flowHeaders = new ArrayList<>();
+			for (IndexFlow flow : flows) {
+				flowHeaders.add(flowHeader(flow));
+			}
+			List<String> impactHeaders = new ArrayList<>();
+			for (ImpactCategoryDescriptor impact : impacts) {
+				impactHeaders.add(impactHeader(impact));
+			}
+			writeHeader(flowSheet, flowHeaders, flowCols, header);
+			if (impactSheet != null) {
+				writeHeader(impactSheet, impactHeaders, impactCols, header);
+			}
+
+			// write the iterations and collect the statistics
+			StreamingStatistics[] flowStats = statistics(flows.size());
+			StreamingStatistics[] impactStats = statistics(impacts.size());
+			dump.read((row, flowResults, impactResults) -> {
+				for (int i = 0; i < flowResults.length; i++) {
+					flowStats[i].add(flowResults[i]);
+				}
+				for (int i = 0; i < impactResults.length; i++) {
+					impactStats[i].add(impactResults[i]);
+				}
+				if (row + 1 >= MAX_ROWS)
+					return;
+				writeRow(flowSheet, row + 1, flowResults, flowCols);
+				if (impactSheet != null) {
+					writeRow(impactSheet, row + 1, impactResults, impactCols);
+				}
+			});
+			if (dump.getRows() >= MAX_ROWS) {
+				log.warn("too many iterations for an Excel sheet; only the"
+						+ " first {} iterations are written to the iteration"
+						+ " sheets", MAX_ROWS - 1);
+			}
+
+			// write the statistics
+			int row = writeStatisticsHeader(statSheet, header);
+			for (int i = 0; i < flows.size(); i++) {
+				IndexFlow flow = flows.get(i);
+				writeStatistics(statSheet, row++, Labels.name(flow),
+						Labels.category(flow), Labels.refUnit(flow),
+						flowStats[i]);
+			}
+			for (int i = 0; i < impacts.size(); i++) {
+				ImpactCategoryDescriptor impact = impacts.get(i);
+				writeStatistics(statSheet, row++, Labels.name(impact), "",
+						impact.referenceUnit, impactStats[i]);
+			}
+			writePinnedSheets(wb, header);
+
+			try (BufferedOutputStream out = new BufferedOutputStream(
+					new FileOutputStream(file))) {
+				wb.write(out);
+			}
+		} finally {
+			// deletes the temporary files of the streaming sheets
+			wb.dispose();
+			wb.close();
+		}
+	}
+
+	private StreamingStatistics[] statistics(int size) {
+		StreamingStatistics[] stats = new StreamingStatistics[size];
+		for (int i = 0; i < size; i++) {
+			stats[i] = new StreamingStatistics();
+		}
+		return stats;
+	}
+
+	private void writeHeader(Sheet sheet, List<String> headers, int cols,
+			CellStyle style) {
+		Row row = sheet.createRow(0);
+		row.createCell(0).setCellValue("Iteration");
+		row.getCell(0).setCellStyle(style);
+		for (int i = 0; i < cols; i++) {
+			row.createCell(i + 1).setCellValue(headers.get(i));
+			row.getCell(i + 1).setCellStyle(style);
+		}
+	}
+
+	private void writeRow(Sheet sheet, int rowIdx, double[] values, int cols) {
+		Row row = sheet.createRow(rowIdx);
+		row.createCell(0).setCellValue(rowIdx);
+		for (int i = 0; i < cols; i++) {
+			row.createCell(i + 1).setCellValue(values[i]);
+		}
+	}
+
+	private int writeStatisticsHeader(Sheet sheet, CellStyle style) {
+		String[] headers = { "Name", "Category", "Unit", "Mean",
+				"Standard deviation", "Minimum", "Maximum", "Median (approx.)",
+				"5% Percentile (approx.)", "95% Percentile (approx.)" };
+		Row row = sheet.createRow(0);
+		for (int i = 0; i < headers.length; i++) {
+			row.createCell(i).setCellValue(headers[i]);
+			row.getCell(i).setCellStyle(style);
+		}
+		return 1;
+	}
+
+	private void writeStatistics(Sheet sheet, int rowIdx, String name,
+			String category, String unit, StreamingStatistics stats) {
+		Row row = sheet.createRow(rowIdx);
+		row.createCell(0).setCellValue(name);
+		row.createCell(1).setCellValue(category);
+		row.createCell(2).setCellValue(unit);
+		row.createCell(3).setCellValue(stats.getMean());
+		row.createCell(4).setCellValue(stats.getStandardDeviation());
+		row.createCell(5).setCellValue(stats.getMin());
+		row.createCell(6).setCellValue(stats.getMax());
+		row.createCell(7).setCellValue(stats.getMedian());
+		row.createCell(8).setCellValue(stats.getPercentile5());
+		row.createCell(9).setCellValue(stats.getPercentile95());
+	}
+
+	/**
+	 * Writes a sheet with the upstream results of each pinned product. Each
+	 * row contains the exact statistics and the iteration values of a flow or
+	 * LCIA category, so that only the values of one row are loaded at once.
+	 * The iteration columns are in the order of the rows of the iteration
+	 * sheets; iterations in which the product was not pinned are left empty.
+	 */
+	private void writePinnedSheets(SXSSFWorkbook wb, CellStyle header) {
+		List<ProcessProduct> pinned = simulation.getPinnedProducts();
+		List<IndexFlow> flows = simulation.getFlows();
+		List<ImpactCategoryDescriptor> impacts = simulation.getImpacts();
+		for (int p = 0; p < pinned.size(); p++) {
+			ProcessProduct pp = pinned.get(p);
+			Sheet sheet = wb.createSheet("Upstream " + (p + 1));
+			Row title = sheet.createRow(0);
+			title.createCell(0).setCellValue("Upstream contributions of: "
+					+ Labels.name(pp.process) + " | " + Labels.name(pp.flow));
+			title.getCell(0).setCellStyle(header);
+			String[] headers = { "Name", "Category", "Unit", "Mean",
+					"Standard deviation", "Minimum", "Maximum", "Median",
+					"5% Percentile", "95% Percentile", "Iterations" };
+			Row headerRow = sheet.createRow(1);
+			for (int i = 0; i < headers.length; i++) {
+				headerRow.createCell(i).setCellValue(headers[i]);
+				headerRow.getCell(i).setCellStyle(header);
+			}
+			int row = 2;
+			for (IndexFlow flow : flows) {
+				double[] values = simulation.pinnedValues(
+						pp, r -> r.getAllUpstream(pp, flow));
+				writePinnedRow(sheet, row++, Labels.name(flow),
+						Labels.category(flow), Labels.refUnit(flow), values);
+			}
+			for (ImpactCategoryDescriptor impact : impacts) {
+				double[] values = simulation.pinnedValues(
+						pp, r -> r.getAllUpstream(pp, impact));
+				writePinnedRow(sheet, row++, Labels.name(impact), "",
+						impact.referenceUnit, values);
+			}
+		}
+	}
+
+	private void writePinnedRow(Sheet sheet, int rowIdx, String name,
+			String category, String unit, double[] values) {
+		Row row = sheet.createRow(rowIdx);
+		row.createCell(0).setCellValue(name);
+		row.createCell(1).setCellValue(category);
+		row.createCell(2).setCellValue(unit);
+		if (values == null)
+			return;
+		double[] sorted = Arrays.stream(values)
+				.filter(v -> !Double.isNaN(v))
+				.sorted()
+				.toArray();
+		if (sorted.length == 0)
+			return;
+		StreamingStatistics stats = StreamingStatistics.of(sorted);
+		row.createCell(3).setCellValue(stats.getMean());
+		row.createCell(4).setCellValue(stats.getStandardDeviation());
+		row.createCell(5).setCellValue(sorted[0]);
+		row.createCell(6).setCellValue(sorted[sorted.length - 1]);
+		row.createCell(7).setCellValue(percentile(sorted, 0.5));
+		row.createCell(8).setCellValue(percentile(sorted, 0.05));
+		row.createCell(9).setCellValue(percentile(sorted, 0.95));
+		int cols = Math.min(values.length, MAX_COLUMNS - 10);
+		for (int i = 0; i < cols; i++) {
+			if (!Double.isNaN(values[i])) {
+				row.createCell(10 + i).setCellValue(values[i]);
+			}
+		}
+	}
+
+	/** Linear interpolation between the closest ranks of sorted values. */
+	private double percentile(double[] sorted, double p) {
+		double pos = p * (sorted.length - 1);
+		int lower = (int) Math.floor(pos);
+		int upper = (int) Math.ceil(pos);
+		if (lower == upper)
+			return sorted[lower];
+		double w = pos - lower;
+		return (1 - w) * sorted[lower] + w * sorted[upper];
+	}
+
+	/**
+	 * The flow header contains the category so that flows with the same name
+	 * in different compartments can be distinguished.
+	 */
+	private String flowHeader(IndexFlow flow) {
+		String header = Labels.name(flow);
+		String category = Labels.category(flow);
+		if (category != null && !category.isEmpty()) {
+			header += " (" + category + ")";
+		}
+		String unit = Labels.refUnit(flow);
+		return unit == null || unit.isEmpty()
+				? header
+				: header + " [" + unit + "]";
+	}
+
+	private String impactHeader(ImpactCategoryDescriptor impact) {
+		String unit = impact.referenceUnit;
+		return unit == null || unit.isEmpty()
+				? Labels.name(impact)
+				: Labels.name(impact) + " [" + unit + "]";
+	}
+}
@@ -8,16 +8,13 @@ import org.eclipse.draw2d.Label;
 import org.eclipse.draw2d.LineBorder;
 import org.eclipse.draw2d.geometry.Point;
 import org.openlca.app.util.Numbers;
-import org.openlca.core.results.Statistics;
-import org.openlca.core.results.Statistics.Histogram;
 
 /**
  * Draws a chart with a frequency distribution and statistic parameters.
  */
 public class StatisticFigure extends Figure {
 
-	private Histogram hist = Statistics.hist(
-			new double[0], 100);
+	private StreamingStatistics stats = new StreamingStatistics();
 
 	private int marginLeft = 35;
 	private int marginBottom = 35;
@@ -58,7 +55,13 @@ public class StatisticFigure extends Figure {
 	}
 
 	void setData(double[] values) {
-		hist = Statistics.hist(values, 100);
+		setData(StreamingStatistics.of(values));
+	}
+
+	void setData(StreamingStatistics stats) {
+		this.stats = stats != null
+				? stats
+				: new StreamingStatistics();
 		repaint();
 	}
 
@@ -77,8 +80,8 @@ public class StatisticFigure extends Figure {
 	private void paintBoxes(Graphics graphics, Point boxSize) {
 		graphics.setBackgroundColor(ColorConstants.lightGray);
 		int height = getSize().height - marginBottom;
-		for (int interval = 0; interval < 100; interval++) {
-			int frequency = hist.getAbsoluteFrequency(interval);
+		for (int interval = 0; interval < StreamingStatistics.INTERVALS; interval++) {
+			int frequency = stats.getFrequency(interval);
 			for (int block = 1; block <= frequency; block++) {
 				int x = marginLeft + interval * boxSize.x;
 				int y = height - block * boxSize.y;
@@ -96,12 +99,12 @@ public class StatisticFigure extends Figure {
 	}
 
 	private void paintParameterLabels() {
-		numberLabel.setText(Integer.toString(hist.statistics.count));
-		setLabelValue(perc5Label, hist.statistics.getPercentileValue(5));
-		setLabelValue(perc95Label, hist.statistics.getPercentileValue(95));
-		setLabelValue(medianLabel, hist.statistics.median);
-		setLabelValue(meanLabel, hist.statistics.mean);
-		setLabelValue(standardDevLabel, hist.statistics.standardDeviation);
+		numberLabel.setText(Integer.toString(stats.getCount()));
+		setLabelValue(perc5Label, stats.getPercentile5());
+		setLabelValue(perc95Label, stats.getPercentile95());
+		setLabelValue(medianLabel, stats.getMedian());
+		setLabelValue(meanLabel, stats.getMean());
+		setLabelValue(standardDevLabel, stats.getStandardDeviation());
 	}
 
 	private void paintChartFrame(Graphics graphics) {
@@ -109,13 +112,13 @@ public class StatisticFigure extends Figure {
 				getSize().width - marginRight, getSize().height - marginBottom);
 		graphics.drawLine(marginLeft, marginTop, marginLeft, getSize().height
 				- marginBottom);
-		graphics.drawText(Numbers.format(hist.statistics.min, 3),
+		graphics.drawText(Numbers.format(stats.getLowerBound(), 3),
 				marginLeft, getSize().height - marginBottom + 10);
-		graphics.drawText(Numbers.format(hist.statistics.max, 3),
+		graphics.drawText(Numbers.format(stats.getUpperBound(), 3),
 				getSize().width - marginRight - 40, getSize().height
 						- marginBottom + 10);
 		graphics.drawText(
-				Integer.toString(hist.getMaxAbsoluteFrequency()), 15,
+				Integer.toString(stats.getMaxFrequency()), 15,
 				marginTop + 5);
 		graphics.drawText("0", 15, getSize().height - marginBottom - 15);
 	}
@@ -129,8 +132,8 @@ public class StatisticFigure extends Figure {
 			size.y = 0;
 			return size;
 		}
-		int intervalCount = 100;
-		int maxFreq = hist.getMaxAbsoluteFrequency();
+		int intervalCount = StreamingStatistics.INTERVALS;
+		int maxFreq = stats.getMaxFrequency();
 		if (maxFreq > height) {
 			double factor = (double) maxFreq / (double) height;
 			maxFreq /= factor;
@@ -147,15 +150,15 @@ public class StatisticFigure extends Figure {
 
 	private void paintLines(Graphics g, Point box) {
 		g.setForegroundColor(ColorConstants.red);
-		drawLine(g, hist.statistics.getPercentileValue(5), box);
-		drawLine(g, hist.statistics.median, box);
-		drawLine(g, hist.statistics.getPercentileValue(95), box);
-		drawLine(g, hist.statistics.mean, box);
+		drawLine(g, stats.getPercentile5(), box);
+		drawLine(g, stats.getMedian(), box);
+		drawLine(g, stats.getPercentile95(), box);
+		drawLine(g, stats.getMean(), box);
 		g.setForegroundColor(ColorConstants.black);
 	}
 
 	private void drawLine(Graphics g, double val, Point box) {
-		int interval = hist.getInterval(val);
+		int interval = stats.getInterval(val);
 		int x = box.x * interval + marginLeft + box.x / 2;
 		g.drawLine(x, getSize().height - marginBottom, x, marginTop);
 	}
@@ -19,4 +19,8 @@ public class StatisticsCanvas extends FigureCanvas {
 	public void setValues(double[] values) {
 		plot.setData(values);
 	}
+
+	public void setStatistics(StreamingStatistics stats) {
+		plot.setData(stats);
+	}
 }
@@ -0,0 +1,314 @@
+package org.openlca.app.results.simulation;
+
+import java.util.Arrays;
+
+import gnu.trove.list.array.TDoubleArrayList;
+
+/**
+ * Statistics of a stream of simulation values that can be updated value by
+ * value without keeping or sorting the values. The mean and variance are
+ * calculated with Welford's algorithm, the 5%, 50%, and 95% percentiles are
+ * estimated with the P-square algorithm of Jain and Chlamtac, and the frequency
+ * distribution is collected in a histogram with a fixed number of intervals
+ * which doubles its interval width when a value is out of its range. For the
+ * first values (up to the number of intervals) the exact statistics are
+ * calculated from a small buffer.
+ */
+public class StreamingStatistics {
+
+	public static final int INTERVALS = 100;
+
+	private int count;
+	private double mean;
+	private double m2;
+	private double min = Double.NaN;
+	private double max = Double.NaN;
+
+	private final double[] buffer = new double[INTERVALS];
+	private final P2 p5 = new P2(0.05);
+	private final P2 p50 = new P2(0.5);
+	private final P2 p95 = new P2(0.95);
+
+	private final int[] hist = new int[INTERVALS];
+	private double lower;
+	private double width;
+	private boolean histInit;
+
+	public static StreamingStatistics of(double[] values) {
+		StreamingStatistics stats = new StreamingStatistics();
+		if (values == null)
+			return stats;
+		for (double v : values) {
+			stats.add(v);
+		}
+		return stats;
+	}
+
+	/**
+	 * Adds the values of the given buffer from the index `from` (inclusive)
+	 * to the index `to` (exclusive).
+	 */
+	public void add(TDoubleArrayList values, int from, int to) {
+		for (int i = from; i < to; i++) {
+			add(values.getQuick(i));
+		}
+	}
+
+	public void add(double value) {
+		if (Double.isNaN(value) || Double.isInfinite(value))
+			return;
+		if (count == 0) {
+			min = value;
+			max = value;
+		} else {
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+		}
+		count++;
+		double delta = value - mean;
+		mean += delta / count;
+		m2 += delta * (value - mean);
+		p5.add(value);
+		p50.add(value);
+		p95.add(value);
+		if (count <= INTERVALS) {
+			buffer[count - 1] = value;
+			if (count == INTERVALS) {
+				initHistogram();
+			}
+			return;
+		}
+		addToHistogram(value);
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public double getMean() {
+		return mean;
+	}
+
+	public double getStandardDeviation() {
+		if (count < 2)
+			return 0;
+		return Math.sqrt(m2 / (count - 1));
+	}
+
+	public double getMin() {
+		return count == 0 ? 0 : min;
+	}
+
+	public double getMax() {
+		return count == 0 ? 0 : max;
+	}
+
+	public double getMedian() {
+		return getPercentile(p50);
+	}
+
+	public double getPercentile5() {
+		return getPercentile(p5);
+	}
+
+	public double getPercentile95() {
+		return getPercentile(p95);
+	}
+
+	private double getPercentile(P2 estimator) {
+		if (count == 0)
+			return 0;
+		if (count > INTERVALS)
+			return estimator.get();
+		double[] sorted = Arrays.copyOf(buffer, count);
+		Arrays.sort(sorted);
+		int idx = (int) Math.round(estimator.p * (count - 1));
+		return sorted[idx];
+	}
+
+	/** Returns the number of values in the given interval. */
+	public int getFrequency(int interval) {
+		if (interval < 0 || interval >= INTERVALS)
+			return 0;
+		if (histInit)
+			return hist[interval];
+		int f = 0;
+		for (int i = 0; i < count; i++) {
+			if (getInterval(buffer[i]) == interval) {
+				f++;
+			}
+		}
+		return f;
+	}
+
+	public int getMaxFrequency() {
+		int max = 0;
+		for (int i = 0; i < INTERVALS; i++) {
+			max = Math.max(max, getFrequency(i));
+		}
+		return max;
+	}
+
+	/** Returns the interval of the given value. */
+	public int getInterval(double value) {
+		double lower = histInit ? this.lower : getMin();
+		double width = histInit ? this.width : widthOf(getMin(), getMax());
+		int i = (int) Math.floor((value - lower) / width);
+		return Math.max(0, Math.min(INTERVALS - 1, i));
+	}
+
+	/** The lower bound of the histogram range. */
+	public double getLowerBound() {
+		return histInit ? lower : getMin();
+	}
+
+	/** The upper bound of the histogram range. */
+	public double getUpperBound() {
+		return histInit ? lower + INTERVALS * width : getMax();
+	}
+
+	private static double widthOf(double min, double max) {
+		double w = (max - min) / INTERVALS;
+		if (w > 0)
+			return w;
+		w = Math.abs(min) * 1e-6 / INTERVALS;
+		return w > 0 ? w : 1e-9;
+	}
+
+	private void initHistogram() {
+		lower = min;
+		width = widthOf(min, max);
+		// the maximum value should be in the last interval
+		width *= 1 + 1e-9;
+		histInit = true;
+		for (int i = 0; i < count; i++) {
+			addToHistogram(buffer[i]);
+		}
+	}
+
+	private void addToHistogram(double value) {
+		while (value < lower) {
+			// double the width and move the old range to the upper half
+			int half = INTERVALS / 2;
+			for (int j = INTERVALS - 1; j >= half; j--) {
+				int k = 2 * (j - half);
+				hist[j] = hist[k] + hist[k + 1];
+			}
+			Arrays.fill(hist, 0, half, 0);
+			lower -= INTERVALS * width;
+			width *= 2;
+		}
+		while (value >= lower + INTERVALS * width) {
+			// double the width and move the old range to the lower half
+			int half = INTERVALS / 2;
+			for (int j = 0; j < half; j++) {
+				hist[j] = hist[2 * j] + hist[2 * j + 1];
+			}
+			Arrays.fill(hist, half, INTERVALS, 0);
+			width *= 2;
+		}
+		int i = (int) Math.floor((value - lower) / width);
+		hist[Math.max(0, Math.min(INTERVALS - 1, i))]++;
+	}
+
+	/**
+	 * The P-square estimator of a single quantile; see Jain, R. and Chlamtac, I.
+	 * (1985): The P-square algorithm for dynamic calculation of quantiles and
+	 * histograms without storing observations.
+	 */
+	private static class P2 {
+
+		final double p;
+		private final double[] q = new double[5];
+		private final double[] n = new double[5];
+		private final double[] np = new double[5];
+		private final double[] dn = new double[5];
+		private int count;
+
+		P2(double p) {
+			this.p = p;
+			dn[0] = 0;
+			dn[1] = p / 2;
+			dn[2] = p;
+			dn[3] = (1 + p) / 2;
+			dn[4] = 1;
+		}
+
+		void add(double x) {
+			if (count < 5) {
+				q[count] = x;
+				count++;
+				if (count == 5) {
+					Arrays.sort(q);
+					for (int i = 0; i < 5; i++) {
+						n[i] = i + 1;
+					}
+					np[0] = 1;
+					np[1] = 1 + 2 * p;
+					np[2] = 1 + 4 * p;
+					np[3] = 3 + 2 * p;
+					np[4] = 5;
+				}
+				return;
+			}
+			count++;
+
+			int k;
+			if (x < q[0]) {
+				q[0] = x;
+				k = 0;
+			} else if (x >= q[4]) {
+				q[4] = x;
+				k = 3;
+			} else {
+				k = 0;
+				while (k < 3 && x >= q[k + 1]) {
+					k++;
+				}
+			}
+			for (int i = k + 1; i < 5; i++) {
+				n[i]++;
+			}
+			for (int i = 0; i < 5; i++) {
+				np[i] += dn[i];
+			}
+
+			for (int i = 1; i < 4; i++) {
+				double d = np[i] - n[i];
+				if ((d >= 1 && n[i + 1] - n[i] > 1)
+						|| (d <= -1 && n[i - 1] - n[i] < -1)) {
+					int ds = d > 0 ? 1 : -1;
+					double qp = parabolic(i, ds);
+					if (q[i - 1] < qp && qp < q[i + 1]) {
+						q[i] = qp;
+					} else {
+						q[i] = linear(i, ds);
+					}
+					n[i] += ds;
+				}
+			}
+		}
+
+		private double parabolic(int i, int d) {
+			return q[i] + d / (n[i + 1] - n[i - 1])
+					* ((n[i] - n[i - 1] + d) * (q[i + 1] - q[i])
+							/ (n[i + 1] - n[i])
+							+ (n[i + 1] - n[i] - d) * (q[i] - q[i - 1])
+									/ (n[i] - n[i - 1]));
+		}
+
+		private double linear(int i, int d) {
+			return q[i] + d * (q[i + d] - q[i]) / (n[i + d] - n[i]);
+		}
+
+		double get() {
+			if (count >= 5)
+				return q[2];
+			if (count == 0)
+				return 0;
+			double[] sorted = Arrays.copyOf(q, count);
+			Arrays.sort(sorted);
+			return sorted[(int) Math.round(p * (count - 1))];
+		}
+	}
+}
@@ -40,6 +40,8 @@ class ResultPage extends FormPage {
 	private final String title;
 
 	private List<BaseDescriptor> results;
+	private String filter;
+	private Search search;
 	private int currentPage = 0;
 	private int pageCount;
 
@@ -49,9 +51,10 @@ class ResultPage extends FormPage {
 	private Composite pageComposite;
 
 	public ResultPage(SearchPage view, String title,
-			List<BaseDescriptor> results) {
+			List<BaseDescriptor> results, Search search) {
 		super(view, "SearchResultView.Page", M.SearchResults);
-		this.rawResults = results;
+		this.rawResults = new ArrayList<>(results);
+		this.search = search;
 		this.results = rawResults;
 		this.title = title;
 		pageCount = (int) Math.ceil((double) results.size() / (double) PAGE_SIZE);
@@ -62,7 +65,7 @@ class ResultPage extends FormPage {
 		form = UI.formHeader(mform, title);
 		tk = mform.getToolkit();
 		formBody = UI.formBody(form, tk);
-		if (rawResults.size() > 10) {
+		if (rawResults.size() > 10 || hasMore()) {
 			createFilter();
 		}
 		renderPage();
@@ -79,6 +82,7 @@ class ResultPage extends FormPage {
 	}
 
 	private void filterResults(String filter) {
+		this.filter = filter;
 		if (Strings.nullOrEmpty(filter)) {
 			results = rawResults;
 		} else {
@@ -117,6 +121,7 @@ class ResultPage extends FormPage {
 		UI.gridLayout(pageComposite, 1, 5, 5);
 		createItems();
 		renderPager();
+		renderMoreLink();
 		form.reflow(true);
 		form.getForm().setFocus();
 	}
@@ -209,6 +214,38 @@ class ResultPage extends FormPage {
 		}
 	}
 
+	private boolean hasMore() {
+		return search != null && search.hasMore();
+	}
+
+	/**
+	 * Renders a link for loading the next hits of the search when not all
+	 * hits were loaded yet.
+	 */
+	private void renderMoreLink() {
+		if (!hasMore())
+			return;
+		String label = M.LoadMoreResults + " (" + rawResults.size()
+				+ "/" + search.getTotal() + ")";
+		Hyperlink link = tk.createHyperlink(pageComposite, label, SWT.NONE);
+		Controls.onClick(link, e -> {
+			link.setEnabled(false);
+			Search next = search.next();
+			App.run(M.Searching, next, () -> {
+				if (form.isDisposed())
+					return;
+				rawResults.addAll(next.getResult());
+				search = next;
+				int page = currentPage;
+				filterResults(filter);
+				if (page > 0 && page < pageCount) {
+					currentPage = page;
+					renderPage();
+				}
+			});
+		});
+	}
+
 	private class LinkClick extends HyperlinkAdapter {
 		@Override
 		public void linkActivated(HyperlinkEvent e) {
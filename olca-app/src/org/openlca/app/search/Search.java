@@ -1,28 +1,38 @@
 package org.openlca.app.search;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 
-import org.openlca.app.navigation.ModelTypeComparison;
-import org.openlca.app.util.Labels;
-import org.openlca.core.database.Daos;
+import org.openlca.app.db.Database;
 import org.openlca.core.database.IDatabase;
-import org.openlca.core.database.ParameterDao;
 import org.openlca.core.model.ModelType;
 import org.openlca.core.model.descriptors.BaseDescriptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Runs a search against the search index of the database. If the index is not
+ * ready yet, it is built first.
+ */
 class Search implements Runnable {
 
+	/** The default number of hits that are loaded per search. */
+	static final int PAGE_SIZE = 500;
+
 	private Logger log = LoggerFactory.getLogger(getClass());
 	private IDatabase database;
 
 	ModelType typeFilter;
+
+	/** The offset of the first hit that should be loaded. */
+	int offset = 0;
+
+	/** The maximum number of hits to load; -1 loads all hits. */
+	int limit = -1;
+
 	private String rawTerm;
 	private String[] terms;
+	private int total;
 	private List<BaseDescriptor> result = new ArrayList<>();
 
 	public Search(IDatabase database, String term) {
@@ -37,74 +47,42 @@ class Search implements Runnable {
 		return result;
 	}
 
-	@Override
-	public void run() {
-		result.clear();
-		if (rawTerm.isEmpty())
-			return;
-		log.trace("run search with term {}", rawTerm);
-		ModelType[] types = typeFilter == null ? getSearchTypes()
-				: new ModelType[] { typeFilter };
-		for (ModelType type : types) {
-			List<?> descriptors = getDescriptors(type);
-			fetchResults(descriptors);
-		}
-		Collections.sort(result, new ResultComparator());
-		log.trace("{} results fetched and ranked", result.size());
+	/** Returns the total number of hits, independent from the paging. */
+	public int getTotal() {
+		return total;
 	}
 
-	private ModelType[] getSearchTypes() {
-		return ModelTypeComparison.getOrderedTypes();
+	/** Returns true if there are more hits after the loaded ones. */
+	boolean hasMore() {
+		return limit >= 0 && offset + limit < total;
 	}
 
-	private List<?> getDescriptors(ModelType type) {
-		if (type == ModelType.PARAMETER)
-			return new ParameterDao(database).getGlobalDescriptors();
-		return Daos.root(database, type).getDescriptors();
+	/** Creates the search for the hits after the loaded ones. */
+	Search next() {
+		Search next = new Search(database, rawTerm);
+		next.typeFilter = typeFilter;
+		next.offset = offset + limit;
+		next.limit = limit;
+		return next;
 	}
 
-	private void fetchResults(List<?> descriptors) {
-		for (Object obj : descriptors) {
-			if (!(obj instanceof BaseDescriptor))
-				continue;
-			BaseDescriptor descriptor = (BaseDescriptor) obj;
-			if (match(descriptor))
-				result.add(descriptor);
-		}
-	}
-
-	private boolean match(BaseDescriptor d) {
-		if (terms == null)
-			return false;
-		if (terms.length == 1
-				&& d.refId != null
-				&& d.refId.equalsIgnoreCase(terms[0])) {
-			return true;
-		}
-		String label = Labels.name(d);
-		if (label == null)
-			return false;
-		String feed = label.toLowerCase();
-		for (String term : terms) {
-			if (!feed.contains(term))
-				return false;
-		}
-		return true;
-	}
-
-	private class ResultComparator implements Comparator<BaseDescriptor> {
-		@Override
-		public int compare(BaseDescriptor o1, BaseDescriptor o2) {
-			String label1 = Labels.name(o1).toLowerCase();
-			String label2 = Labels.name(o2).toLowerCase();
-			for (String term : terms) {
-				int idx1 = label1.indexOf(term);
-				int idx2 = label2.indexOf(term);
-				int diff = idx1 - idx2;
-				if (diff != 0)
-					return diff;
-			}
-			return label1.compareToIgnoreCase(label2);
+	@Override
+	public void run() {
+		result.clear();
+		total = 0;
+		if (rawTerm.isEmpty())
+			return;
+		SearchIndex index = Database.getSearchIndex();
+		if (index == null)
+			return;
+		if (!index.isReady()) {
+			log.trace("build search index");
+			index.rebuild(database);
 		}
+		log.trace("run search with term {}", rawTerm);
+		SearchIndex.Page page = index.find(terms, typeFilter, offset, limit);
+		total = page.total;
+		result.addAll(SearchIndex.load(database, page.hits));
+		log.trace("{} results fetched and ranked", result.size());
 	}
 }
@@ -0,0 +1,577 @@
+package org.openlca.app.search;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.openlca.app.navigation.ModelTypeComparison;
+import org.openlca.app.util.Labels;
+import org.openlca.core.database.Daos;
+import org.openlca.core.database.IDatabase;
+import org.openlca.core.database.ParameterDao;
+import org.openlca.core.model.ModelType;
+import org.openlca.core.model.descriptors.BaseDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A persistent full text index of the model names of a database. The index is
+ * stored in a MapDB file next to the database (see
+ * DatabaseDir#getSearchIndexDir) and contains a sorted posting set of
+ * `token + SEP + key` entries. A search term matches all labels that contain
+ * it as a substring, like the search did before the index: the candidates are
+ * collected from the postings of all tokens of the term dictionary that
+ * contain a token of the search term (see TokenDictionary) and are then
+ * checked against the full labels. The ranked hits of the last search are
+ * cached, so that further pages of the same search are just sliced from them.
+ * The database listener keeps the index up to date; when it is not ready (e.g.
+ * for a new database, after a native SQL update, or after a location was
+ * changed, whose codes are part of the labels) it is rebuilt on the next
+ * search.
+ */
+public class SearchIndex {
+
+	private static final int VERSION = 2;
+	private static final char SEP = '\u0001';
+	private static final char MAX = '\uffff';
+
+	/** The number of listener updates after which the index is committed. */
+	private static final int COMMIT_SIZE = 100;
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	private final File file;
+	private final Object rebuildLock = new Object();
+	private DB db;
+
+	/** token + SEP + entry key */
+	private NavigableSet<String> postings;
+	/** entry key -> entry */
+	private Map<String, Entry> entries;
+	/** lower case reference ID -> entry key */
+	private Map<String, String> refIds;
+
+	/** The distinct tokens of the postings; loaded on demand. */
+	private TokenDictionary dictionary;
+
+	/** The ranked hits of the last search; cleared on each change. */
+	private Ranking ranking;
+
+	/** The number of updates that are not committed yet. */
+	private int pending;
+
+	/** The updates that are received while the index is rebuilt. */
+	private List<Update> rebuildUpdates;
+	private int invalidations;
+
+	public SearchIndex(File dir) {
+		if (!dir.exists()) {
+			dir.mkdirs();
+		}
+		file = new File(dir, "searchindex");
+		createDb();
+	}
+
+	private void createDb() {
+		db = DBMaker.fileDB(file).closeOnJvmShutdown().make();
+		int generation = db.atomicInteger("generation").get();
+		postings = db.treeSet("postings_" + generation);
+		entries = db.hashMap("entries_" + generation);
+		refIds = db.hashMap("refIds_" + generation);
+		// updates that were not committed are lost when the application
+		// was not closed properly; thus, the index needs to be rebuilt
+		if (!db.atomicBoolean("clean").get()) {
+			db.atomicInteger("version").set(0);
+			db.commit();
+		}
+	}
+
+	public synchronized boolean isReady() {
+		return !db.isClosed()
+				&& db.atomicInteger("version").get() == VERSION;
+	}
+
+	/**
+	 * Marks the index as outdated so that it is rebuilt before the next
+	 * search. This should be called when the database was modified without
+	 * notifying the database listeners, e.g. via native SQL.
+	 */
+	public synchronized void invalidate() {
+		if (db.isClosed())
+			return;
+		invalidations++;
+		ranking = null;
+		db.atomicInteger("version").set(0);
+		db.commit();
+	}
+
+	public synchronized void close() {
+		if (db.isClosed())
+			return;
+		if (pending > 0) {
+			db.atomicBoolean("clean").set(true);
+		}
+		db.commit();
+		db.close();
+	}
+
+	/**
+	 * Rebuilds the index from the descriptors of the given database. The new
+	 * index is built in separate collections while the current index can still
+	 * be used. The collections are swapped when the new index is complete;
+	 * updates that are received in the meantime are applied before the swap.
+	 */
+	public void rebuild(IDatabase database) {
+		synchronized (rebuildLock) {
+			int generation;
+			int invalidationCount;
+			synchronized (this) {
+				if (isReady() || db.isClosed())
+					return;
+				generation = db.atomicInteger("generation").get() + 1;
+				invalidationCount = invalidations;
+				rebuildUpdates = new ArrayList<>();
+			}
+			try {
+				build(database, generation, invalidationCount);
+			} catch (Exception e) {
+				log.error("failed to rebuild search index " + file, e);
+			} finally {
+				synchronized (this) {
+					rebuildUpdates = null;
+				}
+			}
+		}
+	}
+
+	private void build(IDatabase database, int generation,
+			int invalidationCount) {
+		log.trace("rebuild search index {}", file);
+		NavigableSet<String> newPostings;
+		Map<String, Entry> newEntries;
+		Map<String, String> newRefIds;
+		synchronized (this) {
+			// clear the data of a previously aborted rebuild
+			newPostings = db.treeSet("postings_" + generation);
+			newEntries = db.hashMap("entries_" + generation);
+			newRefIds = db.hashMap("refIds_" + generation);
+			newPostings.clear();
+			newEntries.clear();
+			newRefIds.clear();
+		}
+		int count = 0;
+		for (ModelType type : ModelTypeComparison.getOrderedTypes()) {
+			for (Object obj : getDescriptors(database, type)) {
+				if (!(obj instanceof BaseDescriptor))
+					continue;
+				add((BaseDescriptor) obj, newPostings, newEntries, newRefIds);
+				count++;
+				if (count % 10_000 == 0) {
+					synchronized (this) {
+						if (db.isClosed())
+							return;
+						db.commit();
+					}
+				}
+			}
+		}
+		synchronized (this) {
+			if (db.isClosed())
+				return;
+			for (Update update : rebuildUpdates) {
+				remove(key(update.descriptor), newPostings, newEntries,
+						newRefIds);
+				if (!update.removed) {
+					add(update.descriptor, newPostings, newEntries, newRefIds);
+				}
+			}
+			int old = db.atomicInteger("generation").get();
+			postings = newPostings;
+			entries = newEntries;
+			refIds = newRefIds;
+			dictionary = null;
+			ranking = null;
+			db.delete("postings_" + old);
+			db.delete("entries_" + old);
+			db.delete("refIds_" + old);
+			db.atomicInteger("generation").set(generation);
+			// the database could have been modified via native SQL while
+			// the index was built; in this case it is built again
+			if (invalidations == invalidationCount) {
+				db.atomicInteger("version").set(VERSION);
+			}
+			db.atomicBoolean("clean").set(true);
+			db.commit();
+			pending = 0;
+		}
+		log.trace("indexed {} descriptors", count);
+	}
+
+	private List<?> getDescriptors(IDatabase database, ModelType type) {
+		if (type == ModelType.PARAMETER)
+			return new ParameterDao(database).getGlobalDescriptors();
+		return Daos.root(database, type).getDescriptors();
+	}
+
+	/**
+	 * Adds or updates the entry of the given descriptor.
+	 */
+	public synchronized void put(BaseDescriptor d) {
+		update(d, false);
+	}
+
+	public synchronized void remove(BaseDescriptor d) {
+		update(d, true);
+	}
+
+	private void update(BaseDescriptor d, boolean removed) {
+		if (d != null && d.type == ModelType.LOCATION
+				&& !db.isClosed() && !isNew(d, removed)) {
+			// the location codes are part of the labels of processes and
+			// flows; thus, their entries need to be updated too
+			invalidate();
+			return;
+		}
+		if (!isIndexed(d) || db.isClosed())
+			return;
+		if (rebuildUpdates != null) {
+			rebuildUpdates.add(new Update(d, removed));
+			return;
+		}
+		if (!isReady())
+			return;
+		ranking = null;
+		if (pending == 0) {
+			// mark the index as dirty until the updates are committed
+			db.atomicBoolean("clean").set(false);
+			db.commit();
+		}
+		remove(key(d), postings, entries, refIds);
+		if (!removed) {
+			add(d, postings, entries, refIds);
+		}
+		pending++;
+		if (pending >= COMMIT_SIZE) {
+			db.atomicBoolean("clean").set(true);
+			db.commit();
+			pending = 0;
+		}
+	}
+
+	/**
+	 * Returns true if the given descriptor is added and not yet in the index.
+	 */
+	private boolean isNew(BaseDescriptor d, boolean removed) {
+		return !removed && !entries.containsKey(key(d));
+	}
+
+	private boolean isIndexed(BaseDescriptor d) {
+		if (d == null || d.type == null)
+			return false;
+		for (ModelType type : ModelTypeComparison.getOrderedTypes()) {
+			if (type == d.type)
+				return true;
+		}
+		return false;
+	}
+
+	private void add(BaseDescriptor d, NavigableSet<String> postings,
+			Map<String, Entry> entries, Map<String, String> refIds) {
+		String label = Labels.name(d);
+		if (label == null)
+			return;
+		Entry entry = new Entry();
+		entry.type = d.type;
+		entry.id = d.id;
+		entry.refId = d.refId;
+		entry.label = label.toLowerCase();
+		String key = key(d);
+		entries.put(key, entry);
+		if (d.refId != null) {
+			refIds.put(d.refId.toLowerCase(), key);
+		}
+		for (String token : tokenize(entry.label)) {
+			postings.add(token + SEP + key);
+			if (postings == this.postings && dictionary != null) {
+				dictionary.add(token);
+			}
+		}
+	}
+
+	private void remove(String key, NavigableSet<String> postings,
+			Map<String, Entry> entries, Map<String, String> refIds) {
+		Entry entry = entries.remove(key);
+		if (entry == null)
+			return;
+		if (entry.refId != null) {
+			refIds.remove(entry.refId.toLowerCase());
+		}
+		for (String token : tokenize(entry.label)) {
+			postings.remove(token + SEP + key);
+			if (postings == this.postings && dictionary != null
+					&& postingsOf(token).isEmpty()) {
+				dictionary.remove(token);
+			}
+		}
+	}
+
+	/**
+	 * Returns the ranked hits for the given search terms. All terms need to be
+	 * contained in the label of a hit. If a single term is given that is equal
+	 * to the reference ID of a model, this model is returned as the first hit.
+	 */
+	public synchronized Page find(String[] terms, ModelType typeFilter,
+			int offset, int limit) {
+		Page page = new Page();
+		if (terms == null || terms.length == 0 || db.isClosed())
+			return page;
+		if (ranking == null || !ranking.isFor(terms, typeFilter)) {
+			ranking = new Ranking(terms, typeFilter,
+					rank(terms, typeFilter));
+		}
+		Hit[] hits = ranking.hits;
+		page.total = hits.length;
+		int start = Math.max(0, offset);
+		int end = limit < 0 ? hits.length
+				: Math.min(hits.length, start + limit);
+		if (start < end) {
+			page.hits = new ArrayList<>(
+					Arrays.asList(hits).subList(start, end));
+		}
+		return page;
+	}
+
+	private Hit[] rank(String[] terms, ModelType typeFilter) {
+		List<Hit> hits = new ArrayList<>();
+		String refIdKey = terms.length == 1
+				? refIds.get(terms[0])
+				: null;
+		if (refIdKey != null) {
+			Entry entry = entries.get(refIdKey);
+			if (entry != null && matchesType(entry, typeFilter)) {
+				hits.add(new Hit(entry, ranks(entry, terms)));
+			}
+		}
+		for (String key : candidates(terms)) {
+			if (key.equals(refIdKey))
+				continue;
+			Entry entry = entries.get(key);
+			if (entry == null || !matchesType(entry, typeFilter))
+				continue;
+			int[] ranks = ranks(entry, terms);
+			if (ranks != null) {
+				hits.add(new Hit(entry, ranks));
+			}
+		}
+		Hit[] ranked = hits.toArray(new Hit[hits.size()]);
+		Arrays.sort(ranked);
+		return ranked;
+	}
+
+	/**
+	 * Returns the keys of the entries that could contain all the given terms.
+	 * A label can only contain a term when each token of the term is a part of
+	 * a token of the label. Thus, the candidates of a term are the entries of
+	 * the dictionary tokens that contain the longest token of the term.
+	 */
+	private Set<String> candidates(String[] terms) {
+		Set<String> keys = null;
+		for (String term : terms) {
+			String longest = null;
+			for (String token : tokenize(term)) {
+				if (longest == null || token.length() > longest.length()) {
+					longest = token;
+				}
+			}
+			if (longest == null)
+				continue;
+			Set<String> matches = new HashSet<>();
+			for (String token : dictionary().containing(longest)) {
+				for (String posting : postingsOf(token)) {
+					matches.add(posting.substring(token.length() + 1));
+				}
+			}
+			if (keys == null) {
+				keys = matches;
+			} else {
+				keys.retainAll(matches);
+			}
+			if (keys.isEmpty())
+				return keys;
+		}
+		// no term contains a letter or digit; check all entries
+		return keys != null ? keys : new HashSet<>(entries.keySet());
+	}
+
+	private NavigableSet<String> postingsOf(String token) {
+		return postings.subSet(token + SEP, true, token + SEP + MAX, false);
+	}
+
+	private TokenDictionary dictionary() {
+		if (dictionary != null)
+			return dictionary;
+		List<String> tokens = new ArrayList<>();
+		String posting = postings.isEmpty() ? null : postings.first();
+		while (posting != null) {
+			int idx = posting.indexOf(SEP);
+			if (idx < 0)
+				break;
+			String token = posting.substring(0, idx);
+			tokens.add(token);
+			posting = postings.higher(token + SEP + MAX);
+		}
+		dictionary = new TokenDictionary(tokens);
+		return dictionary;
+	}
+
+	private boolean matchesType(Entry entry, ModelType typeFilter) {
+		return typeFilter == null || entry.type == typeFilter;
+	}
+
+	/**
+	 * Returns the positions of the terms in the label of the given entry or
+	 * null if the label does not contain all terms.
+	 */
+	private int[] ranks(Entry entry, String[] terms) {
+		int[] ranks = new int[terms.length];
+		for (int i = 0; i < terms.length; i++) {
+			ranks[i] = entry.label.indexOf(terms[i]);
+			if (ranks[i] < 0)
+				return null;
+		}
+		return ranks;
+	}
+
+	private static String key(BaseDescriptor d) {
+		return d.type.name() + "/" + d.id;
+	}
+
+	static List<String> tokenize(String text) {
+		if (text == null)
+			return Collections.emptyList();
+		List<String> tokens = new ArrayList<>();
+		for (String token : text.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+			if (!token.isEmpty() && !tokens.contains(token)) {
+				tokens.add(token);
+			}
+		}
+		return tokens;
+	}
+
+	/**
+	 * Loads the descriptors of the given hits. The order of the hits is kept.
+	 */
+	public static List<BaseDescriptor> load(IDatabase database,
+			List<Hit> hits) {
+		Map<ModelType, Set<Long>> ids = new HashMap<>();
+		for (Hit hit : hits) {
+			ids.computeIfAbsent(hit.type, t -> new HashSet<>()).add(hit.id);
+		}
+		Map<String, BaseDescriptor> descriptors = new HashMap<>();
+		for (Map.Entry<ModelType, Set<Long>> e : ids.entrySet()) {
+			ModelType type = e.getKey();
+			for (Object obj : Daos.root(database, type)
+					.getDescriptors(e.getValue())) {
+				if (!(obj instanceof BaseDescriptor))
+					continue;
+				BaseDescriptor d = (BaseDescriptor) obj;
+				descriptors.put(type.name() + "/" + d.id, d);
+			}
+		}
+		List<BaseDescriptor> list = new ArrayList<>();
+		for (Hit hit : hits) {
+			BaseDescriptor d = descriptors.get(hit.type.name() + "/" + hit.id);
+			if (d != null) {
+				list.add(d);
+			}
+		}
+		return list;
+	}
+
+	/** The ranked hits of a search. */
+	private static class Ranking {
+		final String[] terms;
+		final ModelType typeFilter;
+		final Hit[] hits;
+
+		Ranking(String[] terms, ModelType typeFilter, Hit[] hits) {
+			this.terms = terms.clone();
+			this.typeFilter = typeFilter;
+			this.hits = hits;
+		}
+
+		boolean isFor(String[] terms, ModelType typeFilter) {
+			return this.typeFilter == typeFilter
+					&& Arrays.equals(this.terms, terms);
+		}
+	}
+
+	private static class Update {
+		final BaseDescriptor descriptor;
+		final boolean removed;
+
+		Update(BaseDescriptor descriptor, boolean removed) {
+			this.descriptor = descriptor;
+			this.removed = removed;
+		}
+	}
+
+	private static class Entry implements Serializable {
+		private static final long serialVersionUID = -4256826123734567421L;
+		ModelType type;
+		long id;
+		String refId;
+		String label;
+	}
+
+	public static class Hit implements Comparable<Hit> {
+
+		public final ModelType type;
+		public final long id;
+		public final String label;
+
+		/** The positions of the search terms in the label. */
+		private final int[] ranks;
+
+		private Hit(Entry entry, int[] ranks) {
+			this.type = entry.type;
+			this.id = entry.id;
+			this.label = entry.label;
+			this.ranks = ranks;
+		}
+
+		@Override
+		public int compareTo(Hit other) {
+			// a reference ID match that is not in the label comes first
+			if (ranks == null || other.ranks == null) {
+				if (ranks != other.ranks)
+					return ranks == null ? -1 : 1;
+			} else {
+				for (int i = 0; i < ranks.length && i < other.ranks.length; i++) {
+					int diff = ranks[i] - other.ranks[i];
+					if (diff != 0)
+						return diff;
+				}
+			}
+			return label.compareTo(other.label);
+		}
+	}
+
+	public static class Page {
+
+		/** The total number of hits of the search. */
+		public int total;
+
+		/** The hits of the requested page. */
+		public List<Hit> hits = new ArrayList<>();
+	}
+}
@@ -28,9 +28,10 @@ public class SearchPage extends SimpleFormEditor {
 	private Input input;
 	private List<BaseDescriptor> results;
 
-	public static void show(String term, List<BaseDescriptor> results) {
-		String resultKey = Cache.getAppCache().put(results);
+	static void show(String term, Search search) {
+		String resultKey = Cache.getAppCache().put(search.getResult());
 		Input input = new Input(term, resultKey);
+		input.search = search;
 		Editors.open(input, "SearchPage");
 	}
 
@@ -73,9 +74,12 @@ public class SearchPage extends SimpleFormEditor {
 
 	@Override
 	protected FormPage getPage() {
+		int count = input.search != null
+				? input.search.getTotal()
+				: results.size();
 		String title = input.getName() +
-				" (" + results.size() + " " + M.Results + ")";
-		return new ResultPage(this, title, results);
+				" (" + count + " " + M.Results + ")";
+		return new ResultPage(this, title, results, input.search);
 	}
 
 	private static class Input extends SimpleEditorInput {
@@ -83,6 +87,9 @@ public class SearchPage extends SimpleFormEditor {
 		final boolean forSearch;
 		String resultKey;
 
+		/** The search of the loaded results; null for usage searches. */
+		Search search;
+
 		public Input(String term, String resultKey) {
 			super("search", resultKey,
 					M.SearchResults + ": " + term);
@@ -78,8 +78,9 @@ public class SearchText extends WorkbenchWindowControlContribution {
 		}
 		Search search = new Search(Database.get(), text.getText());
 		search.typeFilter = typeFilter;
+		search.limit = Search.PAGE_SIZE;
 		App.run(M.Searching, search,
-				() -> SearchPage.show(term, search.getResult()));
+				() -> SearchPage.show(term, search));
 	}
 
 	@SuppressWarnings("unused")
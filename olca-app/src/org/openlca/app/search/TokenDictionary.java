@@ -0,0 +1,160 @@
+package org.openlca.app.search;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The distinct tokens of a search index with a suffix array for finding the
+ * tokens that contain a given part. The tokens are concatenated into a single
+ * text, separated by SEP, and the suffix array contains the start positions of
+ * all suffixes of this text in lexicographical order. The tokens that contain
+ * a part are then the tokens of the suffixes that start with this part, which
+ * form a continuous range in the suffix array.
+ *
+ * Tokens that are added after the suffix array was built are kept in a small
+ * set that is scanned on each lookup; when this set gets too large, the suffix
+ * array is rebuilt. Removed tokens stay in the suffix array until the next
+ * rebuild; they have no postings and thus do not add any candidates.
+ */
+class TokenDictionary {
+
+	private static final char SEP = '\u0001';
+
+	/** The number of added tokens after which the suffix array is rebuilt. */
+	private static final int REBUILD_SIZE = 1000;
+
+	private String[] tokens = new String[0];
+	private char[] text = new char[0];
+
+	/** The start positions of the tokens in the text. */
+	private int[] starts = new int[0];
+
+	/** The start positions of the suffixes, sorted by the suffixes. */
+	private int[] suffixes = new int[0];
+
+	/** The tokens that were added after the suffix array was built. */
+	private final Set<String> added = new HashSet<>();
+
+	TokenDictionary(Collection<String> tokens) {
+		build(new TreeSet<>(tokens));
+	}
+
+	void add(String token) {
+		if (Arrays.binarySearch(tokens, token) >= 0)
+			return;
+		added.add(token);
+		if (added.size() < REBUILD_SIZE)
+			return;
+		TreeSet<String> all = new TreeSet<>(Arrays.asList(tokens));
+		all.addAll(added);
+		build(all);
+	}
+
+	void remove(String token) {
+		added.remove(token);
+	}
+
+	/** Returns the tokens that contain the given part. */
+	Set<String> containing(String part) {
+		Set<String> matches = new HashSet<>();
+		if (part == null || part.isEmpty())
+			return matches;
+		int from = lowerBound(part);
+		for (int i = from; i < suffixes.length; i++) {
+			if (!startsWith(suffixes[i], part))
+				break;
+			matches.add(tokens[tokenAt(suffixes[i])]);
+		}
+		for (String token : added) {
+			if (token.contains(part)) {
+				matches.add(token);
+			}
+		}
+		return matches;
+	}
+
+	private void build(TreeSet<String> all) {
+		added.clear();
+		tokens = all.toArray(new String[all.size()]);
+		starts = new int[tokens.length];
+		int length = 0;
+		for (String token : tokens) {
+			length += token.length() + 1;
+		}
+		text = new char[length];
+		int pos = 0;
+		for (int i = 0; i < tokens.length; i++) {
+			starts[i] = pos;
+			String token = tokens[i];
+			token.getChars(0, token.length(), text, pos);
+			pos += token.length();
+			text[pos++] = SEP;
+		}
+
+		// the suffixes that start with a separator cannot match a part
+		Integer[] positions = new Integer[length - tokens.length];
+		int k = 0;
+		for (int i = 0; i < length; i++) {
+			if (text[i] != SEP) {
+				positions[k++] = i;
+			}
+		}
+		Arrays.sort(positions, this::compareSuffixes);
+		suffixes = new int[positions.length];
+		for (int i = 0; i < positions.length; i++) {
+			suffixes[i] = positions[i];
+		}
+	}
+
+	/** Compares the suffixes up to the end of their tokens. */
+	private int compareSuffixes(int a, int b) {
+		while (true) {
+			char ca = text[a];
+			char cb = text[b];
+			if (ca != cb)
+				return ca - cb;
+			if (ca == SEP)
+				return 0;
+			a++;
+			b++;
+		}
+	}
+
+	/** Returns the index of the first suffix that is not less than part. */
+	private int lowerBound(String part) {
+		int low = 0;
+		int high = suffixes.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (compareTo(suffixes[mid], part) < 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private int compareTo(int pos, String part) {
+		for (int i = 0; i < part.length(); i++) {
+			char c = text[pos + i];
+			char p = part.charAt(i);
+			if (c != p)
+				return c - p;
+		}
+		return 0;
+	}
+
+	private boolean startsWith(int pos, String part) {
+		return compareTo(pos, part) == 0;
+	}
+
+	/** Returns the index of the token that contains the given position. */
+	private int tokenAt(int pos) {
+		int idx = Arrays.binarySearch(starts, pos);
+		return idx >= 0 ? idx : -idx - 2;
+	}
+}
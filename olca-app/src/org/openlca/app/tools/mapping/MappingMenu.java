@@ -1,10 +1,12 @@
 package org.openlca.app.tools.mapping;
 
 import java.io.File;
+import java.lang.reflect.InvocationTargetException;
 import java.util.Optional;
 
 import org.eclipse.jface.action.IMenuManager;
 import org.eclipse.jface.action.MenuManager;
+import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.part.EditorActionBarContributor;
 import org.openlca.app.App;
 import org.openlca.app.M;
@@ -82,9 +84,26 @@ public class MappingMenu extends EditorActionBarContributor {
 		if (!b)
 			return;
 		Generator gen = new Generator(source, target, tool.mapping);
-		App.runWithProgress("Generate mappings ...", gen, () -> {
-			tool.refresh();
-		});
+		try {
+			PlatformUI.getWorkbench().getProgressService()
+					.run(true, true, gen::run);
+		} catch (Exception e) {
+			Logger log = LoggerFactory.getLogger(getClass());
+			log.error("mapping generation failed", e);
+			MsgBox.error("Mapping generation failed", message(e));
+		}
+		tool.refresh();
+	}
+
+	/** Returns the message of the cause of a failed progress operation. */
+	private static String message(Exception e) {
+		Throwable cause = e instanceof InvocationTargetException
+				&& e.getCause() != null
+						? e.getCause()
+						: e;
+		return cause.getMessage() != null
+				? cause.getMessage()
+				: cause.getClass().getSimpleName();
 	}
 
 	private void onApply() {
@@ -119,9 +138,15 @@ public class MappingMenu extends EditorActionBarContributor {
 		if (!opt.isPresent())
 			return;
 		Replacer replacer = new Replacer(opt.get());
-		App.runWithProgress("Replace flows ...", replacer, () -> {
-			tool.refresh();
-			Navigator.refresh();
-		});
+		try {
+			PlatformUI.getWorkbench().getProgressService()
+					.run(true, true, replacer::run);
+		} catch (Exception e) {
+			Logger log = LoggerFactory.getLogger(getClass());
+			log.error("flow replacement failed", e);
+			MsgBox.error("Flow replacement failed", message(e));
+		}
+		tool.refresh();
+		Navigator.refresh();
 	}
 }
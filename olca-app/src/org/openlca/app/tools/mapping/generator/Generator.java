@@ -1,8 +1,12 @@
 package org.openlca.app.tools.mapping.generator;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.openlca.app.tools.mapping.model.IProvider;
 import org.openlca.io.maps.FlowMap;
 import org.openlca.io.maps.FlowMapEntry;
@@ -16,7 +20,9 @@ import com.google.common.base.Objects;
 
 /**
  * Try to find matching flows in a target system for the flows in a source
- * system that do not have a mapping assigned.
+ * system that do not have a mapping assigned. The source flows are matched in
+ * parallel. When the generator is canceled via the progress monitor, the
+ * mappings of the source flows that were already matched are kept.
  */
 public class Generator implements Runnable {
 
@@ -34,6 +40,10 @@ public class Generator implements Runnable {
 
 	@Override
 	public void run() {
+		run(new NullProgressMonitor());
+	}
+
+	public void run(IProgressMonitor monitor) {
 		try {
 			log.info("generate mappings {} -> {}", sourceSystem, targetSystem);
 			log.info("load source flows");
@@ -51,35 +61,62 @@ public class Generator implements Runnable {
 			}
 
 			log.info("create target flow matcher");
+			monitor.beginTask("Generate mappings", sourceFlows.size());
 			Matcher matcher = new Matcher(targetSystem);
-			for (FlowRef sflow : sourceFlows) {
-				FlowMapEntry e = new FlowMapEntry();
-				e.sourceFlow = sflow.clone();
-				e.sourceFlow.status = Status.ok();
-				FlowRef tflow = matcher.find(sflow);
-				if (tflow != null) {
-					tflow = tflow.clone();
-					e.targetFlow = tflow;
-					if (Objects.equal(sflow.flow.refId, tflow.flow.refId)) {
-						tflow.status = Status.ok("matched by flow IDs");
-					} else {
-						tflow.status = Status.warn("matched by flow attributes");
-					}
-					if (!sameUnits(sflow, tflow)) {
-						tflow.status = Status.warn("different units");
-					} else if (tflow.status.isOk() && tflow.provider != null) {
-						tflow.status = Status.warn("provider matched by attributes");
-					}
+			AtomicInteger done = new AtomicInteger();
+			FlowMapEntry[] entries = new FlowMapEntry[sourceFlows.size()];
+			IntStream.range(0, sourceFlows.size())
+					.parallel()
+					.forEach(i -> {
+						if (monitor.isCanceled())
+							return;
+						entries[i] = createEntry(sourceFlows.get(i), matcher);
+						monitor.worked(1);
+						int n = done.incrementAndGet();
+						if (n % 100 == 0) {
+							monitor.subTask(n + " / " + sourceFlows.size());
+						}
+					});
+
+			// add the entries in the order of the source flows
+			for (FlowMapEntry e : entries) {
+				if (e != null) {
+					mapping.entries.add(e);
 				}
-				e.factor = 1.0;
-				mapping.entries.add(e);
 			}
+			if (monitor.isCanceled()) {
+				log.info("mapping generation canceled after {} flows",
+						done.get());
+			}
+			monitor.done();
 
 		} catch (Exception e) {
 			log.error("Generation of flow mappings failed", e);
 		}
 	}
 
+	private FlowMapEntry createEntry(FlowRef sflow, Matcher matcher) {
+		FlowMapEntry e = new FlowMapEntry();
+		e.sourceFlow = sflow.clone();
+		e.sourceFlow.status = Status.ok();
+		FlowRef tflow = matcher.find(sflow);
+		if (tflow != null) {
+			e.targetFlow = tflow;
+			if (Objects.equal(sflow.flow.refId, tflow.flow.refId)) {
+				tflow.status = Status.ok("matched by flow IDs");
+			} else {
+				tflow.status = Status.warn("matched by flow attributes");
+			}
+			if (!sameUnits(sflow, tflow)) {
+				tflow.status = Status.warn("different units");
+			} else if (tflow.status.isOk() && tflow.provider != null) {
+				tflow.status = Status.warn("provider matched by attributes");
+			}
+		}
+		e.factor = 1.0;
+		return e;
+	}
+
 	private boolean sameUnits(FlowRef sflow, FlowRef tflow) {
 		if (sflow == null || tflow == null)
 			return false;
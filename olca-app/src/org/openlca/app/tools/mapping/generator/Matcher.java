@@ -1,5 +1,9 @@
 package org.openlca.app.tools.mapping.generator;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -9,24 +13,41 @@ import org.apache.commons.math3.util.Pair;
 import org.openlca.app.tools.mapping.model.DBProvider;
 import org.openlca.app.tools.mapping.model.IProvider;
 import org.openlca.app.util.Labels;
-import org.openlca.core.database.FlowDao;
 import org.openlca.core.database.IDatabase;
-import org.openlca.core.database.LocationDao;
-import org.openlca.core.database.ProcessDao;
 import org.openlca.core.model.FlowType;
 import org.openlca.core.model.descriptors.ProcessDescriptor;
 import org.openlca.io.maps.FlowRef;
-import org.openlca.util.CategoryPathBuilder;
+import org.openlca.util.Strings;
 
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntIntHashMap;
+
+/**
+ * Finds the best matching target flow for a source flow. Instead of scoring
+ * all target flows, the candidates are first retrieved from an index of the
+ * key words of the target flow names, i.e. the stemmed words without
+ * stopwords that are also used for the key name match of the score. Only
+ * target flows that share at least one key word with the source flow are
+ * scored. If there is no such candidate, we fall back to scoring all target
+ * flows. The targets are sorted by their reference IDs, so that ties are
+ * always resolved in the same way. The matcher is thread safe so that source
+ * flows can be matched in parallel.
+ */
 class Matcher {
 
+	/** The maximum number of candidates that are fully scored. */
+	private static final int MAX_CANDIDATES = 250;
+
 	private final IDatabase db;
 	private final Map<String, FlowRef> targetFlows;
 	private final WordMatcher words;
 
-	// helper structures for collecting provider information
-	private CategoryPathBuilder categories;
-	private Map<Long, String> locations;
+	// the candidate index: word -> positions in the target list
+	private final List<FlowRef> targets;
+	private final Map<String, TIntArrayList> postings;
+
+	// provider information; only available for database target systems
+	private final ProviderIndex providers;
 
 	Matcher(IProvider targetSystem) {
 		db = targetSystem instanceof DBProvider
@@ -36,6 +57,24 @@ class Matcher {
 				.filter(f -> f.flow != null && f.flow.refId != null)
 				.collect(Collectors.toMap(f -> f.flow.refId, f -> f));
 		this.words = new WordMatcher();
+		this.providers = db != null ? ProviderIndex.of(db) : null;
+		this.targets = new ArrayList<>(targetFlows.values());
+		targets.sort(Comparator.comparing(f -> f.flow.refId));
+		this.postings = new HashMap<>();
+		for (int i = 0; i < targets.size(); i++) {
+			for (String word : wordsOf(targets.get(i))) {
+				postings.computeIfAbsent(word, w -> new TIntArrayList())
+						.add(i);
+			}
+		}
+	}
+
+	private Set<String> wordsOf(FlowRef ref) {
+		Set<String> set = new HashSet<>();
+		if (ref == null || ref.flow == null)
+			return set;
+		set.addAll(words.keyWords(ref.flow.name));
+		return set;
 	}
 
 	FlowRef find(FlowRef sflow) {
@@ -47,14 +86,18 @@ class Matcher {
 		// on the reference IDs
 		FlowRef tflow = targetFlows.get(sflow.flow.refId);
 		if (tflow != null) {
+			tflow = tflow.clone();
 			checkAddProvider(sflow, tflow);
 			return tflow;
 		}
 
 		// find the best matching flow by computing and
-		// comparing matching scores
-		tflow = targetFlows.values()
-				.parallelStream()
+		// comparing matching scores of the candidates
+		List<FlowRef> candidates = candidates(sflow);
+		if (candidates.isEmpty()) {
+			candidates = targets;
+		}
+		tflow = candidates.stream()
 				.map(tf -> new Pair<>(tf, Score.compute(sflow, tf, words)))
 				.reduce((pair1, pair2) -> {
 					Score score1 = pair1.getValue();
@@ -64,47 +107,92 @@ class Matcher {
 				.map(pair -> pair.getFirst())
 				.orElse(null);
 		if (tflow != null) {
+			tflow = tflow.clone();
 			checkAddProvider(sflow, tflow);
 		}
 		return tflow;
 	}
 
+	/**
+	 * Returns the target flows that share at least one key word with the
+	 * source flow. If there are candidates with the same flow type, only these
+	 * are returned as a name match with the same flow type is always preferred
+	 * (see Score#betterThan). The candidates are ranked by the number of
+	 * shared words and the unit, and only the best ranked are returned; the
+	 * candidates that have the same rank as the last returned candidate are
+	 * also returned, so that the cut does not depend on the order of ties.
+	 */
+	private List<FlowRef> candidates(FlowRef sflow) {
+		TIntIntHashMap hits = new TIntIntHashMap();
+		for (String word : wordsOf(sflow)) {
+			TIntArrayList list = postings.get(word);
+			if (list == null)
+				continue;
+			for (int i = 0; i < list.size(); i++) {
+				hits.adjustOrPutValue(list.get(i), 1, 1);
+			}
+		}
+		if (hits.isEmpty())
+			return new ArrayList<>();
+
+		FlowType type = sflow.flow.flowType;
+		boolean hasSameType = false;
+		for (int i : hits.keys()) {
+			if (targets.get(i).flow.flowType == type) {
+				hasSameType = true;
+				break;
+			}
+		}
+		List<int[]> ranked = new ArrayList<>();
+		for (int i : hits.keys()) {
+			FlowRef tflow = targets.get(i);
+			if (hasSameType && tflow.flow.flowType != type)
+				continue;
+			int rank = 2 * hits.get(i);
+			if (sameUnit(sflow, tflow)) {
+				rank++;
+			}
+			ranked.add(new int[] { i, rank });
+		}
+		ranked.sort((r1, r2) -> r1[1] != r2[1]
+				? Integer.compare(r2[1], r1[1])
+				: Integer.compare(r1[0], r2[0]));
+		List<FlowRef> candidates = new ArrayList<>();
+		int lastRank = -1;
+		for (int[] r : ranked) {
+			if (candidates.size() >= MAX_CANDIDATES && r[1] != lastRank)
+				break;
+			candidates.add(targets.get(r[0]));
+			lastRank = r[1];
+		}
+		return candidates;
+	}
+
+	private boolean sameUnit(FlowRef sflow, FlowRef tflow) {
+		return sflow.unit != null && tflow.unit != null
+				&& Strings.nullOrEqual(sflow.unit.name, tflow.unit.name);
+	}
+
 	private void checkAddProvider(FlowRef sourceFlow, FlowRef targetFlow) {
-		if (db == null || targetFlow == null || targetFlow.flow == null)
+		if (providers == null || targetFlow == null || targetFlow.flow == null)
 			return;
 		if (targetFlow.flow.flowType == FlowType.ELEMENTARY_FLOW)
 			return;
-		ProcessDescriptor prov = findProvider(sourceFlow, targetFlow, db);
+		ProcessDescriptor prov = findProvider(sourceFlow, targetFlow);
 		if (prov == null)
 			return;
 		targetFlow.provider = prov;
-		if (categories == null) {
-			categories = new CategoryPathBuilder(db);
-		}
-		targetFlow.providerCategory = categories.build(prov.category);
-		if (locations == null) {
-			locations = new LocationDao(db).getCodes();
-		}
-		if (prov.location != null) {
-			targetFlow.providerLocation = locations.get(prov.location);
+		targetFlow.providerCategory = providers.getCategory(prov);
+		String location = providers.getLocation(prov);
+		if (location != null) {
+			targetFlow.providerLocation = location;
 		}
 	}
 
 	private ProcessDescriptor findProvider(FlowRef sourceFlow,
-			FlowRef targetFlow, IDatabase db) {
-
-		Set<Long> processIDs = null;
-		long tid = targetFlow.flow.id;
-		if (targetFlow.flow.flowType == FlowType.WASTE_FLOW) {
-			processIDs = new FlowDao(db).getWhereInput(tid);
-		} else {
-			processIDs = new FlowDao(db).getWhereOutput(tid);
-		}
-		if (processIDs == null || processIDs.isEmpty())
-			return null;
-
-		List<ProcessDescriptor> candidates = new ProcessDao(db)
-				.getDescriptors(processIDs);
+			FlowRef targetFlow) {
+		List<ProcessDescriptor> candidates = providers.getProviders(
+				targetFlow.flow.id);
 		if (candidates.isEmpty())
 			return null;
 		if (candidates.size() == 1)
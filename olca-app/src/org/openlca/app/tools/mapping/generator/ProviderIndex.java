@@ -0,0 +1,87 @@
+package org.openlca.app.tools.mapping.generator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.openlca.app.db.Cache;
+import org.openlca.core.database.IDatabase;
+import org.openlca.core.database.LocationDao;
+import org.openlca.core.matrix.ProcessProduct;
+import org.openlca.core.matrix.cache.ProcessTable;
+import org.openlca.core.model.descriptors.ProcessDescriptor;
+import org.openlca.util.CategoryPathBuilder;
+
+/**
+ * An index of the providers of the product and waste flows of a database with
+ * the category paths and location codes of the provider processes. The index
+ * is built in one pass with a process table and is shared between the
+ * generator runs on the same database. It is rebuilt when the change stamp of
+ * the application cache changed since it was created (see
+ * Cache#getChangeStamp).
+ */
+class ProviderIndex {
+
+	private static ProviderIndex shared;
+
+	private final IDatabase db;
+	private final long stamp;
+	private final ProcessTable processes;
+	private final Map<Long, String> locations;
+	private final CategoryPathBuilder categoryPaths;
+	private final Map<Long, String> categories = new ConcurrentHashMap<>();
+
+	private ProviderIndex(IDatabase db) {
+		this.db = db;
+		this.stamp = Cache.getChangeStamp();
+		this.processes = ProcessTable.create(db);
+		this.locations = new LocationDao(db).getCodes();
+		this.categoryPaths = new CategoryPathBuilder(db);
+	}
+
+	/** Returns the provider index of the given database. */
+	static synchronized ProviderIndex of(IDatabase db) {
+		if (shared == null || shared.db != db
+				|| shared.stamp != Cache.getChangeStamp()) {
+			shared = new ProviderIndex(db);
+		}
+		return shared;
+	}
+
+	/**
+	 * Returns the processes that provide the flow with the given ID, these are
+	 * the processes with the flow as product output or waste input.
+	 */
+	List<ProcessDescriptor> getProviders(long flowId) {
+		List<ProcessProduct> products = processes.getProviders(flowId);
+		if (products == null || products.isEmpty())
+			return Collections.emptyList();
+		List<ProcessDescriptor> providers = new ArrayList<>(products.size());
+		for (ProcessProduct product : products) {
+			if (product.process instanceof ProcessDescriptor) {
+				providers.add((ProcessDescriptor) product.process);
+			}
+		}
+		return providers;
+	}
+
+	/** Returns the full category path of the given provider. */
+	String getCategory(ProcessDescriptor provider) {
+		if (provider == null || provider.category == null)
+			return null;
+		return categories.computeIfAbsent(provider.category, id -> {
+			synchronized (categoryPaths) {
+				return categoryPaths.build(id);
+			}
+		});
+	}
+
+	/** Returns the location code of the given provider. */
+	String getLocation(ProcessDescriptor provider) {
+		if (provider == null || provider.location == null)
+			return null;
+		return locations.get(provider.location);
+	}
+}
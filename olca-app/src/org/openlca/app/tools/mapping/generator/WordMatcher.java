@@ -7,8 +7,10 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.openlca.util.Strings;
 import org.slf4j.Logger;
@@ -16,8 +18,16 @@ import org.slf4j.LoggerFactory;
 
 final class WordMatcher {
 
+	/** The maximum number of entries of a word cache. */
+	private static final int CACHE_SIZE = 500_000;
+
 	private final Set<String> stopwords = new HashSet<>();
 
+	// the words of the flow names are extracted again and again when
+	// matching flows; thus, we cache them
+	private final Map<String, List<String>> allWords = new ConcurrentHashMap<>();
+	private final Map<String, List<String>> keyWords = new ConcurrentHashMap<>();
+
 	public WordMatcher() {
 		try (InputStream is = getClass().getResourceAsStream("stopwords.txt");
 				InputStreamReader reader = new InputStreamReader(is, "utf-8");
@@ -131,11 +141,41 @@ final class WordMatcher {
 	}
 
 	/**
-	 * Extracts the single words (in lower case) from the given string.
+	 * Returns the words (in lower case) of the given string.
+	 */
+	List<String> allWords(String s) {
+		return words(s, false);
+	}
+
+	/**
+	 * Returns the stemmed words (in lower case) of the given string without
+	 * stopwords.
 	 */
+	List<String> keyWords(String s) {
+		return words(s, true);
+	}
+
 	private List<String> words(String s, boolean withoutStopwords) {
 		if (Strings.nullOrEmpty(s))
 			return Collections.emptyList();
+		Map<String, List<String>> cache = withoutStopwords
+				? keyWords
+				: allWords;
+		List<String> words = cache.get(s);
+		if (words != null)
+			return words;
+		words = Collections.unmodifiableList(
+				extractWords(s, withoutStopwords));
+		if (cache.size() < CACHE_SIZE) {
+			cache.put(s, words);
+		}
+		return words;
+	}
+
+	/**
+	 * Extracts the single words (in lower case) from the given string.
+	 */
+	private List<String> extractWords(String s, boolean withoutStopwords) {
 
 		StringBuilder buf = new StringBuilder();
 		List<String> words = new ArrayList<>();
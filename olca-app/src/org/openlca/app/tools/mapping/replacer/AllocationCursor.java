@@ -41,12 +41,18 @@ class AllocationCursor extends UpdatableCursor {
 		}
 	}
 
+	@Override
+	String table() {
+		return "tbl_allocation_factors";
+	}
+
 	@Override
 	String querySQL() {
 		return "SELECT "
 				+ " f_process,"
 				+ " f_product"
 				+ " FROM tbl_allocation_factors"
+				+ where()
 				+ " FOR UPDATE OF f_product";
 	}
 
@@ -107,6 +107,13 @@ class AmountCursor extends UpdatableCursor {
 		}
 	}
 
+	@Override
+	String table() {
+		return type == ModelType.PROCESS
+				? "tbl_exchanges"
+				: "tbl_impact_factors";
+	}
+
 	@Override
 	String querySQL() {
 		String table;
@@ -141,7 +148,7 @@ class AmountCursor extends UpdatableCursor {
 			query += ", f_default_provider ";
 		}
 
-		query += "FROM " + table + " "
+		query += "FROM " + table + " " + where()
 				+ "FOR UPDATE OF "
 				+ "f_flow, "
 				+ "f_unit, "
@@ -0,0 +1,135 @@
+package org.openlca.app.tools.mapping.replacer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.openlca.app.db.DatabaseDir;
+import org.openlca.core.database.IDatabase;
+import org.openlca.core.model.ModelType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The state of a flow replacement: the ID ranges of the partitions, the
+ * partitions that were already updated and committed, the collected
+ * statistics, and the IDs of the updated models which versions were not
+ * updated yet. The checkpoint is written to the database folder after each
+ * partition. When a replacement with the same configuration is started again
+ * (e.g. after it was canceled), it continues with the open partitions.
+ */
+class Checkpoint implements Serializable {
+
+	private static final long serialVersionUID = 2851840379325093736L;
+
+	private transient File file;
+	private final String key;
+	/**
+	 * The ID ranges [min, max] of the partitions: partition key -> range. A
+	 * continued run uses the same ranges, so that a finished partition covers
+	 * the same rows even if rows were inserted or deleted in the meantime.
+	 */
+	private final Map<String, long[]> ranges = new LinkedHashMap<>();
+	final Set<String> done = new HashSet<>();
+	final Stats stats = new Stats();
+	/**
+	 * The models that were updated by the finished partitions but which
+	 * versions were not updated yet (see {@link #modelsApplied()}).
+	 */
+	final Map<ModelType, Set<Long>> updatedModels = new HashMap<>();
+
+	private Checkpoint(File file, String key) {
+		this.file = file;
+		this.key = key;
+	}
+
+	/**
+	 * Returns the checkpoint for the given configuration key; a new checkpoint
+	 * is returned if there is no stored checkpoint for this key.
+	 */
+	static Checkpoint open(IDatabase db, String key) {
+		File file = new File(DatabaseDir.getRootFolder(db.getName()),
+				"replacer.checkpoint");
+		if (file.exists()) {
+			try (ObjectInputStream in = new ObjectInputStream(
+					new FileInputStream(file))) {
+				Checkpoint c = (Checkpoint) in.readObject();
+				if (Objects.equals(c.key, key)) {
+					c.file = file;
+					return c;
+				}
+			} catch (Exception e) {
+				Logger log = LoggerFactory.getLogger(Checkpoint.class);
+				log.warn("could not read replacer checkpoint " + file, e);
+			}
+		}
+		return new Checkpoint(file, key);
+	}
+
+	/**
+	 * Adds the result of an updated partition and writes the checkpoint.
+	 */
+	synchronized void finished(String partition, UpdatableCursor cursor) {
+		done.add(partition);
+		stats.add(cursor.stats);
+		updatedModels.computeIfAbsent(cursor.type, t -> new HashSet<>())
+				.addAll(cursor.updatedModels);
+		write();
+	}
+
+	/**
+	 * Removes the updated models after their versions were updated and writes
+	 * the checkpoint, so that a next run does not update them again.
+	 */
+	synchronized void modelsApplied() {
+		updatedModels.clear();
+		write();
+	}
+
+	/** Returns a copy of the stored ID ranges of the partitions. */
+	synchronized Map<String, long[]> ranges() {
+		return new LinkedHashMap<>(ranges);
+	}
+
+	/** Adds the ID ranges of new partitions and writes the checkpoint. */
+	synchronized void addRanges(Map<String, long[]> newRanges) {
+		if (newRanges.isEmpty())
+			return;
+		ranges.putAll(newRanges);
+		write();
+	}
+
+	synchronized boolean isDone(String partition) {
+		return done.contains(partition);
+	}
+
+	private void write() {
+		File dir = file.getParentFile();
+		if (dir != null && !dir.exists()) {
+			dir.mkdirs();
+		}
+		try (ObjectOutputStream out = new ObjectOutputStream(
+				new FileOutputStream(file))) {
+			out.writeObject(this);
+		} catch (Exception e) {
+			Logger log = LoggerFactory.getLogger(getClass());
+			log.error("failed to write replacer checkpoint " + file, e);
+		}
+	}
+
+	synchronized void delete() {
+		if (file.exists() && !file.delete()) {
+			Logger log = LoggerFactory.getLogger(getClass());
+			log.warn("could not delete replacer checkpoint {}", file);
+		}
+	}
+}
@@ -51,6 +51,17 @@ class ProcessLinkCursor extends UpdatableCursor {
 		}
 	}
 
+	@Override
+	String table() {
+		return "tbl_process_links";
+	}
+
+	/** The process links have no ID; we partition them by product system. */
+	@Override
+	String idColumn() {
+		return "f_product_system";
+	}
+
 	@Override
 	String querySQL() {
 		return "SELECT "
@@ -59,6 +70,7 @@ class ProcessLinkCursor extends UpdatableCursor {
 				+ " f_flow,"
 				+ " f_process"
 				+ " FROM tbl_process_links"
+				+ where()
 				+ " FOR UPDATE OF "
 				+ " f_provider, "
 				+ " f_flow";
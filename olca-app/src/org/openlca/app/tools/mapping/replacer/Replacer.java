@@ -1,21 +1,31 @@
 package org.openlca.app.tools.mapping.replacer;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.openlca.app.db.Database;
 import org.openlca.app.tools.mapping.model.DBProvider;
 import org.openlca.app.util.Labels;
 import org.openlca.core.database.FlowDao;
 import org.openlca.core.database.IDatabase;
 import org.openlca.core.database.ImpactMethodDao;
+import org.openlca.core.database.NativeSql;
 import org.openlca.core.model.Flow;
 import org.openlca.core.model.ModelType;
 import org.openlca.core.model.descriptors.CategorizedDescriptor;
@@ -27,6 +37,9 @@ import org.slf4j.LoggerFactory;
 
 public class Replacer implements Runnable {
 
+	/** The approximate number of rows of a partition. */
+	private static final long PARTITION_SIZE = 20_000;
+
 	private final ReplacerConfig conf;
 	private final Logger log = LoggerFactory.getLogger(getClass());
 
@@ -50,6 +63,20 @@ public class Replacer implements Runnable {
 
 	@Override
 	public void run() {
+		run(new NullProgressMonitor());
+	}
+
+	/**
+	 * Runs the replacement. The tables are updated in partitions of ID ranges,
+	 * each partition in its own transaction. The tables are processed in
+	 * parallel but the partitions of a table one after another, so that the
+	 * transactions do not lock each other; thus, the number of threads is
+	 * limited by the number of tables. The partitions and the finished
+	 * partitions are recorded in a checkpoint; if the replacement is
+	 * canceled, a new run with the same configuration continues with the
+	 * open partitions.
+	 */
+	public void run(IProgressMonitor monitor) {
 		if (conf == null || (conf.models.isEmpty())) {
 			log.info("no configuration; nothing to replace");
 			return;
@@ -78,40 +105,61 @@ public class Replacer implements Runnable {
 
 		try {
 
-			// start and wait for the cursors to finish
-			log.info("start updatable cursors");
-			List<UpdatableCursor> cursors = createCursors();
-			ExecutorService pool = Executors.newFixedThreadPool(4);
-			for (UpdatableCursor c : cursors) {
-				pool.execute(c);
+			// run the partitions of the cursors
+			Checkpoint checkpoint = Checkpoint.open(db, configKey());
+			List<Partition> partitions = createPartitions(checkpoint);
+			monitor.beginTask("Replace flows", partitions.size() + 1);
+			Stats failed = new Stats();
+			AtomicInteger finished = new AtomicInteger();
+			Map<String, List<Partition>> tables = new LinkedHashMap<>();
+			for (Partition p : partitions) {
+				tables.computeIfAbsent(p.table, t -> new ArrayList<>()).add(p);
+			}
+			int threads = Math.min(conf.threads, tables.size());
+			ExecutorService pool = Executors.newFixedThreadPool(
+					Math.max(1, threads));
+			for (List<Partition> table : tables.values()) {
+				pool.execute(() -> {
+					for (Partition p : table) {
+						if (!monitor.isCanceled()
+								&& !checkpoint.isDone(p.key)) {
+							run(p, checkpoint, failed);
+						}
+						monitor.subTask(finished.incrementAndGet()
+								+ " of " + partitions.size() + " partitions");
+						monitor.worked(1);
+					}
+				});
 			}
 			pool.shutdown();
-			int i = 0;
-			while (!pool.awaitTermination(10, TimeUnit.SECONDS)) {
-				i++;
-				log.info("waiting for cursors to finish; {} seconds", i * 10);
+			while (!pool.awaitTermination(500, TimeUnit.MILLISECONDS)) {
+				if (monitor.isCanceled()) {
+					pool.shutdownNow();
+				}
 			}
 			log.info("cursors finished");
-			db.getEntityFactory().getCache().evictAll();
+
+			// update the versions, caches, and index of the updated models
+			monitor.subTask("Update models");
+			new UpdatedModels(db).update(checkpoint.updatedModels);
+			checkpoint.modelsApplied();
+			if (monitor.isCanceled()) {
+				log.info("flow replacement canceled; the finished"
+						+ " partitions are stored in a checkpoint");
+				monitor.done();
+				return;
+			}
 
 			// TODO when products were replaced we also need to check
 			// whether these products are used in the quant. ref. of
 			// product systems and project variants and convert the
 			// amounts there.
-			// TODO also: we need to replace such flows in allocation
-			// factors; the application of the conversion factor is
-			// not required there.
 
 			// collect and log statistics
 			Stats stats = new Stats();
-			for (UpdatableCursor c : cursors) {
-				stats.add(c.stats);
-				c.stats.log(c.getClass().getName(), flows);
-			}
-
-			// TODO: update the version and last-update fields
-			// of the changed models; also call the indexer
-			// when the database is a connected repository
+			stats.add(checkpoint.stats);
+			stats.add(failed);
+			stats.log("flow replacement", flows);
 
 			boolean deleteMapped = false;
 			Set<Long> usedFlows = null;
@@ -146,24 +194,167 @@ public class Replacer implements Runnable {
 					e.sourceFlow.status = Status.ok("Applied (not removed)");
 				}
 			}
+			if (failed.failures == 0) {
+				checkpoint.delete();
+			}
+			monitor.done();
 		} catch (Exception e) {
 			log.error("Flow replacement failed", e);
 		}
 	}
 
-	private List<UpdatableCursor> createCursors() {
-		List<UpdatableCursor> cursors = new ArrayList<>();
+	private void run(Partition p, Checkpoint checkpoint, Stats failed) {
+		UpdatableCursor cursor = p.cursor.get();
+		cursor.range(p.minId, p.maxId);
+		try {
+			cursor.run();
+			checkpoint.finished(p.key, cursor);
+		} catch (Exception e) {
+			// the partition was not committed; we mark all mapped flows as
+			// failed as we do not know which flows were affected, the
+			// partition is then executed again in the next run
+			log.error("failed to update partition " + p.key, e);
+			synchronized (failed) {
+				for (Long flowID : entries.keySet()) {
+					failed.inc(flowID, Stats.FAILURE);
+				}
+			}
+		}
+	}
+
+	private List<Supplier<UpdatableCursor>> createCursors() {
+		List<Supplier<UpdatableCursor>> cursors = new ArrayList<>();
 		if (!processes.isEmpty()) {
-			cursors.add(new AmountCursor(ModelType.PROCESS, this));
-			cursors.add(new ProcessLinkCursor(this));
-			cursors.add(new AllocationCursor(this));
+			cursors.add(() -> new AmountCursor(ModelType.PROCESS, this));
+			cursors.add(() -> new ProcessLinkCursor(this));
+			cursors.add(() -> new AllocationCursor(this));
 		}
 		if (!impacts.isEmpty()) {
-			cursors.add(new AmountCursor(ModelType.IMPACT_CATEGORY, this));
+			cursors.add(() -> new AmountCursor(ModelType.IMPACT_CATEGORY, this));
 		}
 		return cursors;
 	}
 
+	/**
+	 * Splits the tables of the cursors into ID ranges of approximately
+	 * PARTITION_SIZE rows. The ranges that are stored in the checkpoint are
+	 * reused; only for IDs above these ranges (rows that were inserted after
+	 * the checkpoint was created) new partitions are added.
+	 */
+	private List<Partition> createPartitions(Checkpoint checkpoint) {
+		List<Partition> partitions = new ArrayList<>();
+		Map<String, long[]> stored = checkpoint.ranges();
+		Map<String, long[]> added = new LinkedHashMap<>();
+		for (Supplier<UpdatableCursor> cursor : createCursors()) {
+			UpdatableCursor proto = cursor.get();
+			String prefix = proto.getClass().getSimpleName()
+					+ ":" + proto.type + ":";
+			long storedMax = Long.MIN_VALUE;
+			for (Map.Entry<String, long[]> e : stored.entrySet()) {
+				if (!e.getKey().startsWith(prefix))
+					continue;
+				long[] r = e.getValue();
+				partitions.add(new Partition(
+						e.getKey(), proto.table(), cursor, r[0], r[1]));
+				storedMax = Math.max(storedMax, r[1]);
+			}
+
+			long[] range = idRange(proto);
+			if (range == null || range[2] == 0)
+				continue;
+			long count = Math.max(1, range[2] / PARTITION_SIZE);
+			long width = Math.max(1, (range[1] - range[0] + 1) / count);
+			long start = storedMax == Long.MIN_VALUE
+					? range[0]
+					: storedMax + 1;
+			for (long min = start; min <= range[1]; min += width) {
+				long max = Math.min(range[1], min + width - 1);
+				String key = prefix + min + "-" + max;
+				partitions.add(new Partition(
+						key, proto.table(), cursor, min, max));
+				added.put(key, new long[] { min, max });
+			}
+		}
+		checkpoint.addRanges(added);
+		return partitions;
+	}
+
+	/**
+	 * Returns the minimum and maximum ID and the number of rows of the table
+	 * of the given cursor or null if the query failed.
+	 */
+	private long[] idRange(UpdatableCursor cursor) {
+		String col = cursor.idColumn();
+		String sql = "SELECT MIN(" + col + "), MAX(" + col + "), COUNT(*)"
+				+ " FROM " + cursor.table();
+		long[] range = new long[3];
+		try {
+			NativeSql.on(db).query(sql, r -> {
+				range[0] = r.getLong(1);
+				range[1] = r.getLong(2);
+				range[2] = r.getLong(3);
+				return false;
+			});
+			return range;
+		} catch (Exception e) {
+			log.error("failed to get ID range of " + cursor.table(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Returns a key of the replacement configuration for the checkpoint: the
+	 * mapped flows, the models, and the delete option.
+	 */
+	private String configKey() {
+		List<Long> sources = new ArrayList<>(entries.keySet());
+		Collections.sort(sources);
+		StringBuilder b = new StringBuilder();
+		for (Long source : sources) {
+			FlowMapEntry e = entries.get(source);
+			b.append(source).append('>')
+					.append(e.targetFlow.flow.refId).append(';');
+		}
+		List<Long> models = new ArrayList<>();
+		for (CategorizedDescriptor d : conf.models) {
+			models.add(d.id);
+		}
+		Collections.sort(models);
+		b.append(models).append(conf.deleteMapped);
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte[] hash = digest.digest(
+					b.toString().getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder();
+			for (byte x : hash) {
+				hex.append(String.format("%02x", x));
+			}
+			return hex.toString();
+		} catch (Exception e) {
+			// SHA-256 is always available; the full string is also unique
+			return b.toString();
+		}
+	}
+
+	/** An ID range of the table of a cursor. */
+	private static class Partition {
+
+		final String key;
+		final String table;
+		final Supplier<UpdatableCursor> cursor;
+		final long minId;
+		final long maxId;
+
+		Partition(String key, String table, Supplier<UpdatableCursor> cursor,
+				long minId, long maxId) {
+			this.key = key;
+			this.table = table;
+			this.cursor = cursor;
+			this.minId = minId;
+			this.maxId = maxId;
+		}
+	}
+
 	private void buildIndices() {
 
 		// first persist all target flows in the database that
@@ -26,6 +26,14 @@ public class ReplacerConfig {
 	public final List<CategorizedDescriptor> models = new ArrayList<>();
 	public boolean deleteMapped;
 
+	/**
+	 * The maximum number of threads that update the database tables in
+	 * parallel. The partitions of a table are updated one after another, so
+	 * not more threads than tables are used (currently at most four).
+	 */
+	public int threads = Math.max(1,
+			Runtime.getRuntime().availableProcessors() - 1);
+
 	public ReplacerConfig(FlowMap mapping, IProvider provider) {
 		this.mapping = mapping;
 		this.provider = provider;
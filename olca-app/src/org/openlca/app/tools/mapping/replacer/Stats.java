@@ -1,5 +1,6 @@
 package org.openlca.app.tools.mapping.replacer;
 
+import java.io.Serializable;
 import java.util.HashMap;
 import java.util.HashSet;
 
@@ -8,7 +9,9 @@ import org.openlca.core.model.Flow;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-class Stats {
+class Stats implements Serializable {
+
+	private static final long serialVersionUID = 3829016264620512087L;
 
 	static final byte REPLACEMENT = 0;
 	static final byte FAILURE = 1;
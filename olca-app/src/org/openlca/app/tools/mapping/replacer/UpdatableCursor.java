@@ -12,7 +12,10 @@ import org.openlca.core.database.IDatabase;
 import org.openlca.core.model.ModelType;
 
 /**
- * A method template for implementing updatable cursors.
+ * A method template for implementing updatable cursors. A cursor can be
+ * restricted to a range of IDs of its table (see {@link #range(long, long)})
+ * so that a table can be processed in partitions; each partition is then
+ * updated in its own transaction.
  * 
  * see: https://db.apache.org/derby/docs/10.0/manuals/develop/develop66.html
  */
@@ -31,12 +34,31 @@ abstract class UpdatableCursor implements Runnable {
 	/** The type of the updated models. */
 	final ModelType type;
 
+	// the ID range of the rows; only used if `ranged` is true
+	private boolean ranged;
+	private long minId;
+	private long maxId;
+
 	UpdatableCursor(IDatabase db, ModelType type) {
 		this.db = db;
 		this.type = type;
 	}
 
-	/** The SQL query for selecting the records. */
+	/** The table which is updated by this cursor. */
+	abstract String table();
+
+	/**
+	 * The column that is used for partitioning the table into ID ranges; this
+	 * is the primary key by default.
+	 */
+	String idColumn() {
+		return "id";
+	}
+
+	/**
+	 * The SQL query for selecting the records. The query should contain the
+	 * where clause of this cursor (see {@link #where()}).
+	 */
 	abstract String querySQL();
 
 	/** The SQL statement for updating a record. */
@@ -49,33 +71,52 @@ abstract class UpdatableCursor implements Runnable {
 	 */
 	abstract void next(ResultSet cursor, PreparedStatement update);
 
+	/**
+	 * Restricts the cursor to the rows with an ID between the given values
+	 * (inclusive).
+	 */
+	UpdatableCursor range(long minId, long maxId) {
+		this.ranged = true;
+		this.minId = minId;
+		this.maxId = maxId;
+		return this;
+	}
+
+	/**
+	 * Returns the where clause of the ID range of this cursor or an empty
+	 * string if the cursor is not restricted to a range.
+	 */
+	String where() {
+		if (!ranged)
+			return "";
+		return " WHERE " + idColumn() + " >= " + minId
+				+ " AND " + idColumn() + " <= " + maxId + " ";
+	}
+
 	@Override
 	public final void run() {
-		try {
-			Connection con = db.createConnection();
+		try (Connection con = db.createConnection()) {
 			con.setAutoCommit(false);
-
-			// prepare the query and cursor
-			Statement query = con.createStatement();
 			String name = "UPDATE_CURSOR_" + seq.incrementAndGet();
-			query.setCursorName(name);
-			ResultSet cursor = query.executeQuery(querySQL());
-
-			// prepare the update statement
 			String usql = updateSQL() + " WHERE CURRENT OF " + name;
-			PreparedStatement update = con.prepareStatement(usql);
-
-			// run through the table
-			while (cursor.next()) {
-				next(cursor, update);
+			try (Statement query = con.createStatement();
+					PreparedStatement update = con.prepareStatement(usql)) {
+
+				// prepare the query and cursor
+				query.setCursorName(name);
+				try (ResultSet cursor = query.executeQuery(querySQL())) {
+					// run through the table
+					while (cursor.next()) {
+						next(cursor, update);
+					}
+				}
+				con.commit();
+			} catch (Exception e) {
+				// do not leave a half updated partition in the
+				// transaction of a pooled connection
+				con.rollback();
+				throw e;
 			}
-
-			// free and commit
-			cursor.close();
-			query.close();
-			update.close();
-			con.commit();
-			con.close();
 		} catch (Exception e) {
 			throw new RuntimeException(e);
 		}
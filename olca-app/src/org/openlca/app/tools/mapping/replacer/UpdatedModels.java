@@ -0,0 +1,155 @@
+package org.openlca.app.tools.mapping.replacer;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.Table;
+
+import org.openlca.app.db.Cache;
+import org.openlca.app.db.Database;
+import org.openlca.app.db.IndexUpdater;
+import org.openlca.cloud.util.Datasets;
+import org.openlca.core.database.CategoryDao;
+import org.openlca.core.database.Daos;
+import org.openlca.core.database.IDatabase;
+import org.openlca.core.database.NativeSql;
+import org.openlca.core.model.AllocationFactor;
+import org.openlca.core.model.Category;
+import org.openlca.core.model.Exchange;
+import org.openlca.core.model.ImpactFactor;
+import org.openlca.core.model.ModelType;
+import org.openlca.core.model.Version;
+import org.openlca.core.model.descriptors.CategorizedDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Updates the models that were changed by the cursors of a flow replacement:
+ * their versions and last change dates are updated, they are evicted from the
+ * caches, and they are registered as changed in the diff index when the
+ * database is connected to a repository.
+ */
+class UpdatedModels {
+
+	private static final int CHUNK_SIZE = 1000;
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	private final IDatabase db;
+	private final Map<Long, Category> categories = new HashMap<>();
+
+	UpdatedModels(IDatabase db) {
+		this.db = db;
+	}
+
+	void update(Map<ModelType, Set<Long>> models) {
+		// the child entities of the models were updated via SQL
+		db.getEntityFactory().getCache().evict(Exchange.class);
+		db.getEntityFactory().getCache().evict(ImpactFactor.class);
+		db.getEntityFactory().getCache().evict(AllocationFactor.class);
+
+		List<CategorizedDescriptor> descriptors = new ArrayList<>();
+		for (Map.Entry<ModelType, Set<Long>> e : models.entrySet()) {
+			ModelType type = e.getKey();
+			List<Long> ids = new ArrayList<>(e.getValue());
+			if (ids.isEmpty())
+				continue;
+			log.info("update {} models of type {}", ids.size(), type);
+			updateVersions(type, ids);
+			for (int i = 0; i < ids.size(); i += CHUNK_SIZE) {
+				List<Long> chunk = ids.subList(i,
+						Math.min(ids.size(), i + CHUNK_SIZE));
+				descriptors.addAll(Daos.categorized(db, type)
+						.getDescriptors(new HashSet<>(chunk)));
+			}
+		}
+
+		for (CategorizedDescriptor d : descriptors) {
+			Class<?> clazz = d.type.getModelClass();
+			if (clazz != null) {
+				db.getEntityFactory().getCache().evict(clazz, d.id);
+			}
+			Cache.evict(d);
+		}
+		updateIndex(descriptors);
+	}
+
+	private void updateVersions(ModelType type, List<Long> ids) {
+		Class<?> clazz = type.getModelClass();
+		Table table = clazz == null ? null : clazz.getAnnotation(Table.class);
+		if (table == null)
+			return;
+		long now = System.currentTimeMillis();
+		try (Connection con = db.createConnection()) {
+			con.setAutoCommit(false);
+			String sql = "UPDATE " + table.name()
+					+ " SET version = ?, last_change = ? WHERE id = ?";
+			try (PreparedStatement stmt = con.prepareStatement(sql)) {
+				for (int i = 0; i < ids.size(); i += CHUNK_SIZE) {
+					List<Long> chunk = ids.subList(i,
+							Math.min(ids.size(), i + CHUNK_SIZE));
+					for (long[] v : versions(table.name(), chunk)) {
+						Version version = new Version(v[1]);
+						version.incUpdate();
+						stmt.setLong(1, version.getValue());
+						stmt.setLong(2, now);
+						stmt.setLong(3, v[0]);
+						stmt.addBatch();
+					}
+					stmt.executeBatch();
+					con.commit();
+				}
+			}
+		} catch (Exception e) {
+			log.error("failed to update versions of " + type, e);
+		}
+	}
+
+	/** Returns the pairs (id, version) of the given models. */
+	private List<long[]> versions(String table, List<Long> ids)
+			throws Exception {
+		StringBuilder in = new StringBuilder();
+		for (Long id : ids) {
+			if (in.length() > 0) {
+				in.append(',');
+			}
+			in.append(id);
+		}
+		List<long[]> versions = new ArrayList<>();
+		String sql = "SELECT id, version FROM " + table
+				+ " WHERE id IN (" + in + ")";
+		NativeSql.on(db).query(sql, r -> {
+			versions.add(new long[] { r.getLong(1), r.getLong(2) });
+			return true;
+		});
+		return versions;
+	}
+
+	/**
+	 * Registers the updated models in the diff index in a single transaction.
+	 */
+	private void updateIndex(List<CategorizedDescriptor> descriptors) {
+		if (Database.getDiffIndex() == null || descriptors.isEmpty())
+			return;
+		IndexUpdater updater = Database.getIndexUpdater();
+		CategoryDao categoryDao = new CategoryDao(db);
+		updater.beginTransaction();
+		try {
+			for (CategorizedDescriptor d : descriptors) {
+				Category category = null;
+				if (d.category != null) {
+					category = categories.computeIfAbsent(
+							d.category, categoryDao::getForId);
+				}
+				updater.update(Datasets.toDataset(d, category), d.id);
+			}
+		} finally {
+			updater.endTransaction();
+		}
+	}
+}
@@ -2,11 +2,20 @@ package org.openlca.app.validation;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import javax.persistence.Table;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.openlca.app.M;
@@ -14,6 +23,8 @@ import org.openlca.app.db.Database;
 import org.openlca.app.util.Labels;
 import org.openlca.core.database.Daos;
 import org.openlca.core.database.FlowDao;
+import org.openlca.core.database.IDatabase;
+import org.openlca.core.database.NativeSql;
 import org.openlca.core.database.ProcessDao;
 import org.openlca.core.database.ProductSystemDao;
 import org.openlca.core.database.UnitGroupDao;
@@ -22,11 +33,30 @@ import org.openlca.core.database.references.IReferenceSearch.Reference;
 import org.openlca.core.model.AbstractEntity;
 import org.openlca.core.model.ModelType;
 import org.openlca.core.model.descriptors.CategorizedDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TLongHashSet;
 
+/**
+ * Validates the references of the models in a database. The models are
+ * validated in chunks of the same type that are processed in parallel. The
+ * existence of the referenced entities is checked against the ID sets of the
+ * respective tables which are loaded once per validation (or, for a few
+ * references, with a single query). The results of a chunk can be streamed to
+ * a listener as soon as the chunk is validated.
+ */
 public class DatabaseValidation {
 
+	private static final int CHUNK_SIZE = 1000;
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	private final IDatabase db = Database.get();
 	private IProgressMonitor monitor;
+	private Consumer<List<ModelStatus>> listener;
 	private FlowChainValidation flowChainValidation;
+	private final Map<Class<?>, TLongHashSet> existingIds = new ConcurrentHashMap<>();
 
 	public static DatabaseValidation with(IProgressMonitor monitor) {
 		DatabaseValidation e = new DatabaseValidation();
@@ -34,136 +64,232 @@ public class DatabaseValidation {
 		return e;
 	}
 
+	/**
+	 * Sets a listener that is called with the results of each validated chunk
+	 * of models. Note that the listener is called from the worker threads of
+	 * the validation and not in the UI thread.
+	 */
+	public DatabaseValidation onResults(Consumer<List<ModelStatus>> listener) {
+		this.listener = listener;
+		return this;
+	}
+
 	public List<ModelStatus> evaluate(Collection<CategorizedDescriptor> descriptors) {
-		Map<ModelType, Set<Long>> byType = new HashMap<>();
+		Map<ModelType, List<Long>> byType = new HashMap<>();
 		for (CategorizedDescriptor descriptor : descriptors) {
-			Set<Long> forType = byType.get(descriptor.type);
+			List<Long> forType = byType.get(descriptor.type);
 			if (forType == null) {
-				byType.put(descriptor.type, forType = new HashSet<>());
+				byType.put(descriptor.type, forType = new ArrayList<>());
 			}
 			forType.add(descriptor.id);
 		}
-		List<ModelStatus> result = new ArrayList<>();
-		if (monitor != null && !monitor.isCanceled())
-			monitor.beginTask(M.ValidatingDatabase, byType.size() * 3);
+		List<Chunk> chunks = new ArrayList<>();
 		for (ModelType type : byType.keySet()) {
-			if (monitor != null && monitor.isCanceled())
-				continue;
-			if (monitor != null)
-				monitor.subTask(Labels.plural(type));
-			result.addAll(evaluate(type, byType.get(type)));
+			List<Long> ids = byType.get(type);
+			for (int i = 0; i < ids.size(); i += CHUNK_SIZE) {
+				Set<Long> chunk = new HashSet<>(ids.subList(i,
+						Math.min(ids.size(), i + CHUNK_SIZE)));
+				chunks.add(new Chunk(type, chunk));
+			}
+		}
+		if (monitor != null && !monitor.isCanceled())
+			monitor.beginTask(M.ValidatingDatabase, chunks.size());
+
+		List<ModelStatus> result = Collections.synchronizedList(new ArrayList<>());
+		int threads = Math.max(1, Math.min(chunks.size(),
+				Runtime.getRuntime().availableProcessors()));
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<?>> futures = new ArrayList<>();
+		for (Chunk chunk : chunks) {
+			futures.add(pool.submit(() -> {
+				if (isCanceled())
+					return;
+				subTask(Labels.plural(chunk.type));
+				List<ModelStatus> statuses = evaluate(chunk.type, chunk.ids);
+				result.addAll(statuses);
+				if (listener != null && !statuses.isEmpty()) {
+					listener.accept(statuses);
+				}
+				worked();
+			}));
+		}
+		pool.shutdown();
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (Exception e) {
+				log.error("failed to validate models", e);
+			}
 		}
 		if (monitor != null)
 			monitor.done();
 		return result;
 	}
 
+	private boolean isCanceled() {
+		if (monitor == null)
+			return false;
+		synchronized (monitor) {
+			return monitor.isCanceled();
+		}
+	}
+
+	private void subTask(String name) {
+		if (monitor == null)
+			return;
+		synchronized (monitor) {
+			monitor.subTask(name);
+		}
+	}
+
+	private void worked() {
+		if (monitor == null)
+			return;
+		synchronized (monitor) {
+			monitor.worked(1);
+		}
+	}
+
 	private List<ModelStatus> evaluate(ModelType type, Set<Long> ids) {
-		if (monitor != null && monitor.isCanceled())
-			return new ArrayList<>();
 		List<Reference> references = findReferences(type, ids);
-		if (monitor != null && monitor.isCanceled())
+		if (isCanceled())
 			return new ArrayList<>();
-		if (monitor != null)
-			monitor.worked(2);
 		Set<Reference> notExisting = checkExistence(references);
-		if (monitor != null && monitor.isCanceled())
+		if (isCanceled())
 			return new ArrayList<>();
 		if (type == ModelType.PROCESS || type == ModelType.IMPACT_METHOD) {
-			if (flowChainValidation == null) {
-				flowChainValidation = new FlowChainValidation(Database.get());
-			}
-			notExisting.addAll(flowChainValidation.run(type.getModelClass(), references));
+			notExisting.addAll(flowChainValidation()
+					.run(type.getModelClass(), references));
 		}
 		Map<Long, Boolean> referenceSet = checkReferenceSet(type, ids);
-		if (monitor != null && monitor.isCanceled())
+		if (isCanceled())
 			return new ArrayList<>();
+
+		// group the missing references by owner in one pass; a reference
+		// can be reported by the existence check and the flow chain
+		// validation, thus, a set is used per owner
+		TLongObjectHashMap<Set<Reference>> missing = new TLongObjectHashMap<>();
+		for (Reference ref : notExisting) {
+			Set<Reference> set = missing.get(ref.ownerId);
+			if (set == null) {
+				missing.put(ref.ownerId, set = new LinkedHashSet<>());
+			}
+			set.add(ref);
+		}
 		List<ModelStatus> result = new ArrayList<>();
 		for (Long id : ids) {
-			if (monitor != null && monitor.isCanceled())
-				continue;
-			boolean validReferenceSet = referenceSet == null || referenceSet.get(id);
-			List<Reference> missing = filter(notExisting, id);
-			ModelStatus status = new ModelStatus(type, id, new ArrayList<>(missing), validReferenceSet);
+			Boolean valid = referenceSet == null ? null : referenceSet.get(id);
+			boolean validReferenceSet = valid == null || valid;
+			Set<Reference> refs = missing.get(id);
+			ModelStatus status = new ModelStatus(type, id,
+					refs == null ? new ArrayList<>() : new ArrayList<>(refs),
+					validReferenceSet);
 			result.add(status);
 		}
-		if (monitor != null && !monitor.isCanceled())
-			monitor.worked(1);
 		return result;
 	}
 
+	private synchronized FlowChainValidation flowChainValidation() {
+		if (flowChainValidation == null) {
+			flowChainValidation = new FlowChainValidation(db);
+		}
+		return flowChainValidation;
+	}
+
 	private Map<Long, Boolean> checkReferenceSet(ModelType type, Set<Long> ids) {
 		switch (type) {
 		case PRODUCT_SYSTEM:
-			return new ProductSystemDao(Database.get()).hasReferenceProcess(ids);
+			return new ProductSystemDao(db).hasReferenceProcess(ids);
 		case PROCESS:
-			return new ProcessDao(Database.get()).hasQuantitativeReference(ids);
+			return new ProcessDao(db).hasQuantitativeReference(ids);
 		case FLOW:
-			return new FlowDao(Database.get()).hasReferenceFactor(ids);
+			return new FlowDao(db).hasReferenceFactor(ids);
 		case UNIT_GROUP:
-			return new UnitGroupDao(Database.get()).hasReferenceUnit(ids);
+			return new UnitGroupDao(db).hasReferenceUnit(ids);
 		default:
 			return null;
 		}
 	}
 
-	private List<Reference> filter(Collection<Reference> references, long ownerId) {
-		List<Reference> filtered = new ArrayList<>();
-		for (Reference ref : references)
-			if (ref.ownerId == ownerId)
-				filtered.add(ref);
-		return filtered;
-	}
-
 	private Set<Reference> checkExistence(List<Reference> references) {
 		Set<Reference> notExisting = new HashSet<>();
-		Map<Class<? extends AbstractEntity>, Map<Long, List<Reference>>> byType = splitByType(references);
+		Map<Class<? extends AbstractEntity>, TLongHashSet> byType = new HashMap<>();
+		for (Reference ref : references) {
+			if (ref.id == 0l)
+				continue;
+			TLongHashSet ids = byType.get(ref.getType());
+			if (ids == null) {
+				byType.put(ref.getType(), ids = new TLongHashSet());
+			}
+			ids.add(ref.id);
+		}
+		Map<Class<? extends AbstractEntity>, TLongHashSet> existing = new HashMap<>();
 		for (Class<? extends AbstractEntity> type : byType.keySet()) {
-			if (monitor != null && monitor.isCanceled())
+			existing.put(type, existing(type, byType.get(type)));
+		}
+		for (Reference ref : references) {
+			if (ref.id == 0l) {
+				if (!ref.optional)
+					notExisting.add(ref);
 				continue;
-			Map<Long, List<Reference>> refMap = byType.get(type);
-			Collection<List<Reference>> values = refMap.values();
-			Set<Long> ids = toIdSet(values);
-			Map<Long, Boolean> map = Daos.base(Database.get(), type).contains(ids);
-			for (Long id : map.keySet())
-				if (map.get(id) == false)
-					notExisting.addAll(refMap.get(id));
-		}
-		for (Reference ref : references)
-			if (!ref.optional && ref.id == 0l)
+			}
+			TLongHashSet ids = existing.get(ref.getType());
+			if (ids != null && !ids.contains(ref.id))
 				notExisting.add(ref);
+		}
 		return notExisting;
 	}
 
-	private Map<Class<? extends AbstractEntity>, Map<Long, List<Reference>>> splitByType(List<Reference> references) {
-		Map<Class<? extends AbstractEntity>, Map<Long, List<Reference>>> byType = new HashMap<>();
-		for (Reference reference : references) {
-			Map<Long, List<Reference>> forType = byType.get(reference.getType());
-			if (forType == null)
-				byType.put(reference.getType(), forType = new HashMap<>());
-			add(reference, forType);
+	/**
+	 * Returns the IDs of the given set that exist in the database. For a few
+	 * IDs this is checked with a single query; otherwise, all IDs of the
+	 * respective table are loaded once per validation. Returns null if the
+	 * existence could not be checked.
+	 */
+	private TLongHashSet existing(Class<? extends AbstractEntity> type,
+			TLongHashSet ids) {
+		Table table = type.getAnnotation(Table.class);
+		if (table == null || ids.size() <= CHUNK_SIZE) {
+			Set<Long> set = new HashSet<>();
+			for (long id : ids.toArray()) {
+				set.add(id);
+			}
+			Map<Long, Boolean> map = Daos.base(db, type).contains(set);
+			TLongHashSet existing = new TLongHashSet();
+			for (Long id : map.keySet()) {
+				if (Boolean.TRUE.equals(map.get(id)))
+					existing.add(id);
+			}
+			return existing;
 		}
-		return byType;
+		return existingIds.computeIfAbsent(type, t -> {
+			TLongHashSet all = new TLongHashSet();
+			try {
+				NativeSql.on(db).query("select id from " + table.name(), r -> {
+					all.add(r.getLong(1));
+					return true;
+				});
+			} catch (Exception e) {
+				log.error("failed to load IDs of " + table.name(), e);
+				return null;
+			}
+			return all;
+		});
 	}
 
-	private void add(Reference reference, Map<Long, List<Reference>> map) {
-		List<Reference> list = map.get(reference.id);
-		if (list == null)
-			map.put(reference.id, list = new ArrayList<>());
-		list.add(reference);
+	private List<Reference> findReferences(ModelType type, Set<Long> ids) {
+		return IReferenceSearch.FACTORY.createFor(type, db, true).findReferences(ids);
 	}
 
-	private Set<Long> toIdSet(Collection<List<Reference>> references) {
-		Set<Long> ids = new HashSet<>();
-		for (List<Reference> referenceList : references)
-			for (Reference reference : referenceList)
-				if (reference.id != 0l)
-					ids.add(reference.id);
-		return ids;
-	}
+	private static class Chunk {
 
-	private List<Reference> findReferences(ModelType type, Set<Long> ids) {
-		return IReferenceSearch.FACTORY.createFor(type, Database.get(), true).findReferences(ids);
+		final ModelType type;
+		final Set<Long> ids;
+
+		Chunk(ModelType type, Set<Long> ids) {
+			this.type = type;
+			this.ids = ids;
+		}
 	}
 
 }
@@ -8,44 +8,58 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import org.openlca.core.database.FlowDao;
 import org.openlca.core.database.IDatabase;
+import org.openlca.core.database.NativeSql;
 import org.openlca.core.database.references.IReferenceSearch.Reference;
 import org.openlca.core.model.AbstractEntity;
 import org.openlca.core.model.Exchange;
-import org.openlca.core.model.Flow;
 import org.openlca.core.model.FlowPropertyFactor;
 import org.openlca.core.model.ImpactFactor;
 import org.openlca.core.model.ImpactMethod;
 import org.openlca.core.model.Process;
 import org.openlca.core.model.Unit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TLongHashSet;
 
 class FlowChainValidation {
 
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
 	// flow.id -> flowPropertyFactor.id
-	private final Map<Long, Set<Long>> factors = new HashMap<>();
+	private final TLongObjectHashMap<TLongHashSet> factors = new TLongObjectHashMap<>();
 	// flowProperty.id -> unit.id
-	private final Map<Long, Set<Long>> units = new HashMap<>();
+	private final TLongObjectHashMap<TLongHashSet> units = new TLongObjectHashMap<>();
 
+	/**
+	 * Loads the flow property factors of the flows and the units of the flow
+	 * properties with two plain SQL queries instead of loading all flows.
+	 */
 	FlowChainValidation(IDatabase database) {
-		for (Flow flow : new FlowDao(database).getAll()) {
-			Set<Long> factors = get(this.factors, flow.id);
-			for (FlowPropertyFactor factor : flow.flowPropertyFactors) {
-				factors.add(factor.id);
-				if (this.units.containsKey(factor.flowProperty.id))
-					continue;
-				Set<Long> units = get(this.units, factor.flowProperty.id);
-				for (Unit unit : factor.flowProperty.unitGroup.units) {
-					units.add(unit.id);
-				}
-			}
+		try {
+			String sql = "select f_flow, id from tbl_flow_property_factors";
+			NativeSql.on(database).query(sql, r -> {
+				get(factors, r.getLong(1)).add(r.getLong(2));
+				return true;
+			});
+			sql = "select p.id, u.id from tbl_flow_properties p"
+					+ " inner join tbl_units u"
+					+ " on p.f_unit_group = u.f_unit_group";
+			NativeSql.on(database).query(sql, r -> {
+				get(units, r.getLong(1)).add(r.getLong(2));
+				return true;
+			});
+		} catch (Exception e) {
+			log.error("failed to load flow property factors and units", e);
 		}
 	}
 
-	private Set<Long> get(Map<Long, Set<Long>> map, long id) {
-		Set<Long> values = map.get(id);
+	private TLongHashSet get(TLongObjectHashMap<TLongHashSet> map, long id) {
+		TLongHashSet values = map.get(id);
 		if (values == null) {
-			map.put(id, values = new HashSet<>());
+			map.put(id, values = new TLongHashSet());
 		}
 		return values;
 	}
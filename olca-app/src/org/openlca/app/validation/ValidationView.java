@@ -17,6 +17,7 @@ import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.SashForm;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.ui.IWorkbenchPage;
 import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.part.ViewPart;
@@ -88,11 +89,23 @@ public class ValidationView extends ViewPart {
 		try {
 			ValidationView instance = (ValidationView) page.showView("views.problems");
 			List<ModelStatus> result = new ArrayList<>();
+
+			// the results are shown while the validation is running
+			StatusList errors = new StatusList(Status.ERROR);
+			StatusList warnings = new StatusList(Status.WARNING);
+			instance.viewer.setInput(new StatusList[] { errors, warnings });
+			Display display = Display.getCurrent();
 			ProgressMonitorDialog dialog = new ProgressMonitorDialog(UI.shell());
 			dialog.run(true, true, (monitor) -> {
 				monitor.beginTask(M.Initializing, IProgressMonitor.UNKNOWN);
 				Set<CategorizedDescriptor> descriptors = Navigator.collectDescriptors(selection);
-				DatabaseValidation validation = DatabaseValidation.with(monitor);
+				DatabaseValidation validation = DatabaseValidation.with(monitor)
+						.onResults(statuses -> display.asyncExec(() -> {
+							if (instance.viewer.getTree().isDisposed())
+								return;
+							addTo(statuses, errors, warnings);
+							instance.viewer.refresh();
+						}));
 				result.addAll(validation.evaluate(descriptors));
 			});
 			StatusList[] model = createModel(result);
@@ -124,6 +137,18 @@ public class ValidationView extends ViewPart {
 	private static StatusList[] createModel(List<ModelStatus> result) {
 		StatusList warnings = new StatusList(Status.WARNING);
 		StatusList errors = new StatusList(Status.ERROR);
+		addTo(result, errors, warnings);
+		if (warnings.list.isEmpty() && errors.list.isEmpty())
+			return new StatusList[0];
+		if (warnings.list.isEmpty())
+			return new StatusList[] { errors };
+		if (errors.list.isEmpty())
+			return new StatusList[] { warnings };
+		return new StatusList[] { errors, warnings };
+	}
+
+	private static void addTo(List<ModelStatus> result, StatusList errors,
+			StatusList warnings) {
 		for (ModelStatus status : result) {
 			ModelStatus onlyWarnings = new ModelStatus(status.modelType, status.id, filter(status.missing,
 					Status.WARNING), true);
@@ -134,13 +159,6 @@ public class ValidationView extends ViewPart {
 			if (!onlyErrors.missing.isEmpty() || !status.validReferenceSet)
 				errors.list.add(onlyErrors);
 		}
-		if (warnings.list.isEmpty() && errors.list.isEmpty())
-			return new StatusList[0];
-		if (warnings.list.isEmpty())
-			return new StatusList[] { errors };
-		if (errors.list.isEmpty())
-			return new StatusList[] { warnings };
-		return new StatusList[] { errors, warnings };
 	}
 
 	private static List<Reference> filter(List<Reference> initial, Status status) {
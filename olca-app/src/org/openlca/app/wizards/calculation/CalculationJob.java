@@ -0,0 +1,223 @@
+package org.openlca.app.wizards.calculation;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+import org.openlca.app.App;
+import org.openlca.app.M;
+import org.openlca.app.db.Database;
+import org.openlca.app.editors.Editors;
+import org.openlca.app.results.ResultEditorInput;
+import org.openlca.app.results.Sort;
+import org.openlca.app.results.analysis.AnalyzeEditor;
+import org.openlca.app.results.quick.QuickResultEditor;
+import org.openlca.core.database.FlowDao;
+import org.openlca.core.database.IDatabase;
+import org.openlca.core.database.ProductSystemDao;
+import org.openlca.core.math.CalculationType;
+import org.openlca.core.math.SystemCalculator;
+import org.openlca.core.math.data_quality.DQResult;
+import org.openlca.core.model.Exchange;
+import org.openlca.core.model.Flow;
+import org.openlca.core.model.ProductSystem;
+import org.openlca.core.results.ContributionResult;
+import org.openlca.core.results.SimpleResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the calculation of a product system as a background job. The phases of
+ * the calculation (calculation of the results, storage of the inventory, data
+ * quality assessment, sorting) are reported to the progress monitor and the
+ * job can be canceled at any time: the calculation runs in a separate thread
+ * and when the job is canceled, its result is dropped. The core calculation
+ * cannot be interrupted, so a canceled job still waits until it is finished
+ * and its matrices can be released. The calculation jobs have a common
+ * scheduling rule, so that a new calculation only starts when the previous
+ * one is finished.
+ */
+class CalculationJob extends Job {
+
+	private static final ISchedulingRule RULE = new ISchedulingRule() {
+
+		@Override
+		public boolean isConflicting(ISchedulingRule rule) {
+			return rule == this;
+		}
+
+		@Override
+		public boolean contains(ISchedulingRule rule) {
+			return rule == this;
+		}
+	};
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	private final Setup setup;
+	private final CalculationType type;
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(
+			r -> {
+				Thread t = new Thread(r, "openLCA calculation");
+				t.setDaemon(true);
+				return t;
+			});
+
+	CalculationJob(Setup setup, CalculationType type) {
+		super(M.RunCalculation);
+		this.setup = setup;
+		this.type = type;
+		setUser(true);
+		setRule(RULE);
+	}
+
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+		monitor.beginTask(M.RunCalculation, 4);
+		try {
+			int size = setup.calcSetup.productSystem.processes.size();
+			log.trace("calculate a {} x {} system", size, size);
+			setup.calcSetup.withUncertainties = false;
+			boolean upstream = type == CalculationType.UPSTREAM_ANALYSIS;
+
+			// run the calculation
+			monitor.subTask(M.CalculateResults);
+			ContributionResult r = await(monitor, () -> {
+				SystemCalculator calc = new SystemCalculator(
+						Database.get(), App.getSolver());
+				return upstream
+						? calc.calculateFull(setup.calcSetup)
+						: calc.calculateContributions(setup.calcSetup);
+			});
+			if (r == null)
+				return Status.CANCEL_STATUS;
+			monitor.worked(1);
+
+			// check storage and DQ calculation
+			if (setup.storeInventory) {
+				log.trace("store inventory");
+				monitor.subTask(M.Inventory);
+				saveInventory(r);
+			}
+			monitor.worked(1);
+			DQResult dqResult = null;
+			if (setup.withDataQuality) {
+				log.trace("calculate data quality result");
+				monitor.subTask(M.AssessDataQuality);
+				dqResult = await(monitor, () -> DQResult.calculate(
+						Database.get(), r, setup.dqSetup));
+				if (dqResult == null)
+					return Status.CANCEL_STATUS;
+			}
+			monitor.worked(1);
+
+			// sort and open the editor
+			log.trace("sort result items");
+			monitor.subTask(M.SortResults);
+			Sort.sort(r);
+			monitor.worked(1);
+			if (monitor.isCanceled())
+				return Status.CANCEL_STATUS;
+			log.trace("calculation done; open editor");
+			ResultEditorInput input = ResultEditorInput.create(
+					setup.calcSetup, r).with(dqResult);
+			Editors.open(input, upstream
+					? AnalyzeEditor.ID
+					: QuickResultEditor.ID);
+			return Status.OK_STATUS;
+		} catch (OutOfMemoryError e) {
+			log.error("calculation ran out of memory", e);
+			App.runInUI(M.OutOfMemory, MemoryError::show);
+			return Status.CANCEL_STATUS;
+		} catch (Exception e) {
+			log.error("Calculation failed", e);
+			return Status.CANCEL_STATUS;
+		} finally {
+			executor.shutdownNow();
+			monitor.done();
+		}
+	}
+
+	/**
+	 * Runs the given function in the calculation thread and waits for its
+	 * result. Returns null when the job was canceled in the meantime. As the
+	 * function cannot be interrupted, this waits until it is finished also
+	 * when the job was canceled.
+	 */
+	private <T> T await(IProgressMonitor monitor, Supplier<T> fn)
+			throws Exception {
+		Future<T> future = executor.submit(fn::get);
+		boolean canceled = false;
+		while (true) {
+			if (!canceled && monitor.isCanceled()) {
+				canceled = true;
+				log.trace("calculation canceled; wait until it is finished");
+				monitor.subTask(M.WaitingForCalculation);
+			}
+			try {
+				T result = future.get(100, TimeUnit.MILLISECONDS);
+				return canceled ? null : result;
+			} catch (TimeoutException e) {
+				// check the monitor again
+			} catch (ExecutionException e) {
+				if (canceled)
+					return null;
+				Throwable cause = e.getCause();
+				if (cause instanceof OutOfMemoryError)
+					throw (OutOfMemoryError) cause;
+				if (cause instanceof Exception)
+					throw (Exception) cause;
+				throw e;
+			}
+		}
+	}
+
+	private void saveInventory(SimpleResult r) {
+		ProductSystem system = setup.calcSetup.productSystem;
+		system.inventory.clear();
+		IDatabase db = Database.get();
+		ProductSystemDao sysDao = new ProductSystemDao(db);
+		if (r.flowIndex == null || r.flowIndex.isEmpty()) {
+			sysDao.update(system);
+			return;
+		}
+
+		// load the used flows
+		Set<Long> flowIDs = new HashSet<>();
+		r.flowIndex.each((i, f) -> {
+			if (f.flow == null)
+				return;
+			flowIDs.add(f.flow.id);
+		});
+		Map<Long, Flow> flows = new FlowDao(db)
+				.getForIds(flowIDs).stream()
+				.collect(Collectors.toMap(f -> f.id, f -> f));
+
+		// create the exchanges
+		r.flowIndex.each((i, f) -> {
+			if (f.flow == null)
+				return;
+			Flow flow = flows.get(f.flow.id);
+			if (flow == null)
+				return;
+			var e = Exchange.of(flow);
+			e.amount = r.getTotalFlowResult(f);
+			e.isInput = f.isInput;
+			system.inventory.add(e);
+		});
+
+		sysDao.update(system);
+	}
+}
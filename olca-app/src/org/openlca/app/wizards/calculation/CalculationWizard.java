@@ -1,43 +1,24 @@
 package org.openlca.app.wizards.calculation;
 
-import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.stream.Collectors;
 
-import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jface.dialogs.IDialogConstants;
-import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.eclipse.jface.wizard.Wizard;
 import org.eclipse.jface.wizard.WizardDialog;
+import org.eclipse.osgi.util.NLS;
 import org.eclipse.ui.IEditorPart;
 import org.openlca.app.App;
 import org.openlca.app.M;
 import org.openlca.app.db.Database;
 import org.openlca.app.editors.Editors;
 import org.openlca.app.editors.ModelEditorInput;
-import org.openlca.app.results.ResultEditorInput;
-import org.openlca.app.results.Sort;
-import org.openlca.app.results.analysis.AnalyzeEditor;
-import org.openlca.app.results.quick.QuickResultEditor;
 import org.openlca.app.results.simulation.SimulationEditor;
 import org.openlca.app.util.Question;
 import org.openlca.app.util.UI;
-import org.openlca.core.database.FlowDao;
-import org.openlca.core.database.IDatabase;
-import org.openlca.core.database.ProductSystemDao;
 import org.openlca.core.math.CalculationType;
-import org.openlca.core.math.SystemCalculator;
-import org.openlca.core.math.data_quality.DQResult;
-import org.openlca.core.model.Exchange;
-import org.openlca.core.model.Flow;
 import org.openlca.core.model.ModelType;
 import org.openlca.core.model.ProductSystem;
-import org.openlca.core.results.ContributionResult;
-import org.openlca.core.results.SimpleResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -105,111 +86,46 @@ public class CalculationWizard extends Wizard {
 	@Override
 	public boolean performFinish() {
 		setup.savePreferences();
-		try {
-			Calculation calculation = new Calculation();
-			getContainer().run(true, true, calculation);
-			if (calculation.outOfMemory)
-				MemoryError.show();
-			return !calculation.outOfMemory;
-		} catch (Exception e) {
-			log.error("Calculation failed", e);
-			return false;
+		if (setup.calcType == CalculationType.MONTE_CARLO_SIMULATION) {
+			setup.calcSetup.withUncertainties = true;
+			SimulationEditor.open(setup.calcSetup);
+			return true;
 		}
+		CalculationType type = checkMemory();
+		if (type == null)
+			return false;
+		new CalculationJob(setup, type).schedule();
+		return true;
 	}
 
-	private class Calculation implements IRunnableWithProgress {
-
-		private boolean outOfMemory;
-
-		@Override
-		public void run(IProgressMonitor monitor)
-				throws InvocationTargetException, InterruptedException {
-
-			outOfMemory = false;
-			monitor.beginTask(M.RunCalculation, IProgressMonitor.UNKNOWN);
-			int size = setup.calcSetup.productSystem.processes.size();
-			log.trace("calculate a {} x {} system", size, size);
-			if (setup.calcType == CalculationType.MONTE_CARLO_SIMULATION) {
-				setup.calcSetup.withUncertainties = true;
-				SimulationEditor.open(setup.calcSetup);
-				return;
-			}
-			setup.calcSetup.withUncertainties = false;
-			boolean upstream = setup.calcType == CalculationType.UPSTREAM_ANALYSIS;
-
-			try {
-
-				// run the calculation
-				log.trace("run calculation");
-				SystemCalculator calc = new SystemCalculator(
-						Database.get(), App.getSolver());
-				ContributionResult r = upstream
-						? calc.calculateFull(setup.calcSetup)
-						: calc.calculateContributions(setup.calcSetup);
-
-				// check storage and DQ calculation
-				if (setup.storeInventory) {
-					log.trace("store inventory");
-					saveInventory(r);
-				}
-				DQResult dqResult = null;
-				if (setup.withDataQuality) {
-					log.trace("calculate data quality result");
-					dqResult = DQResult.calculate(
-							Database.get(), r, setup.dqSetup);
-				}
-
-				// sort and open the editor
-				log.trace("sort result items");
-				Sort.sort(r);
-				log.trace("calculation done; open editor");
-				ResultEditorInput input = ResultEditorInput.create(
-						setup.calcSetup, r).with(dqResult);
-				Editors.open(input, upstream
-						? AnalyzeEditor.ID
-						: QuickResultEditor.ID);
-
-			} catch (OutOfMemoryError e) {
-				outOfMemory = true;
-			}
-			monitor.done();
-		}
-
-		private void saveInventory(SimpleResult r) {
-			ProductSystem system = setup.calcSetup.productSystem;
-			system.inventory.clear();
-			IDatabase db = Database.get();
-			ProductSystemDao sysDao = new ProductSystemDao(db);
-			if (r.flowIndex == null || r.flowIndex.isEmpty()) {
-				sysDao.update(system);
-				return;
-			}
-
-			// load the used flows
-			Set<Long> flowIDs = new HashSet<>();
-			r.flowIndex.each((i, f) -> {
-				if (f.flow == null)
-					return;
-				flowIDs.add(f.flow.id);
-			});
-			Map<Long, Flow> flows = new FlowDao(db)
-					.getForIds(flowIDs).stream()
-					.collect(Collectors.toMap(f -> f.id, f -> f));
-
-			// create the exchanges
-			r.flowIndex.each((i, f) -> {
-				if (f.flow == null)
-					return;
-				Flow flow = flows.get(f.flow.id);
-				if (flow == null)
-					return;
-				var e = Exchange.of(flow);
-				e.amount = r.getTotalFlowResult(f);
-				e.isInput = f.isInput;
-				system.inventory.add(e);
-			});
-
-			sysDao.update(system);
+	/**
+	 * Estimates the memory that is needed for the calculation before it is
+	 * started. If the full result of an upstream analysis probably does not
+	 * fit into memory, the user can switch to a contribution result which does
+	 * not contain the upstream contributions. Returns the calculation type
+	 * that should be used or null if the calculation should not be started.
+	 */
+	private CalculationType checkMemory() {
+		CalculationType type = setup.calcType;
+		MemoryEstimate estimate = App.exec(M.RunCalculation,
+				() -> MemoryEstimate.of(setup.calcSetup, Database.get()));
+		if (estimate == null || estimate.fits(type))
+			return type;
+		log.info("calculation may run out of memory: {}", estimate);
+		long needed = MemoryEstimate.toMB(estimate.bytes(type));
+		long available = MemoryEstimate.toMB(MemoryEstimate.available());
+		if (type == CalculationType.UPSTREAM_ANALYSIS
+				&& estimate.fits(CalculationType.CONTRIBUTION_ANALYSIS)) {
+			int answer = Question.askWithCancel(M.OutOfMemory,
+					NLS.bind(M.CalculateQuickResultInstead, needed, available));
+			if (answer == IDialogConstants.CANCEL_ID)
+				return null;
+			return answer == IDialogConstants.YES_ID
+					? CalculationType.CONTRIBUTION_ANALYSIS
+					: type;
 		}
+		boolean run = Question.ask(M.OutOfMemory,
+				NLS.bind(M.CalculationMayRunOutOfMemory, needed, available));
+		return run ? type : null;
 	}
 }
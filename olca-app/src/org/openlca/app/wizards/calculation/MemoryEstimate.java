@@ -0,0 +1,205 @@
+package org.openlca.app.wizards.calculation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.openlca.core.database.IDatabase;
+import org.openlca.core.database.ImpactMethodDao;
+import org.openlca.core.database.NativeSql;
+import org.openlca.core.math.CalculationSetup;
+import org.openlca.core.math.CalculationType;
+import org.openlca.core.model.descriptors.ImpactCategoryDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gnu.trove.set.hash.TLongHashSet;
+
+/**
+ * A rough estimate of the memory that is needed for a calculation. The
+ * matrices of a calculation are sparse; thus, the estimate is based on their
+ * non-zero entries and not on their dimensions: the exchanges of the processes
+ * with product and waste flows (a) for the technology matrix, the exchanges
+ * with elementary flows (b) for the intervention matrix, and the factors of
+ * the impact categories (c) for the characterization matrix. Each non-zero
+ * entry is counted with its value and indices:
+ *
+ * <ul>
+ * <li>all calculations: the technology matrix and its factorization, which
+ * is assumed to have FILL_IN times more entries (a + FILL_IN * a), the
+ * intervention matrix and the direct flow results (2 b), the characterization
+ * factors (c), the direct impact results (k*n, with k impact categories and n
+ * processes), and the result vectors</li>
+ * <li>the full result of an upstream analysis: additionally the inverse of the
+ * technology matrix and the upstream flow results, which are also assumed to
+ * have FILL_IN times more entries (FILL_IN * (a + b)), and the upstream
+ * impact results (k*n)</li>
+ * </ul>
+ *
+ * The estimate is compared with the memory that is currently available in the
+ * JVM before the calculation is started.
+ */
+class MemoryEstimate {
+
+	private static final long MB = 1024 * 1024;
+
+	/** A reserve for the result editors and other application data. */
+	private static final long RESERVE = 64 * MB;
+
+	/** The bytes of a non-zero entry: the value and its row and column. */
+	private static final long ENTRY = 16;
+
+	/**
+	 * The assumed ratio of the non-zero entries of the factorization or
+	 * inverse of a matrix to the non-zero entries of the matrix itself.
+	 */
+	private static final long FILL_IN = 8;
+
+	final int processes;
+	final int flows;
+	final int impacts;
+
+	/** The number of exchanges with product and waste flows. */
+	long techEntries;
+
+	/** The number of exchanges with elementary flows. */
+	long flowEntries;
+
+	/** The number of characterization factors. */
+	long factorEntries;
+
+	private MemoryEstimate(int processes, int flows, int impacts) {
+		this.processes = processes;
+		this.flows = flows;
+		this.impacts = impacts;
+	}
+
+	static MemoryEstimate of(CalculationSetup setup, IDatabase db) {
+		Set<Long> processes = setup.productSystem.processes;
+		TLongHashSet flows = new TLongHashSet();
+		long[] exchanges = new long[2];
+		List<Long> chunk = new ArrayList<>();
+		for (Long id : processes) {
+			chunk.add(id);
+			if (chunk.size() == 1000) {
+				queryExchanges(chunk, db, flows, exchanges);
+				chunk.clear();
+			}
+		}
+		queryExchanges(chunk, db, flows, exchanges);
+		List<Long> impacts = new ArrayList<>();
+		if (setup.impactMethod != null) {
+			for (ImpactCategoryDescriptor d : new ImpactMethodDao(db)
+					.getCategoryDescriptors(setup.impactMethod.id)) {
+				impacts.add(d.id);
+			}
+		}
+		MemoryEstimate e = new MemoryEstimate(
+				processes.size(), flows.size(), impacts.size());
+		e.techEntries = exchanges[0];
+		e.flowEntries = exchanges[1];
+		e.factorEntries = countFactors(impacts, db);
+		return e;
+	}
+
+	/**
+	 * Counts the exchanges of the given processes: exchanges[0] with product
+	 * and waste flows, exchanges[1] with elementary flows. The distinct
+	 * elementary flows are added to the given set. The processes are queried
+	 * in chunks so that the SQL statements stay small.
+	 */
+	private static void queryExchanges(List<Long> processes, IDatabase db,
+			TLongHashSet flows, long[] exchanges) {
+		if (processes.isEmpty())
+			return;
+		String sql = "select e.f_flow, f.flow_type from tbl_exchanges e"
+				+ " inner join tbl_flows f on e.f_flow = f.id"
+				+ " where e.f_owner in (" + ids(processes) + ")";
+		try {
+			NativeSql.on(db).query(sql, r -> {
+				if ("ELEMENTARY_FLOW".equals(r.getString(2))) {
+					flows.add(r.getLong(1));
+					exchanges[1]++;
+				} else {
+					exchanges[0]++;
+				}
+				return true;
+			});
+		} catch (Exception e) {
+			Logger log = LoggerFactory.getLogger(MemoryEstimate.class);
+			log.error("failed to count the exchanges of the product system", e);
+		}
+	}
+
+	private static long countFactors(List<Long> impacts, IDatabase db) {
+		if (impacts.isEmpty())
+			return 0;
+		String sql = "select count(*) from tbl_impact_factors"
+				+ " where f_impact_category in (" + ids(impacts) + ")";
+		long[] count = new long[1];
+		try {
+			NativeSql.on(db).query(sql, r -> {
+				count[0] = r.getLong(1);
+				return false;
+			});
+		} catch (Exception e) {
+			Logger log = LoggerFactory.getLogger(MemoryEstimate.class);
+			log.error("failed to count the impact factors", e);
+		}
+		return count[0];
+	}
+
+	private static String ids(List<Long> ids) {
+		StringBuilder b = new StringBuilder();
+		for (Long id : ids) {
+			if (b.length() > 0) {
+				b.append(',');
+			}
+			b.append(id);
+		}
+		return b.toString();
+	}
+
+	/** The estimated number of bytes that are needed for the given type. */
+	long bytes(CalculationType type) {
+		double n = processes;
+		double m = flows;
+		double k = impacts;
+		double a = techEntries;
+		double b = flowEntries;
+		double c = factorEntries;
+		double entries = a + FILL_IN * a + 2 * b + c;
+		double cells = k * n + n + m + k;
+		if (type == CalculationType.UPSTREAM_ANALYSIS) {
+			entries += FILL_IN * (a + b);
+			cells += k * n;
+		}
+		return (long) (entries * ENTRY + cells * 8) + RESERVE;
+	}
+
+	/**
+	 * Returns true if the calculation of the given type probably fits into the
+	 * memory that is currently available.
+	 */
+	boolean fits(CalculationType type) {
+		return bytes(type) <= available();
+	}
+
+	/** The memory that can be still allocated by the JVM in bytes. */
+	static long available() {
+		Runtime rt = Runtime.getRuntime();
+		return rt.maxMemory() - (rt.totalMemory() - rt.freeMemory());
+	}
+
+	static long toMB(long bytes) {
+		return bytes / MB;
+	}
+
+	@Override
+	public String toString() {
+		return "MemoryEstimate [processes=" + processes + ", flows=" + flows
+				+ ", impacts=" + impacts + ", techEntries=" + techEntries
+				+ ", flowEntries=" + flowEntries
+				+ ", factorEntries=" + factorEntries + "]";
+	}
+}